@@ -0,0 +1,107 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * BenchmarkFixtures holds the setup shared by the benchmarks.<br>
+ * The nodes and configuration files themselves come from FleetGenerator.
+ */
+final class BenchmarkFixtures
+{
+	/**
+	 * Held so the Logger, and the level set on it, cannot be garbage collected during a run.
+	 */
+	private static final Logger editorLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private static final Gson GSON = new Gson();
+
+
+	private BenchmarkFixtures()
+	{
+	}
+
+
+	/**
+	 * quiet() will stop the editor from logging every updated line or warning about every unknown value, so the benchmarks measure editing and not console output.
+	 */
+	static void quiet()
+	{
+		editorLogger.setLevel( Level.SEVERE );
+	} // End of quiet() method.
+
+
+	/**
+	 * node() will build the Config for one node, the same as FleetGenerator writes it.
+	 *
+	 * @param baseDirectory the base directory of the node.
+	 * @param index         the position of the node in the fleet.
+	 * @return the Config.
+	 */
+	static Config node( String baseDirectory, int index )
+	{
+		StringWriter stringWriter = new StringWriter();
+		try( JsonWriter jsonWriter = new JsonWriter( stringWriter ) )
+		{
+			FleetGenerator.writeNode( jsonWriter, baseDirectory, index, FleetGenerator.Schema.V12_0_2 );
+		}
+		catch( IOException ioException )
+		{
+			// A StringWriter cannot fail.
+			throw new UncheckedIOException( ioException );
+		}
+		return GSON.fromJson( stringWriter.toString(), Config.class );
+	} // End of node() method.
+
+
+	/**
+	 * writeFleet() will write a fleet file with the given number of nodes.  The node directories are not created.
+	 *
+	 * @param fleetFile the file to write.
+	 * @param nodeCount the number of nodes.
+	 * @throws IOException if the file cannot be written.
+	 */
+	static void writeFleet( Path fleetFile, int nodeCount ) throws IOException
+	{
+		FleetGenerator.writeFleet( fleetFile, Paths.get( "/srv/faircom" ), nodeCount, FleetGenerator.Schema.V12_0_2 );
+	} // End of writeFleet() method.
+
+
+	/**
+	 * deleteTree() will delete a directory and everything in it.
+	 *
+	 * @param root the directory to delete.
+	 * @throws IOException if something cannot be deleted.
+	 */
+	static void deleteTree( Path root ) throws IOException
+	{
+		if( !Files.exists( root ) )
+			return;
+		Files.walkFileTree( root, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile( Path file, BasicFileAttributes attributes ) throws IOException
+			{
+				Files.delete( file );
+				return FileVisitResult.CONTINUE;
+			}
+
+
+			@Override
+			public FileVisitResult postVisitDirectory( Path directory, IOException exception ) throws IOException
+			{
+				Files.delete( directory );
+				return FileVisitResult.CONTINUE;
+			}
+		} );
+	} // End of deleteTree() method.
+}
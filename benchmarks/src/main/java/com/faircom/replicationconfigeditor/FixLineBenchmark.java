@@ -0,0 +1,58 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * FixLineBenchmark measures fixLine() over every line of a synthetic ctsrvr.cfg and cthttpd.json.<br>
+ * The key maps are the ones buildServerConfigMap() and buildHTTPConfigMap() build for a real node.<br>
+ * Divide the score by lineCount for the cost of one line.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class FixLineBenchmark
+{
+	@Param( { "100", "1000", "100000" } )
+	private int lineCount;
+	private String[] serverLines;
+	private String[] httpLines;
+	private Map<String, Object> serverConfigMap;
+	private Map<String, Object> httpConfigMap;
+
+
+	@Setup
+	public void setUp()
+	{
+		BenchmarkFixtures.quiet();
+		Config configuredNode = BenchmarkFixtures.node( "/srv/faircom/node0", 0 );
+		serverConfigMap = JavaReplicationConfigEditor.buildServerConfigMap( configuredNode );
+		httpConfigMap = JavaReplicationConfigEditor.buildHTTPConfigMap( configuredNode );
+		serverLines = FleetGenerator.serverConfig( lineCount ).split( "\n" );
+		httpLines = FleetGenerator.httpConfig( lineCount ).split( "\n" );
+	}
+
+
+	@Benchmark
+	public void serverConfig( Blackhole blackhole )
+	{
+		for( String line : serverLines )
+			blackhole.consume( JavaReplicationConfigEditor.fixLine( line, serverConfigMap, "", false ) );
+	}
+
+
+	@Benchmark
+	public void httpConfig( Blackhole blackhole )
+	{
+		for( String line : httpLines )
+			blackhole.consume( JavaReplicationConfigEditor.fixLine( line, httpConfigMap, ",", false ) );
+	}
+}
@@ -0,0 +1,316 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * FleetGenerator writes a synthetic fleet to disk: one directory per node, each with a config directory holding ctsrvr.cfg, cthttpd.json, and ctagent.json.<br>
+ * The first node is the Replication Manager, and also gets ctReplicationManager.cfg.<br>
+ * Every file starts with stale values for the keys the editor updates, followed by filler lines, so a run rewrites every file.<br>
+ * A fleet file is written for each key schema, both describing the same nodes.
+ */
+final class FleetGenerator
+{
+	/**
+	 * The key names used in fleet files.  12.5 renamed the HTTP and agent keys, and Config accepts both.
+	 */
+	enum Schema
+	{
+		V12_0_2( "12.0.2", "listeningHttpPort", "listeningHttpsPort", "mqttListeningPort", "mqttWebsocketPort",
+		         "memphisServerName", "memphisSqlPort", "memphisHost", "memphisDatabase" ),
+		V12_5_0( "12.5.0", "http_port", "https_port", "mqtt_port", "websocket_port",
+		         "memphis_server_name", "memphis_sql_port", "memphis_host", "memphis_database" );
+
+		private final String version;
+		private final String httpPort;
+		private final String httpsPort;
+		private final String mqttPort;
+		private final String websocketPort;
+		private final String memphisServerName;
+		private final String memphisSqlPort;
+		private final String memphisHost;
+		private final String memphisDatabase;
+
+
+		Schema( String version, String httpPort, String httpsPort, String mqttPort, String websocketPort,
+		        String memphisServerName, String memphisSqlPort, String memphisHost, String memphisDatabase )
+		{
+			this.version = version;
+			this.httpPort = httpPort;
+			this.httpsPort = httpsPort;
+			this.mqttPort = mqttPort;
+			this.websocketPort = websocketPort;
+			this.memphisServerName = memphisServerName;
+			this.memphisSqlPort = memphisSqlPort;
+			this.memphisHost = memphisHost;
+			this.memphisDatabase = memphisDatabase;
+		}
+
+
+		/**
+		 * parse() will find a Schema by its version number.
+		 *
+		 * @param version "12.0.2" or "12.5.0".
+		 * @return the Schema.
+		 */
+		static Schema parse( String version )
+		{
+			for( Schema schema : values() )
+			{
+				if( schema.version.equals( version ) )
+					return schema;
+			}
+			throw new IllegalArgumentException( "Unknown schema \"" + version + "\".  Use 12.0.2 or 12.5.0." );
+		}
+
+
+		@Override
+		public String toString()
+		{
+			return version;
+		}
+	}
+
+
+	/**
+	 * The number of ports each node uses.
+	 */
+	private static final int PORTS_PER_NODE = 6;
+	/**
+	 * Ports are handed out from here, and wrap around before they run past 65535.
+	 */
+	private static final int FIRST_PORT = 20000;
+	private static final int PORT_SLOTS = ( 65535 - FIRST_PORT ) / PORTS_PER_NODE;
+	private static final String MANAGER_FILE_NAME = "ctReplicationManager.cfg";
+
+
+	private FleetGenerator()
+	{
+	}
+
+
+	/**
+	 * generate() will write every node directory under root, and a fleet file for each Schema.
+	 *
+	 * @param root         the directory to write the fleet into.  It is created if needed.
+	 * @param nodeCount    the number of nodes.
+	 * @param linesPerFile the number of lines in each generated configuration file.
+	 * @throws IOException if a file cannot be written.
+	 */
+	static void generate( Path root, int nodeCount, int linesPerFile ) throws IOException
+	{
+		Files.createDirectories( root );
+		for( int i = 0; i < nodeCount; i++ )
+		{
+			Path configDirectory = Files.createDirectories( nodeDirectory( root, i ).resolve( "config" ) );
+			write( configDirectory.resolve( "ctsrvr.cfg" ), serverConfig( linesPerFile ) );
+			write( configDirectory.resolve( "cthttpd.json" ), httpConfig( linesPerFile ) );
+			write( configDirectory.resolve( "ctagent.json" ), agentConfig( linesPerFile ) );
+			if( i == 0 )
+				write( configDirectory.resolve( MANAGER_FILE_NAME ), replicationManagerConfig( linesPerFile ) );
+		}
+		for( Schema schema : Schema.values() )
+			writeFleet( fleetFile( root, schema ), root, nodeCount, schema );
+	} // End of generate() method.
+
+
+	/**
+	 * fleetFile() will name the fleet file generate() writes for a Schema.
+	 *
+	 * @param root   the directory the fleet was generated in.
+	 * @param schema the key schema.
+	 * @return the fleet file.
+	 */
+	static Path fleetFile( Path root, Schema schema )
+	{
+		return root.resolve( "fleet-" + schema.version + ".json" );
+	} // End of fleetFile() method.
+
+
+	/**
+	 * nodeDirectory() will name the base directory of a node.
+	 *
+	 * @param root  the directory the fleet is generated in.
+	 * @param index the position of the node in the fleet.
+	 * @return the base directory.
+	 */
+	static Path nodeDirectory( Path root, int index )
+	{
+		if( index == 0 )
+			return root.resolve( "ReplicationManager" );
+		return root.resolve( String.format( "FAIRCOM%06d", index ) );
+	} // End of nodeDirectory() method.
+
+
+	/**
+	 * writeFleet() will write a fleet file, one node at a time, so fleets of any size can be written without holding them in memory.
+	 *
+	 * @param fleetFile the file to write.
+	 * @param root      the directory the nodes are in.
+	 * @param nodeCount the number of nodes.
+	 * @param schema    the key names to use.
+	 * @throws IOException if the file cannot be written.
+	 */
+	static void writeFleet( Path fleetFile, Path root, int nodeCount, Schema schema ) throws IOException
+	{
+		try( JsonWriter jsonWriter = new JsonWriter( Files.newBufferedWriter( fleetFile, StandardCharsets.UTF_8 ) ) )
+		{
+			jsonWriter.setIndent( "\t" );
+			jsonWriter.beginArray();
+			for( int i = 0; i < nodeCount; i++ )
+				writeNode( jsonWriter, nodeDirectory( root, i ).toString(), i, schema );
+			jsonWriter.endArray();
+		}
+	} // End of writeFleet() method.
+
+
+	/**
+	 * writeNode() will write the fleet file entry for one node.
+	 *
+	 * @param jsonWriter    the writer, positioned inside the fleet array.
+	 * @param baseDirectory the base directory of the node.
+	 * @param index         the position of the node in the fleet, which decides its ports.
+	 * @param schema        the key names to use.
+	 * @throws IOException if the entry cannot be written.
+	 */
+	static void writeNode( JsonWriter jsonWriter, String baseDirectory, int index, Schema schema ) throws IOException
+	{
+		int portBase = FIRST_PORT + ( index % PORT_SLOTS ) * PORTS_PER_NODE;
+		jsonWriter.beginObject();
+		jsonWriter.name( "baseDirectory" ).value( baseDirectory );
+		jsonWriter.name( "configDirectory" ).value( "config" );
+		jsonWriter.name( "serverFileName" ).value( "ctsrvr.cfg" );
+		jsonWriter.name( "serverName" ).value( index == 0 ? "MEMPHIS" : "FAIRCOM" + index );
+		jsonWriter.name( "readOnlyServer" ).value( "NO" );
+		jsonWriter.name( "sqlPort" ).value( Integer.toString( portBase ) );
+		jsonWriter.name( "httpFileName" ).value( "cthttpd.json" );
+		jsonWriter.name( schema.httpPort ).value( portBase + 1 );
+		jsonWriter.name( schema.httpsPort ).value( portBase + 2 );
+		jsonWriter.name( schema.mqttPort ).value( portBase + 3 );
+		jsonWriter.name( schema.websocketPort ).value( portBase + 4 );
+		jsonWriter.name( "agentFileName" ).value( "ctagent.json" );
+		jsonWriter.name( schema.memphisServerName ).value( "MEMPHIS" );
+		jsonWriter.name( schema.memphisSqlPort ).value( FIRST_PORT );
+		jsonWriter.name( schema.memphisHost ).value( "127.0.0.1" );
+		jsonWriter.name( schema.memphisDatabase ).value( "MEMPHIS" );
+		if( index == 0 )
+			jsonWriter.name( "replicationManagerFileName" ).value( MANAGER_FILE_NAME );
+		jsonWriter.endObject();
+	} // End of writeNode() method.
+
+
+	/**
+	 * serverConfig() will build a ctsrvr.cfg with the given number of lines.
+	 *
+	 * @param lineCount the number of lines, at least 7.
+	 * @return the file contents.
+	 */
+	static String serverConfig( int lineCount )
+	{
+		StringBuilder builder = new StringBuilder( lineCount * 32 );
+		builder.append( ";  Server config\n" );
+		builder.append( "SERVER_NAME\tOLD\n" );
+		builder.append( ";SQL_PORT 1234\n" );
+		builder.append( "SQL_PORT\t6597\n" );
+		builder.append( "READONLY_SERVER\tYES\n" );
+		builder.append( ";PLUGIN cthttpd;./web/cthttpd.dll\n" );
+		builder.append( ";PLUGIN ctagent;./agent/ctagent.dll\n" );
+		for( int i = 7; i < lineCount; i++ )
+		{
+			if( i % 4 == 0 )
+				builder.append( "; Filler comment " ).append( i ).append( '\n' );
+			else
+				builder.append( "SETTING_" ).append( i ).append( '\t' ).append( i * 7 ).append( '\n' );
+		}
+		return builder.toString();
+	} // End of serverConfig() method.
+
+
+	/**
+	 * httpConfig() will build a cthttpd.json with the given number of lines.
+	 *
+	 * @param lineCount the number of lines, at least 7.
+	 * @return the file contents.
+	 */
+	static String httpConfig( int lineCount )
+	{
+		StringBuilder builder = new StringBuilder( lineCount * 40 );
+		builder.append( "{\n" );
+		builder.append( "\t\"listening_http_port\": 8080,\n" );
+		builder.append( "\t\"listening_https_port\": 8443,\n" );
+		builder.append( "\t\"mqtt_listening_port\": 1883,\n" );
+		builder.append( "\t\"mqtt_websocket_port\": 9001,\n" );
+		appendJsonFiller( builder, 5, lineCount );
+		return builder.toString();
+	} // End of httpConfig() method.
+
+
+	/**
+	 * agentConfig() will build a ctagent.json with the given number of lines.
+	 *
+	 * @param lineCount the number of lines, at least 7.
+	 * @return the file contents.
+	 */
+	static String agentConfig( int lineCount )
+	{
+		StringBuilder builder = new StringBuilder( lineCount * 40 );
+		builder.append( "{\n" );
+		builder.append( "  \"memphis_server_name\": \"OLD\",\n" );
+		builder.append( "  \"memphis_sql_port\": 6597,\n" );
+		builder.append( "  \"memphis_host\": \"10.0.0.1\",\n" );
+		builder.append( "  \"memphis_database\": \"OLD\",\n" );
+		appendJsonFiller( builder, 5, lineCount );
+		return builder.toString();
+	} // End of agentConfig() method.
+
+
+	/**
+	 * replicationManagerConfig() will build a ctReplicationManager.cfg with the given number of lines.
+	 *
+	 * @param lineCount the number of lines, at least 4.
+	 * @return the file contents.
+	 */
+	static String replicationManagerConfig( int lineCount )
+	{
+		StringBuilder builder = new StringBuilder( lineCount * 32 );
+		builder.append( "MEMPHIS_SERVER_NAME\tOLD\n" );
+		builder.append( "MEMPHIS_SQL_PORT\t6597\n" );
+		builder.append( "MEMPHIS_HOST\t10.0.0.1\n" );
+		builder.append( "MEMPHIS_DATABASE\tOLD\n" );
+		for( int i = 4; i < lineCount; i++ )
+			builder.append( "REPLICATION_SETTING_" ).append( i ).append( '\t' ).append( i ).append( '\n' );
+		return builder.toString();
+	} // End of replicationManagerConfig() method.
+
+
+	/**
+	 * appendJsonFiller() will pad a JSON object with settings the editor does not touch, and close it.
+	 *
+	 * @param builder   the file so far.
+	 * @param lineIndex the number of lines already in builder.
+	 * @param lineCount the number of lines the file should have.
+	 */
+	private static void appendJsonFiller( StringBuilder builder, int lineIndex, int lineCount )
+	{
+		for( int i = lineIndex; i < lineCount - 2; i++ )
+			builder.append( "\t\"setting_" ).append( i ).append( "\": \"value " ).append( i ).append( "\",\n" );
+		builder.append( "\t\"last_setting\": true\n" );
+		builder.append( "}\n" );
+	} // End of appendJsonFiller() method.
+
+
+	private static void write( Path path, String contents ) throws IOException
+	{
+		try( Writer writer = Files.newBufferedWriter( path, StandardCharsets.ISO_8859_1 ) )
+		{
+			writer.write( contents );
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * LoadConfigBenchmark measures parsing a fleet file, both into a whole Config[] with loadConfig(), and one node at a time with FleetReader.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class LoadConfigBenchmark
+{
+	@Param( { "10", "1000", "100000" } )
+	private int nodeCount;
+	private Path fleetFile;
+
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		BenchmarkFixtures.quiet();
+		fleetFile = Files.createTempFile( "load-config-benchmark", ".json" );
+		BenchmarkFixtures.writeFleet( fleetFile, nodeCount );
+	}
+
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Files.deleteIfExists( fleetFile );
+	}
+
+
+	@Benchmark
+	public Config[] loadConfig()
+	{
+		return JavaReplicationConfigEditor.loadConfig( fleetFile.toString() );
+	}
+
+
+	@Benchmark
+	public void fleetReader( Blackhole blackhole ) throws IOException
+	{
+		try( FleetReader fleetReader = FleetReader.open( fleetFile.toString() ) )
+		{
+			while( fleetReader.hasNext() )
+				blackhole.consume( fleetReader.next() );
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * QuoteIfNeededBenchmark measures quoteIfNeeded() for each kind of value a fleet file holds.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class QuoteIfNeededBenchmark
+{
+	@Param( { "19991", "127.0.0.1", "MEMPHIS", "\"quoted\"", "two words" } )
+	private String value;
+
+
+	@Setup
+	public void setUp()
+	{
+		BenchmarkFixtures.quiet();
+	}
+
+
+	@Benchmark
+	public String quoteIfNeeded()
+	{
+		return JavaReplicationConfigEditor.quoteIfNeeded( value );
+	}
+}
@@ -0,0 +1,132 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Stream;
+
+
+/**
+ * ThroughputHarness runs the whole editor, main() and all, over a generated fleet and reports how fast it went.<br>
+ * Usage: ThroughputHarness [nodeCount] [linesPerFile] [12.0.2|12.5.0] [editor options...]<br>
+ * The defaults are 1000 nodes, 200 lines per file, the 12.5.0 schema, and "--log-level WARNING".<br>
+ * A file counts as rewritten when it was replaced on disk, which is detected by its file key (the inode on POSIX systems) or, where there is none, its modification time.
+ */
+public final class ThroughputHarness
+{
+	private ThroughputHarness()
+	{
+	}
+
+
+	public static void main( String[] args ) throws IOException
+	{
+		int nodeCount = args.length > 0 ? Integer.parseInt( args[0] ) : 1000;
+		int linesPerFile = args.length > 1 ? Integer.parseInt( args[1] ) : 200;
+		FleetGenerator.Schema schema = args.length > 2 ? FleetGenerator.Schema.parse( args[2] ) : FleetGenerator.Schema.V12_5_0;
+		List<String> editorArgs = new ArrayList<>();
+		if( args.length > 3 )
+			editorArgs.addAll( Arrays.asList( args ).subList( 3, args.length ) );
+		else
+			editorArgs.addAll( Arrays.asList( "--log-level", "WARNING" ) );
+
+		Path root = Files.createTempDirectory( "replication-fleet" );
+		try
+		{
+			long generateStart = System.nanoTime();
+			FleetGenerator.generate( root, nodeCount, linesPerFile );
+			double generateSeconds = ( System.nanoTime() - generateStart ) / 1e9;
+			Map<Path, FileIdentity> before = snapshot( root );
+			editorArgs.add( FleetGenerator.fleetFile( root, schema ).toString() );
+
+			long runStart = System.nanoTime();
+			JavaReplicationConfigEditor.main( editorArgs.toArray( new String[0] ) );
+			double runSeconds = ( System.nanoTime() - runStart ) / 1e9;
+			EditorLogging.flush();
+
+			long rewrittenFiles = 0;
+			long rewrittenBytes = 0;
+			for( Map.Entry<Path, FileIdentity> entry : before.entrySet() )
+			{
+				FileIdentity after = FileIdentity.of( entry.getKey() );
+				if( !after.isSameFile( entry.getValue() ) )
+				{
+					rewrittenFiles++;
+					rewrittenBytes += after.size;
+				}
+			}
+
+			System.out.printf( "Generated %d nodes (%d files, %d lines each, schema %s) in %.2f s%n", nodeCount, before.size(), linesPerFile, schema, generateSeconds );
+			System.out.printf( "Editor options: %s%n", editorArgs.subList( 0, editorArgs.size() - 1 ) );
+			System.out.printf( "Run took %.3f s%n", runSeconds );
+			System.out.printf( "Nodes per second: %.1f%n", nodeCount / runSeconds );
+			System.out.printf( "Files per second: %.1f%n", before.size() / runSeconds );
+			System.out.printf( "Files rewritten: %d of %d%n", rewrittenFiles, before.size() );
+			System.out.printf( "Bytes rewritten: %d (%.1f MB/s)%n", rewrittenBytes, rewrittenBytes / runSeconds / ( 1024 * 1024 ) );
+		}
+		finally
+		{
+			BenchmarkFixtures.deleteTree( root );
+		}
+	}
+
+
+	/**
+	 * snapshot() will record the identity of every configuration file under root.
+	 *
+	 * @param root the generated fleet.
+	 * @return the identity of each file.
+	 * @throws IOException if a file cannot be read.
+	 */
+	private static Map<Path, FileIdentity> snapshot( Path root ) throws IOException
+	{
+		Map<Path, FileIdentity> identityMap = new HashMap<>();
+		try( Stream<Path> pathStream = Files.walk( root ) )
+		{
+			Iterator<Path> pathIterator = pathStream.iterator();
+			while( pathIterator.hasNext() )
+			{
+				Path path = pathIterator.next();
+				if( Files.isRegularFile( path ) && path.getParent().getFileName().toString().equals( "config" ) )
+					identityMap.put( path, FileIdentity.of( path ) );
+			}
+		}
+		return identityMap;
+	} // End of snapshot() method.
+
+
+	/**
+	 * The attributes that tell whether a file has been replaced.
+	 */
+	private static final class FileIdentity
+	{
+		private final Object fileKey;
+		private final long modified;
+		private final long size;
+
+
+		private FileIdentity( BasicFileAttributes attributes )
+		{
+			fileKey = attributes.fileKey();
+			modified = attributes.lastModifiedTime().toMillis();
+			size = attributes.size();
+		}
+
+
+		static FileIdentity of( Path path ) throws IOException
+		{
+			return new FileIdentity( Files.readAttributes( path, BasicFileAttributes.class ) );
+		}
+
+
+		boolean isSameFile( FileIdentity other )
+		{
+			if( fileKey != null && other.fileKey != null )
+				return fileKey.equals( other.fileKey );
+			return modified == other.modified && size == other.size;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * UpdateConfigBenchmark measures a full updateConfig() round trip: reading the file, editing every line, and replacing it on disk.<br>
+ * modified alternates between two nodes with different ports, so every call rewrites the file.<br>
+ * unchanged applies the same node every time, so every call reads the file and writes nothing.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class UpdateConfigBenchmark
+{
+	@Param( { "100", "1000", "100000" } )
+	private int lineCount;
+	@Param( { "ctsrvr.cfg", "cthttpd.json" } )
+	private String fileName;
+	private Path directory;
+	private String filePath;
+	private final List<Map<String, Object>> configMapList = new ArrayList<>( 2 );
+	private int next = 0;
+
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		BenchmarkFixtures.quiet();
+		directory = Files.createTempDirectory( "update-config-benchmark" );
+		Path path = directory.resolve( fileName );
+		filePath = path.toString();
+		boolean server = fileName.endsWith( ".cfg" );
+		String contents = server ? FleetGenerator.serverConfig( lineCount ) : FleetGenerator.httpConfig( lineCount );
+		Files.write( path, contents.getBytes( StandardCharsets.ISO_8859_1 ) );
+		for( int i = 0; i < 2; i++ )
+		{
+			Config configuredNode = BenchmarkFixtures.node( directory.toString(), i );
+			configMapList.add( server ? JavaReplicationConfigEditor.buildServerConfigMap( configuredNode ) : JavaReplicationConfigEditor.buildHTTPConfigMap( configuredNode ) );
+		}
+	}
+
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		BenchmarkFixtures.deleteTree( directory );
+	}
+
+
+	@Benchmark
+	public FileStatus modified()
+	{
+		next ^= 1;
+		return JavaReplicationConfigEditor.updateConfig( filePath, configMapList.get( next ), false );
+	}
+
+
+	@Benchmark
+	public FileStatus unchanged()
+	{
+		return JavaReplicationConfigEditor.updateConfig( filePath, configMapList.get( 0 ), false );
+	}
+}
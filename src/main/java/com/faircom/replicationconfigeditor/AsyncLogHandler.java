@@ -0,0 +1,162 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+
+/**
+ * This Handler hands records to a background thread through a fixed-size ring buffer, and that thread formats and writes them.<br>
+ * Logging threads only pay for a queue insert, so formatting and console I/O no longer slow down the per-line path.<br>
+ * When the buffer is full, logging threads wait for room rather than dropping records.<br>
+ * Records are written in the order they were published.
+ */
+class AsyncLogHandler extends Handler
+{
+	/**
+	 * The number of records the ring buffer can hold.
+	 */
+	private static final int CAPACITY = 8192;
+	private final ArrayBlockingQueue<LogRecord> ringBuffer = new ArrayBlockingQueue<>( CAPACITY );
+	private final List<Handler> targetList = new CopyOnWriteArrayList<>();
+	private final Object drainMonitor = new Object();
+	private final Thread drainThread;
+	/**
+	 * The number of records put into the ring buffer.  Guarded by drainMonitor.
+	 */
+	private long publishedCount = 0;
+	/**
+	 * The number of records written to every target.  Guarded by drainMonitor.
+	 */
+	private long drainedCount = 0;
+	private volatile boolean closed = false;
+
+
+	AsyncLogHandler()
+	{
+		drainThread = new Thread( this::drain, "replication-editor-log" );
+		drainThread.setDaemon( true );
+		drainThread.start();
+	}
+
+
+	/**
+	 * addTarget() will add a Handler that the background thread writes records to.
+	 *
+	 * @param handler the Handler to add.
+	 */
+	void addTarget( Handler handler )
+	{
+		targetList.add( handler );
+	} // End of addTarget() method.
+
+
+	@Override
+	public void publish( LogRecord logRecord )
+	{
+		if( !isLoggable( logRecord ) )
+			return;
+		if( closed )
+		{
+			writeToTargets( logRecord );
+			return;
+		}
+		synchronized( drainMonitor )
+		{
+			publishedCount++;
+		}
+		try
+		{
+			ringBuffer.put( logRecord );
+		}
+		catch( InterruptedException interruptedException )
+		{
+			Thread.currentThread().interrupt();
+			synchronized( drainMonitor )
+			{
+				publishedCount--;
+			}
+			writeToTargets( logRecord );
+		}
+	}
+
+
+	/**
+	 * flush() will wait until every record published so far has been written, and then flush every target.
+	 */
+	@Override
+	public void flush()
+	{
+		synchronized( drainMonitor )
+		{
+			long target = publishedCount;
+			while( drainedCount < target && drainThread.isAlive() )
+			{
+				try
+				{
+					drainMonitor.wait( 100 );
+				}
+				catch( InterruptedException interruptedException )
+				{
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		for( Handler target : targetList )
+			target.flush();
+	}
+
+
+	@Override
+	public void close()
+	{
+		flush();
+		closed = true;
+		drainThread.interrupt();
+		for( Handler target : targetList )
+			target.close();
+	}
+
+
+	/**
+	 * drain() runs on the background thread, writing records until the handler is closed.
+	 */
+	private void drain()
+	{
+		while( !closed )
+		{
+			LogRecord logRecord;
+			try
+			{
+				logRecord = ringBuffer.take();
+			}
+			catch( InterruptedException interruptedException )
+			{
+				return;
+			}
+			writeToTargets( logRecord );
+			// Flush once the buffer runs dry, so output appears promptly without flushing after every record.
+			if( ringBuffer.isEmpty() )
+			{
+				for( Handler target : targetList )
+					target.flush();
+			}
+			synchronized( drainMonitor )
+			{
+				drainedCount++;
+				drainMonitor.notifyAll();
+			}
+		}
+	} // End of drain() method.
+
+
+	private void writeToTargets( LogRecord logRecord )
+	{
+		for( Handler target : targetList )
+			target.publish( logRecord );
+	}
+}
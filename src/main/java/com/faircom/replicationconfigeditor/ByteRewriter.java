@@ -0,0 +1,151 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * ByteRewriter edits a file line by line like StreamingRewriter, but scans the raw bytes instead of decoding every line into a String.<br>
+ * A KeyMatcher runs over the bytes and resets at each line terminator, so it finds the lines that hold a search text.
+ * Only those lines become Strings and are passed to the line editor.  Every other line is passed to RewriteOutput as a range of the original bytes.<br>
+ * Files are ISO-8859-1, so each byte is one character, and a line holds a search text exactly when its String would.<br>
+ * The file is read in chunks into a buffer that each thread reuses, so rewriting a large file where few lines change allocates almost nothing.
+ */
+final class ByteRewriter
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial( () -> new byte[BUFFER_SIZE] );
+
+
+	private ByteRewriter()
+	{
+	}
+
+
+	/**
+	 * matcherFor() will compile a matcher for the texts that select lines.
+	 *
+	 * @param searchTexts the texts to look for.
+	 * @return a matcher, or null if the texts cannot be compiled, or one holds a line terminator and so could never be found within a line.
+	 */
+	static KeyMatcher matcherFor( Collection<String> searchTexts )
+	{
+		for( String searchText : searchTexts )
+		{
+			if( searchText.indexOf( '\n' ) >= 0 || searchText.indexOf( '\r' ) >= 0 )
+				return null;
+		}
+		return KeyMatcher.forKeys( searchTexts );
+	} // End of matcherFor() method.
+
+
+	/**
+	 * rewrite() will pass every line of a file that holds a search text through lineEditor, and replace the file with the result.
+	 * Lines end at "\n", "\r\n", or "\r", the same as LineSource, and terminators are kept as they are.
+	 * If lineEditor does not change any line, the file is not written at all.
+	 *
+	 * @param path       the file to rewrite.
+	 * @param contents   the contents of the file, if they were already read, or null to read the file.
+	 * @param matcher    the matcher from matcherFor().  Lines where it finds nothing are copied without calling lineEditor.
+	 * @param lineEditor a function that returns the edited version of a line.  Lines are passed without their terminators.
+	 * @return MODIFIED if the file was replaced, or UNCHANGED if no line changed.
+	 * @throws IOException if the file cannot be read, or the result cannot be written or moved into place.
+	 */
+	static FileStatus rewrite( Path path, byte[] contents, KeyMatcher matcher, UnaryOperator<String> lineEditor ) throws IOException
+	{
+		byte[] buffer = contents == null ? BUFFER.get() : contents;
+		int limit = contents == null ? 0 : contents.length;
+		try( InputStream inputStream = contents == null ? FileMeter.meter( Files.newInputStream( path ) ) : null;
+		     RewriteOutput rewriteOutput = new RewriteOutput( path, contents ) )
+		{
+			long lineCount = 0;
+			long changedCount = 0;
+			// The first byte not yet passed to rewriteOutput, and the start of the line being scanned.
+			int pending = 0;
+			int lineStart = 0;
+			int position = 0;
+			int state = 0;
+			long found = matcher.found( 0 );
+			boolean afterCarriageReturn = false;
+			while( true )
+			{
+				if( position == limit )
+				{
+					if( inputStream == null )
+						break;
+					// Pass on the finished lines, and keep the partial line at the start of the buffer.
+					rewriteOutput.unchanged( buffer, pending, lineStart - pending );
+					if( lineStart == 0 && limit == buffer.length )
+						buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+					System.arraycopy( buffer, lineStart, buffer, 0, limit - lineStart );
+					limit -= lineStart;
+					position = limit;
+					pending = 0;
+					lineStart = 0;
+					int count = inputStream.read( buffer, limit, buffer.length - limit );
+					if( count <= 0 )
+						break;
+					limit += count;
+				}
+				int character = buffer[position] & 0xFF;
+				if( character == '\n' && afterCarriageReturn )
+				{
+					// The second half of "\r\n".
+					afterCarriageReturn = false;
+					lineStart = ++position;
+					continue;
+				}
+				afterCarriageReturn = character == '\r';
+				if( character != '\n' && character != '\r' )
+				{
+					state = matcher.next( state, character );
+					found |= matcher.found( state );
+					position++;
+					continue;
+				}
+				if( found != 0 && editLine( buffer, pending, lineStart, position, lineEditor, rewriteOutput ) )
+					changedCount++;
+				if( found != 0 )
+					pending = position;
+				lineCount++;
+				state = 0;
+				found = matcher.found( 0 );
+				lineStart = ++position;
+			}
+			// A final line without a line break still counts, but an empty remainder does not.
+			if( lineStart < limit )
+			{
+				if( found != 0 && editLine( buffer, pending, lineStart, limit, lineEditor, rewriteOutput ) )
+					changedCount++;
+				if( found != 0 )
+					pending = limit;
+				lineCount++;
+			}
+			rewriteOutput.unchanged( buffer, pending, limit - pending );
+			FileMeter.addLines( lineCount, changedCount );
+			return rewriteOutput.commit();
+		}
+	} // End of rewrite() method.
+
+
+	/**
+	 * editLine() will pass on the unchanged bytes before a line, then the line itself through lineEditor.
+	 *
+	 * @return true if lineEditor changed the line.
+	 */
+	private static boolean editLine( byte[] buffer, int pending, int lineStart, int lineEnd, UnaryOperator<String> lineEditor, RewriteOutput rewriteOutput ) throws IOException
+	{
+		rewriteOutput.unchanged( buffer, pending, lineStart - pending );
+		String line = new String( buffer, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1 );
+		String editedLine = lineEditor.apply( line );
+		rewriteOutput.replace( line, editedLine );
+		return !line.equals( editedLine );
+	}
+}
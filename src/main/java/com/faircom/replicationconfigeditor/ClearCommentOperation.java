@@ -0,0 +1,64 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * This operation removes the leading comment character from a line that contains a given piece of text.<br>
+ * See clearComment() for the exact rules.
+ *
+ * @see main.java.com.faircom.replicationconfigeditor.JavaReplicationConfigEditor#clearComment(String, String)
+ */
+class ClearCommentOperation implements EditOperation
+{
+	private static final Logger operationLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private final String textToFind;
+
+
+	/**
+	 * @param textToFind a unique String identifying the line to uncomment.
+	 */
+	ClearCommentOperation( String textToFind )
+	{
+		this.textToFind = textToFind;
+	}
+
+
+	@Override
+	public String apply( String line )
+	{
+		// Search for the text, and see if the line begins with a semicolon.
+		if( line.contains( textToFind ) && line.trim().startsWith( ";" ) )
+		{
+			String uncommented = line.replaceFirst( ";", "" );
+			operationLogger.log( Level.INFO, () -> "\tclearComment() is updating this line: '" + uncommented + "'" );
+			return uncommented;
+		}
+		return line;
+	}
+
+
+	@Override
+	public boolean touches( String line )
+	{
+		return line.contains( textToFind );
+	}
+
+
+	@Override
+	public Collection<String> getSearchTexts()
+	{
+		return Collections.singletonList( textToFind );
+	}
+
+
+	@Override
+	public String getShapeKey()
+	{
+		return "comment[" + textToFind + "]";
+	}
+}
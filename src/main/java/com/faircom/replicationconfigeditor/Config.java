@@ -1,118 +1,124 @@
 package main.java.com.faircom.replicationconfigeditor;
 
 
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+
 /**
  * This class represents the configuration for this program.<br>
  * It should be able to edit any file that it has write access to (CIFS, SAN, etc.).<br>
- * It contains cTree JDBC, MQTT server, and test parameters.
+ * It contains cTree JDBC, MQTT server, and test parameters.<br>
+ * Gson reads and writes it with ConfigTypeAdapter instead of reflection.  The 12.5.0 property names (http_port, memphis_host, and so on) are resolved while parsing,
+ * so each setting is held in a single field.
  */
-@SuppressWarnings( "squid:S116" )
+@JsonAdapter( Config.ConfigTypeAdapter.class )
 class Config
 {
 	/**
 	 * The directory where this node is located.
 	 * Defaults to an empty String.
 	 */
-	private final String baseDirectory;
+	private String baseDirectory;
 	/**
 	 * Optional: The config directory, relative to the base directory.
 	 * Defaults to "config".
 	 */
-	private final String configDirectory;
+	private String configDirectory;
 
 
 	/**
 	 * Optional: The name of the server config file.
 	 * Defaults to "ctsrvr.cfg".
 	 */
-	private final String serverFileName;
+	private String serverFileName;
 	/**
 	 * The 'SERVER_NAME' value for 'ctsrvr.cfg'.
 	 * This setting should typically be exclusive with serverPort.
 	 * The SERVER_PORT setting overrides the SERVER_NAME setting in FairCom servers.
 	 * Defaults to an empty String.
 	 */
-	private final String serverName;
+	private String serverName;
 	/**
 	 * The 'SERVER_PORT' value for 'ctsrvr.cfg'.
 	 * This setting should typically be exclusive with serverName.
 	 * The SERVER_PORT setting overrides the SERVER_NAME setting in FairCom servers.
 	 * Defaults to an empty String.
 	 */
-	private final String serverPort;
+	private String serverPort;
 	/**
 	 * The 'READONLY_SERVER' value for 'ctsrvr.cfg'.
 	 * Valid values are 'YES' and 'NO'.
 	 * Defaults to "NO".
 	 */
-	private final String readOnlyServer;
+	private String readOnlyServer;
 	/**
 	 * The 'SQL_PORT' value for 'ctsrvr.cfg'.
 	 * Defaults to "19991".
 	 */
-	private final String sqlPort;
+	private String sqlPort;
 
 
 	/**
 	 * Optional: The name of the HTTP daemon config file.
 	 * Defaults to "cthttpd.json".
 	 */
-	private final String httpFileName;
+	private String httpFileName;
 	/**
 	 * The 'listening_http_port' value for 'cthttpd.json'.
 	 * Defaults to 19993.
+	 * PortRegistry can fill it in when it is left blank.
 	 */
-	private final Integer listeningHttpPort;
-	private final Integer http_port;
+	private Integer listeningHttpPort;
 	/**
 	 * The 'listening_https_port' value for 'cthttpd.json'.
 	 * Defaults to 19992.
+	 * PortRegistry can fill it in when it is left blank.
 	 */
-	private final Integer listeningHttpsPort;
-	private final Integer https_port;
+	private Integer listeningHttpsPort;
 	/**
 	 * The 'mqtt_listening_port' value for 'cthttpd.json'.
 	 * Defaults to null.
 	 */
-	private final Integer mqttListeningPort;
-	private final Integer mqtt_port;
+	private Integer mqttListeningPort;
 	/**
 	 * The 'mqtt_websocket_port' value for 'cthttpd.json'.
 	 * Defaults to null.
 	 */
-	private final Integer mqttWebsocketPort;
-	private final Integer websocket_port;
+	private Integer mqttWebsocketPort;
 
 
 	/**
 	 * Optional: The name of the Agent config file.
 	 * Defaults to "ctagent.json".
 	 */
-	private final String agentFileName;
+	private String agentFileName;
 	/**
 	 * The 'memphis_server_name' value for 'ctagent.json'.
 	 * Defaults to a "MEMPHIS".
 	 */
-	private final String memphisServerName;
-	private final String memphis_server_name;
+	private String memphisServerName;
 	/**
 	 * The 'memphis_sql_port' value for 'ctagent.json'.
 	 * This value will also be used to update ctReplicationManager.cfg.
 	 */
-	private final Integer memphisSqlPort;
-	private final Integer memphis_sql_port;
+	private Integer memphisSqlPort;
 	/**
 	 * The 'memphis_host' value for 'ctagent.json'.
 	 * Defaults to "127.0.0.1".
 	 */
-	private final String memphisHost;
-	private final String memphis_host;
+	private String memphisHost;
 	/**
 	 * The 'memphis_database' value for 'ctagent.json'.
 	 * Defaults to a "MEMPHIS".
 	 */
-	private final String memphisDatabase;
-	private final String memphis_database;
+	private String memphisDatabase;
 
 
 	/**
@@ -122,12 +128,12 @@ class Config
 	 * The 'MEMPHIS_SERVER_NAME', 'MEMPHIS_SQL_PORT', 'MEMPHIS_HOST', and 'MEMPHIS_DATABASE' value in this file will be updated with the values from ctagent.
 	 * Defaults to an empty String.
 	 */
-	private final String replicationManagerFileName;
+	private String replicationManagerFileName;
 
 
 	/**
-	 * The no-arg constructor prevents Gson from initializing missing values to null.
-	 * Some values are deliberately set to null.  This is used as a way to handle JSON property name changes in 12.5.
+	 * The no-arg constructor sets the defaults that ConfigTypeAdapter keeps for any property missing from the JSON.
+	 * The ports of cthttpd.json and memphisSqlPort are deliberately left null, so a blank port can be told apart from one that was set.
 	 * These defaults are set to a typical Replication Manager setup.
 	 */
 	public Config()
@@ -141,26 +147,46 @@ class Config
 		this.sqlPort = "19991";
 		this.httpFileName = "cthttpd.json";
 		this.listeningHttpPort = null;
-		this.http_port = null;
 		this.listeningHttpsPort = null;
-		this.https_port = null;
 		this.mqttListeningPort = null;
-		this.mqtt_port = null;
 		this.mqttWebsocketPort = null;
-		this.websocket_port = null;
 		this.agentFileName = "ctagent.json";
-		this.memphis_server_name = "";
 		this.memphisServerName = "";
 		this.memphisSqlPort = null;
-		this.memphis_sql_port = null;
 		this.memphisHost = "";
-		this.memphis_host = "";
 		this.memphisDatabase = "";
-		this.memphis_database = "";
 		this.replicationManagerFileName = "";
 	}
 
 
+	/**
+	 * This constructor sets every field, so FleetStore can rebuild a node from its columns.
+	 */
+	Config( String baseDirectory, String configDirectory, String serverFileName, String serverName, String serverPort, String readOnlyServer, String sqlPort, String httpFileName,
+	        Integer listeningHttpPort, Integer listeningHttpsPort, Integer mqttListeningPort, Integer mqttWebsocketPort,
+	        String agentFileName, String memphisServerName, Integer memphisSqlPort, String memphisHost, String memphisDatabase, String replicationManagerFileName )
+	{
+		this.baseDirectory = baseDirectory;
+		this.configDirectory = configDirectory;
+		this.serverFileName = serverFileName;
+		this.serverName = serverName;
+		this.serverPort = serverPort;
+		this.readOnlyServer = readOnlyServer;
+		this.sqlPort = sqlPort;
+		this.httpFileName = httpFileName;
+		this.listeningHttpPort = listeningHttpPort;
+		this.listeningHttpsPort = listeningHttpsPort;
+		this.mqttListeningPort = mqttListeningPort;
+		this.mqttWebsocketPort = mqttWebsocketPort;
+		this.agentFileName = agentFileName;
+		this.memphisServerName = memphisServerName;
+		this.memphisSqlPort = memphisSqlPort;
+		this.memphisHost = memphisHost;
+		this.memphisDatabase = memphisDatabase;
+		this.replicationManagerFileName = replicationManagerFileName;
+	}
+
+
 	public String getBaseDirectory()
 	{
 		return baseDirectory;
@@ -211,33 +237,47 @@ class Config
 
 	public Integer getListeningHttpPort()
 	{
-		if( http_port == null )
-			return listeningHttpPort;
-		return http_port;
+		return listeningHttpPort;
 	}
 
 
 	public Integer getListeningHttpsPort()
 	{
-		if( https_port == null )
-			return listeningHttpsPort;
-		return https_port;
+		return listeningHttpsPort;
+	}
+
+
+	/**
+	 * assignListeningHttpPort() will set listeningHttpPort for a node that left it blank.
+	 *
+	 * @param port the port allocated for this node.
+	 */
+	void assignListeningHttpPort( int port )
+	{
+		this.listeningHttpPort = port;
+	}
+
+
+	/**
+	 * assignListeningHttpsPort() will set listeningHttpsPort for a node that left it blank.
+	 *
+	 * @param port the port allocated for this node.
+	 */
+	void assignListeningHttpsPort( int port )
+	{
+		this.listeningHttpsPort = port;
 	}
 
 
 	public Integer getMqttListeningPort()
 	{
-		if( mqtt_port == null )
-			return mqttListeningPort;
-		return mqtt_port;
+		return mqttListeningPort;
 	}
 
 
 	public Integer getMqttWebsocketPort()
 	{
-		if( websocket_port == null )
-			return mqttWebsocketPort;
-		return websocket_port;
+		return mqttWebsocketPort;
 	}
 
 
@@ -249,33 +289,25 @@ class Config
 
 	public String getMemphisServerName()
 	{
-		if( memphis_server_name.isEmpty() )
-			return memphisServerName;
-		return memphis_server_name;
+		return memphisServerName;
 	}
 
 
 	public Integer getMemphisSqlPort()
 	{
-		if( memphis_sql_port == null )
-			return memphisSqlPort;
-		return memphis_sql_port;
+		return memphisSqlPort;
 	}
 
 
 	public String getMemphisHost()
 	{
-		if( memphis_host.isEmpty() )
-			return memphisHost;
-		return memphis_host;
+		return memphisHost;
 	}
 
 
 	public String getMemphisDatabase()
 	{
-		if( memphis_database.isEmpty() )
-			return memphisDatabase;
-		return memphis_database;
+		return memphisDatabase;
 	}
 
 
@@ -308,4 +340,222 @@ class Config
 		       ", \"replicationManagerFileName\":\"" + replicationManagerFileName + '\"' +
 		       '}';
 	}
+
+
+	/**
+	 * ConfigTypeAdapter streams the properties of one node straight into a Config, without reflection.<br>
+	 * The 12.5.0 names http_port, https_port, mqtt_port, websocket_port, and memphis_sql_port win over their 12.0.2 names when they are not null.
+	 * The 12.5.0 names memphis_server_name, memphis_host, and memphis_database win when they are not empty.
+	 * This holds whichever order the properties appear in.<br>
+	 * Values are converted the same way Gson's reflective binding did: numbers and booleans are accepted for String settings, and quoted numbers for ports.
+	 * Unknown properties are skipped.<br>
+	 * Writing uses the 12.0.2 names only, with the resolved values.
+	 */
+	static final class ConfigTypeAdapter extends TypeAdapter<Config>
+	{
+		@Override
+		public void write( JsonWriter jsonWriter, Config config ) throws IOException
+		{
+			if( config == null )
+			{
+				jsonWriter.nullValue();
+				return;
+			}
+			jsonWriter.beginObject();
+			jsonWriter.name( "baseDirectory" ).value( config.baseDirectory );
+			jsonWriter.name( "configDirectory" ).value( config.configDirectory );
+			jsonWriter.name( "serverFileName" ).value( config.serverFileName );
+			jsonWriter.name( "serverName" ).value( config.serverName );
+			jsonWriter.name( "serverPort" ).value( config.serverPort );
+			jsonWriter.name( "readOnlyServer" ).value( config.readOnlyServer );
+			jsonWriter.name( "sqlPort" ).value( config.sqlPort );
+			jsonWriter.name( "httpFileName" ).value( config.httpFileName );
+			jsonWriter.name( "listeningHttpPort" ).value( config.listeningHttpPort );
+			jsonWriter.name( "listeningHttpsPort" ).value( config.listeningHttpsPort );
+			jsonWriter.name( "mqttListeningPort" ).value( config.mqttListeningPort );
+			jsonWriter.name( "mqttWebsocketPort" ).value( config.mqttWebsocketPort );
+			jsonWriter.name( "agentFileName" ).value( config.agentFileName );
+			jsonWriter.name( "memphisServerName" ).value( config.memphisServerName );
+			jsonWriter.name( "memphisSqlPort" ).value( config.memphisSqlPort );
+			jsonWriter.name( "memphisHost" ).value( config.memphisHost );
+			jsonWriter.name( "memphisDatabase" ).value( config.memphisDatabase );
+			jsonWriter.name( "replicationManagerFileName" ).value( config.replicationManagerFileName );
+			jsonWriter.endObject();
+		}
+
+
+		@Override
+		public Config read( JsonReader jsonReader ) throws IOException
+		{
+			if( jsonReader.peek() == JsonToken.NULL )
+			{
+				jsonReader.nextNull();
+				return null;
+			}
+			Config config = new Config();
+			// The 12.5.0 values are held until the end, because they may come before or after their 12.0.2 names.
+			Integer v125HttpPort = null;
+			Integer v125HttpsPort = null;
+			Integer v125MqttPort = null;
+			Integer v125WebsocketPort = null;
+			Integer v125SqlPort = null;
+			String v125ServerName = "";
+			String v125Host = "";
+			String v125Database = "";
+			jsonReader.beginObject();
+			while( jsonReader.hasNext() )
+			{
+				switch( jsonReader.nextName() )
+				{
+					case "baseDirectory":
+						config.baseDirectory = readString( jsonReader );
+						break;
+					case "configDirectory":
+						config.configDirectory = readString( jsonReader );
+						break;
+					case "serverFileName":
+						config.serverFileName = readString( jsonReader );
+						break;
+					case "serverName":
+						config.serverName = readString( jsonReader );
+						break;
+					case "serverPort":
+						config.serverPort = readString( jsonReader );
+						break;
+					case "readOnlyServer":
+						config.readOnlyServer = readString( jsonReader );
+						break;
+					case "sqlPort":
+						config.sqlPort = readString( jsonReader );
+						break;
+					case "httpFileName":
+						config.httpFileName = readString( jsonReader );
+						break;
+					case "listeningHttpPort":
+						config.listeningHttpPort = readInteger( jsonReader );
+						break;
+					case "http_port":
+						v125HttpPort = readInteger( jsonReader );
+						break;
+					case "listeningHttpsPort":
+						config.listeningHttpsPort = readInteger( jsonReader );
+						break;
+					case "https_port":
+						v125HttpsPort = readInteger( jsonReader );
+						break;
+					case "mqttListeningPort":
+						config.mqttListeningPort = readInteger( jsonReader );
+						break;
+					case "mqtt_port":
+						v125MqttPort = readInteger( jsonReader );
+						break;
+					case "mqttWebsocketPort":
+						config.mqttWebsocketPort = readInteger( jsonReader );
+						break;
+					case "websocket_port":
+						v125WebsocketPort = readInteger( jsonReader );
+						break;
+					case "agentFileName":
+						config.agentFileName = readString( jsonReader );
+						break;
+					case "memphisServerName":
+						config.memphisServerName = readString( jsonReader );
+						break;
+					case "memphis_server_name":
+						v125ServerName = readString( jsonReader );
+						break;
+					case "memphisSqlPort":
+						config.memphisSqlPort = readInteger( jsonReader );
+						break;
+					case "memphis_sql_port":
+						v125SqlPort = readInteger( jsonReader );
+						break;
+					case "memphisHost":
+						config.memphisHost = readString( jsonReader );
+						break;
+					case "memphis_host":
+						v125Host = readString( jsonReader );
+						break;
+					case "memphisDatabase":
+						config.memphisDatabase = readString( jsonReader );
+						break;
+					case "memphis_database":
+						v125Database = readString( jsonReader );
+						break;
+					case "replicationManagerFileName":
+						config.replicationManagerFileName = readString( jsonReader );
+						break;
+					default:
+						jsonReader.skipValue();
+						break;
+				}
+			}
+			jsonReader.endObject();
+
+			if( v125HttpPort != null )
+				config.listeningHttpPort = v125HttpPort;
+			if( v125HttpsPort != null )
+				config.listeningHttpsPort = v125HttpsPort;
+			if( v125MqttPort != null )
+				config.mqttListeningPort = v125MqttPort;
+			if( v125WebsocketPort != null )
+				config.mqttWebsocketPort = v125WebsocketPort;
+			if( v125SqlPort != null )
+				config.memphisSqlPort = v125SqlPort;
+			if( v125ServerName != null && !v125ServerName.isEmpty() )
+				config.memphisServerName = v125ServerName;
+			if( v125Host != null && !v125Host.isEmpty() )
+				config.memphisHost = v125Host;
+			if( v125Database != null && !v125Database.isEmpty() )
+				config.memphisDatabase = v125Database;
+			return config;
+		}
+
+
+		/**
+		 * readString() will read a String setting, accepting a number or boolean in its place.
+		 *
+		 * @param jsonReader the reader, positioned at the value.
+		 * @return the value, or null for a JSON null.
+		 * @throws IOException if the value cannot be read.
+		 */
+		private static String readString( JsonReader jsonReader ) throws IOException
+		{
+			JsonToken token = jsonReader.peek();
+			if( token == JsonToken.NULL )
+			{
+				jsonReader.nextNull();
+				return null;
+			}
+			if( token == JsonToken.BOOLEAN )
+				return Boolean.toString( jsonReader.nextBoolean() );
+			return jsonReader.nextString();
+		} // End of readString() method.
+
+
+		/**
+		 * readInteger() will read a port, accepting a quoted number in its place.
+		 *
+		 * @param jsonReader the reader, positioned at the value.
+		 * @return the value, or null for a JSON null.
+		 * @throws IOException         if the value cannot be read.
+		 * @throws JsonSyntaxException if the value is not an int.
+		 */
+		private static Integer readInteger( JsonReader jsonReader ) throws IOException
+		{
+			if( jsonReader.peek() == JsonToken.NULL )
+			{
+				jsonReader.nextNull();
+				return null;
+			}
+			try
+			{
+				return jsonReader.nextInt();
+			}
+			catch( NumberFormatException numberFormatException )
+			{
+				throw new JsonSyntaxException( numberFormatException );
+			}
+		} // End of readInteger() method.
+	}
 }
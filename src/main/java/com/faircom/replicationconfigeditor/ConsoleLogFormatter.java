@@ -0,0 +1,81 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+
+/**
+ * This Formatter produces the console format this program has always used: "[date time] [LEVEL  ] message".<br>
+ * Records logged with the EditorLogging.SECTION parameter are preceded by two blank lines, which replaces switching between single-line and triple-line handlers.<br>
+ * It is not synchronized, and the timestamp text is reused for every record logged in the same second.
+ */
+class ConsoleLogFormatter extends Formatter
+{
+	private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern( "yyyy-MM-dd HH:mm:ss" ).withZone( ZoneId.systemDefault() );
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+	/**
+	 * The most recently formatted second, and its text.  Replaced as a pair, so readers never see a mismatched second and text.
+	 */
+	private volatile CachedTimestamp cachedTimestamp = new CachedTimestamp( Long.MIN_VALUE, "" );
+
+
+	@Override
+	public String format( LogRecord logRecord )
+	{
+		StringBuilder builder = new StringBuilder( 128 );
+		if( EditorLogging.isSection( logRecord ) )
+			builder.append( "\n\n" );
+		builder.append( '[' ).append( timestamp( logRecord.getMillis() ) ).append( "] [" );
+		String levelName = logRecord.getLevel().getLocalizedName();
+		builder.append( levelName );
+		for( int i = levelName.length(); i < 7; i++ )
+			builder.append( ' ' );
+		builder.append( "] " ).append( formatMessage( logRecord ) ).append( ' ' ).append( LINE_SEPARATOR );
+		if( logRecord.getThrown() != null )
+		{
+			StringWriter stackTrace = new StringWriter();
+			logRecord.getThrown().printStackTrace( new PrintWriter( stackTrace ) );
+			builder.append( stackTrace );
+		}
+		return builder.toString();
+	}
+
+
+	/**
+	 * timestamp() will return the text for a time, formatting it only when the second has changed.
+	 *
+	 * @param millis the time of the record.
+	 * @return the time as "yyyy-MM-dd HH:mm:ss".
+	 */
+	private String timestamp( long millis )
+	{
+		long second = Math.floorDiv( millis, 1000L );
+		CachedTimestamp cached = cachedTimestamp;
+		if( cached.second != second )
+		{
+			cached = new CachedTimestamp( second, TIMESTAMP_FORMAT.format( Instant.ofEpochSecond( second ) ) );
+			cachedTimestamp = cached;
+		}
+		return cached.text;
+	} // End of timestamp() method.
+
+
+	private static final class CachedTimestamp
+	{
+		private final long second;
+		private final String text;
+
+
+		private CachedTimestamp( long second, String text )
+		{
+			this.second = second;
+			this.text = text;
+		}
+	}
+}
@@ -0,0 +1,422 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+
+/**
+ * DaemonServer keeps one JVM running and edits nodes on request, so callers do not pay for JVM startup and class loading on every change.<br>
+ * It listens on the loopback address only, and accepts a POST to one of these paths:<br>
+ * /apply updates the files of each node, the same as a normal run.<br>
+ * /dry-run reports the unified diff each file would get, without writing anything.<br>
+ * /validate checks the ports of the nodes against each other, and that every file the nodes name exists.  Each file is reported as UNCHANGED if it exists, or MISSING.<br>
+ * The request body is one Config object, or an array of them, in the same form as an entry of the fleet file.<br>
+ * The response is a JSON object with an overall exitCode and, for each node, its status, exit code, message, the status of each file, and the log records it produced.<br>
+ * Example: curl --data @node.json http://127.0.0.1:7318/apply<br>
+ * The nodes of a request are held in a FleetStore while it is handled, and each node is rebuilt as a Config only while it is processed.<br>
+ * Requests are handled one at a time, so two requests for the same node can never edit its files at once.
+ * A failed node does not stop the other nodes of the same request.
+ */
+final class DaemonServer
+{
+	private static final Logger daemonLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private static final Gson GSON = new Gson();
+	/**
+	 * Formats the message of a captured record, the same way the log handlers would.
+	 */
+	private static final Formatter MESSAGE_FORMATTER = new Formatter()
+	{
+		@Override
+		public String format( LogRecord logRecord )
+		{
+			return formatMessage( logRecord );
+		}
+	};
+	private final int port;
+	private final FleetExecutor applyExecutor = new FleetExecutor( 1 );
+	private final FleetExecutor dryRunExecutor = new FleetExecutor( 1 );
+	private HttpServer httpServer;
+	private ExecutorService requestExecutor;
+
+
+	/**
+	 * @param port       the loopback port to listen on.
+	 * @param durability how apply requests sync the files they write.
+	 */
+	DaemonServer( int port, Durability durability )
+	{
+		this.port = port;
+		applyExecutor.setDurability( durability );
+		dryRunExecutor.setDryRun( true );
+	}
+
+
+	/**
+	 * start() will begin listening for requests.  The server runs on its own thread, which keeps the JVM alive.
+	 *
+	 * @throws IOException if the port cannot be bound.
+	 */
+	void start() throws IOException
+	{
+		httpServer = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+		httpServer.createContext( "/apply", exchange -> handle( exchange, "apply" ) );
+		httpServer.createContext( "/dry-run", exchange -> handle( exchange, "dry-run" ) );
+		httpServer.createContext( "/validate", exchange -> handle( exchange, "validate" ) );
+		requestExecutor = Executors.newSingleThreadExecutor();
+		httpServer.setExecutor( requestExecutor );
+		httpServer.start();
+		String logString = "Listening for apply, dry-run, and validate requests on http://" + httpServer.getAddress().getHostString() + ":" + httpServer.getAddress().getPort() + "/";
+		daemonLogger.log( Level.INFO, logString );
+	} // End of start() method.
+
+
+	/**
+	 * stop() will stop listening, and end the thread that handles requests once the current request is answered.
+	 */
+	void stop()
+	{
+		if( httpServer != null )
+			httpServer.stop( 0 );
+		if( requestExecutor != null )
+			requestExecutor.shutdown();
+	} // End of stop() method.
+
+
+	/**
+	 * getPort() will return the port the server listens on, which is the one chosen by the system if it was started with port 0.
+	 *
+	 * @return the port.
+	 */
+	int getPort()
+	{
+		return httpServer == null ? port : httpServer.getAddress().getPort();
+	}
+
+
+	/**
+	 * handle() will answer one request.  Any failure is reported to the caller, so the daemon keeps running.
+	 *
+	 * @param exchange the request and its response.
+	 * @param action   "apply", "dry-run", or "validate".
+	 * @throws IOException if the response cannot be sent.
+	 */
+	private void handle( HttpExchange exchange, String action ) throws IOException
+	{
+		try
+		{
+			if( !exchange.getRequestMethod().equals( "POST" ) )
+			{
+				exchange.getResponseHeaders().set( "Allow", "POST" );
+				respond( exchange, 405, error( action + " requires a POST with a Config JSON body." ) );
+				return;
+			}
+			FleetStore fleetStore;
+			try( Reader reader = new InputStreamReader( exchange.getRequestBody(), StandardCharsets.UTF_8 ) )
+			{
+				fleetStore = parseBody( reader );
+			}
+			catch( JsonParseException | IllegalArgumentException exception )
+			{
+				respond( exchange, 400, error( "The request body is not a Config object or array: " + exception.getLocalizedMessage() ) );
+				return;
+			}
+			String logString = "Received a " + action + " request for " + fleetStore.size() + " nodes.";
+			daemonLogger.log( Level.INFO, logString );
+			respond( exchange, 200, run( action, fleetStore ) );
+		}
+		catch( RuntimeException runtimeException )
+		{
+			daemonLogger.log( Level.SEVERE, "Unexpected failure while handling a " + action + " request", runtimeException );
+			respond( exchange, 500, error( runtimeException.toString() ) );
+		}
+		finally
+		{
+			exchange.close();
+		}
+	} // End of handle() method.
+
+
+	/**
+	 * parseBody() will read the nodes from a request body into a FleetStore.
+	 * An array is read one node at a time, so the body is never held as a tree of JSON elements.
+	 *
+	 * @param reader the request body.
+	 * @return the nodes.
+	 * @throws JsonParseException       if the body is not valid JSON.
+	 * @throws IllegalArgumentException if the body is valid JSON, but not a Config object or array.
+	 */
+	private static FleetStore parseBody( Reader reader )
+	{
+		FleetStore fleetStore = new FleetStore();
+		JsonReader jsonReader = new JsonReader( reader );
+		jsonReader.setLenient( true );
+		try
+		{
+			JsonToken token = jsonReader.peek();
+			if( token == JsonToken.BEGIN_ARRAY )
+			{
+				jsonReader.beginArray();
+				while( jsonReader.hasNext() )
+					fleetStore.add( checkNode( GSON.fromJson( jsonReader, Config.class ) ) );
+				jsonReader.endArray();
+			}
+			else if( token == JsonToken.BEGIN_OBJECT )
+			{
+				fleetStore.add( checkNode( GSON.fromJson( jsonReader, Config.class ) ) );
+			}
+			else
+			{
+				throw new IllegalArgumentException( "expected a JSON object or array" );
+			}
+			if( jsonReader.peek() != JsonToken.END_DOCUMENT )
+				throw new JsonSyntaxException( "Unexpected content after the nodes at " + jsonReader.getPath() );
+		}
+		catch( MalformedJsonException | EOFException malformedException )
+		{
+			throw new JsonSyntaxException( malformedException );
+		}
+		catch( IOException ioException )
+		{
+			throw new JsonIOException( ioException );
+		}
+		return fleetStore;
+	} // End of parseBody() method.
+
+
+	/**
+	 * checkNode() will reject a node that cannot be processed, so the caller gets a 400 instead of a failure partway through the request.
+	 * A property given as JSON null replaces its default with null, so only the MQTT ports, which are optional, may be null.
+	 * The daemon does not allocate ports, so listeningHttpPort, listeningHttpsPort, and memphisSqlPort, which have no default, must be given.
+	 *
+	 * @param configuredNode the node parsed from the body.
+	 * @return the node.
+	 * @throws IllegalArgumentException if the node is null, or a required property is null.
+	 */
+	private static Config checkNode( Config configuredNode )
+	{
+		if( configuredNode == null || configuredNode.getBaseDirectory() == null )
+			throw new IllegalArgumentException( "every node needs a baseDirectory" );
+		checkNotNull( configuredNode, "configDirectory", configuredNode.getConfigDirectory() );
+		checkNotNull( configuredNode, "serverFileName", configuredNode.getServerFileName() );
+		checkNotNull( configuredNode, "serverName", configuredNode.getServerName() );
+		checkNotNull( configuredNode, "serverPort", configuredNode.getServerPort() );
+		checkNotNull( configuredNode, "readOnlyServer", configuredNode.getReadOnlyServer() );
+		checkNotNull( configuredNode, "sqlPort", configuredNode.getSqlPort() );
+		checkNotNull( configuredNode, "httpFileName", configuredNode.getHttpFileName() );
+		checkNotNull( configuredNode, "agentFileName", configuredNode.getAgentFileName() );
+		checkNotNull( configuredNode, "memphisServerName", configuredNode.getMemphisServerName() );
+		checkNotNull( configuredNode, "memphisHost", configuredNode.getMemphisHost() );
+		checkNotNull( configuredNode, "memphisDatabase", configuredNode.getMemphisDatabase() );
+		checkNotNull( configuredNode, "replicationManagerFileName", configuredNode.getReplicationManagerFileName() );
+		checkNotNull( configuredNode, "listeningHttpPort", configuredNode.getListeningHttpPort() );
+		checkNotNull( configuredNode, "listeningHttpsPort", configuredNode.getListeningHttpsPort() );
+		checkNotNull( configuredNode, "memphisSqlPort", configuredNode.getMemphisSqlPort() );
+		return configuredNode;
+	} // End of checkNode() method.
+
+
+	private static void checkNotNull( Config configuredNode, String propertyName, Object value )
+	{
+		if( value == null )
+			throw new IllegalArgumentException( "\"" + propertyName + "\" of " + configuredNode.getBaseDirectory() + " is null" );
+	}
+
+
+	/**
+	 * run() will carry out one action for every node, and build the response.
+	 *
+	 * @param action     "apply", "dry-run", or "validate".
+	 * @param fleetStore the nodes.
+	 * @return the response body.
+	 */
+	private JsonObject run( String action, FleetStore fleetStore )
+	{
+		List<NodeResult> resultList = new ArrayList<>();
+		if( action.equals( "validate" ) )
+		{
+			List<LogRecord> portRecords = new ArrayList<>();
+			boolean portsValid = checkPorts( fleetStore, portRecords );
+			for( int i = 0; i < fleetStore.size(); i++ )
+				resultList.add( validateNode( fleetStore.get( i ), new NodeResult( i, fleetStore.getBaseDirectory( i ) ) ) );
+			// A port conflict belongs to the fleet, not one node, so it is reported on its own.
+			JsonObject response = buildResponse( action, resultList );
+			JsonArray portLog = new JsonArray();
+			for( LogRecord logRecord : portRecords )
+				portLog.add( MESSAGE_FORMATTER.format( logRecord ) );
+			response.addProperty( "portsValid", portsValid );
+			response.add( "portLog", portLog );
+			if( !portsValid && response.get( "exitCode" ).getAsInt() == 0 )
+				response.addProperty( "exitCode", -11 );
+			return response;
+		}
+		FleetExecutor fleetExecutor = action.equals( "apply" ) ? applyExecutor : dryRunExecutor;
+		for( int i = 0; i < fleetStore.size(); i++ )
+		{
+			NodeResult nodeResult = fleetExecutor.captureNode( fleetStore.get( i ), new NodeResult( i, fleetStore.getBaseDirectory( i ) ) );
+			// The caller gets the records in the response, and the daemon's own log keeps them too.
+			EditorLogging.publishCaptured( nodeResult.getLogRecords() );
+			resultList.add( nodeResult );
+		}
+		return buildResponse( action, resultList );
+	} // End of run() method.
+
+
+	/**
+	 * checkPorts() will check the ports of the nodes in one request against each other.
+	 *
+	 * The ports are read from the columns of the FleetStore, without rebuilding any node.
+	 *
+	 * @param fleetStore the nodes.
+	 * @param logRecords the List that receives the report.
+	 * @return true if there are no conflicts or invalid ports.
+	 */
+	private static boolean checkPorts( FleetStore fleetStore, List<LogRecord> logRecords )
+	{
+		PortRegistry portRegistry = new PortRegistry();
+		NodeLogCapture.start( logRecords );
+		try
+		{
+			portRegistry.register( fleetStore );
+			return portRegistry.report();
+		}
+		finally
+		{
+			NodeLogCapture.stop();
+			EditorLogging.publishCaptured( logRecords );
+		}
+	} // End of checkPorts() method.
+
+
+	/**
+	 * validateNode() will check that every file a node names exists.
+	 * A missing file fails the node, the same as it would in an apply.
+	 *
+	 * @param configuredNode the node to check.
+	 * @param nodeResult     the result to fill in.
+	 * @return nodeResult.
+	 */
+	private static NodeResult validateNode( Config configuredNode, NodeResult nodeResult )
+	{
+		NodeLogCapture.start( nodeResult.getLogRecords() );
+		try
+		{
+			for( FileEdit fileEdit : JavaReplicationConfigEditor.buildFileEdits( configuredNode ) )
+			{
+				if( Files.isRegularFile( Paths.get( fileEdit.getFileName() ) ) )
+				{
+					nodeResult.getFileStatusMap().put( fileEdit.getFileName(), FileStatus.UNCHANGED );
+				}
+				else
+				{
+					nodeResult.getFileStatusMap().put( fileEdit.getFileName(), FileStatus.MISSING );
+					String logString = "Unable to locate \"" + fileEdit.getFileName() + "\"";
+					daemonLogger.log( Level.WARNING, logString );
+					// Keep checking, so the caller learns of every missing file at once.  The first one decides the exit code, as it would in an apply.
+					if( nodeResult.isSuccess() )
+						nodeResult.fail( logString, fileEdit.getExitCode() );
+				}
+			}
+		}
+		finally
+		{
+			NodeLogCapture.stop();
+		}
+		EditorLogging.publishCaptured( nodeResult.getLogRecords() );
+		return nodeResult;
+	} // End of validateNode() method.
+
+
+	/**
+	 * buildResponse() will describe the outcome of every node as JSON.
+	 *
+	 * @param action     the action carried out.
+	 * @param resultList the results, in request order.
+	 * @return the response body.
+	 */
+	private static JsonObject buildResponse( String action, List<NodeResult> resultList )
+	{
+		JsonArray nodeArray = new JsonArray();
+		int exitCode = 0;
+		for( NodeResult nodeResult : resultList )
+		{
+			JsonObject node = new JsonObject();
+			node.addProperty( "baseDirectory", nodeResult.getBaseDirectory() );
+			node.addProperty( "status", nodeResult.isSkipped() ? "skipped" : nodeResult.isSuccess() ? "succeeded" : "failed" );
+			node.addProperty( "exitCode", nodeResult.getExitCode() );
+			node.addProperty( "message", nodeResult.getMessage() );
+			JsonArray fileArray = new JsonArray();
+			for( Map.Entry<String, FileStatus> entry : nodeResult.getFileStatusMap().entrySet() )
+			{
+				JsonObject file = new JsonObject();
+				file.addProperty( "file", entry.getKey() );
+				file.addProperty( "status", entry.getValue().name() );
+				fileArray.add( file );
+			}
+			node.add( "files", fileArray );
+			JsonArray logArray = new JsonArray();
+			for( LogRecord logRecord : nodeResult.getLogRecords() )
+			{
+				JsonObject record = new JsonObject();
+				record.addProperty( "level", logRecord.getLevel().getName() );
+				record.addProperty( "message", MESSAGE_FORMATTER.format( logRecord ) );
+				logArray.add( record );
+			}
+			node.add( "log", logArray );
+			nodeArray.add( node );
+			if( exitCode == 0 )
+				exitCode = nodeResult.getExitCode();
+		}
+		JsonObject response = new JsonObject();
+		response.addProperty( "action", action );
+		response.addProperty( "exitCode", exitCode );
+		response.add( "nodes", nodeArray );
+		return response;
+	} // End of buildResponse() method.
+
+
+	private static JsonObject error( String message )
+	{
+		JsonObject response = new JsonObject();
+		response.addProperty( "error", message );
+		return response;
+	}
+
+
+	/**
+	 * respond() will send a JSON response.
+	 *
+	 * @param exchange   the request and its response.
+	 * @param statusCode the HTTP status.
+	 * @param body       the response body.
+	 * @throws IOException if the response cannot be sent.
+	 */
+	private static void respond( HttpExchange exchange, int statusCode, JsonObject body ) throws IOException
+	{
+		byte[] bytes = ( body.toString() + '\n' ).getBytes( StandardCharsets.UTF_8 );
+		exchange.getResponseHeaders().set( "Content-Type", "application/json; charset=utf-8" );
+		exchange.sendResponseHeaders( statusCode, bytes.length );
+		try( OutputStream outputStream = exchange.getResponseBody() )
+		{
+			outputStream.write( bytes );
+		}
+	} // End of respond() method.
+}
@@ -0,0 +1,56 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+/**
+ * How hard the editor works to make sure a rewritten file survives a crash or power loss.<br>
+ * Every mode replaces files with an atomic move, so a crash never leaves a half-written file in place of the original.
+ * Without a sync, though, the new contents or the move itself can still be lost, or on some filesystems the move can land before the data does.
+ */
+enum Durability
+{
+	/**
+	 * Nothing is synced, and the operating system writes files back whenever it likes.  This is the fastest mode.
+	 */
+	NONE( "none" ),
+	/**
+	 * Each file and its directory are synced as soon as the file is replaced.
+	 */
+	FILE( "file" ),
+	/**
+	 * The data of each file is synced before it is moved into place, but the directories are only synced once each, after every file of the node has been written.
+	 */
+	BATCHED( "batched" );
+
+	private final String label;
+
+
+	Durability( String label )
+	{
+		this.label = label;
+	}
+
+
+	/**
+	 * parse() will find the mode with the given label.
+	 *
+	 * @param label "none", "file", or "batched".
+	 * @return the mode.
+	 * @throws IllegalArgumentException if there is no such mode.
+	 */
+	static Durability parse( String label )
+	{
+		for( Durability durability : values() )
+		{
+			if( durability.label.equals( label ) )
+				return durability;
+		}
+		throw new IllegalArgumentException( "Unknown durability \"" + label + "\".  Use none, file, or batched." );
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return label;
+	}
+}
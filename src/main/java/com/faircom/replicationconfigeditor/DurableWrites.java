@@ -0,0 +1,153 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * DurableWrites applies the Durability mode of the node being processed on the current thread.<br>
+ * FleetExecutor calls start() before a node and finish() after it.  In between, every file written calls syncFile() before it is closed, and syncDirectory() once it is in place.<br>
+ * In BATCHED mode, syncDirectory() only collects the directory, and finish() syncs each one once.<br>
+ * Writes made outside of start() and finish(), such as from a benchmark, are not synced.<br>
+ * Directories are synced by calling force() on a FileChannel opened on them.  Windows does not allow that, and NTFS journals the rename anyway, so a directory that cannot be opened is skipped.
+ */
+final class DurableWrites
+{
+	private static final Logger durabilityLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private static final ThreadLocal<Batch> CURRENT = new ThreadLocal<>();
+
+
+	private DurableWrites()
+	{
+	}
+
+
+	/**
+	 * start() will apply a Durability mode to the writes made by the current thread, until finish() is called.
+	 *
+	 * @param durability the mode to apply.
+	 */
+	static void start( Durability durability )
+	{
+		CURRENT.set( new Batch( durability ) );
+	} // End of start() method.
+
+
+	/**
+	 * finish() will sync the directories collected in BATCHED mode, and stop applying the mode.
+	 * Every directory is tried, even after one fails, so one bad directory does not leave the others unsynced.
+	 *
+	 * @return true if every directory was synced, or there was nothing to sync.
+	 */
+	static boolean finish()
+	{
+		Batch batch = CURRENT.get();
+		CURRENT.remove();
+		if( batch == null )
+			return true;
+		boolean synced = true;
+		for( Path directory : batch.directorySet )
+		{
+			try
+			{
+				forceDirectory( directory );
+			}
+			catch( IOException ioException )
+			{
+				String logString = "Unable to sync the directory \"" + directory + "\": " + ioException.getLocalizedMessage();
+				durabilityLogger.log( Level.SEVERE, logString );
+				synced = false;
+			}
+		}
+		return synced;
+	} // End of finish() method.
+
+
+	/**
+	 * syncFile() will sync the contents of a file that has just been written, if the current mode asks for it.
+	 * BATCHED mode only syncs the data, because the metadata that matters is the directory entry, which is synced later.
+	 *
+	 * @param fileChannel the open file.
+	 * @throws IOException if the file cannot be synced.
+	 */
+	static void syncFile( FileChannel fileChannel ) throws IOException
+	{
+		Durability durability = currentDurability();
+		if( durability == Durability.FILE )
+			fileChannel.force( true );
+		else if( durability == Durability.BATCHED )
+			fileChannel.force( false );
+	} // End of syncFile() method.
+
+
+	/**
+	 * syncDirectory() will sync the directory of a file that has just been created or moved into place, if the current mode asks for it.
+	 *
+	 * @param path the file.
+	 * @throws IOException if the directory cannot be synced.
+	 */
+	static void syncDirectory( Path path ) throws IOException
+	{
+		Durability durability = currentDurability();
+		Path directory = path.toAbsolutePath().getParent();
+		if( durability == Durability.FILE )
+			forceDirectory( directory );
+		else if( durability == Durability.BATCHED )
+			CURRENT.get().directorySet.add( directory );
+	} // End of syncDirectory() method.
+
+
+	private static Durability currentDurability()
+	{
+		Batch batch = CURRENT.get();
+		return batch == null ? Durability.NONE : batch.durability;
+	}
+
+
+	/**
+	 * forceDirectory() will sync a directory, so the files created or renamed in it survive a crash.
+	 *
+	 * @param directory the directory.
+	 * @throws IOException if the directory was opened, but could not be synced.
+	 */
+	private static void forceDirectory( Path directory ) throws IOException
+	{
+		FileChannel directoryChannel;
+		try
+		{
+			directoryChannel = FileChannel.open( directory, StandardOpenOption.READ );
+		}
+		catch( IOException ioException )
+		{
+			durabilityLogger.log( Level.FINE, () -> "Skipping the sync of \"" + directory + "\", which cannot be opened: " + ioException.getLocalizedMessage() );
+			return;
+		}
+		try( FileChannel closing = directoryChannel )
+		{
+			closing.force( true );
+		}
+	} // End of forceDirectory() method.
+
+
+	/**
+	 * The mode of the node being processed, and the directories waiting for a BATCHED sync.
+	 */
+	private static final class Batch
+	{
+		private final Durability durability;
+		private final Set<Path> directorySet = new LinkedHashSet<>();
+
+
+		private Batch( Durability durability )
+		{
+			this.durability = durability;
+		}
+	}
+}
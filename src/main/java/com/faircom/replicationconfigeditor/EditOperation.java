@@ -0,0 +1,49 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.Collection;
+
+
+/**
+ * An EditOperation changes a single line of a configuration file.<br>
+ * Operations only look at the line they are given, so any number of them can be applied to a file in a single pass.
+ *
+ * @see main.java.com.faircom.replicationconfigeditor.EditPipeline
+ */
+interface EditOperation
+{
+	/**
+	 * apply() will return the edited line, or the same line if this operation does not change it.
+	 *
+	 * @param line the line to edit, without its line terminator.
+	 * @return the edited line.
+	 */
+	String apply( String line );
+
+
+	/**
+	 * touches() will report whether apply() could change a line, whatever values this operation was built with.
+	 * A line that no operation touches is copied as it is, which lets FileShape skip it in files with the same layout.
+	 *
+	 * @param line the line to check, without its line terminator.
+	 * @return true if apply() looks at the line.
+	 */
+	boolean touches( String line );
+
+
+	/**
+	 * getSearchTexts() will return the texts that touches() looks for.
+	 * touches() must be true for exactly the lines that contain at least one of them, so a scan for these texts can stand in for touches().
+	 *
+	 * @return the texts that make a line touched.
+	 */
+	Collection<String> getSearchTexts();
+
+
+	/**
+	 * getShapeKey() will describe what touches() looks for, so a FileShape is only used for operations that look for the same things.
+	 *
+	 * @return a description of what touches() looks for.
+	 */
+	String getShapeKey();
+}
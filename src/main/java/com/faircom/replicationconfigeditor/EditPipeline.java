@@ -0,0 +1,191 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * An EditPipeline applies a list of EditOperations to a configuration file.<br>
+ * The file is streamed once through a StreamingRewriter, with every operation applied to each line in order, and is only written if a line changed.<br>
+ * This gives the same result as running each operation over the whole file in turn, because each operation only looks at one line.<br>
+ * Files too large to have their FileShape kept are scanned as bytes by a ByteRewriter, when the texts the operations search for can be compiled into one KeyMatcher.
+ */
+class EditPipeline implements FileEditor
+{
+	private static final Logger pipelineLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private final List<EditOperation> operationList;
+	/**
+	 * What the operations look for, so files are only matched against FileShapes learned by pipelines that look for the same things.
+	 */
+	private final String shapeKey;
+	/**
+	 * Finds the lines that any operation touches, or null if the search texts cannot be compiled, and large files are then streamed through a StreamingRewriter.
+	 */
+	private final KeyMatcher searchMatcher;
+
+
+	/**
+	 * @param operationList the operations to apply, in the order they should be applied to each line.
+	 */
+	EditPipeline( List<EditOperation> operationList )
+	{
+		this.operationList = operationList;
+		StringBuilder keyBuilder = new StringBuilder( "lines" );
+		Set<String> searchTexts = new LinkedHashSet<>();
+		for( EditOperation operation : operationList )
+		{
+			keyBuilder.append( '\n' ).append( operation.getShapeKey() );
+			searchTexts.addAll( operation.getSearchTexts() );
+		}
+		this.shapeKey = keyBuilder.toString();
+		this.searchMatcher = ByteRewriter.matcherFor( searchTexts );
+	}
+
+
+	/**
+	 * apply() will edit every line of a file with every operation in this pipeline.
+	 * The file is only written if at least one line changed.
+	 * A file small enough to have its FileShape kept is edited through the shape, and larger files are scanned by a ByteRewriter, or streamed through a StreamingRewriter if there is no searchMatcher.
+	 *
+	 * @param fileName the file to edit.
+	 * @return MODIFIED or UNCHANGED if the file was processed, MISSING if it does not exist, or FAILED if it could not be rewritten.
+	 */
+	@Override
+	public FileStatus apply( String fileName )
+	{
+		String logString = "EditPipeline.apply()";
+		pipelineLogger.log( Level.FINE, logString );
+
+		File file = new File( fileName );
+		if( !file.exists() || !file.isFile() )
+		{
+			logString = "Unable to find the configuration file: " + fileName;
+			pipelineLogger.log( Level.INFO, logString );
+			return FileStatus.MISSING;
+		}
+
+		try
+		{
+			Path path = file.toPath();
+			byte[] contents = FileShape.read( path );
+			if( searchMatcher != null && ( contents == null || contents.length > FileShape.MAX_SHAPE_BYTES ) )
+				return ByteRewriter.rewrite( path, contents, searchMatcher, this::applyToLine );
+			if( contents == null )
+				return StreamingRewriter.rewrite( path, this::applyToLine );
+			return FileShape.rewrite( path, contents, shapeKey, ( name, line ) -> applyToLine( line ), this::editLines );
+		}
+		catch( IOException ioException )
+		{
+			logString = "Unable to write to the output file: " + fileName;
+			pipelineLogger.log( Level.SEVERE, logString );
+			logString = ioException.getLocalizedMessage();
+			pipelineLogger.log( Level.SEVERE, logString );
+			return FileStatus.FAILED;
+		}
+	} // End of apply() method.
+
+
+	/**
+	 * preview() will work out what apply() would change, without writing anything.
+	 *
+	 * @param fileName the file to edit.
+	 * @param diff     receives a unified diff of the changes, if there are any.
+	 * @return MODIFIED if apply() would change the file, UNCHANGED if it would not, MISSING if it does not exist, or FAILED if it could not be read.
+	 */
+	@Override
+	public FileStatus preview( String fileName, StringBuilder diff )
+	{
+		File file = new File( fileName );
+		if( !file.exists() || !file.isFile() )
+		{
+			String logString = "Unable to find the configuration file: " + fileName;
+			pipelineLogger.log( Level.INFO, logString );
+			return FileStatus.MISSING;
+		}
+
+		try
+		{
+			diff.append( UnifiedDiff.of( file.toPath(), this::applyToLine ) );
+			return diff.length() == 0 ? FileStatus.UNCHANGED : FileStatus.MODIFIED;
+		}
+		catch( IOException ioException )
+		{
+			String logString = "Unable to read the configuration file: " + fileName;
+			pipelineLogger.log( Level.SEVERE, logString );
+			logString = ioException.getLocalizedMessage();
+			pipelineLogger.log( Level.SEVERE, logString );
+			return FileStatus.FAILED;
+		}
+	} // End of preview() method.
+
+
+	/**
+	 * applyToLine() will run every operation over a single line.
+	 *
+	 * @param line the line to edit.
+	 * @return the line after every operation has been applied.
+	 */
+	String applyToLine( String line )
+	{
+		for( EditOperation operation : operationList )
+			line = operation.apply( line );
+		return line;
+	} // End of applyToLine() method.
+
+
+	/**
+	 * editLines() will edit a whole file held in memory, passing each line that an operation touches to the sink as a replacement, so FileShape can learn the layout.
+	 * Lines that no operation touches cannot change, so they are passed on without running the operations.
+	 *
+	 * @param text the contents of the file.
+	 * @param sink receives the file.
+	 * @return null, because the lines of a shape have no names.
+	 * @throws IOException if the sink cannot write the file.
+	 */
+	private List<String> editLines( String text, EditSink sink ) throws IOException
+	{
+		long lineCount = 0;
+		long changedCount = 0;
+		try( LineSource lineSource = new LineSource( new StringReader( text ) ) )
+		{
+			while( lineSource.next() )
+			{
+				String line = lineSource.getLine();
+				if( touches( line ) )
+				{
+					String editedLine = applyToLine( line );
+					if( !line.equals( editedLine ) )
+						changedCount++;
+					sink.replace( line, editedLine );
+				}
+				else
+				{
+					sink.unchanged( line );
+				}
+				sink.unchanged( lineSource.getTerminator() );
+				lineCount++;
+			}
+		}
+		FileMeter.addLines( lineCount, changedCount );
+		return null;
+	} // End of editLines() method.
+
+
+	private boolean touches( String line )
+	{
+		for( EditOperation operation : operationList )
+		{
+			if( operation.touches( line ) )
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,31 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.IOException;
+
+
+/**
+ * An EditSink receives a file as a sequence of original text and replacements, in file order.
+ *
+ * @see main.java.com.faircom.replicationconfigeditor.RewriteOutput
+ */
+interface EditSink
+{
+	/**
+	 * unchanged() will record text that is identical to the next part of the original file.
+	 *
+	 * @param text the original text.
+	 * @throws IOException if the text cannot be written.
+	 */
+	void unchanged( String text ) throws IOException;
+
+
+	/**
+	 * replace() will record the replacement for the next part of the original file.
+	 *
+	 * @param original    the original text.
+	 * @param replacement the text to write in its place.
+	 * @throws IOException if the replacement cannot be written.
+	 */
+	void replace( String original, String replacement ) throws IOException;
+}
@@ -0,0 +1,111 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.*;
+
+
+/**
+ * EditorLogging sets up the handlers for this program's Logger.<br>
+ * Every record goes through an AsyncLogHandler, which writes to the console and, optionally, to a JSON-lines file.<br>
+ * Messages that are expensive to build should be logged with a Supplier, so they cost nothing when their level is disabled.<br>
+ * To start a new section of console output, log with the SECTION parameter instead of swapping handlers, so it works from any thread.
+ */
+final class EditorLogging
+{
+	/**
+	 * Pass this as the parameter of a log call to put blank lines in front of the record on the console.
+	 */
+	static final Object SECTION = new Object()
+	{
+		@Override
+		public String toString()
+		{
+			return "section";
+		}
+	};
+	private static final AsyncLogHandler asyncHandler = new AsyncLogHandler();
+	private static Logger installedLogger;
+
+
+	private EditorLogging()
+	{
+	}
+
+
+	/**
+	 * install() will replace the handlers of a Logger with the asynchronous console handler.
+	 * This also installs the NodeLogCapture filter, and flushes the log when the JVM exits.
+	 *
+	 * @param logger the Logger to set up.
+	 */
+	static synchronized void install( Logger logger )
+	{
+		if( installedLogger != null )
+			return;
+		installedLogger = logger;
+		ConsoleHandler consoleHandler = new ConsoleHandler();
+		consoleHandler.setLevel( Level.ALL );
+		consoleHandler.setFormatter( new ConsoleLogFormatter() );
+		asyncHandler.addTarget( consoleHandler );
+		logger.setUseParentHandlers( false );
+		logger.addHandler( asyncHandler );
+		logger.setFilter( new NodeLogCapture() );
+		Runtime.getRuntime().addShutdownHook( new Thread( asyncHandler::flush, "replication-editor-log-flush" ) );
+	} // End of install() method.
+
+
+	/**
+	 * configure() will apply the logging options from the command line.
+	 *
+	 * @param level            the lowest level to log.
+	 * @param jsonLogFileName  a file to append JSON-lines records to, or an empty String for console logging only.
+	 * @throws IOException if the JSON-lines file cannot be opened.
+	 */
+	static synchronized void configure( Level level, String jsonLogFileName ) throws IOException
+	{
+		installedLogger.setLevel( level );
+		if( !jsonLogFileName.isEmpty() )
+		{
+			StreamHandler jsonHandler = new StreamHandler( new FileOutputStream( jsonLogFileName, true ), new JsonLinesLogFormatter() );
+			jsonHandler.setLevel( Level.ALL );
+			asyncHandler.addTarget( jsonHandler );
+		}
+	} // End of configure() method.
+
+
+	/**
+	 * isSection() will check if a record was logged with the SECTION parameter.
+	 *
+	 * @param logRecord the record to check.
+	 * @return true if the record starts a new section.
+	 */
+	static boolean isSection( LogRecord logRecord )
+	{
+		Object[] parameters = logRecord.getParameters();
+		return parameters != null && parameters.length > 0 && parameters[0] == SECTION;
+	} // End of isSection() method.
+
+
+	/**
+	 * publishCaptured() will publish records that NodeLogCapture held back, in the order they were logged.
+	 *
+	 * @param logRecords the captured records.
+	 */
+	static void publishCaptured( List<LogRecord> logRecords )
+	{
+		for( LogRecord logRecord : logRecords )
+			asyncHandler.publish( logRecord );
+	} // End of publishCaptured() method.
+
+
+	/**
+	 * flush() will wait until every record logged so far has been written.
+	 */
+	static void flush()
+	{
+		asyncHandler.flush();
+	} // End of flush() method.
+}
@@ -0,0 +1,66 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+/**
+ * A FileEdit pairs one configuration file of a node with the FileEditor that updates it.
+ *
+ * @see main.java.com.faircom.replicationconfigeditor.JavaReplicationConfigEditor#buildFileEdits(Config)
+ */
+class FileEdit
+{
+	private final String fileName;
+	private final FileEditor editor;
+	/**
+	 * The exit code to fail the node with if this file cannot be updated.
+	 */
+	private final int exitCode;
+
+
+	FileEdit( String fileName, FileEditor editor, int exitCode )
+	{
+		this.fileName = fileName;
+		this.editor = editor;
+		this.exitCode = exitCode;
+	}
+
+
+	/**
+	 * apply() will run the editor over the file.
+	 *
+	 * @return the status of the file.
+	 */
+	FileStatus apply()
+	{
+		return editor.apply( fileName );
+	} // End of apply() method.
+
+
+	/**
+	 * preview() will work out the changes apply() would make, without writing the file.
+	 *
+	 * @param diff receives a unified diff of the changes, if there are any.
+	 * @return the status the file would have.
+	 */
+	FileStatus preview( StringBuilder diff )
+	{
+		return editor.preview( fileName, diff );
+	} // End of preview() method.
+
+
+	public String getFileName()
+	{
+		return fileName;
+	}
+
+
+	public FileEditor getEditor()
+	{
+		return editor;
+	}
+
+
+	public int getExitCode()
+	{
+		return exitCode;
+	}
+}
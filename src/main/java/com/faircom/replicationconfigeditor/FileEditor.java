@@ -0,0 +1,29 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+/**
+ * A FileEditor updates one configuration file in place.<br>
+ * EditPipeline edits a file line by line, and JsonEditor edits a JSON file token by token.
+ *
+ * @see main.java.com.faircom.replicationconfigeditor.FileEdit
+ */
+interface FileEditor
+{
+	/**
+	 * apply() will edit a file, and only write it if something changed.
+	 *
+	 * @param fileName the file to edit.
+	 * @return MODIFIED or UNCHANGED if the file was processed, MISSING if it does not exist, or FAILED if it could not be rewritten.
+	 */
+	FileStatus apply( String fileName );
+
+
+	/**
+	 * preview() will work out what apply() would change, without writing anything.
+	 *
+	 * @param fileName the file to edit.
+	 * @param diff     receives a unified diff of the changes, if there are any.
+	 * @return MODIFIED if apply() would change the file, UNCHANGED if it would not, MISSING if it does not exist, or FAILED if it could not be read.
+	 */
+	FileStatus preview( String fileName, StringBuilder diff );
+}
@@ -0,0 +1,238 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * FileMeter gathers the RunMetrics figures of the file being processed on the current thread.<br>
+ * updateFiles() calls start() before a file and finish() after it.  In between, the streams that read and write the file are wrapped by meter(), and the editors report the lines they scanned and changed.<br>
+ * Outside of start() and finish(), or when no RunMetrics run is active, every method does nothing, and meter() returns the stream it was given.
+ */
+final class FileMeter
+{
+	private static final ThreadLocal<FileMeter> CURRENT = new ThreadLocal<>();
+	private final long startNanos = System.nanoTime();
+	private long totalNanos = 0;
+	private long readNanos = 0;
+	private long writeNanos = 0;
+	private long bytesRead = 0;
+	private long bytesWritten = 0;
+	private long linesScanned = 0;
+	private long linesChanged = 0;
+
+
+	private FileMeter()
+	{
+	}
+
+
+	/**
+	 * start() will begin measuring a file on the current thread, if a run is being measured.
+	 */
+	static void start()
+	{
+		if( RunMetrics.isActive() )
+			CURRENT.set( new FileMeter() );
+	} // End of start() method.
+
+
+	/**
+	 * finish() will stop measuring the current file, and add its figures to the run.
+	 *
+	 * @param fileStatus the outcome of the file.
+	 */
+	static void finish( FileStatus fileStatus )
+	{
+		FileMeter fileMeter = CURRENT.get();
+		if( fileMeter == null )
+			return;
+		CURRENT.remove();
+		fileMeter.totalNanos = System.nanoTime() - fileMeter.startNanos;
+		RunMetrics.recordFile( fileMeter, fileStatus );
+	} // End of finish() method.
+
+
+	/**
+	 * isActive() will report whether a file is being measured on the current thread, so editors can skip counting when none is.
+	 *
+	 * @return true if a file is being measured.
+	 */
+	static boolean isActive()
+	{
+		return CURRENT.get() != null;
+	} // End of isActive() method.
+
+
+	/**
+	 * addRead() will count bytes read from the file outside of a metered stream, and the time spent reading them or waiting for them, such as for a prefetch to finish.
+	 *
+	 * @param bytes the number of bytes read, or 0 for time spent only waiting.
+	 * @param nanos the time spent.
+	 */
+	static void addRead( long bytes, long nanos )
+	{
+		FileMeter fileMeter = CURRENT.get();
+		if( fileMeter != null )
+		{
+			fileMeter.bytesRead += bytes;
+			fileMeter.readNanos += nanos;
+		}
+	} // End of addRead() method.
+
+
+	/**
+	 * addWrite() will count bytes written to the file, and the time spent writing, syncing, or moving them.
+	 *
+	 * @param bytes the number of bytes written, or 0 for time spent only syncing or moving.
+	 * @param nanos the time spent.
+	 */
+	static void addWrite( long bytes, long nanos )
+	{
+		FileMeter fileMeter = CURRENT.get();
+		if( fileMeter != null )
+		{
+			fileMeter.bytesWritten += bytes;
+			fileMeter.writeNanos += nanos;
+		}
+	} // End of addWrite() method.
+
+
+	/**
+	 * addLines() will count lines scanned, and how many of them an editor changed.
+	 * JsonEditor counts each replaced value as a changed line, because it edits values rather than lines.
+	 *
+	 * @param scanned the number of lines scanned.
+	 * @param changed the number of lines changed.
+	 */
+	static void addLines( long scanned, long changed )
+	{
+		FileMeter fileMeter = CURRENT.get();
+		if( fileMeter != null )
+		{
+			fileMeter.linesScanned += scanned;
+			fileMeter.linesChanged += changed;
+		}
+	} // End of addLines() method.
+
+
+	/**
+	 * meter() will count the bytes read from a stream of the file, and the time spent reading them.
+	 *
+	 * @param inputStream the stream.
+	 * @return a stream that counts, or inputStream itself if no file is being measured.
+	 */
+	static InputStream meter( InputStream inputStream )
+	{
+		final FileMeter fileMeter = CURRENT.get();
+		if( fileMeter == null )
+			return inputStream;
+		return new FilterInputStream( inputStream )
+		{
+			@Override
+			public int read() throws IOException
+			{
+				long start = System.nanoTime();
+				int b = super.read();
+				fileMeter.readNanos += System.nanoTime() - start;
+				if( b >= 0 )
+					fileMeter.bytesRead++;
+				return b;
+			}
+
+
+			@Override
+			public int read( byte[] bytes, int offset, int length ) throws IOException
+			{
+				long start = System.nanoTime();
+				int count = super.read( bytes, offset, length );
+				fileMeter.readNanos += System.nanoTime() - start;
+				if( count > 0 )
+					fileMeter.bytesRead += count;
+				return count;
+			}
+		};
+	} // End of meter() method.
+
+
+	/**
+	 * This version of meter() counts the bytes written to a stream of the file, and the time spent writing them.
+	 * The stream should be below any buffer, so the time is that of the real writes.
+	 *
+	 * @param outputStream the stream.
+	 * @return a stream that counts, or outputStream itself if no file is being measured.
+	 */
+	static OutputStream meter( OutputStream outputStream )
+	{
+		final FileMeter fileMeter = CURRENT.get();
+		if( fileMeter == null )
+			return outputStream;
+		return new FilterOutputStream( outputStream )
+		{
+			@Override
+			public void write( int b ) throws IOException
+			{
+				long start = System.nanoTime();
+				out.write( b );
+				fileMeter.writeNanos += System.nanoTime() - start;
+				fileMeter.bytesWritten++;
+			}
+
+
+			@Override
+			public void write( byte[] bytes, int offset, int length ) throws IOException
+			{
+				long start = System.nanoTime();
+				out.write( bytes, offset, length );
+				fileMeter.writeNanos += System.nanoTime() - start;
+				fileMeter.bytesWritten += length;
+			}
+		};
+	} // End of meter() method.
+
+
+	long getTotalNanos()
+	{
+		return totalNanos;
+	}
+
+
+	long getReadNanos()
+	{
+		return readNanos;
+	}
+
+
+	long getWriteNanos()
+	{
+		return writeNanos;
+	}
+
+
+	long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+
+	long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+
+	long getLinesScanned()
+	{
+		return linesScanned;
+	}
+
+
+	long getLinesChanged()
+	{
+		return linesChanged;
+	}
+}
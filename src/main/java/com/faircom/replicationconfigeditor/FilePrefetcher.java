@@ -0,0 +1,309 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * FilePrefetcher reads the files of upcoming nodes while the current node is still being edited and written, to hide the latency of slow filesystems such as SMB mounts.<br>
+ * It wraps the stream of nodes in a look-ahead window.  Each node that enters the window is queued for the read stage, where its files are opened and read with AsynchronousFileChannel.
+ * The edit and write stages are the usual updateFiles() path, which gets the prefetched bytes from take() instead of reading the file itself.<br>
+ * The window holds at most depth nodes, so memory use depends on the depth and not the fleet size.  A parse error in the fleet file is passed on only after the nodes read before it.  Files larger than MAX_PREFETCH_BYTES are left to be read normally.<br>
+ * A file that could not be prefetched is read from disk as usual, so that the real error, if any, is reported in the usual way.<br>
+ * Prefetched bytes are a snapshot, so an edit made to a file by another program between the prefetch and the write is overwritten, as it would be by any edit that reads before it writes.
+ */
+final class FilePrefetcher implements Closeable
+{
+	private static final Logger prefetchLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	/**
+	 * The largest file that is read ahead.  Configuration files are a few kilobytes.
+	 */
+	private static final int MAX_PREFETCH_BYTES = 1024 * 1024;
+	/**
+	 * The number of files read at the same time.  Several reads in flight hide more of the round-trip time of a network filesystem than one.
+	 */
+	private static final int READ_THREADS = 4;
+	/**
+	 * The reads in flight or finished, keyed by absolute path.  Static, so the editors can find them without a reference being passed down to every one.
+	 */
+	private static final Map<Path, CompletableFuture<byte[]>> PREFETCHED = new ConcurrentHashMap<>();
+	/**
+	 * The number of nodes in the window or being processed that name each file.
+	 * Only the first of them prefetches it, so a later node never gets bytes from before an earlier node wrote the file.
+	 */
+	private static final Map<Path, Integer> CLAIMS = new ConcurrentHashMap<>();
+	private final int depth;
+	/**
+	 * Opens the files and runs the completion handlers of their reads.
+	 */
+	private final ExecutorService readExecutor;
+
+
+	/**
+	 * @param depth the number of nodes to read ahead.
+	 */
+	FilePrefetcher( int depth )
+	{
+		this.depth = depth;
+		readExecutor = Executors.newFixedThreadPool( READ_THREADS, runnable ->
+		{
+			Thread thread = new Thread( runnable, "replication-editor-prefetch" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+	}
+
+
+	/**
+	 * wrap() will return the same nodes, in the same order, while reading the files of the next depth nodes ahead of the caller.
+	 *
+	 * @param configIterator the nodes to process.
+	 * @return an Iterator over the same nodes.
+	 */
+	Iterator<Config> wrap( final Iterator<Config> configIterator )
+	{
+		return new Iterator<Config>()
+		{
+			private final Deque<Config> windowQueue = new ArrayDeque<>( depth );
+			/**
+			 * A failure of the wrapped Iterator, held back until the nodes read before it have been handed out.
+			 */
+			private RuntimeException failure = null;
+
+
+			@Override
+			public boolean hasNext()
+			{
+				fill();
+				if( !windowQueue.isEmpty() )
+					return true;
+				if( failure != null )
+					throw failure;
+				return false;
+			}
+
+
+			@Override
+			public Config next()
+			{
+				if( !hasNext() )
+					throw new NoSuchElementException();
+				return windowQueue.removeFirst();
+			}
+
+
+			private void fill()
+			{
+				if( failure != null )
+					return;
+				try
+				{
+					while( windowQueue.size() < depth && configIterator.hasNext() )
+					{
+						Config configuredNode = configIterator.next();
+						windowQueue.addLast( configuredNode );
+						prefetch( configuredNode );
+					}
+				}
+				catch( RuntimeException runtimeException )
+				{
+					failure = runtimeException;
+				}
+			}
+		};
+	} // End of wrap() method.
+
+
+	/**
+	 * prefetch() will queue every file of a node for the read stage.
+	 *
+	 * @param configuredNode the node.
+	 */
+	private void prefetch( Config configuredNode )
+	{
+		for( FileEdit fileEdit : JavaReplicationConfigEditor.buildFileEdits( configuredNode ) )
+		{
+			Path path = key( fileEdit.getFileName() );
+			if( CLAIMS.merge( path, 1, Integer::sum ) > 1 )
+				continue;
+			CompletableFuture<byte[]> future = new CompletableFuture<>();
+			PREFETCHED.put( path, future );
+			readExecutor.execute( () -> read( path, future ) );
+		}
+	} // End of prefetch() method.
+
+
+	/**
+	 * read() will start an asynchronous read of a whole file.  Any failure completes the future with null.
+	 *
+	 * @param path   the file.
+	 * @param future completed with the contents of the file.
+	 */
+	private void read( Path path, CompletableFuture<byte[]> future )
+	{
+		if( !Files.isRegularFile( path ) )
+		{
+			future.complete( null );
+			return;
+		}
+		AsynchronousFileChannel fileChannel;
+		long size;
+		try
+		{
+			fileChannel = AsynchronousFileChannel.open( path, Collections.singleton( StandardOpenOption.READ ), readExecutor );
+			size = fileChannel.size();
+		}
+		catch( IOException | RuntimeException exception )
+		{
+			future.complete( null );
+			return;
+		}
+		if( size > MAX_PREFETCH_BYTES )
+		{
+			closeQuietly( fileChannel );
+			future.complete( null );
+			return;
+		}
+		// One byte more than the size, so the read can tell the end of the file from a file that grew after size() was taken.
+		ByteBuffer byteBuffer = ByteBuffer.allocate( (int) size + 1 );
+		fileChannel.read( byteBuffer, 0, byteBuffer, new CompletionHandler<Integer, ByteBuffer>()
+		{
+			@Override
+			public void completed( Integer count, ByteBuffer buffer )
+			{
+				if( count >= 0 && buffer.hasRemaining() )
+				{
+					fileChannel.read( buffer, buffer.position(), buffer, this );
+					return;
+				}
+				closeQuietly( fileChannel );
+				// A full buffer means the file grew while it was being read, so it is left to be read again from disk.
+				future.complete( count < 0 ? Arrays.copyOf( buffer.array(), buffer.position() ) : null );
+			}
+
+
+			@Override
+			public void failed( Throwable throwable, ByteBuffer buffer )
+			{
+				closeQuietly( fileChannel );
+				future.complete( null );
+			}
+		} );
+	} // End of read() method.
+
+
+	/**
+	 * take() will hand over the prefetched contents of a file, waiting for the read to finish if it is still in flight.
+	 * Each prefetch is handed over once, so a second read of the same file goes to disk.
+	 *
+	 * @param fileName the file.
+	 * @return the contents, or null if the file was not prefetched.
+	 */
+	static byte[] take( String fileName )
+	{
+		if( PREFETCHED.isEmpty() )
+			return null;
+		CompletableFuture<byte[]> future = PREFETCHED.remove( key( fileName ) );
+		if( future == null )
+			return null;
+		long start = System.nanoTime();
+		try
+		{
+			return future.get();
+		}
+		catch( InterruptedException interruptedException )
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch( ExecutionException executionException )
+		{
+			return null;
+		}
+		finally
+		{
+			// The wait is what is left of the read, so it counts as reading the file.
+			FileMeter.addRead( 0, System.nanoTime() - start );
+		}
+	} // End of take() method.
+
+
+	/**
+	 * newInputStream() will open the prefetched contents of a file, or the file itself if it was not prefetched.
+	 * The stream is metered by the FileMeter of the current thread, if there is one.
+	 *
+	 * @param path       the file.
+	 * @param prefetched the result of take().
+	 * @return a stream of the file's bytes.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	static InputStream newInputStream( Path path, byte[] prefetched ) throws IOException
+	{
+		if( prefetched != null )
+			return FileMeter.meter( new ByteArrayInputStream( prefetched ) );
+		return FileMeter.meter( Files.newInputStream( path ) );
+	} // End of newInputStream() method.
+
+
+	/**
+	 * discard() will release a node's files once it has been processed, and drop any prefetch of them that was never taken, such as those of a skipped node.
+	 * Every node that passes through the window must be discarded, or its files are never prefetched again.
+	 *
+	 * @param fileNameList the files of the node.
+	 */
+	static void discard( List<String> fileNameList )
+	{
+		for( String fileName : fileNameList )
+		{
+			Path path = key( fileName );
+			PREFETCHED.remove( path );
+			CLAIMS.computeIfPresent( path, ( claimed, count ) -> count == 1 ? null : count - 1 );
+		}
+	} // End of discard() method.
+
+
+	/**
+	 * close() will stop the read stage and drop everything still prefetched.
+	 */
+	@Override
+	public void close()
+	{
+		readExecutor.shutdownNow();
+		PREFETCHED.clear();
+		CLAIMS.clear();
+		prefetchLogger.log( Level.FINE, "The prefetcher is closed." );
+	}
+
+
+	private static Path key( String fileName )
+	{
+		return Paths.get( fileName ).toAbsolutePath().normalize();
+	}
+
+
+	private static void closeQuietly( AsynchronousFileChannel fileChannel )
+	{
+		try
+		{
+			fileChannel.close();
+		}
+		catch( IOException ioException )
+		{
+			// The contents have already been read.
+		}
+	}
+}
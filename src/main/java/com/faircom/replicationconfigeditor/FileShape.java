@@ -0,0 +1,365 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A FileShape is the layout of a configuration file with its managed parts cut out, so files with the same layout can be edited without searching them.<br>
+ * The managed parts, or slots, are the lines an EditPipeline could change, such as lines holding a key or a plugin comment, or the values a JsonEditor replaces.
+ * Everything else is kept as literal text, with the slots between the literals.<br>
+ * The first file of each layout is edited the usual way, and the editor reports each slot to the shape as it goes.
+ * The next file is matched by comparing its text with the literals, and finding the end of each slot in between.
+ * If it matches, only the slots are passed to the editor, and the literals are copied without being searched.<br>
+ * This gives the same result as the usual edit, because every literal is identical to text the usual edit already found nothing to change in, and the editor only looks inside one line or one value at a time.<br>
+ * Shapes are kept per key set, a few layouts each, so nodes whose files differ only in the managed values share one shape.
+ * Lines scanned are only counted for the slots of a matched file, because the rest is never scanned.
+ */
+final class FileShape
+{
+	/**
+	 * The largest file whose shape is kept.  Configuration files are a few kilobytes.
+	 */
+	static final int MAX_SHAPE_BYTES = 64 * 1024;
+	/**
+	 * The most layouts to keep for one key set.  The newest is tried first.
+	 */
+	private static final int SHAPES_PER_KEY = 4;
+	/**
+	 * The most key sets to keep shapes for.
+	 */
+	private static final int CACHE_LIMIT = 64;
+	private static final Map<String, FileShape[]> SHAPE_CACHE = new ConcurrentHashMap<>();
+	/**
+	 * The text around the slots.  There is always one more literal than there are slots.
+	 */
+	private final String[] literals;
+	/**
+	 * The name of each slot, such as the member name of a JSON value, or null when slots are whole lines.
+	 */
+	private final String[] slotNames;
+
+
+	/**
+	 * A SlotEditor edits one slot of a file.
+	 */
+	interface SlotEditor
+	{
+		/**
+		 * edit() will return the new text of a slot.
+		 *
+		 * @param name     the name of the slot, or null when slots are whole lines.
+		 * @param original the current text of the slot.
+		 * @return the text to write in its place.
+		 */
+		String edit( String name, String original );
+	}
+
+
+	/**
+	 * A Learner edits a whole file the usual way, passing the managed parts to EditSink.replace(), and everything else to EditSink.unchanged().
+	 */
+	interface Learner
+	{
+		/**
+		 * edit() will edit a file.
+		 *
+		 * @param text the contents of the file.
+		 * @param sink receives the file, in order.
+		 * @return the name of each slot passed to replace(), or null when slots are whole lines.
+		 * @throws IOException if the file cannot be edited.
+		 */
+		List<String> edit( String text, EditSink sink ) throws IOException;
+	}
+
+
+	private FileShape( String[] literals, String[] slotNames )
+	{
+		this.literals = literals;
+		this.slotNames = slotNames;
+	}
+
+
+	/**
+	 * read() will return the whole contents of a file, if it was prefetched or is small enough to have its shape kept.
+	 *
+	 * @param path the file.
+	 * @return the contents, or null if the file is too large and should be streamed.
+	 * @throws IOException if the file cannot be read.
+	 */
+	static byte[] read( Path path ) throws IOException
+	{
+		byte[] prefetched = FilePrefetcher.take( path.toString() );
+		if( prefetched != null )
+		{
+			FileMeter.addRead( prefetched.length, 0 );
+			return prefetched;
+		}
+		if( Files.size( path ) > MAX_SHAPE_BYTES )
+			return null;
+		long start = System.nanoTime();
+		byte[] contents = Files.readAllBytes( path );
+		FileMeter.addRead( contents.length, System.nanoTime() - start );
+		return contents;
+	} // End of read() method.
+
+
+	/**
+	 * rewrite() will edit a file whose contents have already been read, and replace it if anything changed.
+	 * If the file matches a shape kept for shapeKey, only its slots are edited.  Otherwise learner edits the whole file, and its shape is kept for the next file.
+	 *
+	 * @param path       the file.
+	 * @param contents   the contents of the file, from read().
+	 * @param shapeKey   what the editor looks for, such as its key set.  Files are only matched against shapes learned with the same shapeKey.
+	 * @param slotEditor edits each slot of a matched file.
+	 * @param learner    edits a file that matches no shape.
+	 * @return MODIFIED if the file was replaced, or UNCHANGED if nothing changed.
+	 * @throws IOException if the file cannot be edited, or the result cannot be written or moved into place.
+	 */
+	static FileStatus rewrite( Path path, byte[] contents, String shapeKey, SlotEditor slotEditor, Learner learner ) throws IOException
+	{
+		String text = new String( contents, StandardCharsets.ISO_8859_1 );
+		try( RewriteOutput rewriteOutput = new RewriteOutput( path, contents ) )
+		{
+			FileShape[] shapes = SHAPE_CACHE.get( shapeKey );
+			if( shapes != null )
+			{
+				for( FileShape shape : shapes )
+				{
+					int[] bounds = shape.match( text );
+					if( bounds != null )
+					{
+						shape.render( text, bounds, slotEditor, rewriteOutput );
+						return rewriteOutput.commit();
+					}
+				}
+			}
+			Recorder recorder = new Recorder( rewriteOutput );
+			List<String> slotNameList = learner.edit( text, recorder );
+			if( text.length() <= MAX_SHAPE_BYTES )
+				remember( shapeKey, recorder.toShape( text, slotNameList ) );
+			return rewriteOutput.commit();
+		}
+	} // End of rewrite() method.
+
+
+	/**
+	 * remember() will keep a shape for the next file with the same key set, ahead of the shapes already kept.
+	 *
+	 * @param shapeKey the key set.
+	 * @param shape    the shape.
+	 */
+	private static void remember( String shapeKey, FileShape shape )
+	{
+		if( SHAPE_CACHE.size() >= CACHE_LIMIT && !SHAPE_CACHE.containsKey( shapeKey ) )
+			return;
+		SHAPE_CACHE.compute( shapeKey, ( key, shapes ) ->
+		{
+			if( shapes == null )
+				return new FileShape[]{ shape };
+			FileShape[] newShapes = new FileShape[Math.min( shapes.length + 1, SHAPES_PER_KEY )];
+			newShapes[0] = shape;
+			System.arraycopy( shapes, 0, newShapes, 1, newShapes.length - 1 );
+			return newShapes;
+		} );
+	} // End of remember() method.
+
+
+	/**
+	 * match() will check if a file has this shape, and find its slots.
+	 *
+	 * @param text the contents of the file.
+	 * @return the start and end of each slot, in pairs, or null if the file does not have this shape.
+	 */
+	private int[] match( String text )
+	{
+		int slotCount = literals.length - 1;
+		int[] bounds = new int[slotCount * 2];
+		int position = 0;
+		for( int i = 0; i < slotCount; i++ )
+		{
+			if( !text.startsWith( literals[i], position ) )
+				return null;
+			position += literals[i].length();
+			int end = slotNames == null ? endOfLine( text, position ) : endOfValue( text, position );
+			// A slot is never empty, so an empty one means the layout is different.
+			if( end <= position )
+				return null;
+			bounds[i * 2] = position;
+			bounds[i * 2 + 1] = end;
+			position = end;
+		}
+		String last = literals[slotCount];
+		if( text.length() != position + last.length() || !text.startsWith( last, position ) )
+			return null;
+		return bounds;
+	} // End of match() method.
+
+
+	/**
+	 * render() will pass a matched file to sink, with each slot edited.
+	 *
+	 * @param text       the contents of the file.
+	 * @param bounds     the slots found by match().
+	 * @param slotEditor edits each slot.
+	 * @param sink       receives the file.
+	 * @throws IOException if the file cannot be written.
+	 */
+	private void render( String text, int[] bounds, SlotEditor slotEditor, EditSink sink ) throws IOException
+	{
+		int slotCount = literals.length - 1;
+		long changedCount = 0;
+		for( int i = 0; i < slotCount; i++ )
+		{
+			sink.unchanged( literals[i] );
+			String original = text.substring( bounds[i * 2], bounds[i * 2 + 1] );
+			String edited = slotEditor.edit( slotNames == null ? null : slotNames[i], original );
+			if( !original.equals( edited ) )
+				changedCount++;
+			sink.replace( original, edited );
+		}
+		sink.unchanged( literals[slotCount] );
+		FileMeter.addLines( slotCount, changedCount );
+	} // End of render() method.
+
+
+	/**
+	 * endOfLine() will find the end of a line slot, which is the next line terminator, or the end of the file.
+	 */
+	private static int endOfLine( String text, int start )
+	{
+		for( int i = start; i < text.length(); i++ )
+		{
+			char c = text.charAt( i );
+			if( c == '\n' || c == '\r' )
+				return i;
+		}
+		return text.length();
+	}
+
+
+	/**
+	 * endOfValue() will find the end of a JSON value slot, which is a string, number, true, false, or null, following the same rules as JsonEditor.
+	 *
+	 * @return the end of the value, or -1 if there is no valid value at start.
+	 */
+	private static int endOfValue( String text, int start )
+	{
+		int length = text.length();
+		if( start < length && text.charAt( start ) == '"' )
+		{
+			int i = start + 1;
+			while( i < length )
+			{
+				char c = text.charAt( i );
+				if( c == '"' )
+					return i + 1;
+				if( c == '\n' || c == '\r' )
+					return -1;
+				if( c != '\\' )
+				{
+					i++;
+					continue;
+				}
+				if( i + 1 >= length )
+					return -1;
+				char escaped = text.charAt( i + 1 );
+				if( escaped == 'u' )
+				{
+					if( i + 6 > length )
+						return -1;
+					for( int j = i + 2; j < i + 6; j++ )
+					{
+						if( Character.digit( text.charAt( j ), 16 ) < 0 )
+							return -1;
+					}
+					i += 6;
+				}
+				else if( "\"\\/bfnrt".indexOf( escaped ) >= 0 )
+				{
+					i += 2;
+				}
+				else
+				{
+					return -1;
+				}
+			}
+			return -1;
+		}
+		int i = start;
+		while( i < length )
+		{
+			char c = text.charAt( i );
+			if( c == ',' || c == '}' || c == ']' || c == ':' || c == '/' || c == ' ' || c == '\t' || c == '\n' || c == '\r' )
+				break;
+			i++;
+		}
+		return JsonEditor.isLiteral( text.subSequence( start, i ) ) ? i : -1;
+	}
+
+
+	/**
+	 * An EditSink that passes everything on, and notes where each slot is, so the shape of the file can be kept.
+	 */
+	private static final class Recorder implements EditSink
+	{
+		private final EditSink sink;
+		private final List<Integer> boundList = new ArrayList<>();
+		private int position = 0;
+
+
+		private Recorder( EditSink sink )
+		{
+			this.sink = sink;
+		}
+
+
+		@Override
+		public void unchanged( String text ) throws IOException
+		{
+			position += text.length();
+			sink.unchanged( text );
+		}
+
+
+		@Override
+		public void replace( String original, String replacement ) throws IOException
+		{
+			boundList.add( position );
+			position += original.length();
+			boundList.add( position );
+			sink.replace( original, replacement );
+		}
+
+
+		/**
+		 * toShape() will build the shape of the file that was passed through this Recorder.
+		 *
+		 * @param text         the contents of the file.
+		 * @param slotNameList the name of each slot, or null.
+		 * @return the shape.
+		 */
+		private FileShape toShape( String text, List<String> slotNameList )
+		{
+			int slotCount = boundList.size() / 2;
+			String[] literals = new String[slotCount + 1];
+			int start = 0;
+			for( int i = 0; i < slotCount; i++ )
+			{
+				literals[i] = text.substring( start, boundList.get( i * 2 ) );
+				start = boundList.get( i * 2 + 1 );
+			}
+			literals[slotCount] = text.substring( start );
+			String[] slotNames = slotNameList == null ? null : slotNameList.toArray( new String[0] );
+			return new FileShape( literals, slotNames );
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+/**
+ * The outcome of editing one configuration file.
+ */
+enum FileStatus
+{
+	/**
+	 * At least one line changed, and the file was rewritten.
+	 */
+	MODIFIED( "modified" ),
+	/**
+	 * No line changed, so the file was not written at all.
+	 */
+	UNCHANGED( "unchanged" ),
+	/**
+	 * The file does not exist.
+	 */
+	MISSING( "missing" ),
+	/**
+	 * The file exists, but could not be read or rewritten.  The original file is left untouched.
+	 */
+	FAILED( "failed" );
+
+	private final String label;
+
+
+	FileStatus( String label )
+	{
+		this.label = label;
+	}
+
+
+	/**
+	 * isUpdated() will report whether the file now holds the configured values.
+	 *
+	 * @return true for MODIFIED and UNCHANGED.
+	 */
+	public boolean isUpdated()
+	{
+		return this == MODIFIED || this == UNCHANGED;
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return label;
+	}
+}
@@ -0,0 +1,423 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * This class runs updateFiles() for every node of a fleet.<br>
+ * With a parallelism of 1, nodes are processed one at a time on the calling thread, and the run stops at the first failure.<br>
+ * With a higher parallelism, each node is processed on a worker thread with its log output captured.<br>
+ * The captured output is published one node at a time, in the order the nodes appear in the fleet configuration file.<br>
+ * Unlike the serial run, a failed node does not stop the other nodes from being processed.<br>
+ * When a RunManifest is set, nodes that have not changed since the last successful run are skipped.<br>
+ * In a dry run, no file is written, and a failed node never stops the run, even with a parallelism of 1.<br>
+ * Each node is processed inside a DurableWrites batch, so its files are synced as the Durability mode requires before the node counts as done.<br>
+ * When a RunJournal is set, each node is backed up and journaled before its files are touched, and nodes the interrupted run finished are skipped.<br>
+ * With a prefetch depth, a FilePrefetcher reads the files of the next nodes while the current ones are edited and written.
+ */
+class FleetExecutor
+{
+	private static final Logger executorLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	/**
+	 * The exit code used when a node fails with an unexpected exception.
+	 */
+	static final int UNEXPECTED_FAILURE = -10;
+	/**
+	 * The exit code used when the directories of a node could not be synced.
+	 */
+	static final int SYNC_FAILURE = -14;
+	/**
+	 * The exit code used when a node could not be backed up and recorded in the journal.
+	 */
+	static final int JOURNAL_FAILURE = -15;
+	/**
+	 * The number of nodes per thread that may be queued or running ahead of the node being published.
+	 */
+	private static final int IN_FLIGHT_PER_THREAD = 4;
+	private final int parallelism;
+	/**
+	 * The manifest for incremental runs, or null to process every node.
+	 */
+	private RunManifest manifest = null;
+	/**
+	 * True to log the changes each node would get, without writing any file.
+	 */
+	private boolean dryRun = false;
+	/**
+	 * How the files of each node are synced.
+	 */
+	private Durability durability = Durability.NONE;
+	/**
+	 * The journal for resumable runs, or null to keep none.
+	 */
+	private RunJournal journal = null;
+	/**
+	 * The number of nodes whose files are read ahead, or 0 to read each file only when it is edited.
+	 */
+	private int prefetchDepth = 0;
+
+
+	FleetExecutor( int parallelism )
+	{
+		this.parallelism = parallelism;
+	}
+
+
+	/**
+	 * setManifest() will make this executor skip nodes that the manifest shows as unchanged, and record the nodes it updates.
+	 *
+	 * @param manifest the manifest to use.
+	 */
+	void setManifest( RunManifest manifest )
+	{
+		this.manifest = manifest;
+	} // End of setManifest() method.
+
+
+	/**
+	 * setDryRun() will make this executor only log the changes it would make.
+	 *
+	 * @param dryRun true for a dry run.
+	 */
+	void setDryRun( boolean dryRun )
+	{
+		this.dryRun = dryRun;
+	} // End of setDryRun() method.
+
+
+	/**
+	 * setDurability() will choose how the files of each node are synced.
+	 *
+	 * @param durability the mode to use.
+	 */
+	void setDurability( Durability durability )
+	{
+		this.durability = durability;
+	} // End of setDurability() method.
+
+
+	/**
+	 * setJournal() will make this executor back up and record each node in a journal, and skip nodes an interrupted run already finished.
+	 *
+	 * @param journal the journal to use.
+	 */
+	void setJournal( RunJournal journal )
+	{
+		this.journal = journal;
+	} // End of setJournal() method.
+
+
+	/**
+	 * setPrefetchDepth() will make this executor read the files of upcoming nodes while the current ones are edited.
+	 *
+	 * @param prefetchDepth the number of nodes to read ahead, or 0 for none.
+	 */
+	void setPrefetchDepth( int prefetchDepth )
+	{
+		this.prefetchDepth = prefetchDepth;
+	} // End of setPrefetchDepth() method.
+
+
+	/**
+	 * run() will process every node and publish the log output of each node in fleet order.
+	 *
+	 * @param configArray the nodes to process.
+	 * @return one NodeResult for each node that was processed, in fleet order.
+	 */
+	List<NodeResult> run( Config[] configArray )
+	{
+		return run( Arrays.asList( configArray ).iterator() );
+	} // End of run() method.
+
+
+	/**
+	 * This version of run() takes the nodes from an Iterator, such as a FleetReader, as they are needed.
+	 * At most a few nodes per thread are taken ahead of the node being published, so memory use depends on the parallelism and not the fleet size.
+	 * If the Iterator throws, the nodes already started are finished and published before the exception is passed on.
+	 *
+	 * @param configIterator the nodes to process.
+	 * @return one NodeResult for each node that was processed, in fleet order.
+	 */
+	List<NodeResult> run( Iterator<Config> configIterator )
+	{
+		if( prefetchDepth == 0 )
+			return runNodes( configIterator );
+		try( FilePrefetcher filePrefetcher = new FilePrefetcher( prefetchDepth ) )
+		{
+			return runNodes( filePrefetcher.wrap( configIterator ) );
+		}
+	} // End of run() method.
+
+
+	/**
+	 * runNodes() will process the nodes serially or in parallel, depending on the parallelism.
+	 *
+	 * @param configIterator the nodes to process.
+	 * @return one NodeResult for each node that was processed, in fleet order.
+	 */
+	private List<NodeResult> runNodes( Iterator<Config> configIterator )
+	{
+		if( parallelism == 1 )
+			return runSerially( configIterator );
+
+		int window = parallelism * IN_FLIGHT_PER_THREAD;
+		ExecutorService executorService = Executors.newFixedThreadPool( parallelism );
+		Deque<Future<NodeResult>> pendingQueue = new ArrayDeque<>( window );
+		List<NodeResult> resultList = new ArrayList<>();
+		int index = 0;
+		try
+		{
+			while( configIterator.hasNext() )
+			{
+				if( pendingQueue.size() >= window )
+					resultList.add( publish( pendingQueue.removeFirst() ) );
+				final Config configuredNode = configIterator.next();
+				final NodeResult nodeResult = new NodeResult( index++, configuredNode.getBaseDirectory() );
+				pendingQueue.addLast( executorService.submit( () -> captureNode( configuredNode, nodeResult ) ) );
+			}
+		}
+		finally
+		{
+			executorService.shutdown();
+			while( !pendingQueue.isEmpty() )
+				resultList.add( publish( pendingQueue.removeFirst() ) );
+		}
+		return resultList;
+	} // End of runNodes() method.
+
+
+	/**
+	 * runSerially() will process the nodes one at a time, stopping at the first failure unless this is a dry run.
+	 *
+	 * @param configIterator the nodes to process.
+	 * @return one NodeResult for each node that was processed, in fleet order.
+	 */
+	private List<NodeResult> runSerially( Iterator<Config> configIterator )
+	{
+		List<NodeResult> resultList = new ArrayList<>();
+		for( int i = 0; configIterator.hasNext(); i++ )
+		{
+			Config configuredNode = configIterator.next();
+			NodeResult nodeResult = processNode( configuredNode, new NodeResult( i, configuredNode.getBaseDirectory() ) );
+			resultList.add( nodeResult );
+			if( !nodeResult.isSuccess() && !dryRun )
+				break;
+		}
+		return resultList;
+	} // End of runSerially() method.
+
+
+	/**
+	 * publish() will wait for a node to finish and publish its captured log output.
+	 * The captured records are released afterwards, so finished nodes do not hold on to their logs.
+	 *
+	 * @param future the task processing the node.
+	 * @return the result of the node.
+	 */
+	private static NodeResult publish( Future<NodeResult> future )
+	{
+		NodeResult nodeResult = awaitNode( future );
+		EditorLogging.publishCaptured( nodeResult.getLogRecords() );
+		nodeResult.getLogRecords().clear();
+		return nodeResult;
+	} // End of publish() method.
+
+
+	/**
+	 * captureNode() will process one node while capturing its log output.
+	 * The captured records are left in nodeResult for the caller to publish.
+	 *
+	 * @param configuredNode the node to process.
+	 * @param nodeResult     the result to fill in.
+	 * @return nodeResult.
+	 */
+	NodeResult captureNode( Config configuredNode, NodeResult nodeResult )
+	{
+		NodeLogCapture.start( nodeResult.getLogRecords() );
+		try
+		{
+			return processNode( configuredNode, nodeResult );
+		}
+		finally
+		{
+			NodeLogCapture.stop();
+		}
+	} // End of captureNode() method.
+
+
+	/**
+	 * processNode() will update the files for one node, unless the manifest shows it is unchanged.
+	 *
+	 * @param configuredNode the node to process.
+	 * @param nodeResult     the result to fill in.
+	 * @return nodeResult.
+	 */
+	private NodeResult processNode( Config configuredNode, NodeResult nodeResult )
+	{
+		long startNanos = System.nanoTime();
+		DurableWrites.start( durability );
+		List<String> fileNameList = new ArrayList<>();
+		try
+		{
+			if( manifest != null || journal != null || prefetchDepth > 0 )
+			{
+				for( FileEdit fileEdit : JavaReplicationConfigEditor.buildFileEdits( configuredNode ) )
+					fileNameList.add( fileEdit.getFileName() );
+			}
+			if( manifest != null && manifest.isUnchanged( configuredNode, fileNameList ) )
+			{
+				nodeResult.skip();
+				executorLogger.log( Level.INFO, () -> "Skipping " + configuredNode.getBaseDirectory() + ", which is unchanged since the last run." );
+				// Note the new modification time of any file that was touched, so it is not hashed again next time.
+				manifest.record( configuredNode, fileNameList );
+			}
+			else if( journal != null && journal.isDone( configuredNode ) )
+			{
+				nodeResult.skipFinished();
+				executorLogger.log( Level.INFO, () -> "Skipping " + configuredNode.getBaseDirectory() + ", which the interrupted run already finished." );
+				if( manifest != null )
+					manifest.record( configuredNode, fileNameList );
+			}
+			else
+			{
+				if( journal != null )
+					journal.begin( configuredNode, fileNameList );
+				JavaReplicationConfigEditor.updateFiles( configuredNode, nodeResult.getFileStatusMap(), dryRun );
+				if( manifest != null )
+					manifest.record( configuredNode, fileNameList );
+			}
+		}
+		catch( NodeUpdateException nodeUpdateException )
+		{
+			nodeResult.fail( nodeUpdateException.getMessage(), nodeUpdateException.getExitCode() );
+			executorLogger.log( Level.SEVERE, nodeUpdateException.getMessage() );
+		}
+		catch( IOException ioException )
+		{
+			// Nothing has been changed yet, because the journal is written before the files.
+			nodeResult.fail( "Unable to journal " + configuredNode.getBaseDirectory() + ": " + ioException.getLocalizedMessage(), JOURNAL_FAILURE );
+			executorLogger.log( Level.SEVERE, nodeResult.getMessage() );
+		}
+		catch( RuntimeException runtimeException )
+		{
+			nodeResult.fail( runtimeException.toString(), UNEXPECTED_FAILURE );
+			executorLogger.log( Level.SEVERE, "Unexpected failure while updating " + configuredNode.getBaseDirectory(), runtimeException );
+		}
+		// Files replaced before a failure are synced too.
+		if( !DurableWrites.finish() && nodeResult.isSuccess() )
+			nodeResult.fail( "Unable to sync the directories of " + configuredNode.getBaseDirectory(), SYNC_FAILURE );
+		if( manifest != null && !nodeResult.isSuccess() )
+			manifest.forget( configuredNode );
+		if( journal != null && nodeResult.isSuccess() && !nodeResult.isSkipped() )
+			completeNode( configuredNode );
+		if( prefetchDepth > 0 )
+			FilePrefetcher.discard( fileNameList );
+		RunMetrics.recordNode( System.nanoTime() - startNanos, nodeResult, fileNameList.size() );
+		return nodeResult;
+	} // End of processNode() method.
+
+
+	/**
+	 * completeNode() will record in the journal that a node has been updated.
+	 * A node that could not be recorded is rolled back and updated again by the next run, so this is only a warning.
+	 *
+	 * @param configuredNode the node that was updated.
+	 */
+	private void completeNode( Config configuredNode )
+	{
+		try
+		{
+			journal.complete( configuredNode );
+		}
+		catch( IOException ioException )
+		{
+			String logString = "Unable to record " + configuredNode.getBaseDirectory() + " as finished in the journal: " + ioException.getLocalizedMessage();
+			executorLogger.log( Level.WARNING, logString );
+		}
+	} // End of completeNode() method.
+
+
+	/**
+	 * awaitNode() will wait for a node to finish.
+	 * The task catches every failure of the node itself, so an interrupted wait is the only way this can fail.
+	 *
+	 * @param future the task processing the node.
+	 * @return the result of the node.
+	 */
+	private static NodeResult awaitNode( Future<NodeResult> future )
+	{
+		boolean interrupted = false;
+		try
+		{
+			while( true )
+			{
+				try
+				{
+					return future.get();
+				}
+				catch( InterruptedException interruptedException )
+				{
+					// The node is writing files, so let it finish rather than abandon it half way.
+					interrupted = true;
+				}
+				catch( ExecutionException executionException )
+				{
+					throw new IllegalStateException( "A node task failed outside of processNode()", executionException.getCause() );
+				}
+			}
+		}
+		finally
+		{
+			if( interrupted )
+				Thread.currentThread().interrupt();
+		}
+	} // End of awaitNode() method.
+
+
+	/**
+	 * summarize() will log a summary of the run and return the exit code for the JVM.
+	 * The exit code is that of the first failed node in fleet order, so repeated runs over the same fleet report the same code.
+	 *
+	 * @param resultList the results of every node, in fleet order.
+	 * @return 0 if every node succeeded, or the exit code of the first failed node.
+	 */
+	static int summarize( List<NodeResult> resultList )
+	{
+		int failed = 0;
+		int skipped = 0;
+		int resumed = 0;
+		int exitCode = 0;
+		Map<FileStatus, Integer> fileCounts = new EnumMap<>( FileStatus.class );
+		for( FileStatus fileStatus : FileStatus.values() )
+			fileCounts.put( fileStatus, 0 );
+		for( NodeResult nodeResult : resultList )
+		{
+			for( FileStatus fileStatus : nodeResult.getFileStatusMap().values() )
+				fileCounts.put( fileStatus, fileCounts.get( fileStatus ) + 1 );
+			if( nodeResult.isResumed() )
+				resumed++;
+			else if( nodeResult.isSkipped() )
+				skipped++;
+			if( !nodeResult.isSuccess() )
+			{
+				failed++;
+				if( exitCode == 0 )
+					exitCode = nodeResult.getExitCode();
+				String logString = "Node " + ( nodeResult.getIndex() + 1 ) + " (" + nodeResult.getBaseDirectory() + ") failed: " + nodeResult.getMessage();
+				executorLogger.log( Level.WARNING, logString );
+			}
+		}
+		String logString = "Processed " + resultList.size() + " nodes: " + ( resultList.size() - failed - skipped - resumed ) + " succeeded, " + failed + " failed, " +
+		                   skipped + " skipped as unchanged" + ( resumed > 0 ? ", " + resumed + " skipped as already finished by the interrupted run." : "." );
+		executorLogger.log( Level.INFO, logString );
+		logString = "Files: " + fileCounts.get( FileStatus.MODIFIED ) + " modified, " + fileCounts.get( FileStatus.UNCHANGED ) + " unchanged, " +
+		            fileCounts.get( FileStatus.MISSING ) + " missing, " + fileCounts.get( FileStatus.FAILED ) + " failed.";
+		executorLogger.log( Level.INFO, logString );
+		return exitCode;
+	} // End of summarize() method.
+}
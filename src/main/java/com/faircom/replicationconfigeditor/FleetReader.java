@@ -0,0 +1,233 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * FleetReader reads a fleet configuration file one Config at a time, instead of building the whole Config[] first.<br>
+ * Nodes can be processed while the rest of the file is still being parsed, and only the nodes in flight are held in memory.<br>
+ * The file may hold a JSON array of Config objects, the same as loadConfig() expects, or a fleet descriptor object.<br>
+ * A fleet descriptor describes many similar nodes in a few lines, with these properties:<br>
+ * "defaults": the Config properties every node starts with.  It must come before "nodes" and "groups".<br>
+ * "nodes": an array of nodes, each listing only the properties that differ from the defaults.<br>
+ * "groups": an array of numbered groups of nodes, each with a count, a {n} pattern for names and directories, and port strides.  FleetTemplate describes them.<br>
+ * Group members are built one at a time as they are taken, so the time and memory to read a descriptor do not grow with the counts in it.<br>
+ * Parse errors surface from hasNext() or next() as JsonSyntaxException, and read errors as JsonIOException.
+ */
+final class FleetReader implements Iterator<Config>, Closeable
+{
+	private static final Gson GSON = new Gson();
+	private final JsonReader jsonReader;
+	private boolean started = false;
+	private boolean finished = false;
+	/**
+	 * The defaults of a fleet descriptor, or null when the file holds an array of nodes.
+	 */
+	private FleetTemplate template = null;
+	/**
+	 * The descriptor array being read, "nodes" or "groups", or null between them.
+	 */
+	private String section = null;
+	/**
+	 * The group whose members are being taken, or null.
+	 */
+	private FleetTemplate.Group group = null;
+	private boolean expanded = false;
+
+
+	/**
+	 * @param reader the Reader to parse.  It is closed when this FleetReader is closed.
+	 */
+	FleetReader( Reader reader )
+	{
+		jsonReader = new JsonReader( reader );
+		// Gson.fromJson() parses leniently, so this does too.
+		jsonReader.setLenient( true );
+	}
+
+
+	/**
+	 * open() will open a fleet configuration file for streaming.
+	 *
+	 * @param configFileName the file to open.
+	 * @return a FleetReader positioned before the first node.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	static FleetReader open( String configFileName ) throws IOException
+	{
+		return new FleetReader( new BufferedReader( new InputStreamReader( Files.newInputStream( Paths.get( configFileName ) ), StandardCharsets.UTF_8 ) ) );
+	} // End of open() method.
+
+
+	@Override
+	public boolean hasNext()
+	{
+		if( finished )
+			return false;
+		try
+		{
+			if( !started )
+			{
+				JsonToken token = jsonReader.peek();
+				if( token == JsonToken.BEGIN_OBJECT )
+				{
+					jsonReader.beginObject();
+					template = new FleetTemplate( new JsonObject() );
+				}
+				else if( token == JsonToken.BEGIN_ARRAY )
+				{
+					jsonReader.beginArray();
+				}
+				else
+				{
+					throw new JsonSyntaxException( "Expected an array of nodes or a fleet descriptor, but found " + token + " " + jsonReader.getPath() );
+				}
+				started = true;
+			}
+			if( template != null )
+				return hasNextInDescriptor();
+			if( jsonReader.hasNext() )
+				return true;
+			jsonReader.endArray();
+			if( jsonReader.peek() != JsonToken.END_DOCUMENT )
+				throw new JsonSyntaxException( "Unexpected content after the array of nodes at " + jsonReader.getPath() );
+			finished = true;
+			return false;
+		}
+		catch( MalformedJsonException | EOFException malformedException )
+		{
+			throw new JsonSyntaxException( malformedException );
+		}
+		catch( IOException ioException )
+		{
+			throw new JsonIOException( ioException );
+		}
+	}
+
+
+	/**
+	 * hasNextInDescriptor() will read a fleet descriptor up to its next node, reading "defaults" and the group entries on the way.
+	 *
+	 * @return true if a node is ready to be taken by next().
+	 * @throws IOException if the descriptor cannot be read.
+	 */
+	private boolean hasNextInDescriptor() throws IOException
+	{
+		while( true )
+		{
+			if( group != null )
+			{
+				if( group.hasNext() )
+					return true;
+				group = null;
+			}
+			if( section != null )
+			{
+				if( jsonReader.hasNext() )
+				{
+					if( "nodes".equals( section ) )
+						return true;
+					String path = jsonReader.getPath();
+					group = template.group( readEntry( "a group" ), path );
+					expanded = true;
+					continue;
+				}
+				jsonReader.endArray();
+				section = null;
+			}
+			if( !jsonReader.hasNext() )
+			{
+				jsonReader.endObject();
+				if( jsonReader.peek() != JsonToken.END_DOCUMENT )
+					throw new JsonSyntaxException( "Unexpected content after the fleet descriptor at " + jsonReader.getPath() );
+				finished = true;
+				return false;
+			}
+			String name = jsonReader.nextName();
+			switch( name )
+			{
+				case "defaults":
+					if( expanded )
+						throw new JsonSyntaxException( "The fleet defaults must come before its nodes and groups at " + jsonReader.getPath() );
+					template = new FleetTemplate( readEntry( "the fleet defaults" ) );
+					break;
+				case "nodes":
+				case "groups":
+					jsonReader.beginArray();
+					section = name;
+					break;
+				default:
+					jsonReader.skipValue();
+					break;
+			}
+		}
+	} // End of hasNextInDescriptor() method.
+
+
+	/**
+	 * readEntry() will read one object from a fleet descriptor.
+	 *
+	 * @param description what the object is, used in errors.
+	 * @return the object.
+	 * @throws JsonIOException     if the object cannot be read.
+	 * @throws JsonSyntaxException if the value is not an object.
+	 */
+	private JsonObject readEntry( String description )
+	{
+		String path = jsonReader.getPath();
+		JsonElement entry = JsonParser.parseReader( jsonReader );
+		if( !entry.isJsonObject() )
+			throw new JsonSyntaxException( "Expected " + description + ", but found " + entry + " at " + path );
+		return entry.getAsJsonObject();
+	} // End of readEntry() method.
+
+
+	@Override
+	public Config next()
+	{
+		if( !hasNext() )
+			throw new NoSuchElementException();
+		long startNanos = System.nanoTime();
+		Config configuredNode;
+		if( template == null )
+		{
+			configuredNode = GSON.fromJson( jsonReader, Config.class );
+		}
+		else if( group != null )
+		{
+			configuredNode = GSON.fromJson( group.next(), Config.class );
+		}
+		else
+		{
+			configuredNode = GSON.fromJson( template.node( readEntry( "a node" ) ), Config.class );
+			expanded = true;
+		}
+		RunMetrics.recordParse( System.nanoTime() - startNanos );
+		if( configuredNode == null )
+			throw new JsonSyntaxException( "Expected a node, but found null at " + jsonReader.getPath() );
+		return configuredNode;
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		jsonReader.close();
+	}
+}
@@ -0,0 +1,345 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.*;
+
+
+/**
+ * FleetStore holds a whole fleet in a few dense columns, instead of one Config object, with its boxed ports and String copies, per node.<br>
+ * Ports are kept in int arrays, one per port setting, with a BitSet per column that marks which nodes have a port there.
+ * sqlPort and serverPort are Strings in Config, so a plain port number such as "19801" is kept as an int, and any other text is kept as a String.<br>
+ * Every other setting is a String, and each distinct String is kept once in a dictionary.  A column holds the dictionary code of each node's value.
+ * Settings such as "config", "ctsrvr.cfg", and "MEMPHIS" are then stored once for the whole fleet.<br>
+ * get() rebuilds a node as a Config when it is needed, so only the nodes being processed exist as objects.
+ * PortRegistry reads the port columns directly, without building any Config.<br>
+ * A FleetStore is filled by one thread and then only read, so it is not synchronized.
+ */
+final class FleetStore implements Iterable<Config>
+{
+	/**
+	 * The port columns.
+	 */
+	static final int SQL_PORT = 0;
+	static final int SERVER_PORT = 1;
+	static final int LISTENING_HTTP_PORT = 2;
+	static final int LISTENING_HTTPS_PORT = 3;
+	static final int MQTT_LISTENING_PORT = 4;
+	static final int MQTT_WEBSOCKET_PORT = 5;
+	static final int MEMPHIS_SQL_PORT = 6;
+	private static final int PORT_COLUMNS = 7;
+	/**
+	 * The String columns.
+	 */
+	private static final int BASE_DIRECTORY = 0;
+	private static final int CONFIG_DIRECTORY = 1;
+	private static final int SERVER_FILE_NAME = 2;
+	private static final int SERVER_NAME = 3;
+	private static final int SERVER_PORT_TEXT = 4;
+	private static final int READ_ONLY_SERVER = 5;
+	private static final int SQL_PORT_TEXT = 6;
+	private static final int HTTP_FILE_NAME = 7;
+	private static final int AGENT_FILE_NAME = 8;
+	private static final int MEMPHIS_SERVER_NAME = 9;
+	private static final int MEMPHIS_HOST = 10;
+	private static final int MEMPHIS_DATABASE = 11;
+	private static final int REPLICATION_MANAGER_FILE_NAME = 12;
+	private static final int STRING_COLUMNS = 13;
+	/**
+	 * The code of a null String.
+	 */
+	private static final int NULL_CODE = -1;
+	/**
+	 * The code of a sqlPort or serverPort whose text is its port column, written in decimal.
+	 */
+	private static final int PORT_CODE = -2;
+	private static final int INITIAL_CAPACITY = 16;
+	private final int[][] ports = new int[PORT_COLUMNS][INITIAL_CAPACITY];
+	private final BitSet[] hasPorts = new BitSet[PORT_COLUMNS];
+	private final int[][] stringCodes = new int[STRING_COLUMNS][INITIAL_CAPACITY];
+	private final Map<String, Integer> codeMap = new HashMap<>();
+	private final List<String> dictionary = new ArrayList<>();
+	private int nodeCount = 0;
+
+
+	FleetStore()
+	{
+		for( int column = 0; column < PORT_COLUMNS; column++ )
+			hasPorts[column] = new BitSet();
+	}
+
+
+	/**
+	 * load() will store every node from an Iterator, such as a FleetReader.
+	 *
+	 * @param configIterator the nodes.
+	 * @return a FleetStore holding the nodes, in order.
+	 */
+	static FleetStore load( Iterator<Config> configIterator )
+	{
+		FleetStore fleetStore = new FleetStore();
+		while( configIterator.hasNext() )
+			fleetStore.add( configIterator.next() );
+		return fleetStore;
+	} // End of load() method.
+
+
+	/**
+	 * add() will store a node after the nodes already stored.
+	 *
+	 * @param configuredNode the node.
+	 */
+	void add( Config configuredNode )
+	{
+		if( nodeCount == stringCodes[0].length )
+			grow();
+		int node = nodeCount++;
+		setString( BASE_DIRECTORY, node, configuredNode.getBaseDirectory() );
+		setString( CONFIG_DIRECTORY, node, configuredNode.getConfigDirectory() );
+		setString( SERVER_FILE_NAME, node, configuredNode.getServerFileName() );
+		setString( SERVER_NAME, node, configuredNode.getServerName() );
+		setPortText( SERVER_PORT, SERVER_PORT_TEXT, node, configuredNode.getServerPort() );
+		setString( READ_ONLY_SERVER, node, configuredNode.getReadOnlyServer() );
+		setPortText( SQL_PORT, SQL_PORT_TEXT, node, configuredNode.getSqlPort() );
+		setString( HTTP_FILE_NAME, node, configuredNode.getHttpFileName() );
+		setPort( LISTENING_HTTP_PORT, node, configuredNode.getListeningHttpPort() );
+		setPort( LISTENING_HTTPS_PORT, node, configuredNode.getListeningHttpsPort() );
+		setPort( MQTT_LISTENING_PORT, node, configuredNode.getMqttListeningPort() );
+		setPort( MQTT_WEBSOCKET_PORT, node, configuredNode.getMqttWebsocketPort() );
+		setString( AGENT_FILE_NAME, node, configuredNode.getAgentFileName() );
+		setString( MEMPHIS_SERVER_NAME, node, configuredNode.getMemphisServerName() );
+		setPort( MEMPHIS_SQL_PORT, node, configuredNode.getMemphisSqlPort() );
+		setString( MEMPHIS_HOST, node, configuredNode.getMemphisHost() );
+		setString( MEMPHIS_DATABASE, node, configuredNode.getMemphisDatabase() );
+		setString( REPLICATION_MANAGER_FILE_NAME, node, configuredNode.getReplicationManagerFileName() );
+	} // End of add() method.
+
+
+	/**
+	 * get() will rebuild a node as a Config.
+	 * Each call returns a new Config, so changes to it, such as allocated ports, do not reach the store.
+	 *
+	 * @param node the index of the node.
+	 * @return the node.
+	 */
+	Config get( int node )
+	{
+		checkNode( node );
+		return new Config( getString( BASE_DIRECTORY, node ), getString( CONFIG_DIRECTORY, node ), getString( SERVER_FILE_NAME, node ), getString( SERVER_NAME, node ),
+		                   getPortText( SERVER_PORT, node ), getString( READ_ONLY_SERVER, node ), getPortText( SQL_PORT, node ), getString( HTTP_FILE_NAME, node ),
+		                   getPortObject( LISTENING_HTTP_PORT, node ), getPortObject( LISTENING_HTTPS_PORT, node ), getPortObject( MQTT_LISTENING_PORT, node ),
+		                   getPortObject( MQTT_WEBSOCKET_PORT, node ), getString( AGENT_FILE_NAME, node ), getString( MEMPHIS_SERVER_NAME, node ),
+		                   getPortObject( MEMPHIS_SQL_PORT, node ), getString( MEMPHIS_HOST, node ), getString( MEMPHIS_DATABASE, node ),
+		                   getString( REPLICATION_MANAGER_FILE_NAME, node ) );
+	} // End of get() method.
+
+
+	/**
+	 * iterator() will rebuild each node as a Config as it is reached, in order.
+	 *
+	 * @return an Iterator over the nodes.
+	 */
+	@Override
+	public Iterator<Config> iterator()
+	{
+		return new Iterator<Config>()
+		{
+			private int node = 0;
+
+
+			@Override
+			public boolean hasNext()
+			{
+				return node < nodeCount;
+			}
+
+
+			@Override
+			public Config next()
+			{
+				if( node >= nodeCount )
+					throw new NoSuchElementException();
+				return get( node++ );
+			}
+		};
+	} // End of iterator() method.
+
+
+	/**
+	 * hasPort() will check if a node has a port in a port column.
+	 * For SQL_PORT and SERVER_PORT, this is false when the text is not a plain port number, including when it is empty.  getPortText() then returns the text.
+	 *
+	 * @param column the port column, such as SQL_PORT.
+	 * @param node   the index of the node.
+	 * @return true if getPort() holds the port.
+	 */
+	boolean hasPort( int column, int node )
+	{
+		checkNode( node );
+		return hasPorts[column].get( node );
+	} // End of hasPort() method.
+
+
+	/**
+	 * getPort() will return a port of a node.
+	 *
+	 * @param column the port column, such as SQL_PORT.
+	 * @param node   the index of the node.
+	 * @return the port, or 0 if hasPort() is false.
+	 */
+	int getPort( int column, int node )
+	{
+		checkNode( node );
+		return ports[column][node];
+	} // End of getPort() method.
+
+
+	/**
+	 * getPortText() will return the sqlPort or serverPort of a node, exactly as the node gave it.
+	 *
+	 * @param column SQL_PORT or SERVER_PORT.
+	 * @param node   the index of the node.
+	 * @return the text of the port.
+	 */
+	String getPortText( int column, int node )
+	{
+		checkNode( node );
+		int code = stringCodes[column == SQL_PORT ? SQL_PORT_TEXT : SERVER_PORT_TEXT][node];
+		if( code == PORT_CODE )
+			return Integer.toString( ports[column][node] );
+		return code == NULL_CODE ? null : dictionary.get( code );
+	} // End of getPortText() method.
+
+
+	/**
+	 * getBaseDirectory() will return the base directory of a node, which names it in logs.
+	 *
+	 * @param node the index of the node.
+	 * @return the base directory.
+	 */
+	String getBaseDirectory( int node )
+	{
+		checkNode( node );
+		return getString( BASE_DIRECTORY, node );
+	} // End of getBaseDirectory() method.
+
+
+	int size()
+	{
+		return nodeCount;
+	}
+
+
+	/**
+	 * getDictionarySize() will return the number of distinct Strings stored.
+	 *
+	 * @return the size of the dictionary.
+	 */
+	int getDictionarySize()
+	{
+		return dictionary.size();
+	}
+
+
+	private void setString( int column, int node, String value )
+	{
+		stringCodes[column][node] = encode( value );
+	}
+
+
+	private String getString( int column, int node )
+	{
+		int code = stringCodes[column][node];
+		return code == NULL_CODE ? null : dictionary.get( code );
+	}
+
+
+	private void setPort( int column, int node, Integer value )
+	{
+		if( value != null )
+		{
+			ports[column][node] = value;
+			hasPorts[column].set( node );
+		}
+	}
+
+
+	private Integer getPortObject( int column, int node )
+	{
+		return hasPorts[column].get( node ) ? ports[column][node] : null;
+	}
+
+
+	/**
+	 * setPortText() will store a sqlPort or serverPort, as an int if it is a plain port number that reads back as the same text, or as a String otherwise.
+	 */
+	private void setPortText( int column, int textColumn, int node, String value )
+	{
+		int port = parsePlainPort( value );
+		if( port > 0 )
+		{
+			ports[column][node] = port;
+			hasPorts[column].set( node );
+			stringCodes[textColumn][node] = PORT_CODE;
+		}
+		else
+		{
+			stringCodes[textColumn][node] = encode( value );
+		}
+	}
+
+
+	/**
+	 * parsePlainPort() will read a port written as 1 to 5 digits, without a leading zero or spaces, from 1 to 65535.
+	 *
+	 * @return the port, or 0 if the text is anything else.
+	 */
+	private static int parsePlainPort( String value )
+	{
+		if( value == null || value.isEmpty() || value.length() > 5 || value.charAt( 0 ) == '0' )
+			return 0;
+		int port = 0;
+		for( int i = 0; i < value.length(); i++ )
+		{
+			char c = value.charAt( i );
+			if( c < '0' || c > '9' )
+				return 0;
+			port = port * 10 + ( c - '0' );
+		}
+		return port <= 65535 ? port : 0;
+	}
+
+
+	/**
+	 * encode() will return the dictionary code of a String, adding it to the dictionary the first time it is seen.
+	 */
+	private int encode( String value )
+	{
+		if( value == null )
+			return NULL_CODE;
+		Integer code = codeMap.get( value );
+		if( code == null )
+		{
+			code = dictionary.size();
+			dictionary.add( value );
+			codeMap.put( value, code );
+		}
+		return code;
+	}
+
+
+	private void grow()
+	{
+		int capacity = stringCodes[0].length * 2;
+		for( int column = 0; column < PORT_COLUMNS; column++ )
+			ports[column] = Arrays.copyOf( ports[column], capacity );
+		for( int column = 0; column < STRING_COLUMNS; column++ )
+			stringCodes[column] = Arrays.copyOf( stringCodes[column], capacity );
+	}
+
+
+	private void checkNode( int node )
+	{
+		if( node < 0 || node >= nodeCount )
+			throw new IndexOutOfBoundsException( "Node " + node + " of " + nodeCount );
+	}
+}
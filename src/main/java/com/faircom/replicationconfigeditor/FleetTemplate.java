@@ -0,0 +1,206 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * FleetTemplate holds the shared defaults of a fleet descriptor, and builds the properties of each node from them.<br>
+ * A node entry only lists what differs from the defaults.  Its properties replace the default properties of the same name.<br>
+ * A group entry describes many nodes at once, with these properties on top of the Config properties:<br>
+ * "count": the number of nodes in the group.<br>
+ * "first": the number of the first node, used for {n}.  Defaults to 1.<br>
+ * "strides": how much each numbered property grows per node, such as { "sqlPort": 10, "mqttListeningPort": 1 }.<br>
+ * Every occurrence of {n} in a String property is replaced with the node number, so "baseDirectory": "/fleet/FAIRCOM{n}" gives each node its own directory.
+ * A property with a stride starts at its value in the group or the defaults, and that value may be a number or a quoted number.
+ * Every value a stride gives must be a port, from 1 to 65535, which is checked before the first member is built.<br>
+ * Strides apply to the property of the same name only, so a stride for "listeningHttpPort" does not change "http_port".<br>
+ * The members of a group are built one at a time as they are needed, so a group of any size holds one node's worth of properties.
+ */
+final class FleetTemplate
+{
+	static final String NODE_NUMBER = "{n}";
+	private final JsonObject defaults;
+
+
+	/**
+	 * @param defaults the properties every node starts with.
+	 */
+	FleetTemplate( JsonObject defaults )
+	{
+		this.defaults = defaults;
+	}
+
+
+	/**
+	 * node() will build the properties of one node entry.
+	 *
+	 * @param entry the properties listed for the node.
+	 * @return the defaults, with the properties of entry in their place.
+	 */
+	JsonObject node( JsonObject entry )
+	{
+		JsonObject node = new JsonObject();
+		for( Map.Entry<String, JsonElement> property : defaults.entrySet() )
+			node.add( property.getKey(), property.getValue() );
+		for( Map.Entry<String, JsonElement> property : entry.entrySet() )
+			node.add( property.getKey(), property.getValue() );
+		return node;
+	} // End of node() method.
+
+
+	/**
+	 * group() will prepare the members of a group entry to be built.
+	 *
+	 * @param entry the group entry.
+	 * @param path  where the entry is in the descriptor, used in errors.
+	 * @return the group, positioned before its first member.
+	 * @throws JsonSyntaxException if the count, first number, or a stride is invalid, a stride has no starting value, or a stride gives a member a value that is not a port.
+	 */
+	Group group( JsonObject entry, String path )
+	{
+		int count = readInt( entry.remove( "count" ), "count", path );
+		if( count < 0 )
+			throw new JsonSyntaxException( "The group count must not be negative at " + path );
+		JsonElement firstElement = entry.remove( "first" );
+		int first = firstElement == null ? 1 : readInt( firstElement, "first", path );
+		JsonElement stridesElement = entry.remove( "strides" );
+		JsonObject base = node( entry );
+
+		List<String> numberedNames = new ArrayList<>();
+		for( Map.Entry<String, JsonElement> property : base.entrySet() )
+		{
+			JsonElement value = property.getValue();
+			if( value.isJsonPrimitive() && value.getAsJsonPrimitive().isString() && value.getAsString().contains( NODE_NUMBER ) )
+				numberedNames.add( property.getKey() );
+		}
+
+		List<String> strideNames = new ArrayList<>();
+		List<Integer> strideList = new ArrayList<>();
+		if( stridesElement != null && !stridesElement.isJsonNull() )
+		{
+			if( !stridesElement.isJsonObject() )
+				throw new JsonSyntaxException( "Expected an object of strides at " + path );
+			for( Map.Entry<String, JsonElement> stride : stridesElement.getAsJsonObject().entrySet() )
+			{
+				String name = stride.getKey();
+				if( !base.has( name ) || base.get( name ).isJsonNull() )
+					throw new JsonSyntaxException( "The stride for \"" + name + "\" has no starting value in the group or the defaults at " + path );
+				int start = readInt( base.get( name ), name, path );
+				int strideValue = readInt( stride.getValue(), "strides." + name, path );
+				checkPortRange( name, start, strideValue, count, path );
+				strideNames.add( name );
+				strideList.add( strideValue );
+			}
+		}
+		int[] strides = new int[strideList.size()];
+		for( int i = 0; i < strides.length; i++ )
+			strides[i] = strideList.get( i );
+		return new Group( base, count, first, numberedNames.toArray( new String[0] ), strideNames.toArray( new String[0] ), strides );
+	} // End of group() method.
+
+
+	/**
+	 * checkPortRange() will check that every member of a group gets a valid port from a stride.
+	 * The values change steadily from the first member to the last, so only those two need checking.
+	 *
+	 * @throws JsonSyntaxException if the first or last value is not from 1 to 65535.
+	 */
+	private static void checkPortRange( String name, int start, int stride, int count, String path )
+	{
+		if( count == 0 )
+			return;
+		long last = start + (long) ( count - 1 ) * stride;
+		if( start < 1 || start > 65535 )
+			throw new JsonSyntaxException( "The group at " + path + " starts \"" + name + "\" at " + start + ", which is not a port from 1 to 65535" );
+		if( last < 1 || last > 65535 )
+			throw new JsonSyntaxException( "The group at " + path + " gives \"" + name + "\" a value of " + last + " for its last member, which is not a port from 1 to 65535.  Check \"count\" and \"strides." + name + "\"" );
+	} // End of checkPortRange() method.
+
+
+	/**
+	 * readInt() will read a whole number that may be quoted, as ports are.
+	 *
+	 * @throws JsonSyntaxException if the value is missing or not an int.
+	 */
+	private static int readInt( JsonElement value, String name, String path )
+	{
+		try
+		{
+			if( value != null && value.isJsonPrimitive() && !value.getAsJsonPrimitive().isBoolean() )
+				return Integer.parseInt( value.getAsString().trim() );
+		}
+		catch( NumberFormatException numberFormatException )
+		{
+			// Reported below.
+		}
+		throw new JsonSyntaxException( "Expected a whole number for \"" + name + "\", but found " + value + " at " + path );
+	} // End of readInt() method.
+
+
+	/**
+	 * A Group builds the members of one group entry, in order.
+	 */
+	static final class Group
+	{
+		private final JsonObject base;
+		private final int count;
+		private final int first;
+		private final String[] numberedNames;
+		private final String[] strideNames;
+		private final int[] strides;
+		private int index = 0;
+
+
+		private Group( JsonObject base, int count, int first, String[] numberedNames, String[] strideNames, int[] strides )
+		{
+			this.base = base;
+			this.count = count;
+			this.first = first;
+			this.numberedNames = numberedNames;
+			this.strideNames = strideNames;
+			this.strides = strides;
+		}
+
+
+		boolean hasNext()
+		{
+			return index < count;
+		}
+
+
+		/**
+		 * next() will build the properties of the next member.
+		 * A quoted starting value stays quoted, so sqlPort and serverPort remain Strings.
+		 *
+		 * @return the properties of the member.
+		 */
+		JsonObject next()
+		{
+			JsonObject node = new JsonObject();
+			for( Map.Entry<String, JsonElement> property : base.entrySet() )
+				node.add( property.getKey(), property.getValue() );
+			String number = Integer.toString( first + index );
+			for( String name : numberedNames )
+				node.addProperty( name, base.get( name ).getAsString().replace( NODE_NUMBER, number ) );
+			for( int i = 0; i < strideNames.length; i++ )
+			{
+				JsonPrimitive start = base.getAsJsonPrimitive( strideNames[i] );
+				long value = Long.parseLong( start.getAsString().trim() ) + (long) index * strides[i];
+				if( start.isString() )
+					node.addProperty( strideNames[i], Long.toString( value ) );
+				else
+					node.addProperty( strideNames[i], value );
+			}
+			index++;
+			return node;
+		} // End of next() method.
+	}
+}
@@ -0,0 +1,187 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * FleetWatcher keeps running after the first pass, and re-applies the fleet file every time it is saved.<br>
+ * Only nodes that were added or changed since the previous pass are processed.  Nodes are matched by their base directory,
+ * and compared by a hash of their Config entry, so reordering the fleet file does not count as a change.<br>
+ * Saves are debounced: after a change, the file must be quiet for the debounce period before it is read, so an editor that writes in several steps only triggers one pass.<br>
+ * A node that fails, or that a serial run never reached, is retried on the next change.  Nodes removed from the fleet file are reported, and their files are left alone.<br>
+ * A fleet file that cannot be parsed, or that has port conflicts, is skipped until it is saved again.<br>
+ * Each pass that processes nodes replaces the run report with its own RunMetrics, so the report always describes the latest pass.
+ */
+class FleetWatcher
+{
+	private static final Logger watchLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private final RunOptions options;
+	private final FleetExecutor fleetExecutor;
+	/**
+	 * The incremental run manifest, or null if there is none.
+	 */
+	private final RunManifest manifest;
+	/**
+	 * The Config hash of each node that was applied successfully, keyed by base directory.
+	 */
+	private Map<String, String> nodeHashMap = new HashMap<>();
+
+
+	/**
+	 * @param options       the command line options.
+	 * @param fleetExecutor the executor to process changed nodes with.
+	 * @param manifest      the incremental run manifest, or null.
+	 */
+	FleetWatcher( RunOptions options, FleetExecutor fleetExecutor, RunManifest manifest )
+	{
+		this.options = options;
+		this.fleetExecutor = fleetExecutor;
+		this.manifest = manifest;
+	}
+
+
+	/**
+	 * watch() will apply the whole fleet, then wait for changes to the fleet file and apply them, until the thread is interrupted.
+	 *
+	 * @throws IOException          if the directory of the fleet file cannot be watched.
+	 * @throws InterruptedException if the thread is interrupted while waiting for a change.
+	 */
+	void watch() throws IOException, InterruptedException
+	{
+		Path configPath = Paths.get( options.getConfigFileName() ).toAbsolutePath();
+		Path directory = configPath.getParent();
+		Path fileName = configPath.getFileName();
+		try( WatchService watchService = directory.getFileSystem().newWatchService() )
+		{
+			// Register before the first pass, so a save made during it is not missed.
+			directory.register( watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY );
+			applyChanges();
+			while( true )
+			{
+				String logString = "Watching \"" + configPath + "\" for changes.  Press Ctrl+C to stop.";
+				watchLogger.log( Level.INFO, logString );
+				while( !isRelevant( watchService.take(), fileName ) )
+				{
+					// Some other file in the directory changed.
+				}
+				WatchKey watchKey;
+				while( ( watchKey = watchService.poll( options.getWatchDebounce(), TimeUnit.MILLISECONDS ) ) != null )
+					isRelevant( watchKey, fileName );
+				applyChanges();
+			}
+		}
+	} // End of watch() method.
+
+
+	/**
+	 * isRelevant() will check if a WatchKey has any events for the fleet file, and reset it.
+	 *
+	 * @param watchKey the signalled key.
+	 * @param fileName the name of the fleet file, without its directory.
+	 * @return true if the fleet file may have changed.
+	 * @throws IOException if the directory can no longer be watched.
+	 */
+	private static boolean isRelevant( WatchKey watchKey, Path fileName ) throws IOException
+	{
+		boolean relevant = false;
+		for( WatchEvent<?> watchEvent : watchKey.pollEvents() )
+		{
+			// An overflow means events were lost, so any of them could have been the fleet file.
+			if( watchEvent.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals( watchEvent.context() ) )
+				relevant = true;
+		}
+		if( !watchKey.reset() )
+			throw new IOException( "The directory of the fleet file can no longer be watched" );
+		return relevant;
+	} // End of isRelevant() method.
+
+
+	/**
+	 * applyChanges() will read the fleet file, and process every node that was added or changed since the last pass.
+	 */
+	void applyChanges()
+	{
+		String configFileName = options.getConfigFileName();
+		RunMetrics runMetrics = RunMetrics.start();
+		List<Config> changedList = new ArrayList<>();
+		Map<String, String> newHashMap = new HashMap<>();
+		try
+		{
+			PortRegistry portRegistry = null;
+			if( options.isCheckPorts() )
+			{
+				portRegistry = JavaReplicationConfigEditor.checkPorts( configFileName, options.getPortAllocationBase() );
+				if( !portRegistry.report() )
+				{
+					watchLogger.log( Level.SEVERE, "The fleet has port conflicts or invalid ports.  No files were changed." );
+					return;
+				}
+			}
+			try( FleetReader fleetReader = FleetReader.open( configFileName ) )
+			{
+				Iterator<Config> configIterator = portRegistry == null ? fleetReader : portRegistry.assignPorts( fleetReader );
+				while( configIterator.hasNext() )
+				{
+					Config configuredNode = configIterator.next();
+					// Hash after any port allocation, so a node whose allocated port moves counts as changed.
+					String configHash = RunManifest.configHash( configuredNode );
+					newHashMap.put( configuredNode.getBaseDirectory(), configHash );
+					if( !configHash.equals( nodeHashMap.get( configuredNode.getBaseDirectory() ) ) )
+						changedList.add( configuredNode );
+				}
+			}
+		}
+		catch( IOException | JsonParseException exception )
+		{
+			String logString = "Unable to read \"" + configFileName + "\": " + exception.getLocalizedMessage() + "  Waiting for the next change.";
+			watchLogger.log( Level.SEVERE, logString );
+			return;
+		}
+
+		for( String baseDirectory : nodeHashMap.keySet() )
+		{
+			if( !newHashMap.containsKey( baseDirectory ) )
+			{
+				String logString = baseDirectory + " was removed from the fleet.  Its files are left as they are.";
+				watchLogger.log( Level.INFO, logString );
+			}
+		}
+		if( changedList.isEmpty() )
+		{
+			watchLogger.log( Level.INFO, "No nodes were added or changed." );
+			nodeHashMap = newHashMap;
+			return;
+		}
+		String logString = changedList.size() + " of " + newHashMap.size() + " nodes were added or changed.";
+		watchLogger.log( Level.INFO, logString );
+
+		List<NodeResult> resultList = fleetExecutor.run( changedList.iterator() );
+		FleetExecutor.summarize( resultList );
+		if( manifest != null )
+			JavaReplicationConfigEditor.saveManifest( manifest, options.getManifestFileName() );
+		runMetrics.stop();
+		runMetrics.writeReport( options.getMetricsFileName(), options.getPrometheusFileName() );
+
+		// Forget nodes that failed or were never reached, so the next pass retries them.
+		Set<String> succeeded = new HashSet<>();
+		for( NodeResult nodeResult : resultList )
+		{
+			if( nodeResult.isSuccess() )
+				succeeded.add( nodeResult.getBaseDirectory() );
+		}
+		for( Config configuredNode : changedList )
+		{
+			if( !succeeded.contains( configuredNode.getBaseDirectory() ) )
+				newHashMap.remove( configuredNode.getBaseDirectory() );
+		}
+		nodeHashMap = newHashMap;
+	} // End of applyChanges() method.
+}
@@ -2,17 +2,20 @@ package main.java.com.faircom.replicationconfigeditor;
 
 
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.logging.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 /**
@@ -28,10 +31,13 @@ import java.util.regex.Pattern;
 public class JavaReplicationConfigEditor
 {
 	private static final Logger mainLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
-	private static final ConsoleHandler singleLine = new ConsoleHandler();
-	private static final ConsoleHandler tripleLine = new ConsoleHandler();
 	private static final String FILE_SEP = System.getProperty( "file.separator" );
 	private static final String BUILD_TIME = "main() - build 2022-02-22 08:58";
+	/**
+	 * The version of the rules used to edit files.  Raise this whenever a change could give an edited file different contents.
+	 * An incremental run only trusts a manifest written with the same rules, so the next run after a change re-applies every node.
+	 */
+	static final int EDIT_RULES_VERSION = 2;
 	private static final String DATE = new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss" ).format( new Date() );
 	private static final String UPDATING = "Updating ";
 	private static final String UNABLE_TO_UPDATE = "Unable to update \"";
@@ -39,8 +45,16 @@ public class JavaReplicationConfigEditor
 
 	public static void main( String[] args )
 	{
-		mainLogger.setUseParentHandlers( false );
-		mainLogger.addHandler( singleLine );
+		RunOptions options = new RunOptions();
+		try
+		{
+			options = RunOptions.parse( args );
+			EditorLogging.configure( options.getLogLevel(), options.getJsonLogFileName() );
+		}
+		catch( IllegalArgumentException | IOException exception )
+		{
+			exiting( exception.getMessage(), -9 );
+		}
 
 		String logString = "Welcome to Java Replication Config Editor!";
 		mainLogger.log( Level.INFO, logString );
@@ -48,23 +62,123 @@ public class JavaReplicationConfigEditor
 		logString = "Program initiated at " + DATE;
 		mainLogger.log( Level.INFO, logString );
 
-		String configFileName = "config.json";
-		if( args.length > 0 )
+		if( options.isDaemon() )
 		{
-			configFileName = args[0];
+			try
+			{
+				new DaemonServer( options.getDaemonPort(), options.getDurability() ).start();
+			}
+			catch( IOException ioException )
+			{
+				exiting( "Unable to listen on port " + options.getDaemonPort() + ": " + ioException.getLocalizedMessage(), -13 );
+			}
+			return;
 		}
+
+		String configFileName = options.getConfigFileName();
 		if( validateConfigFileName( configFileName ) )
 		{
-			Config[] configArray = loadConfig( configFileName );
-			if( configArray.length == 0 )
+			FleetExecutor fleetExecutor = new FleetExecutor( options.getParallelism() );
+			if( options.getParallelism() > 1 )
 			{
-				exiting( "Unable to parse the JSON in \"" + configFileName + "\" into an Array of Config class objects.", -1 );
+				logString = "Processing nodes with a parallelism of " + options.getParallelism();
+				mainLogger.log( Level.INFO, logString );
+			}
+			fleetExecutor.setDryRun( options.isDryRun() );
+			fleetExecutor.setDurability( options.getDurability() );
+			fleetExecutor.setPrefetchDepth( options.getPrefetchDepth() );
+			// A dry run changes nothing, so there is nothing for the manifest to record.
+			RunManifest manifest = null;
+			if( options.isIncremental() && !options.isDryRun() )
+			{
+				manifest = RunManifest.load( options.getManifestFileName() );
+				fleetExecutor.setManifest( manifest );
+			}
+			if( options.isWatch() )
+			{
+				try
+				{
+					new FleetWatcher( options, fleetExecutor, manifest ).watch();
+				}
+				catch( IOException ioException )
+				{
+					exiting( "Unable to watch \"" + configFileName + "\": " + ioException.getLocalizedMessage(), -12 );
+				}
+				catch( InterruptedException interruptedException )
+				{
+					Thread.currentThread().interrupt();
+				}
+				return;
+			}
+
+			// A dry run changes nothing, so there is nothing to roll back or resume.
+			RunJournal journal = null;
+			if( options.isResume() && !options.isDryRun() )
+			{
+				try
+				{
+					journal = RunJournal.open( options.getJournalFileName(), options.getDurability() );
+					fleetExecutor.setJournal( journal );
+				}
+				catch( IOException ioException )
+				{
+					exiting( "Unable to open the journal \"" + options.getJournalFileName() + "\": " + ioException.getLocalizedMessage(), -15 );
+				}
 			}
-			// Parse all configured nodes.
-			for( Config configuredNode : configArray )
+
+			RunMetrics runMetrics = RunMetrics.start();
+			// Stream the nodes from the fleet file, so processing starts before the whole file has been parsed.
+			List<NodeResult> resultList = new ArrayList<>();
+			String loadFailure = "";
+			int loadExitCode = 0;
+			try
 			{
-				updateFiles( configuredNode );
+				PortRegistry portRegistry = null;
+				if( options.isCheckPorts() )
+					portRegistry = checkPorts( configFileName, options.getPortAllocationBase() );
+				if( portRegistry == null || portRegistry.report() )
+				{
+					try( FleetReader fleetReader = FleetReader.open( configFileName ) )
+					{
+						resultList = fleetExecutor.run( portRegistry == null ? fleetReader : portRegistry.assignPorts( fleetReader ) );
+					}
+				}
+				else
+				{
+					loadFailure = "The fleet has port conflicts or invalid ports.  No files were changed.";
+					loadExitCode = -11;
+				}
 			}
+			catch( JsonSyntaxException jsonSyntaxException )
+			{
+				logString = "The configuration file is malformed and unusable!";
+				mainLogger.log( Level.SEVERE, logString );
+				loadFailure = jsonSyntaxException.getLocalizedMessage();
+				loadExitCode = -8;
+			}
+			catch( IOException | JsonIOException exception )
+			{
+				logString = "Unable to read configuration file \"" + configFileName + "\"!";
+				mainLogger.log( Level.SEVERE, logString );
+				loadFailure = exception.getLocalizedMessage();
+				loadExitCode = -7;
+			}
+			// Nodes finished before a parse error are still recorded.
+			if( manifest != null )
+				saveManifest( manifest, options.getManifestFileName() );
+			if( journal != null )
+				closeJournal( journal, options.getJournalFileName(), loadExitCode == 0 && isComplete( resultList ) );
+			runMetrics.stop();
+			runMetrics.writeReport( options.getMetricsFileName(), options.getPrometheusFileName() );
+			if( loadExitCode != 0 )
+				exiting( loadFailure, loadExitCode );
+			if( resultList.isEmpty() )
+				exiting( "Unable to parse the JSON in \"" + configFileName + "\" into an Array of Config class objects.", -1 );
+			int exitCode = FleetExecutor.summarize( resultList );
+			if( options.isDryRun() )
+				mainLogger.log( Level.INFO, "Dry run: no files were written." );
+			if( exitCode != 0 )
+				exiting( "One or more nodes could not be updated.", exitCode );
 		}
 		else
 		{
@@ -73,51 +187,190 @@ public class JavaReplicationConfigEditor
 	} // End of main() method.
 
 
+	/**
+	 * checkPorts() will register the ports of every node in the fleet, and allocate ports for nodes that leave them blank.
+	 * This reads the fleet file once on its own, so conflicts are known before any node is processed.
+	 *
+	 * @param configFileName     the fleet configuration file.
+	 * @param portAllocationBase the lowest port to allocate, or 0 to allocate nothing.
+	 * @return the registry, ready for report() and assignPorts().
+	 * @throws IOException if the file cannot be read.
+	 */
+	static PortRegistry checkPorts( String configFileName, int portAllocationBase ) throws IOException
+	{
+		PortRegistry portRegistry = new PortRegistry();
+		try( FleetReader fleetReader = FleetReader.open( configFileName ) )
+		{
+			while( fleetReader.hasNext() )
+				portRegistry.register( fleetReader.next() );
+		}
+		if( portAllocationBase > 0 )
+			portRegistry.allocate( portAllocationBase );
+		return portRegistry;
+	} // End of checkPorts() method.
+
+
+	/**
+	 * saveManifest() will write the incremental run manifest, logging any failure.
+	 * A manifest that cannot be saved only costs the next run its shortcuts, so this does not stop the program.
+	 *
+	 * @param manifest         the manifest to save.
+	 * @param manifestFileName the file it is saved to, used in the log.
+	 */
+	static void saveManifest( RunManifest manifest, String manifestFileName )
+	{
+		try
+		{
+			manifest.save();
+		}
+		catch( IOException ioException )
+		{
+			String logString = "Unable to save the manifest \"" + manifestFileName + "\": " + ioException.getLocalizedMessage();
+			mainLogger.log( Level.WARNING, logString );
+		}
+	} // End of saveManifest() method.
+
+
+	/**
+	 * closeJournal() will delete the journal after a complete run, or keep it so the next run can resume.
+	 *
+	 * @param journal         the journal.
+	 * @param journalFileName the journal file, used in the log.
+	 * @param complete        true if every node of the fleet was updated.
+	 */
+	private static void closeJournal( RunJournal journal, String journalFileName, boolean complete )
+	{
+		try
+		{
+			if( complete )
+			{
+				journal.discard();
+				return;
+			}
+			journal.close();
+			String logString = "The journal \"" + journalFileName + "\" was kept.  Run again with --resume to roll back any half-applied node and continue from the first unfinished one.";
+			mainLogger.log( Level.INFO, logString );
+		}
+		catch( IOException ioException )
+		{
+			String logString = "Unable to close the journal \"" + journalFileName + "\": " + ioException.getLocalizedMessage();
+			mainLogger.log( Level.WARNING, logString );
+		}
+	} // End of closeJournal() method.
+
+
+	/**
+	 * isComplete() will check if a run updated every node it read.
+	 *
+	 * @param resultList the results of the run.
+	 * @return true if there is at least one result, and every node succeeded.
+	 */
+	private static boolean isComplete( List<NodeResult> resultList )
+	{
+		if( resultList.isEmpty() )
+			return false;
+		for( NodeResult nodeResult : resultList )
+		{
+			if( !nodeResult.isSuccess() )
+				return false;
+		}
+		return true;
+	} // End of isComplete() method.
+
+
 	/**
 	 * updateFiles() will take a Config class object and change the files it has configured.
 	 *
 	 * @param configuredNode the Config class object to process.
+	 * @return the status of each file, in the order they were processed.
+	 * @throws NodeUpdateException if one of the configured files could not be updated.
 	 * @see main.java.com.faircom.replicationconfigeditor.Config
 	 */
-	public static void updateFiles( Config configuredNode )
+	public static Map<String, FileStatus> updateFiles( Config configuredNode )
+	{
+		Map<String, FileStatus> fileStatusMap = new LinkedHashMap<>();
+		updateFiles( configuredNode, fileStatusMap, false );
+		return fileStatusMap;
+	} // End of updateFiles() method.
+
+
+	/**
+	 * This version of updateFiles() records the status of each file in a Map supplied by the caller.
+	 * Files processed before a failure are still recorded when NodeUpdateException is thrown.
+	 * In a dry run no file is written.  Instead, the changes each file would get are logged as a unified diff.
+	 *
+	 * @param configuredNode the Config class object to process.
+	 * @param fileStatusMap  the Map to record the status of each file in.
+	 * @param dryRun         true to only log the changes.
+	 * @throws NodeUpdateException if one of the configured files could not be updated, or in a dry run, could not be read.
+	 */
+	static void updateFiles( Config configuredNode, Map<String, FileStatus> fileStatusMap, boolean dryRun )
 	{
 		String logString = "updateFiles()";
 		mainLogger.log( Level.FINE, logString );
+
+		List<FileEdit> fileEditList = buildFileEdits( configuredNode );
+		for( int i = 0; i < fileEditList.size(); i++ )
+		{
+			FileEdit fileEdit = fileEditList.get( i );
+			logString = UPDATING + fileEdit.getFileName();
+			// Add a few blank lines before the first file of each node.
+			if( i == 0 )
+				mainLogger.log( Level.INFO, logString, EditorLogging.SECTION );
+			else
+				mainLogger.log( Level.INFO, logString );
+			FileMeter.start();
+			if( dryRun )
+			{
+				StringBuilder diff = new StringBuilder();
+				FileStatus fileStatus = fileEdit.preview( diff );
+				FileMeter.finish( fileStatus );
+				if( fileStatus == FileStatus.MODIFIED )
+					mainLogger.log( Level.INFO, () -> "\t" + fileEdit.getFileName() + " would be modified:" + System.lineSeparator() + diff );
+				recordStatus( fileEdit.getFileName(), fileStatus, fileEdit.getExitCode(), fileStatusMap, false );
+			}
+			else
+			{
+				FileStatus fileStatus = fileEdit.apply();
+				FileMeter.finish( fileStatus );
+				recordStatus( fileEdit.getFileName(), fileStatus, fileEdit.getExitCode(), fileStatusMap, true );
+			}
+		}
+	} // End of updateFiles() method.
+
+
+	/**
+	 * buildFileEdits() will list the files of a node, each with the pipeline that updates it.
+	 *
+	 * @param configuredNode the Config class object to process.
+	 * @return the files to update, in the order they should be processed.
+	 */
+	static List<FileEdit> buildFileEdits( Config configuredNode )
+	{
+		String logString = "buildFileEdits()";
+		mainLogger.log( Level.FINE, logString );
 		String configDirectory = configuredNode.getBaseDirectory() + FILE_SEP + configuredNode.getConfigDirectory();
+		List<FileEdit> fileEditList = new ArrayList<>( 4 );
 
 		// ctsrvr.cfg section.
 		String serverConfigFileName = configDirectory + FILE_SEP + configuredNode.getServerFileName();
 		Map<String, Object> serverConfigMap = buildServerConfigMap( configuredNode );
-		// Add a few blank lines before this next log.
-		singleToTriple();
-		logString = UPDATING + serverConfigFileName;
-		mainLogger.log( Level.INFO, logString );
-		// Revert to single line logging.
-		tripleToSingle();
-		if( updateConfig( serverConfigFileName, serverConfigMap, false ) )
-		{
-			// Remove comments from lines that load required plugins.
-			clearComment( serverConfigFileName, "cthttpd." );
-			clearComment( serverConfigFileName, "ctagent." );
-		}
-		else
-			exiting( UNABLE_TO_UPDATE + serverConfigFileName + "\"", -3 );
+		// Update the keys and remove comments from lines that load required plugins, all in one pass over the file.
+		EditPipeline serverPipeline = new EditPipeline( Arrays.asList(
+			new KeyReplaceOperation( serverConfigMap, lineSuffix( serverConfigFileName ), false ),
+			new ClearCommentOperation( "cthttpd." ),
+			new ClearCommentOperation( "ctagent." ) ) );
+		fileEditList.add( new FileEdit( serverConfigFileName, serverPipeline, -3 ) );
 
 		// cthttpd.json configuration section.
 		String httpConfigFileName = configDirectory + FILE_SEP + configuredNode.getHttpFileName();
 		Map<String, Object> httpConfigMap = buildHTTPConfigMap( configuredNode );
-		logString = UPDATING + httpConfigFileName;
-		mainLogger.log( Level.INFO, logString );
-		if( !updateConfig( httpConfigFileName, httpConfigMap, false ) )
-			exiting( UNABLE_TO_UPDATE + httpConfigFileName + "\"", -4 );
+		fileEditList.add( new FileEdit( httpConfigFileName, keyReplaceEditor( httpConfigFileName, httpConfigMap, false ), -4 ) );
 
 		// ctagent.json configuration section.
 		String agentConfigFileName = configDirectory + FILE_SEP + configuredNode.getAgentFileName();
 		Map<String, Object> agentConfigMap = buildAgentConfigMap( configuredNode );
-		logString = UPDATING + agentConfigFileName;
-		mainLogger.log( Level.INFO, logString );
-		if( !updateConfig( agentConfigFileName, agentConfigMap, false ) )
-			exiting( UNABLE_TO_UPDATE + agentConfigFileName + "\"", -5 );
+		fileEditList.add( new FileEdit( agentConfigFileName, keyReplaceEditor( agentConfigFileName, agentConfigMap, false ), -5 ) );
 
 		// Replication Manager is the only node that has ctReplicationManager.cfg.
 		if( !configuredNode.getReplicationManagerFileName().isEmpty() )
@@ -129,12 +382,64 @@ public class JavaReplicationConfigEditor
 			replicationManagerConfigMap.put( "MEMPHIS_SQL_PORT", configuredNode.getMemphisSqlPort().toString() );
 			replicationManagerConfigMap.put( "MEMPHIS_HOST", configuredNode.getMemphisHost() );
 			replicationManagerConfigMap.put( "MEMPHIS_DATABASE", configuredNode.getMemphisDatabase() );
-			logString = UPDATING + replicationManagerConfigFileName;
-			mainLogger.log( Level.INFO, logString );
-			if( !updateConfig( replicationManagerConfigFileName, replicationManagerConfigMap, true ) )
-				exiting( UNABLE_TO_UPDATE + replicationManagerConfigFileName + "\"", -6 );
+			EditPipeline replicationManagerPipeline = keyReplacePipeline( replicationManagerConfigFileName, replicationManagerConfigMap, true );
+			fileEditList.add( new FileEdit( replicationManagerConfigFileName, replicationManagerPipeline, -6 ) );
 		}
-	} // End of updateFiles() method.
+		return fileEditList;
+	} // End of buildFileEdits() method.
+
+
+	/**
+	 * keyReplaceEditor() will build the editor that sets every key of configMap in a file.
+	 * JSON files are edited token by token, which keeps them valid no matter how they are laid out.  Other files are edited line by line with fixLine().
+	 *
+	 * @param fileName   the file the editor will edit.
+	 * @param configMap  a map containing keys to search for and values to set.
+	 * @param startsWith flag to indicate the line should start with the key, instead of just containing the key.  JSON files ignore this.
+	 * @return the editor.
+	 */
+	static FileEditor keyReplaceEditor( String fileName, Map<String, Object> configMap, boolean startsWith )
+	{
+		EditPipeline linePipeline = keyReplacePipeline( fileName, configMap, startsWith );
+		if( fileName.endsWith( "json" ) )
+			return JsonEditor.forKeyMap( configMap, linePipeline );
+		return linePipeline;
+	} // End of keyReplaceEditor() method.
+
+
+	/**
+	 * keyReplacePipeline() will build a pipeline that only runs fixLine() over a file.
+	 *
+	 * @param fileName   the file the pipeline will edit.
+	 * @param configMap  a map containing keys to search for and values to append to those keys.
+	 * @param startsWith flag to indicate the line should start with the key, instead of just containing the key.
+	 * @return the pipeline.
+	 */
+	static EditPipeline keyReplacePipeline( String fileName, Map<String, Object> configMap, boolean startsWith )
+	{
+		EditOperation keyReplace = new KeyReplaceOperation( configMap, lineSuffix( fileName ), startsWith );
+		return new EditPipeline( Collections.singletonList( keyReplace ) );
+	} // End of keyReplacePipeline() method.
+
+
+	/**
+	 * recordStatus() will log and record the status of a file, and fail the node if the file was not updated.
+	 *
+	 * @param fileName      the file that was processed.
+	 * @param fileStatus    the status of the file.
+	 * @param exitCode      the exit code to fail with if the file was not updated.
+	 * @param fileStatusMap the Map to record the status in.
+	 * @param logModified   false if a MODIFIED status has already been logged along with its changes.
+	 * @throws NodeUpdateException if the file is missing or could not be rewritten.
+	 */
+	private static void recordStatus( String fileName, FileStatus fileStatus, int exitCode, Map<String, FileStatus> fileStatusMap, boolean logModified )
+	{
+		fileStatusMap.put( fileName, fileStatus );
+		if( logModified || fileStatus != FileStatus.MODIFIED )
+			mainLogger.log( Level.INFO, () -> "\t" + fileName + " is " + fileStatus + "." );
+		if( !fileStatus.isUpdated() )
+			throw new NodeUpdateException( UNABLE_TO_UPDATE + fileName + "\"", exitCode );
+	} // End of recordStatus() method.
 
 
 	/**
@@ -209,44 +514,36 @@ public class JavaReplicationConfigEditor
 
 	/**
 	 * updateConfig() will update a configuration file to properly set specific values.
-	 * It does this by opening the file, parsing every line, and writing and updated file.
-	 * Lines are updated by the fixLine() method.
+	 * It does this by opening the file, parsing every line, and writing an updated file if any line changed.
+	 * Lines are updated by the fixLine() method, except in JSON files, where JsonEditor replaces the values token by token.
 	 *
 	 * @param updateFileName the file to open and parse.
 	 * @param configMap      a map containing keys to search for and values to append to those keys.
 	 * @param startsWith     flag to indicate the line should start with the key, instead of just containing the key.
+	 * @return the status of the file.
 	 */
-	private static boolean updateConfig( String updateFileName, Map<String, Object> configMap, boolean startsWith )
+	static FileStatus updateConfig( String updateFileName, Map<String, Object> configMap, boolean startsWith )
 	{
 		String logString = "updateConfig()";
 		mainLogger.log( Level.FINE, logString );
 
-		// Open the server config file.
-		File updateFile = new File( updateFileName );
-		String suffix = "";
-		// JSON lines need to end with a comma.  This will cause problems if it is the last element in an object or array.
-		if( updateFileName.endsWith( "json" ) )
-			suffix = ",";
+		return keyReplaceEditor( updateFileName, configMap, startsWith ).apply( updateFileName );
+	} // End of updateConfig() method.
 
-		if( updateFile.exists() && updateFile.isFile() )
-		{
-			List<String> fileLinesList = readFileToList( updateFileName );
 
-			for( int i = 0; i < fileLinesList.size(); i++ )
-			{
-				// Call fixLine() and set this entry to its return value.
-				fileLinesList.set( i, fixLine( fileLinesList.get( i ), configMap, suffix, startsWith ) );
-			}
-			writeListToFile( updateFileName, fileLinesList );
-		}
-		else
-		{
-			logString = "Unable to find the configuration file: " + updateFileName;
-			mainLogger.log( Level.INFO, logString );
-			return false;
-		}
-		return true;
-	} // End of updateConfig() method.
+	/**
+	 * lineSuffix() will return the suffix that fixLine() should append to updated lines in a file.
+	 *
+	 * @param fileName the file being updated.
+	 * @return "," for JSON files, or an empty String for all other files.
+	 */
+	static String lineSuffix( String fileName )
+	{
+		// JSON lines need to end with a comma.  This will cause problems if it is the last element in an object or array.
+		if( fileName.endsWith( "json" ) )
+			return ",";
+		return "";
+	} // End of lineSuffix() method.
 
 
 	/**
@@ -271,33 +568,8 @@ public class JavaReplicationConfigEditor
 		String logString = "clearComment()";
 		mainLogger.log( Level.FINE, logString );
 
-		// Open the server config file.
-		File configFile = new File( configFileName );
-
-		if( configFile.exists() && configFile.isFile() )
-		{
-			List<String> fileLinesList = readFileToList( configFileName );
-
-			for( int i = 0; i < fileLinesList.size(); i++ )
-			{
-				String line = fileLinesList.get( i );
-				// Search for the text, and see if the line begins with a semicolon.
-				if( line.contains( textToFind ) && line.trim().startsWith( ";" ) )
-				{
-					line = line.replaceFirst( ";", "" );
-					// Set this entry of the list to the fixed line.
-					fileLinesList.set( i, line );
-					logString = "\tclearComment() is updating this line: '" + line + "'";
-					mainLogger.log( Level.INFO, logString );
-				}
-			}
-			writeListToFile( configFileName, fileLinesList );
-		}
-		else
-		{
-			logString = "Unable to find the configuration file: " + configFileName;
-			mainLogger.log( Level.INFO, logString );
-		}
+		EditOperation clear = new ClearCommentOperation( textToFind );
+		new EditPipeline( Collections.singletonList( clear ) ).apply( configFileName );
 	} // End of clearComment() method.
 
 
@@ -316,18 +588,52 @@ public class JavaReplicationConfigEditor
 	 * @param suffix      a suffix to add to the end of the line.
 	 * @param startsWith  flag to indicate the line should start with the key, instead of just containing the key.
 	 * @return a String containing the key and value.
+	 * @see main.java.com.faircom.replicationconfigeditor.KeyMatcher
 	 */
 	static String fixLine( String line, Map<String, Object> keyValueMap, String suffix, boolean startsWith )
+	{
+		return fixLine( line, KeyMatcher.forKeys( keyValueMap.keySet() ), keyValueMap, suffix, startsWith );
+	} // End of fixLine() method.
+
+
+	/**
+	 * This version of fixLine() takes a KeyMatcher that has already been compiled for the keys of keyValueMap.<br>
+	 * The matcher finds every key in the line with one scan, and lines that contain no keys are returned straight away.<br>
+	 * Once a line has been rebuilt, the remaining keys are checked against the rebuilt line, exactly as the per-key search did.<br>
+	 *
+	 * @param line        the String to search through.
+	 * @param matcher     a KeyMatcher built from keyValueMap.keySet(), in the same order, or null to search for each key in turn.
+	 * @param keyValueMap a HashMap of keys to search for and values to append.
+	 * @param suffix      a suffix to add to the end of the line.
+	 * @param startsWith  flag to indicate the line should start with the key, instead of just containing the key.
+	 * @return a String containing the key and value.
+	 */
+	static String fixLine( String line, KeyMatcher matcher, Map<String, Object> keyValueMap, String suffix, boolean startsWith )
 	{
 		String logString = "fixLine()";
 		mainLogger.log( Level.FINE, logString );
 
+		long found = -1L;
+		if( matcher != null )
+		{
+			found = matcher.match( line );
+			if( found == 0 )
+				return line;
+		}
+		boolean rebuilt = false;
+		int keyIndex = 0;
 		for( Map.Entry<String, Object> keyValuePair : keyValueMap.entrySet() )
 		{
 			String key = keyValuePair.getKey();
 			Object value = keyValuePair.getValue();
-
-			if( line.contains( key ) )
+			boolean containsKey;
+			if( matcher == null || rebuilt )
+				containsKey = line.contains( key );
+			else
+				containsKey = ( found & ( 1L << keyIndex ) ) != 0;
+			keyIndex++;
+
+			if( containsKey )
 			{
 				// Values may need to be quoted if this is a JSON file.
 				if( suffix.equals( "," ) )
@@ -343,18 +649,16 @@ public class JavaReplicationConfigEditor
 						indentation = indentation.replaceFirst( ";", "" );
 					}
 					// Build the line with the indentation, the key, a tab, the value, and the suffix.
-					line = indentation + key + '\t' + value + suffix;
-					logString = "\tfixLine() is updating this line: '" + line + "'";
-					mainLogger.log( Level.INFO, logString );
+					line = rebuildLine( line, indentation + key + '\t' + value + suffix );
+					rebuilt = true;
 				}
 				// This block will not alter commented lines.
 				else if( line.startsWith( key ) )
 				{
 					// Try to preserve indentation.
 					String indentation = line.substring( 0, line.indexOf( key ) );
-					line = indentation + key + '\t' + value + suffix;
-					logString = "\tfixLine() is updating this line: '" + line + "'";
-					mainLogger.log( Level.INFO, logString );
+					line = rebuildLine( line, indentation + key + '\t' + value + suffix );
+					rebuilt = true;
 				}
 			}
 		}
@@ -363,54 +667,37 @@ public class JavaReplicationConfigEditor
 
 
 	/**
-	 * quoteIfNeeded()
+	 * rebuildLine() will log a line that fixLine() has rebuilt, if the rebuilt line differs from the original.
+	 * The message is only built if INFO logging is enabled.
 	 *
-	 * Wrap the value in quotes if it is a String.
+	 * @param line        the line before it was rebuilt.
+	 * @param rebuiltLine the rebuilt line.
+	 * @return rebuiltLine.
 	 */
-	@SuppressWarnings( "squid:S106" )
-	private static Object quoteIfNeeded( Object value )
+	private static String rebuildLine( String line, String rebuiltLine )
 	{
-		String logString = "quoteIfNeeded() is checking \"" + value + "\"";
-		mainLogger.log( Level.FINE, logString );
+		if( !rebuiltLine.equals( line ) )
+			mainLogger.log( Level.INFO, () -> "\tfixLine() is updating this line: '" + rebuiltLine + "'" );
+		return rebuiltLine;
+	} // End of rebuildLine() method.
 
-		// Exit if the value is already quoted.
-		if( value.toString().startsWith( "\"" ) && value.toString().endsWith( "\"" ) )
-		{
-			logString = "quoteIfNeeded() is skipping " + value + " because it is already quoted.";
-			mainLogger.log( Level.FINE, logString );
-			return value;
-		}
 
-		String ipAddressPatternString = "\\b(?:(?:25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\.){3}(?:25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\b";
-		String digitPatternString = "\\d+";
-		String wordPatternString = "\\w+";
-
-		Pattern ipAddressPattern = Pattern.compile( ipAddressPatternString );
-		Matcher ipAddressMatcher = ipAddressPattern.matcher( value.toString() );
-		if( ipAddressMatcher.matches() )
-		{
-			// Wrap the IP address in quotes.
-			value = "\"" + value + "\"";
-			return value;
-		}
-		Pattern digitPattern = Pattern.compile( digitPatternString );
-		Matcher digitMatcher = digitPattern.matcher( value.toString() );
-		if( digitMatcher.matches() )
-		{
-			return value;
-		}
-		Pattern wordPattern = Pattern.compile( wordPatternString );
-		Matcher wordMatcher = wordPattern.matcher( value.toString() );
-		if( wordMatcher.matches() )
-		{
-			// Wrap the word in quotes.
-			value = "\"" + value + "\"";
-			return value;
-		}
+	/**
+	 * quoteIfNeeded()
+	 *
+	 * Wrap the value in quotes if it is a String.
+	 *
+	 * @see main.java.com.faircom.replicationconfigeditor.ValueClassifier
+	 */
+	static String quoteIfNeeded( Object value )
+	{
+		String text = value.toString();
+		ValueType valueType = ValueClassifier.classify( text );
+		mainLogger.log( Level.FINE, () -> "quoteIfNeeded() classified \"" + text + "\" as " + valueType );
 
-		logString = "Don't know what to do with: " + value;
-		mainLogger.log( Level.WARNING, logString );
-		return value;
+		if( valueType == ValueType.UNKNOWN )
+			mainLogger.log( Level.WARNING, () -> "Don't know what to do with: " + text );
+		return valueType.render( text );
 	} // End of quoteIfNeeded() method.
 
 
@@ -518,6 +805,7 @@ public class JavaReplicationConfigEditor
 
 	/**
 	 * writeStringToFile() will write a String to a file.
+	 * The file is written through a FileChannel, and synced as the Durability mode of the current node requires.
 	 *
 	 * @param outFileName the file name to write to.
 	 * @param data        a String to write to the output file.
@@ -530,7 +818,16 @@ public class JavaReplicationConfigEditor
 		try
 		{
 			// Create a file if it does not exist, and truncate any existing file before writing to it.
-			Files.write( Paths.get( outFileName ), Collections.singletonList( data ), StandardCharsets.ISO_8859_1 );
+			// The data is written exactly as given, without adding a line break at the end.
+			Path outPath = Paths.get( outFileName );
+			ByteBuffer byteBuffer = ByteBuffer.wrap( data.getBytes( StandardCharsets.ISO_8859_1 ) );
+			try( FileChannel fileChannel = FileChannel.open( outPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) )
+			{
+				while( byteBuffer.hasRemaining() )
+					fileChannel.write( byteBuffer );
+				DurableWrites.syncFile( fileChannel );
+			}
+			DurableWrites.syncDirectory( outPath );
 		}
 		catch( IOException ioException )
 		{
@@ -543,86 +840,12 @@ public class JavaReplicationConfigEditor
 	} // End of writeStringToFile() method.
 
 
-	// Set up the default format for the console logger.
+	// Send all logging through the asynchronous console handler.
 	static
 	{
-		singleLine.setFormatter( new SimpleFormatter()
-		{
-			private static final String FORMAT = "[%1$tF %1$tT] [%2$-7s] %3$s %n";
-
-
-			@Override
-			public synchronized String format( LogRecord logRecord )
-			{
-				return String.format( FORMAT,
-					new Date( logRecord.getMillis() ),
-					logRecord.getLevel().getLocalizedName(),
-					logRecord.getMessage()
-				);
-			}
-		} );
+		EditorLogging.install( mainLogger );
 	} // End of static block.
 
-	/**
-	 * singleToTriple() will switch the logging from single-line, to triple-line output.
-	 */
-	static void singleToTriple()
-	{
-		mainLogger.addHandler( tripleLine );
-		mainLogger.removeHandler( singleLine );
-	} // End of singleToTriple() method.
-
-
-	/**
-	 * tripleToSingle() will switch the logging from triple-line, to single-line output.
-	 */
-	static void tripleToSingle()
-	{
-		mainLogger.addHandler( singleLine );
-		mainLogger.removeHandler( tripleLine );
-	} // End of tripleToSingle() method.
-
-
-	// Set up the default format for the console logger.
-	static
-	{
-		singleLine.setFormatter( new SimpleFormatter()
-		{
-			private static final String FORMAT = "[%1$tF %1$tT] [%2$-7s] %3$s %n";
-
-
-			@Override
-			public synchronized String format( LogRecord logRecord )
-			{
-				return String.format( FORMAT,
-					new Date( logRecord.getMillis() ),
-					logRecord.getLevel().getLocalizedName(),
-					logRecord.getMessage()
-				);
-			}
-		} );
-	} // End of static block.
-
-
-	// Set up the format for the console logger that has extra blank lines prepended.
-	static
-	{
-		tripleLine.setFormatter( new SimpleFormatter()
-		{
-			private static final String FORMAT = "\n\n[%1$tF %1$tT] [%2$-7s] %3$s %n";
-
-
-			@Override
-			public synchronized String format( LogRecord logRecord )
-			{
-				return String.format( FORMAT,
-					new Date( logRecord.getMillis() ),
-					logRecord.getLevel().getLocalizedName(),
-					logRecord.getMessage()
-				);
-			}
-		} );
-	} // End of static block.
 
 	/**
 	 * exiting() will print an error message and return an exit code to the JVM.
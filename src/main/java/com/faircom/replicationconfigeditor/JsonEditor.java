@@ -0,0 +1,625 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+
+/**
+ * JsonEditor replaces the values of members in a JSON file by name, in a single pass over its tokens.<br>
+ * Every character outside the replaced values is copied exactly, so whitespace, key order, and line layout are kept, and no tree is built.<br>
+ * A member is matched by its name at any depth, including inside arrays, the same as fixLine() matched "\"http_port\":" anywhere in a file.
+ * A member whose value is an object or an array is not replaced, but the members inside it are.<br>
+ * Gson's JsonReader cannot report the whitespace between tokens, so this uses its own scanner, and reports syntax errors with Gson's MalformedJsonException.<br>
+ * Comments are kept as they are, but other lenient syntax, such as unquoted names or values, single quotes, or trailing commas, counts as malformed.<br>
+ * If a file is not valid JSON, it is edited line by line with the fallback EditPipeline instead, the same way JSON files were edited before.
+ */
+class JsonEditor implements FileEditor
+{
+	private static final Logger jsonLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	/**
+	 * The number of unchanged characters to collect before passing them on to the EditSink.
+	 */
+	private static final int FLUSH_THRESHOLD = 8192;
+	/**
+	 * A JSON number, which is the only kind of value that render() writes without quotes.
+	 */
+	private static final Pattern NUMBER_PATTERN = Pattern.compile( "-?(?:0|[1-9]\\d*)(?:\\.\\d+)?(?:[eE][+-]?\\d+)?" );
+	/**
+	 * The rendered JSON value for each member name.
+	 */
+	private final Map<String, String> valueMap;
+	private final EditPipeline fallback;
+	/**
+	 * The names this editor replaces, so files are only matched against FileShapes learned by editors that replace the same names.
+	 */
+	private final String shapeKey;
+
+
+	/**
+	 * @param valueMap the rendered JSON value to write for each member name.
+	 * @param fallback the pipeline to use if a file is not valid JSON.
+	 */
+	JsonEditor( Map<String, String> valueMap, EditPipeline fallback )
+	{
+		this.valueMap = valueMap;
+		this.fallback = fallback;
+		this.shapeKey = "json" + new TreeSet<>( valueMap.keySet() );
+	}
+
+
+	/**
+	 * forKeyMap() will build a JsonEditor from a map in the form fixLine() uses, with keys such as "\"http_port\":".
+	 * Each key becomes a member name, and each value is rendered with render().
+	 *
+	 * @param configMap a map containing keys to search for and values to set.
+	 * @param fallback  the pipeline to use if a file is not valid JSON.
+	 * @return the editor.
+	 */
+	static JsonEditor forKeyMap( Map<String, Object> configMap, EditPipeline fallback )
+	{
+		Map<String, String> valueMap = new HashMap<>();
+		for( Map.Entry<String, Object> entry : configMap.entrySet() )
+		{
+			String key = entry.getKey().trim();
+			if( key.endsWith( ":" ) )
+				key = key.substring( 0, key.length() - 1 ).trim();
+			if( key.length() >= 2 && key.startsWith( "\"" ) && key.endsWith( "\"" ) )
+				key = key.substring( 1, key.length() - 1 );
+			valueMap.put( key, render( entry.getValue() ) );
+		}
+		return new JsonEditor( valueMap, fallback );
+	} // End of forKeyMap() method.
+
+
+	/**
+	 * render() will return a value as a valid JSON token.
+	 * A JSON number, such as a port, is written as it is.  A value that is already a complete JSON string, quotes included, is also written as it is.
+	 * Everything else, such as a host name like db-host.local, is written as a string, with quotes and backslashes escaped.
+	 *
+	 * @param value the value to render.
+	 * @return the JSON token.
+	 */
+	static String render( Object value )
+	{
+		String text = value.toString();
+		if( NUMBER_PATTERN.matcher( text ).matches() || isStringToken( text ) )
+			return text;
+		return new JsonPrimitive( text ).toString();
+	} // End of render() method.
+
+
+	/**
+	 * isLiteral() will check if a token that is not a string is a valid JSON value: a number, true, false, or null.
+	 *
+	 * @param token the token.
+	 * @return true if the token is valid.
+	 */
+	static boolean isLiteral( CharSequence token )
+	{
+		String text = token.toString();
+		return text.equals( "true" ) || text.equals( "false" ) || text.equals( "null" ) || NUMBER_PATTERN.matcher( text ).matches();
+	} // End of isLiteral() method.
+
+
+	/**
+	 * isStringToken() will check if text is exactly one JSON string, with its quotes.
+	 */
+	private static boolean isStringToken( String text )
+	{
+		if( text.length() < 2 || text.charAt( 0 ) != '"' || text.charAt( text.length() - 1 ) != '"' )
+			return false;
+		try( JsonReader jsonReader = new JsonReader( new StringReader( text ) ) )
+		{
+			if( jsonReader.peek() != JsonToken.STRING )
+				return false;
+			jsonReader.nextString();
+			return jsonReader.peek() == JsonToken.END_DOCUMENT;
+		}
+		catch( IOException ioException )
+		{
+			return false;
+		}
+	} // End of isStringToken() method.
+
+
+	@Override
+	public FileStatus apply( String fileName )
+	{
+		String logString = "JsonEditor.apply()";
+		jsonLogger.log( Level.FINE, logString );
+
+		File file = new File( fileName );
+		if( !file.exists() || !file.isFile() )
+		{
+			logString = "Unable to find the configuration file: " + fileName;
+			jsonLogger.log( Level.INFO, logString );
+			return FileStatus.MISSING;
+		}
+
+		Path path = file.toPath();
+		try
+		{
+			byte[] contents = FileShape.read( path );
+			if( contents != null )
+				return FileShape.rewrite( path, contents, shapeKey, this::replacement, this::scan );
+			try( Reader reader = openReader( path, null );
+			     RewriteOutput rewriteOutput = new RewriteOutput( path ) )
+			{
+				new TokenScanner( reader, rewriteOutput ).document();
+				return rewriteOutput.commit();
+			}
+		}
+		catch( MalformedJsonException malformedJsonException )
+		{
+			logMalformed( fileName, malformedJsonException );
+			return fallback.apply( fileName );
+		}
+		catch( IOException ioException )
+		{
+			logString = "Unable to write to the output file: " + fileName;
+			jsonLogger.log( Level.SEVERE, logString );
+			logString = ioException.getLocalizedMessage();
+			jsonLogger.log( Level.SEVERE, logString );
+			return FileStatus.FAILED;
+		}
+	} // End of apply() method.
+
+
+	@Override
+	public FileStatus preview( String fileName, StringBuilder diff )
+	{
+		File file = new File( fileName );
+		if( !file.exists() || !file.isFile() )
+		{
+			String logString = "Unable to find the configuration file: " + fileName;
+			jsonLogger.log( Level.INFO, logString );
+			return FileStatus.MISSING;
+		}
+
+		PreviewSink previewSink = new PreviewSink();
+		try( Reader reader = openReader( file.toPath(), FilePrefetcher.take( fileName ) ) )
+		{
+			new TokenScanner( reader, previewSink ).document();
+			diff.append( UnifiedDiff.of( fileName, previewSink.original.toString(), previewSink.edited.toString() ) );
+			return diff.length() == 0 ? FileStatus.UNCHANGED : FileStatus.MODIFIED;
+		}
+		catch( MalformedJsonException malformedJsonException )
+		{
+			logMalformed( fileName, malformedJsonException );
+			return fallback.preview( fileName, diff );
+		}
+		catch( IOException ioException )
+		{
+			String logString = "Unable to read the configuration file: " + fileName;
+			jsonLogger.log( Level.SEVERE, logString );
+			logString = ioException.getLocalizedMessage();
+			jsonLogger.log( Level.SEVERE, logString );
+			return FileStatus.FAILED;
+		}
+	} // End of preview() method.
+
+
+	/**
+	 * scan() will edit a whole file held in memory, so FileShape can learn its layout.
+	 *
+	 * @param text the contents of the file.
+	 * @param sink receives the file.
+	 * @return the member name of each replaced value, in file order.
+	 * @throws IOException if the file is malformed, or the sink cannot write it.
+	 */
+	private List<String> scan( String text, EditSink sink ) throws IOException
+	{
+		TokenScanner tokenScanner = new TokenScanner( new StringReader( text ), sink );
+		tokenScanner.document();
+		return tokenScanner.replacedNames;
+	} // End of scan() method.
+
+
+	/**
+	 * replacement() will return the new value of a member, and log it if it differs from the current value.
+	 * TokenScanner and the value slots of a FileShape both get their values here.
+	 *
+	 * @param name     the name of the member.
+	 * @param original the current value.
+	 * @return the value to write.
+	 */
+	private String replacement( String name, String original )
+	{
+		String replacement = valueMap.get( name );
+		if( !original.equals( replacement ) )
+			jsonLogger.log( Level.INFO, () -> "\tJsonEditor is updating \"" + name + "\": " + original + " -> " + replacement );
+		return replacement;
+	} // End of replacement() method.
+
+
+	private static Reader openReader( Path path, byte[] prefetched ) throws IOException
+	{
+		// ISO-8859-1 maps every byte to one character, so unchanged text is copied back byte for byte, whatever the file's encoding.
+		return new InputStreamReader( FilePrefetcher.newInputStream( path, prefetched ), StandardCharsets.ISO_8859_1 );
+	}
+
+
+	private static void logMalformed( String fileName, MalformedJsonException malformedJsonException )
+	{
+		String logString = fileName + " is not valid JSON (" + malformedJsonException.getMessage() + "), so it will be edited line by line.";
+		jsonLogger.log( Level.WARNING, logString );
+	}
+
+
+	/**
+	 * An EditSink that keeps the original and edited text in memory.
+	 */
+	private static final class PreviewSink implements EditSink
+	{
+		private final StringBuilder original = new StringBuilder();
+		private final StringBuilder edited = new StringBuilder();
+
+
+		@Override
+		public void unchanged( String text )
+		{
+			original.append( text );
+			edited.append( text );
+		}
+
+
+		@Override
+		public void replace( String originalText, String replacement )
+		{
+			original.append( originalText );
+			edited.append( replacement );
+		}
+	}
+
+
+	/**
+	 * TokenScanner walks the tokens of one JSON document, passing every character on to an EditSink.
+	 * Characters are collected as unchanged text, except for the values being replaced.
+	 */
+	private final class TokenScanner
+	{
+		private final Reader reader;
+		private final EditSink sink;
+		private final char[] buffer = new char[8192];
+		private final StringBuilder pending = new StringBuilder();
+		/**
+		 * Where consumed characters go: pending, or a value that is being captured for replacement.
+		 */
+		private StringBuilder target = pending;
+		private int position = 0;
+		private int limit = 0;
+		private int lineNumber = 1;
+		/**
+		 * The number of values replaced with a different value.
+		 */
+		private int changedCount = 0;
+		/**
+		 * The member name of each value passed to the sink as a replacement, in file order.
+		 */
+		private final List<String> replacedNames = new ArrayList<>();
+
+
+		TokenScanner( Reader reader, EditSink sink )
+		{
+			this.reader = reader;
+			this.sink = sink;
+		}
+
+
+		/**
+		 * document() will scan a whole JSON document.
+		 *
+		 * @throws IOException if the document is malformed, or cannot be read or written.
+		 */
+		void document() throws IOException
+		{
+			skipWhitespace();
+			value();
+			skipWhitespace();
+			if( peek() != -1 )
+				throw syntaxError( "Unexpected content after the end of the document" );
+			flush();
+			FileMeter.addLines( lineNumber, changedCount );
+		}
+
+
+		/**
+		 * value() will scan any value.
+		 */
+		private void value() throws IOException
+		{
+			int c = peek();
+			if( c == '{' )
+				object();
+			else if( c == '[' )
+				array();
+			else if( c == '"' )
+				string();
+			else
+				literal();
+		}
+
+
+		private void object() throws IOException
+		{
+			read();
+			skipWhitespace();
+			if( peek() == '}' )
+			{
+				read();
+				return;
+			}
+			while( true )
+			{
+				skipWhitespace();
+				if( peek() != '"' )
+					throw syntaxError( "Expected a member name" );
+				String name = string();
+				skipWhitespace();
+				if( read() != ':' )
+					throw syntaxError( "Expected ':'" );
+				skipWhitespace();
+				String replacement = valueMap.get( name );
+				int c = peek();
+				if( replacement != null && c != '{' && c != '[' )
+					replaceValue( name, replacement );
+				else
+					value();
+				skipWhitespace();
+				c = read();
+				if( c == '}' )
+					return;
+				if( c != ',' )
+					throw syntaxError( "Expected ',' or '}'" );
+			}
+		}
+
+
+		private void array() throws IOException
+		{
+			read();
+			skipWhitespace();
+			if( peek() == ']' )
+			{
+				read();
+				return;
+			}
+			while( true )
+			{
+				skipWhitespace();
+				value();
+				skipWhitespace();
+				int c = read();
+				if( c == ']' )
+					return;
+				if( c != ',' )
+					throw syntaxError( "Expected ',' or ']'" );
+			}
+		}
+
+
+		/**
+		 * replaceValue() will capture a primitive value and pass its replacement to the sink.
+		 *
+		 * @param name        the name of the member.
+		 * @param replacement the rendered value to write.
+		 */
+		private void replaceValue( String name, String replacement ) throws IOException
+		{
+			flush();
+			StringBuilder original = new StringBuilder();
+			target = original;
+			try
+			{
+				value();
+			}
+			finally
+			{
+				target = pending;
+			}
+			String originalText = original.toString();
+			replacedNames.add( name );
+			if( !originalText.equals( replacement ) )
+				changedCount++;
+			sink.replace( originalText, replacement( name, originalText ) );
+		}
+
+
+		/**
+		 * string() will scan a string.
+		 *
+		 * @return the decoded contents of the string.
+		 */
+		private String string() throws IOException
+		{
+			read();
+			StringBuilder decoded = new StringBuilder();
+			while( true )
+			{
+				int c = read();
+				if( c == -1 || c == '\n' || c == '\r' )
+					throw syntaxError( "Unterminated string" );
+				if( c == '"' )
+					return decoded.toString();
+				if( c != '\\' )
+				{
+					decoded.append( (char) c );
+					continue;
+				}
+				c = read();
+				switch( c )
+				{
+					case '"':
+					case '\\':
+					case '/':
+						decoded.append( (char) c );
+						break;
+					case 'b':
+						decoded.append( '\b' );
+						break;
+					case 'f':
+						decoded.append( '\f' );
+						break;
+					case 'n':
+						decoded.append( '\n' );
+						break;
+					case 'r':
+						decoded.append( '\r' );
+						break;
+					case 't':
+						decoded.append( '\t' );
+						break;
+					case 'u':
+						int codePoint = 0;
+						for( int i = 0; i < 4; i++ )
+						{
+							int digit = Character.digit( read(), 16 );
+							if( digit < 0 )
+								throw syntaxError( "Invalid \\u escape" );
+							codePoint = codePoint * 16 + digit;
+						}
+						decoded.append( (char) codePoint );
+						break;
+					default:
+						throw syntaxError( "Invalid escape" );
+				}
+			}
+		}
+
+
+		/**
+		 * literal() will scan a number, true, false, or null.
+		 */
+		private void literal() throws IOException
+		{
+			StringBuilder token = new StringBuilder();
+			while( true )
+			{
+				int c = peek();
+				if( c == -1 || c == ',' || c == '}' || c == ']' || c == ':' || c == '/' || isWhitespace( c ) )
+					break;
+				token.append( (char) read() );
+			}
+			if( token.length() == 0 )
+				throw syntaxError( "Expected a value" );
+			if( !isLiteral( token ) )
+				throw syntaxError( "Unexpected value '" + token + "'" );
+		}
+
+
+		/**
+		 * skipWhitespace() will skip whitespace and comments.
+		 * Gson reads fleet files leniently, which allows // and /* comments, so comments are allowed here too.
+		 */
+		private void skipWhitespace() throws IOException
+		{
+			while( true )
+			{
+				int c = peek();
+				if( isWhitespace( c ) )
+				{
+					read();
+				}
+				else if( c == '/' )
+				{
+					read();
+					c = read();
+					if( c == '/' )
+					{
+						while( ( c = peek() ) != -1 && c != '\n' && c != '\r' )
+							read();
+					}
+					else if( c == '*' )
+					{
+						int previous = 0;
+						while( !( previous == '*' && c == '/' ) )
+						{
+							previous = c;
+							c = read();
+							if( c == -1 )
+								throw syntaxError( "Unterminated comment" );
+						}
+					}
+					else
+					{
+						throw syntaxError( "Unexpected '/'" );
+					}
+				}
+				else
+				{
+					return;
+				}
+			}
+		}
+
+
+		private boolean isWhitespace( int c )
+		{
+			return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+		}
+
+
+		private int peek() throws IOException
+		{
+			if( position == limit )
+			{
+				limit = reader.read( buffer, 0, buffer.length );
+				position = 0;
+				if( limit <= 0 )
+				{
+					limit = 0;
+					return -1;
+				}
+			}
+			return buffer[position];
+		}
+
+
+		/**
+		 * read() will consume one character, and add it to the current target.
+		 *
+		 * @return the character, or -1 at the end of the input.
+		 */
+		private int read() throws IOException
+		{
+			int c = peek();
+			if( c == -1 )
+				return -1;
+			position++;
+			if( c == '\n' )
+				lineNumber++;
+			target.append( (char) c );
+			if( target == pending && pending.length() >= FLUSH_THRESHOLD )
+				flush();
+			return c;
+		}
+
+
+		private void flush() throws IOException
+		{
+			if( pending.length() > 0 )
+			{
+				sink.unchanged( pending.toString() );
+				pending.setLength( 0 );
+			}
+		}
+
+
+		private MalformedJsonException syntaxError( String message )
+		{
+			return new MalformedJsonException( message + " at line " + lineNumber );
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.JsonObject;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+
+/**
+ * This Formatter writes each record as one line of JSON, for log shippers and other tools to read.<br>
+ * Example: {"time":"2022-02-22T15:58:00.123Z","level":"INFO","thread":12,"message":"Updating ..."}
+ */
+class JsonLinesLogFormatter extends Formatter
+{
+	@Override
+	public String format( LogRecord logRecord )
+	{
+		JsonObject jsonObject = new JsonObject();
+		jsonObject.addProperty( "time", Instant.ofEpochMilli( logRecord.getMillis() ).toString() );
+		jsonObject.addProperty( "level", logRecord.getLevel().getName() );
+		// getLongThreadID() replaces this from Java 16, but does not exist on Java 8, which this program still targets.
+		@SuppressWarnings( "deprecation" )
+		int threadId = logRecord.getThreadID();
+		jsonObject.addProperty( "thread", threadId );
+		if( EditorLogging.isSection( logRecord ) )
+			jsonObject.addProperty( "section", true );
+		jsonObject.addProperty( "message", formatMessage( logRecord ) );
+		if( logRecord.getThrown() != null )
+		{
+			StringWriter stackTrace = new StringWriter();
+			logRecord.getThrown().printStackTrace( new PrintWriter( stackTrace ) );
+			jsonObject.addProperty( "thrown", stackTrace.toString() );
+		}
+		// JsonObject.toString() never adds line breaks, so each record stays on one line.
+		return jsonObject.toString() + '\n';
+	}
+}
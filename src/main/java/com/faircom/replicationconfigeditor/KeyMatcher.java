@@ -0,0 +1,233 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * KeyMatcher finds every key that occurs in a line with a single scan of that line.<br>
+ * It is an Aho-Corasick automaton, compiled into a dense transition table over the ISO-8859-1 alphabet that this program reads files with.<br>
+ * A match reports the same keys as calling String.contains() for each key, but costs one table lookup per character instead of one substring search per key.<br>
+ * Matchers are immutable, so one matcher can be shared by every thread that processes the same key set.
+ */
+final class KeyMatcher
+{
+	/**
+	 * The most keys a matcher can hold, one per bit of the match result.
+	 */
+	static final int MAX_KEYS = 64;
+	/**
+	 * The number of distinct characters in ISO-8859-1.
+	 */
+	private static final int ALPHABET = 256;
+	/**
+	 * The most key sets to keep compiled matchers for.  When the cache is full, it is emptied, so the key sets in use are compiled again and kept.
+	 */
+	private static final int CACHE_LIMIT = 256;
+	private static final Map<List<String>, KeyMatcher> MATCHER_CACHE = new ConcurrentHashMap<>();
+	/**
+	 * The keys, in the order their bits appear in a match result.
+	 */
+	private final String[] keys;
+	/**
+	 * The next state for each state and character, stored as state * ALPHABET + character.
+	 */
+	private final int[] transitions;
+	/**
+	 * The keys that end at each state, including keys reached through failure links.
+	 */
+	private final long[] outputs;
+
+
+	/**
+	 * @param keyList the keys to match, in the order their bits should appear in a match result.  These must pass isSupported().
+	 */
+	private KeyMatcher( List<String> keyList )
+	{
+		keys = keyList.toArray( new String[0] );
+
+		// Build the trie.  State 0 is the root.
+		int maxStates = 1;
+		for( String key : keys )
+			maxStates += key.length();
+		int[] trie = new int[maxStates * ALPHABET];
+		long[] stateOutputs = new long[maxStates];
+		int stateCount = 1;
+		for( int k = 0; k < keys.length; k++ )
+		{
+			int state = 0;
+			for( int i = 0; i < keys[k].length(); i++ )
+			{
+				char c = keys[k].charAt( i );
+				int next = trie[state * ALPHABET + c];
+				if( next == 0 )
+				{
+					next = stateCount++;
+					trie[state * ALPHABET + c] = next;
+				}
+				state = next;
+			}
+			stateOutputs[state] |= 1L << k;
+		}
+
+		// Turn the trie into a complete transition table by following failure links breadth first.
+		int[] failure = new int[stateCount];
+		int[] queue = new int[stateCount];
+		int head = 0;
+		int tail = 0;
+		for( int c = 0; c < ALPHABET; c++ )
+		{
+			int next = trie[c];
+			if( next != 0 )
+				queue[tail++] = next;
+		}
+		while( head < tail )
+		{
+			int state = queue[head++];
+			stateOutputs[state] |= stateOutputs[failure[state]];
+			for( int c = 0; c < ALPHABET; c++ )
+			{
+				int next = trie[state * ALPHABET + c];
+				if( next != 0 )
+				{
+					failure[next] = trie[failure[state] * ALPHABET + c];
+					queue[tail++] = next;
+				}
+				else
+				{
+					trie[state * ALPHABET + c] = trie[failure[state] * ALPHABET + c];
+				}
+			}
+		}
+		transitions = Arrays.copyOf( trie, stateCount * ALPHABET );
+		outputs = Arrays.copyOf( stateOutputs, stateCount );
+	}
+
+
+	/**
+	 * forKeys() will return a compiled matcher for a set of keys, compiling it the first time the set is seen.
+	 * Key sets that cannot be compiled give null, and callers should fall back to searching for each key in turn.
+	 *
+	 * @param keyCollection the keys to match, in the order their bits should appear in a match result.
+	 * @return a matcher for those keys, or null if there are more than MAX_KEYS keys or a key has a character outside of ISO-8859-1.
+	 */
+	static KeyMatcher forKeys( Collection<String> keyCollection )
+	{
+		List<String> keyList = new ArrayList<>( keyCollection );
+		KeyMatcher matcher = MATCHER_CACHE.get( keyList );
+		if( matcher == null )
+		{
+			if( !isSupported( keyList ) )
+				return null;
+			matcher = new KeyMatcher( keyList );
+			if( MATCHER_CACHE.size() >= CACHE_LIMIT )
+				MATCHER_CACHE.clear();
+			KeyMatcher cached = MATCHER_CACHE.putIfAbsent( keyList, matcher );
+			if( cached != null )
+				matcher = cached;
+		}
+		return matcher;
+	} // End of forKeys() method.
+
+
+	/**
+	 * clearCache() will forget every compiled matcher, so the next forKeys() for each key set compiles it again.
+	 */
+	static void clearCache()
+	{
+		MATCHER_CACHE.clear();
+	} // End of clearCache() method.
+
+
+	/**
+	 * isSupported() will check if a KeyMatcher can be compiled for a list of keys.
+	 *
+	 * @param keyList the keys to check.
+	 * @return true if there are no more than MAX_KEYS keys, and every key is made of ISO-8859-1 characters.
+	 */
+	private static boolean isSupported( List<String> keyList )
+	{
+		if( keyList.size() > MAX_KEYS )
+			return false;
+		for( String key : keyList )
+		{
+			for( int i = 0; i < key.length(); i++ )
+			{
+				if( key.charAt( i ) >= ALPHABET )
+					return false;
+			}
+		}
+		return true;
+	} // End of isSupported() method.
+
+
+	/**
+	 * match() will scan a line once and report every key it contains.
+	 *
+	 * @param line the text to scan.
+	 * @return a bit mask with bit k set if the line contains key k.
+	 */
+	long match( CharSequence line )
+	{
+		long found = outputs[0];
+		int state = 0;
+		for( int i = 0; i < line.length(); i++ )
+		{
+			char c = line.charAt( i );
+			// No key contains a character outside of the alphabet, so such a character always returns to the root.
+			state = c < ALPHABET ? transitions[state * ALPHABET + c] : 0;
+			found |= outputs[state];
+		}
+		return found;
+	} // End of match() method.
+
+
+	/**
+	 * next() will take one step of a scan that a caller runs over its own input, such as the bytes of a file.
+	 * A scan starts at state 0, and found() reports the keys that end at each state it reaches.
+	 *
+	 * @param state     the current state.
+	 * @param character the next character, from 0 to 255.
+	 * @return the state after character.
+	 */
+	int next( int state, int character )
+	{
+		return transitions[state * ALPHABET + character];
+	} // End of next() method.
+
+
+	/**
+	 * found() will report the keys that end at a state of a scan.
+	 *
+	 * @param state a state returned by next(), or 0.
+	 * @return a bit mask with bit k set if key k ends at this state.
+	 */
+	long found( int state )
+	{
+		return outputs[state];
+	} // End of found() method.
+
+
+	/**
+	 * size() will return the number of keys in this matcher.
+	 *
+	 * @return the number of keys.
+	 */
+	int size()
+	{
+		return keys.length;
+	} // End of size() method.
+
+
+	/**
+	 * getKey() will return a single key.
+	 *
+	 * @param index the bit number of the key.
+	 * @return the key.
+	 */
+	String getKey( int index )
+	{
+		return keys[index];
+	} // End of getKey() method.
+}
@@ -0,0 +1,75 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.Collection;
+import java.util.Map;
+
+
+/**
+ * This operation replaces the value of every key in a Map, using the same rules as fixLine().
+ *
+ * @see main.java.com.faircom.replicationconfigeditor.JavaReplicationConfigEditor#fixLine(String, Map, String, boolean)
+ */
+class KeyReplaceOperation implements EditOperation
+{
+	private final Map<String, Object> keyValueMap;
+	/**
+	 * The matcher for the keys of keyValueMap, compiled once for every line of the file.
+	 * This is null when the keys cannot be compiled, and fixLine() then searches for each key in turn.
+	 */
+	private final KeyMatcher matcher;
+	private final String suffix;
+	private final boolean startsWith;
+
+
+	/**
+	 * @param keyValueMap a map containing keys to search for and values to append to those keys.
+	 * @param suffix      a suffix to add to the end of each updated line.
+	 * @param startsWith  flag to indicate the line should start with the key, instead of just containing the key.
+	 */
+	KeyReplaceOperation( Map<String, Object> keyValueMap, String suffix, boolean startsWith )
+	{
+		this.keyValueMap = keyValueMap;
+		this.matcher = KeyMatcher.forKeys( keyValueMap.keySet() );
+		this.suffix = suffix;
+		this.startsWith = startsWith;
+	}
+
+
+	@Override
+	public String apply( String line )
+	{
+		return JavaReplicationConfigEditor.fixLine( line, matcher, keyValueMap, suffix, startsWith );
+	}
+
+
+	/**
+	 * touches() will report whether the line holds any of the keys, because fixLine() returns every other line as it is.
+	 */
+	@Override
+	public boolean touches( String line )
+	{
+		if( matcher != null )
+			return matcher.match( line ) != 0;
+		for( String key : keyValueMap.keySet() )
+		{
+			if( line.contains( key ) )
+				return true;
+		}
+		return false;
+	}
+
+
+	@Override
+	public Collection<String> getSearchTexts()
+	{
+		return keyValueMap.keySet();
+	}
+
+
+	@Override
+	public String getShapeKey()
+	{
+		return "keys" + keyValueMap.keySet();
+	}
+}
@@ -0,0 +1,131 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+
+/**
+ * LineSource reads a file one line at a time, and remembers how each line was terminated.<br>
+ * Lines end at "\n", "\r\n", or "\r", the same as Files.readAllLines(), but the terminator is kept so it can be written back unchanged.<br>
+ * The last line has an empty terminator when the file does not end with a line break.
+ */
+class LineSource implements Closeable
+{
+	private static final int BUFFER_SIZE = 8192;
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final StringBuilder lineBuilder = new StringBuilder( 256 );
+	private int position = 0;
+	private int limit = 0;
+	private boolean endOfInput = false;
+	private String line = "";
+	private String terminator = "";
+
+
+	/**
+	 * @param reader the Reader to read lines from.  It is closed when this LineSource is closed.
+	 */
+	LineSource( Reader reader )
+	{
+		this.reader = reader;
+	}
+
+
+	/**
+	 * next() will read the next line.
+	 *
+	 * @return true if a line was read, or false at the end of the input.
+	 * @throws IOException if the Reader fails.
+	 */
+	boolean next() throws IOException
+	{
+		lineBuilder.setLength( 0 );
+		while( true )
+		{
+			if( position == limit && !fill() )
+			{
+				// A final line without a line break still counts, but an empty remainder does not.
+				if( lineBuilder.length() == 0 )
+					return false;
+				line = lineBuilder.toString();
+				terminator = "";
+				return true;
+			}
+			char c = buffer[position++];
+			if( c == '\n' )
+			{
+				line = lineBuilder.toString();
+				terminator = "\n";
+				return true;
+			}
+			if( c == '\r' )
+			{
+				line = lineBuilder.toString();
+				if( ( position < limit || fill() ) && buffer[position] == '\n' )
+				{
+					position++;
+					terminator = "\r\n";
+				}
+				else
+				{
+					terminator = "\r";
+				}
+				return true;
+			}
+			lineBuilder.append( c );
+		}
+	} // End of next() method.
+
+
+	/**
+	 * fill() will refill the buffer from the Reader.
+	 *
+	 * @return true if there are more characters to read.
+	 * @throws IOException if the Reader fails.
+	 */
+	private boolean fill() throws IOException
+	{
+		if( endOfInput )
+			return false;
+		int count = reader.read( buffer, 0, BUFFER_SIZE );
+		if( count <= 0 )
+		{
+			endOfInput = true;
+			return false;
+		}
+		position = 0;
+		limit = count;
+		return true;
+	} // End of fill() method.
+
+
+	/**
+	 * getLine() will return the current line, without its terminator.
+	 *
+	 * @return the current line.
+	 */
+	String getLine()
+	{
+		return line;
+	} // End of getLine() method.
+
+
+	/**
+	 * getTerminator() will return the characters that ended the current line.
+	 *
+	 * @return "\n", "\r\n", "\r", or an empty String for a last line without a line break.
+	 */
+	String getTerminator()
+	{
+		return terminator;
+	} // End of getTerminator() method.
+
+
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+}
@@ -0,0 +1,59 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.List;
+import java.util.logging.Filter;
+import java.util.logging.LogRecord;
+
+
+/**
+ * This Filter diverts log records into a per-thread List while a node is being processed on a worker thread.<br>
+ * Records logged by a thread that is not capturing pass through to the handlers as usual.<br>
+ * This keeps the output for each node together, even when several nodes are processed at the same time.
+ */
+class NodeLogCapture implements Filter
+{
+	private static final ThreadLocal<List<LogRecord>> CAPTURED = new ThreadLocal<>();
+
+
+	/**
+	 * start() will begin capturing the log records of the current thread.
+	 *
+	 * @param records the List that will receive the records.
+	 */
+	static void start( List<LogRecord> records )
+	{
+		CAPTURED.set( records );
+	} // End of start() method.
+
+
+	/**
+	 * stop() will end capturing the log records of the current thread.
+	 */
+	static void stop()
+	{
+		CAPTURED.remove();
+	} // End of stop() method.
+
+
+	/**
+	 * isCapturing() will report whether the current thread is capturing its log records.
+	 *
+	 * @return true if records from this thread are being captured.
+	 */
+	static boolean isCapturing()
+	{
+		return CAPTURED.get() != null;
+	} // End of isCapturing() method.
+
+
+	@Override
+	public boolean isLoggable( LogRecord logRecord )
+	{
+		List<LogRecord> records = CAPTURED.get();
+		if( records == null )
+			return true;
+		records.add( logRecord );
+		return false;
+	}
+}
@@ -0,0 +1,142 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.LogRecord;
+
+
+/**
+ * This class holds the outcome of processing one configured node.<br>
+ * It keeps the log records produced while the node was processed, so they can be published together and in fleet order.
+ */
+class NodeResult
+{
+	/**
+	 * The position of this node in the fleet configuration file, starting at 0.
+	 */
+	private final int index;
+	/**
+	 * The base directory of this node, used to identify it in the summary.
+	 */
+	private final String baseDirectory;
+	/**
+	 * The log records captured while this node was processed.
+	 */
+	private final List<LogRecord> logRecords = new ArrayList<>();
+	/**
+	 * The status of each file of this node, in the order they were processed.
+	 */
+	private final Map<String, FileStatus> fileStatusMap = new LinkedHashMap<>();
+	/**
+	 * The exit code of the failure, or 0 if the node was updated successfully.
+	 */
+	private int exitCode = 0;
+	/**
+	 * The failure message, or an empty String if the node was updated successfully.
+	 */
+	private String message = "";
+	/**
+	 * True if the node was skipped, because it had not changed since the last run, or because an interrupted run already finished it.
+	 */
+	private boolean skipped = false;
+	/**
+	 * True if the node was skipped because an interrupted run already finished it.
+	 */
+	private boolean resumed = false;
+
+
+	NodeResult( int index, String baseDirectory )
+	{
+		this.index = index;
+		this.baseDirectory = baseDirectory;
+	}
+
+
+	/**
+	 * fail() will mark this node as failed.
+	 *
+	 * @param message  the reason the node failed.
+	 * @param exitCode the exit code for this failure.
+	 */
+	void fail( String message, int exitCode )
+	{
+		this.message = message;
+		this.exitCode = exitCode;
+	}
+
+
+	/**
+	 * skip() will mark this node as skipped, because it has not changed since the last run.
+	 */
+	void skip()
+	{
+		this.skipped = true;
+	}
+
+
+	/**
+	 * skipFinished() will mark this node as skipped, because the interrupted run that this run resumes already finished it.
+	 */
+	void skipFinished()
+	{
+		this.skipped = true;
+		this.resumed = true;
+	}
+
+
+	public int getIndex()
+	{
+		return index;
+	}
+
+
+	public String getBaseDirectory()
+	{
+		return baseDirectory;
+	}
+
+
+	public List<LogRecord> getLogRecords()
+	{
+		return logRecords;
+	}
+
+
+	public Map<String, FileStatus> getFileStatusMap()
+	{
+		return fileStatusMap;
+	}
+
+
+	public boolean isSuccess()
+	{
+		return exitCode == 0;
+	}
+
+
+	public boolean isSkipped()
+	{
+		return skipped;
+	}
+
+
+	public boolean isResumed()
+	{
+		return resumed;
+	}
+
+
+	public int getExitCode()
+	{
+		return exitCode;
+	}
+
+
+	public String getMessage()
+	{
+		return message;
+	}
+}
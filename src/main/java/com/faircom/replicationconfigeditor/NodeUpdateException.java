@@ -0,0 +1,25 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+/**
+ * This exception is thrown when one of a node's configuration files cannot be updated.<br>
+ * It carries the exit code that the serial run would have returned to the JVM, so callers can decide whether to exit immediately or keep processing other nodes.
+ */
+class NodeUpdateException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+	private final int exitCode;
+
+
+	NodeUpdateException( String message, int exitCode )
+	{
+		super( message );
+		this.exitCode = exitCode;
+	}
+
+
+	public int getExitCode()
+	{
+		return exitCode;
+	}
+}
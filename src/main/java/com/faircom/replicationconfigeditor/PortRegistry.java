@@ -0,0 +1,347 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * PortRegistry indexes every port the fleet listens on, so conflicts can be found before any file is written.<br>
+ * The ports checked are sqlPort, serverPort, listeningHttpPort, listeningHttpsPort, mqttListeningPort, and mqttWebsocketPort.<br>
+ * memphisSqlPort is not checked, because it names the port of another server rather than one this node listens on.<br>
+ * Each port is claimed by at most one node in a 65536-entry table, so registering a fleet and finding every conflict is a single linear pass.<br>
+ * Nodes that leave listeningHttpPort or listeningHttpsPort blank can be given free ports by allocate().
+ */
+final class PortRegistry
+{
+	private static final Logger registryLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private static final int PORT_COUNT = 65536;
+	/**
+	 * The number of low bits of an owner entry that hold the PortKind.
+	 */
+	private static final int KIND_BITS = 3;
+	private static final int KIND_MASK = ( 1 << KIND_BITS ) - 1;
+	/**
+	 * The ports claimed so far.
+	 */
+	private final BitSet usedPorts = new BitSet( PORT_COUNT );
+	/**
+	 * The first claim of each used port, as the node index shifted left by KIND_BITS, plus the PortKind ordinal.
+	 */
+	private final int[] portOwners = new int[PORT_COUNT];
+	/**
+	 * Each conflict as a pair of ints: the port, and the claim that collided with its owner.
+	 */
+	private int[] conflicts = new int[16];
+	private int conflictCount = 0;
+	/**
+	 * Values that are not valid port numbers, and allocations that ran out of ports.
+	 */
+	private final List<String> problemList = new ArrayList<>();
+	/**
+	 * The base directory of each node, in fleet order.
+	 */
+	private final List<String> nodeNameList = new ArrayList<>();
+	/**
+	 * The nodes that left a port blank.
+	 */
+	private final BitSet blankHttpNodes = new BitSet();
+	private final BitSet blankHttpsNodes = new BitSet();
+	/**
+	 * The ports given out by allocate(), indexed by node.  0 means nothing was allocated.
+	 */
+	private int[] allocatedHttpPorts = new int[0];
+	private int[] allocatedHttpsPorts = new int[0];
+	private int portCount = 0;
+
+
+	/**
+	 * The kinds of port a node can claim.
+	 */
+	private enum PortKind
+	{
+		SQL( "sqlPort" ),
+		SERVER( "serverPort" ),
+		HTTP( "listeningHttpPort" ),
+		HTTPS( "listeningHttpsPort" ),
+		MQTT( "mqttListeningPort" ),
+		WEBSOCKET( "mqttWebsocketPort" );
+
+		private final String label;
+
+
+		PortKind( String label )
+		{
+			this.label = label;
+		}
+	}
+
+
+	/**
+	 * register() will claim every port of the next node in the fleet.
+	 *
+	 * @param configuredNode the node to register.
+	 */
+	void register( Config configuredNode )
+	{
+		int node = nodeNameList.size();
+		nodeNameList.add( configuredNode.getBaseDirectory() );
+		claim( node, PortKind.SQL, configuredNode.getSqlPort() );
+		claim( node, PortKind.SERVER, configuredNode.getServerPort() );
+		if( configuredNode.getListeningHttpPort() == null )
+			blankHttpNodes.set( node );
+		else
+			claim( node, PortKind.HTTP, configuredNode.getListeningHttpPort() );
+		if( configuredNode.getListeningHttpsPort() == null )
+			blankHttpsNodes.set( node );
+		else
+			claim( node, PortKind.HTTPS, configuredNode.getListeningHttpsPort() );
+		if( configuredNode.getMqttListeningPort() != null )
+			claim( node, PortKind.MQTT, configuredNode.getMqttListeningPort() );
+		if( configuredNode.getMqttWebsocketPort() != null )
+			claim( node, PortKind.WEBSOCKET, configuredNode.getMqttWebsocketPort() );
+	} // End of register() method.
+
+
+	/**
+	 * This version of register() claims the ports of every node in a FleetStore, in order, reading its port columns without building any Config.
+	 * It registers the same claims as calling register() with each node.
+	 *
+	 * @param fleetStore the nodes to register.
+	 */
+	void register( FleetStore fleetStore )
+	{
+		for( int i = 0; i < fleetStore.size(); i++ )
+		{
+			int node = nodeNameList.size();
+			nodeNameList.add( fleetStore.getBaseDirectory( i ) );
+			claimStored( node, PortKind.SQL, fleetStore, FleetStore.SQL_PORT, i );
+			claimStored( node, PortKind.SERVER, fleetStore, FleetStore.SERVER_PORT, i );
+			if( fleetStore.hasPort( FleetStore.LISTENING_HTTP_PORT, i ) )
+				claim( node, PortKind.HTTP, fleetStore.getPort( FleetStore.LISTENING_HTTP_PORT, i ) );
+			else
+				blankHttpNodes.set( node );
+			if( fleetStore.hasPort( FleetStore.LISTENING_HTTPS_PORT, i ) )
+				claim( node, PortKind.HTTPS, fleetStore.getPort( FleetStore.LISTENING_HTTPS_PORT, i ) );
+			else
+				blankHttpsNodes.set( node );
+			if( fleetStore.hasPort( FleetStore.MQTT_LISTENING_PORT, i ) )
+				claim( node, PortKind.MQTT, fleetStore.getPort( FleetStore.MQTT_LISTENING_PORT, i ) );
+			if( fleetStore.hasPort( FleetStore.MQTT_WEBSOCKET_PORT, i ) )
+				claim( node, PortKind.WEBSOCKET, fleetStore.getPort( FleetStore.MQTT_WEBSOCKET_PORT, i ) );
+		}
+	} // End of register() method.
+
+
+	/**
+	 * claimStored() will claim a sqlPort or serverPort from a FleetStore.
+	 * A plain port number is claimed straight from the port column, and any other text is checked the same way register() checks it.
+	 *
+	 * @param node       the index of the node in this registry.
+	 * @param kind       the kind of port.
+	 * @param fleetStore the store.
+	 * @param column     FleetStore.SQL_PORT or FleetStore.SERVER_PORT.
+	 * @param storeNode  the index of the node in the store.
+	 */
+	private void claimStored( int node, PortKind kind, FleetStore fleetStore, int column, int storeNode )
+	{
+		if( fleetStore.hasPort( column, storeNode ) )
+			claim( node, kind, fleetStore.getPort( column, storeNode ) );
+		else
+			claim( node, kind, fleetStore.getPortText( column, storeNode ) );
+	} // End of claimStored() method.
+
+
+	/**
+	 * This version of claim() takes the port as a String, as sqlPort and serverPort are.
+	 * An empty String or null means the port is not set.
+	 *
+	 * @param node  the index of the node.
+	 * @param kind  the kind of port.
+	 * @param value the port.
+	 */
+	private void claim( int node, PortKind kind, String value )
+	{
+		if( value == null )
+			return;
+		String trimmed = value.trim();
+		if( trimmed.isEmpty() )
+			return;
+		int port = -1;
+		if( trimmed.length() <= 5 && ValueClassifier.classify( trimmed ) == ValueType.NUMBER )
+			port = Integer.parseInt( trimmed );
+		if( port < 1 || port >= PORT_COUNT )
+		{
+			problemList.add( describe( node, kind ) + " is \"" + value + "\", which is not a valid port." );
+			return;
+		}
+		claim( node, kind, port );
+	} // End of claim() method.
+
+
+	/**
+	 * claim() will mark a port as used by a node, or record a conflict if another claim got there first.
+	 *
+	 * @param node the index of the node.
+	 * @param kind the kind of port.
+	 * @param port the port.
+	 */
+	private void claim( int node, PortKind kind, int port )
+	{
+		if( port < 1 || port >= PORT_COUNT )
+		{
+			problemList.add( describe( node, kind ) + " is " + port + ", which is not a valid port." );
+			return;
+		}
+		portCount++;
+		int owner = ( node << KIND_BITS ) | kind.ordinal();
+		if( !usedPorts.get( port ) )
+		{
+			usedPorts.set( port );
+			portOwners[port] = owner;
+			return;
+		}
+		if( conflictCount * 2 == conflicts.length )
+			conflicts = Arrays.copyOf( conflicts, conflicts.length * 2 );
+		conflicts[conflictCount * 2] = port;
+		conflicts[conflictCount * 2 + 1] = owner;
+		conflictCount++;
+	} // End of claim() method.
+
+
+	/**
+	 * allocate() will give every blank listeningHttpPort and listeningHttpsPort a free port, in fleet order.
+	 * Every node must be registered first, so that no allocated port can collide with one set in the fleet file.
+	 *
+	 * @param basePort the lowest port to give out.
+	 */
+	void allocate( int basePort )
+	{
+		allocatedHttpPorts = new int[nodeNameList.size()];
+		allocatedHttpsPorts = new int[nodeNameList.size()];
+		for( int node = 0; node < nodeNameList.size(); node++ )
+		{
+			if( blankHttpNodes.get( node ) )
+				allocatedHttpPorts[node] = allocateOne( node, PortKind.HTTP, basePort );
+			if( blankHttpsNodes.get( node ) )
+				allocatedHttpsPorts[node] = allocateOne( node, PortKind.HTTPS, basePort );
+		}
+	} // End of allocate() method.
+
+
+	/**
+	 * allocateOne() will claim the lowest free port at or above basePort.
+	 *
+	 * @param node     the index of the node.
+	 * @param kind     the kind of port.
+	 * @param basePort the lowest port to give out.
+	 * @return the port, or 0 if none is free.
+	 */
+	private int allocateOne( int node, PortKind kind, int basePort )
+	{
+		int port = usedPorts.nextClearBit( basePort );
+		if( port >= PORT_COUNT )
+		{
+			problemList.add( "No free port is left at or above " + basePort + " for " + describe( node, kind ) + "." );
+			return 0;
+		}
+		claim( node, kind, port );
+		String logString = "Allocated port " + port + " for " + describe( node, kind ) + ".";
+		registryLogger.log( Level.INFO, logString );
+		return port;
+	} // End of allocateOne() method.
+
+
+	/**
+	 * report() will log every conflict and problem found, followed by a summary.
+	 *
+	 * @return true if the fleet has no conflicts or problems.
+	 */
+	boolean report()
+	{
+		for( int i = 0; i < conflictCount; i++ )
+		{
+			int port = conflicts[i * 2];
+			int claim = conflicts[i * 2 + 1];
+			int owner = portOwners[port];
+			String logString = "Port " + port + " is used by both " + describe( owner ) + " and " + describe( claim ) + ".";
+			registryLogger.log( Level.SEVERE, logString );
+		}
+		for( String problem : problemList )
+			registryLogger.log( Level.SEVERE, problem );
+		String logString = "Checked " + portCount + " ports across " + nodeNameList.size() + " nodes: " + conflictCount + " conflicts, " + problemList.size() +
+		                   " other problems.";
+		registryLogger.log( Level.INFO, logString );
+		return conflictCount == 0 && problemList.isEmpty();
+	} // End of report() method.
+
+
+	/**
+	 * assignPorts() will wrap the nodes of a second pass over the fleet, so each node is given the ports allocate() chose for it.
+	 * The nodes must arrive in the same order they were registered.
+	 *
+	 * @param configIterator the nodes to process.
+	 * @return an Iterator over the same nodes.
+	 */
+	Iterator<Config> assignPorts( final Iterator<Config> configIterator )
+	{
+		return new Iterator<Config>()
+		{
+			private int node = 0;
+
+
+			@Override
+			public boolean hasNext()
+			{
+				return configIterator.hasNext();
+			}
+
+
+			@Override
+			public Config next()
+			{
+				Config configuredNode = configIterator.next();
+				if( node < allocatedHttpPorts.length )
+				{
+					if( allocatedHttpPorts[node] != 0 )
+						configuredNode.assignListeningHttpPort( allocatedHttpPorts[node] );
+					if( allocatedHttpsPorts[node] != 0 )
+						configuredNode.assignListeningHttpsPort( allocatedHttpsPorts[node] );
+				}
+				node++;
+				return configuredNode;
+			}
+		};
+	} // End of assignPorts() method.
+
+
+	/**
+	 * isUsed() will check if any registered or allocated node claims a port.
+	 *
+	 * @param port the port to check.
+	 * @return true if the port is claimed.
+	 */
+	boolean isUsed( int port )
+	{
+		return port > 0 && port < PORT_COUNT && usedPorts.get( port );
+	} // End of isUsed() method.
+
+
+	int getConflictCount()
+	{
+		return conflictCount;
+	}
+
+
+	private String describe( int owner )
+	{
+		return describe( owner >>> KIND_BITS, PortKind.values()[owner & KIND_MASK] );
+	}
+
+
+	private String describe( int node, PortKind kind )
+	{
+		return kind.label + " of node " + ( node + 1 ) + " (" + nodeNameList.get( node ) + ")";
+	}
+}
@@ -0,0 +1,269 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * RewriteOutput collects the rewritten contents of a file, but only creates a temporary file once something actually changes.<br>
+ * Text that matches the original is counted rather than written.  On the first change, the unchanged prefix is copied from the original, and writing continues from there.<br>
+ * If nothing changes, no file is created, and commit() leaves the original untouched.<br>
+ * Files are read as ISO-8859-1, so one character is always one byte, and character counts are byte offsets.<br>
+ * The temporary file is written through a FileChannel, so commit() can sync it before the move, as the Durability mode of the current node requires.<br>
+ * Unchanged text can also be passed as a range of the original bytes, which is written as it is, without building a String.
+ */
+final class RewriteOutput implements EditSink, Closeable
+{
+	private static final int ENCODE_BUFFER_SIZE = 8192;
+	private final Path path;
+	/**
+	 * The contents of the original file, when they were prefetched, or null.
+	 * The unchanged prefix is copied from here, so it always matches the text that was read.
+	 */
+	private final byte[] source;
+	/**
+	 * The number of leading bytes that are unchanged and have not been written yet.
+	 */
+	private long unchangedLength = 0;
+	private Path temporaryPath = null;
+	private FileChannel fileChannel = null;
+	private OutputStream output = null;
+	/**
+	 * Holds a String as ISO-8859-1 bytes while it is written, so each write does not allocate.
+	 */
+	private byte[] encodeBuffer = null;
+	private boolean committed = false;
+	/**
+	 * When startWriting() began, so the copy of the prefix can be timed.
+	 */
+	private long writeStart = 0;
+
+
+	/**
+	 * @param path the file being rewritten.
+	 */
+	RewriteOutput( Path path )
+	{
+		this( path, null );
+	}
+
+
+	/**
+	 * @param path   the file being rewritten.
+	 * @param source the contents of the file, if they were already read, or null to copy the unchanged prefix from the file itself.
+	 */
+	RewriteOutput( Path path, byte[] source )
+	{
+		this.path = path;
+		this.source = source;
+	}
+
+
+	/**
+	 * unchanged() will record text that is identical to the next part of the original file.
+	 *
+	 * @param text the original text.
+	 * @throws IOException if the text cannot be written to the temporary file.
+	 */
+	@Override
+	public void unchanged( String text ) throws IOException
+	{
+		if( output == null )
+			unchangedLength += text.length();
+		else
+			write( text );
+	} // End of unchanged() method.
+
+
+	/**
+	 * This version of unchanged() records a range of the original bytes, such as a run of lines that ByteRewriter found nothing to change in.
+	 *
+	 * @param bytes  holds the original bytes.
+	 * @param offset where the range starts in bytes.
+	 * @param length the number of bytes.
+	 * @throws IOException if the bytes cannot be written to the temporary file.
+	 */
+	void unchanged( byte[] bytes, int offset, int length ) throws IOException
+	{
+		if( output == null )
+			unchangedLength += length;
+		else
+			output.write( bytes, offset, length );
+	} // End of unchanged() method.
+
+
+	/**
+	 * replace() will record the replacement for the next part of the original file.
+	 * A replacement that is equal to the original counts as unchanged.
+	 *
+	 * @param original    the original text.
+	 * @param replacement the text to write in its place.
+	 * @throws IOException if the temporary file cannot be created or written.
+	 */
+	@Override
+	public void replace( String original, String replacement ) throws IOException
+	{
+		if( output == null )
+		{
+			if( original.equals( replacement ) )
+			{
+				unchangedLength += original.length();
+				return;
+			}
+			startWriting();
+		}
+		write( replacement );
+	} // End of replace() method.
+
+
+	/**
+	 * write() will write text to the temporary file as ISO-8859-1.
+	 * Characters outside of ISO-8859-1 become '?', the same as an OutputStreamWriter would write them.
+	 *
+	 * @param text the text to write.
+	 * @throws IOException if the text cannot be written.
+	 */
+	private void write( String text ) throws IOException
+	{
+		int length = text.length();
+		if( encodeBuffer == null )
+			encodeBuffer = new byte[ENCODE_BUFFER_SIZE];
+		int start = 0;
+		while( start < length )
+		{
+			int end = Math.min( length, start + ENCODE_BUFFER_SIZE );
+			for( int i = start; i < end; i++ )
+			{
+				char c = text.charAt( i );
+				if( c >= 256 )
+				{
+					// Let the encoder handle the rest, including surrogate pairs, which become a single '?'.
+					output.write( encodeBuffer, 0, i - start );
+					output.write( text.substring( i ).getBytes( StandardCharsets.ISO_8859_1 ) );
+					return;
+				}
+				encodeBuffer[i - start] = (byte) c;
+			}
+			output.write( encodeBuffer, 0, end - start );
+			start = end;
+		}
+	} // End of write() method.
+
+
+	/**
+	 * startWriting() will create the temporary file and copy the unchanged prefix of the original into it.
+	 *
+	 * @throws IOException if the file cannot be created or the prefix cannot be copied.
+	 */
+	private void startWriting() throws IOException
+	{
+		writeStart = System.nanoTime();
+		temporaryPath = StreamingRewriter.createTemporaryFile( path );
+		fileChannel = FileChannel.open( temporaryPath, StandardOpenOption.WRITE );
+		if( source != null )
+		{
+			try
+			{
+				ByteBuffer prefix = ByteBuffer.wrap( source, 0, (int) unchangedLength );
+				while( prefix.hasRemaining() )
+					fileChannel.write( prefix );
+			}
+			catch( IOException | IndexOutOfBoundsException exception )
+			{
+				fileChannel.close();
+				throw exception instanceof IOException ? (IOException) exception : new EOFException( path + " is shorter than the text already read from it" );
+			}
+			output = newOutput();
+			return;
+		}
+		try( FileChannel sourceChannel = FileChannel.open( path, StandardOpenOption.READ ) )
+		{
+			// transferFrom() lets the operating system copy the prefix without passing it through the heap.
+			long copied = 0;
+			while( copied < unchangedLength )
+			{
+				long count = fileChannel.transferFrom( sourceChannel, copied, unchangedLength - copied );
+				if( count <= 0 )
+					throw new EOFException( path + " is shorter than the text already read from it" );
+				copied += count;
+			}
+			fileChannel.position( unchangedLength );
+		}
+		catch( IOException ioException )
+		{
+			fileChannel.close();
+			throw ioException;
+		}
+		output = newOutput();
+	} // End of startWriting() method.
+
+
+	/**
+	 * newOutput() will open a buffered stream on the temporary file, after counting the copied prefix as written.
+	 *
+	 * @return the stream.
+	 */
+	private OutputStream newOutput()
+	{
+		FileMeter.addWrite( unchangedLength, System.nanoTime() - writeStart );
+		return new BufferedOutputStream( FileMeter.meter( Channels.newOutputStream( fileChannel ) ) );
+	} // End of newOutput() method.
+
+
+	/**
+	 * isModified() will report whether anything has changed so far.
+	 *
+	 * @return true if a replacement differed from the original.
+	 */
+	boolean isModified()
+	{
+		return output != null;
+	} // End of isModified() method.
+
+
+	/**
+	 * commit() will move the rewritten file into place, if anything changed.
+	 * The file and its directory are synced as the Durability mode of the current node requires.
+	 *
+	 * @return MODIFIED if the file was replaced, or UNCHANGED if it was left alone.
+	 * @throws IOException if the temporary file cannot be finished or moved.
+	 */
+	FileStatus commit() throws IOException
+	{
+		if( output == null )
+			return FileStatus.UNCHANGED;
+		output.flush();
+		long start = System.nanoTime();
+		DurableWrites.syncFile( fileChannel );
+		output.close();
+		StreamingRewriter.replace( temporaryPath, path );
+		committed = true;
+		DurableWrites.syncDirectory( path );
+		FileMeter.addWrite( 0, System.nanoTime() - start );
+		return FileStatus.MODIFIED;
+	} // End of commit() method.
+
+
+	/**
+	 * close() will delete the temporary file if it was never committed.
+	 *
+	 * @throws IOException if the temporary file cannot be deleted.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if( temporaryPath != null && !committed )
+		{
+			if( output != null )
+				output.close();
+			Files.deleteIfExists( temporaryPath );
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * RunJournal is a write-ahead journal that lets an interrupted fleet run be resumed instead of started again.<br>
+ * Before a node's files are touched, each one is copied to a backup, and a "start" record naming the backups is appended to the journal.
+ * When the node has been updated, a "done" record is appended.<br>
+ * When the journal is opened by the next run, every node that has a "start" record but no "done" record is rolled back from its backups, because it may be half applied.
+ * Nodes with a "done" record whose Config entry has not changed since are skipped, so the run resumes at the first node that did not finish.<br>
+ * The journal is one line of JSON per record, so a record torn by a crash only loses that line.
+ * Records and backups are synced when the run uses a Durability other than NONE, so the journal is on disk before the files it protects are changed.<br>
+ * When a run finishes with every node updated, the journal and its backups are deleted.
+ */
+final class RunJournal implements Closeable
+{
+	private static final Logger journalLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private static final Gson GSON = new Gson();
+	private static final String START = "start";
+	private static final String DONE = "done";
+	private static final String ROLLBACK = "rollback";
+	private final Path path;
+	private final Path backupDirectory;
+	private final boolean sync;
+	/**
+	 * The Config hash of each node the interrupted run finished, keyed by base directory.
+	 */
+	private final Map<String, String> doneHashMap = new HashMap<>();
+	/**
+	 * Numbers each node started, so the backups of different nodes never share a name.
+	 */
+	private final AtomicInteger sequence = new AtomicInteger();
+	private FileChannel journalChannel;
+
+
+	private RunJournal( Path path, Durability durability )
+	{
+		this.path = path;
+		// Absolute, so the journal still works when the next run starts in another directory.
+		this.backupDirectory = Paths.get( path + ".backups" ).toAbsolutePath();
+		this.sync = durability != Durability.NONE;
+	}
+
+
+	/**
+	 * open() will read the journal left by an interrupted run, roll back any node it left half applied, and open the journal for this run.
+	 *
+	 * @param journalFileName the journal file.
+	 * @param durability      the Durability of the run, which decides whether records and backups are synced.
+	 * @return the journal.
+	 * @throws IOException if a half-applied node cannot be rolled back, or the journal cannot be opened.  The journal is left as it was, so nothing is lost.
+	 */
+	static RunJournal open( String journalFileName, Durability durability ) throws IOException
+	{
+		RunJournal runJournal = new RunJournal( Paths.get( journalFileName ), durability );
+		Map<String, Record> startedMap = new LinkedHashMap<>();
+		if( Files.isRegularFile( runJournal.path ) )
+			runJournal.replay( startedMap );
+		Files.createDirectories( runJournal.backupDirectory );
+		runJournal.journalChannel = FileChannel.open( runJournal.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+		for( Record record : startedMap.values() )
+			runJournal.rollBack( record );
+		if( !runJournal.doneHashMap.isEmpty() || !startedMap.isEmpty() )
+		{
+			String logString = "Resuming an interrupted run: " + runJournal.doneHashMap.size() + " nodes already finished, " + startedMap.size() + " rolled back.";
+			journalLogger.log( Level.INFO, logString );
+		}
+		return runJournal;
+	} // End of open() method.
+
+
+	/**
+	 * replay() will read every record of the journal, in order.
+	 *
+	 * @param startedMap receives the nodes that were started but not finished, keyed by base directory.
+	 * @throws IOException if the journal cannot be read.
+	 */
+	private void replay( Map<String, Record> startedMap ) throws IOException
+	{
+		int lineNumber = 0;
+		try( BufferedReader reader = Files.newBufferedReader( path, StandardCharsets.UTF_8 ) )
+		{
+			String line;
+			while( ( line = reader.readLine() ) != null )
+			{
+				lineNumber++;
+				Record record;
+				try
+				{
+					record = GSON.fromJson( line, Record.class );
+				}
+				catch( JsonParseException jsonParseException )
+				{
+					record = null;
+				}
+				if( record == null || record.event == null || record.node == null )
+				{
+					// Only the last line can be torn, and a torn "start" means no file of that node was touched yet.
+					String logString = "Ignoring line " + lineNumber + " of the journal \"" + path + "\", which is incomplete.";
+					journalLogger.log( Level.WARNING, logString );
+					continue;
+				}
+				sequence.set( Math.max( sequence.get(), record.sequence + 1 ) );
+				switch( record.event )
+				{
+					case START:
+						startedMap.put( record.node, record );
+						doneHashMap.remove( record.node );
+						break;
+					case DONE:
+						startedMap.remove( record.node );
+						doneHashMap.put( record.node, record.configHash );
+						break;
+					default:
+						startedMap.remove( record.node );
+						break;
+				}
+			}
+		}
+	} // End of replay() method.
+
+
+	/**
+	 * rollBack() will put the files of a half-applied node back the way they were before it started.
+	 *
+	 * @param record the "start" record of the node.
+	 * @throws IOException if a file cannot be restored.
+	 */
+	private void rollBack( Record record ) throws IOException
+	{
+		if( record.backups == null )
+			record.backups = Collections.emptyMap();
+		for( Map.Entry<String, String> backupEntry : record.backups.entrySet() )
+		{
+			Path filePath = Paths.get( backupEntry.getKey() );
+			Path temporaryPath = StreamingRewriter.createTemporaryFile( filePath );
+			try
+			{
+				Files.copy( Paths.get( backupEntry.getValue() ), temporaryPath, StandardCopyOption.REPLACE_EXISTING );
+				syncFile( temporaryPath );
+				StreamingRewriter.replace( temporaryPath, filePath );
+			}
+			finally
+			{
+				Files.deleteIfExists( temporaryPath );
+			}
+		}
+		String logString = "Rolled back " + record.node + ", which the interrupted run left half applied.";
+		journalLogger.log( Level.WARNING, logString );
+		append( newRecord( ROLLBACK, record.node, record.sequence ) );
+	} // End of rollBack() method.
+
+
+	/**
+	 * isDone() will check if the interrupted run already finished a node, and its Config entry has not changed since.
+	 *
+	 * @param configuredNode the node to check.
+	 * @return true if the node can be skipped.
+	 */
+	synchronized boolean isDone( Config configuredNode )
+	{
+		String doneHash = doneHashMap.get( configuredNode.getBaseDirectory() );
+		return doneHash != null && doneHash.equals( RunManifest.configHash( configuredNode ) );
+	} // End of isDone() method.
+
+
+	/**
+	 * begin() will back up the files of a node and record that it has started.
+	 * This must return before any file of the node is changed.
+	 *
+	 * @param configuredNode the node about to be processed.
+	 * @param fileNameList   the files of the node.  Files that do not exist are not backed up, because the node cannot change them.
+	 * @throws IOException if a backup or the record cannot be written.
+	 */
+	void begin( Config configuredNode, List<String> fileNameList ) throws IOException
+	{
+		Record record = newRecord( START, configuredNode.getBaseDirectory(), sequence.getAndIncrement() );
+		record.backups = new LinkedHashMap<>();
+		for( int i = 0; i < fileNameList.size(); i++ )
+		{
+			Path filePath = Paths.get( fileNameList.get( i ) ).toAbsolutePath();
+			if( !Files.isRegularFile( filePath ) )
+				continue;
+			Path backupPath = backupDirectory.resolve( record.sequence + "-" + i + "-" + filePath.getFileName() );
+			Files.copy( filePath, backupPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES );
+			syncFile( backupPath );
+			record.backups.put( filePath.toString(), backupPath.toString() );
+		}
+		append( record );
+	} // End of begin() method.
+
+
+	/**
+	 * complete() will record that a node has been updated.
+	 *
+	 * @param configuredNode the node that was updated.
+	 * @throws IOException if the record cannot be written.
+	 */
+	void complete( Config configuredNode ) throws IOException
+	{
+		Record record = newRecord( DONE, configuredNode.getBaseDirectory(), 0 );
+		record.configHash = RunManifest.configHash( configuredNode );
+		append( record );
+	} // End of complete() method.
+
+
+	/**
+	 * discard() will delete the journal and every backup, once a run has updated every node.
+	 *
+	 * @throws IOException if a file cannot be deleted.
+	 */
+	void discard() throws IOException
+	{
+		close();
+		Files.deleteIfExists( path );
+		if( Files.isDirectory( backupDirectory ) )
+		{
+			Files.walkFileTree( backupDirectory, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult visitFile( Path file, BasicFileAttributes attributes ) throws IOException
+				{
+					Files.delete( file );
+					return FileVisitResult.CONTINUE;
+				}
+
+
+				@Override
+				public FileVisitResult postVisitDirectory( Path directory, IOException exception ) throws IOException
+				{
+					Files.delete( directory );
+					return FileVisitResult.CONTINUE;
+				}
+			} );
+		}
+	} // End of discard() method.
+
+
+	/**
+	 * close() will close the journal, keeping it and its backups for the next run.
+	 *
+	 * @throws IOException if the journal cannot be closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if( journalChannel != null )
+			journalChannel.close();
+		journalChannel = null;
+	}
+
+
+	/**
+	 * append() will add one record to the end of the journal.
+	 *
+	 * @param record the record.
+	 * @throws IOException if the record cannot be written.
+	 */
+	private synchronized void append( Record record ) throws IOException
+	{
+		ByteBuffer byteBuffer = ByteBuffer.wrap( ( GSON.toJson( record ) + '\n' ).getBytes( StandardCharsets.UTF_8 ) );
+		while( byteBuffer.hasRemaining() )
+			journalChannel.write( byteBuffer );
+		if( sync )
+			journalChannel.force( false );
+	} // End of append() method.
+
+
+	/**
+	 * syncFile() will sync a backup or a restored file, if the run asks for durability.
+	 *
+	 * @param filePath the file.
+	 * @throws IOException if the file cannot be synced.
+	 */
+	private void syncFile( Path filePath ) throws IOException
+	{
+		if( !sync )
+			return;
+		try( FileChannel fileChannel = FileChannel.open( filePath, StandardOpenOption.WRITE ) )
+		{
+			fileChannel.force( true );
+		}
+	} // End of syncFile() method.
+
+
+	private static Record newRecord( String event, String node, int sequence )
+	{
+		Record record = new Record();
+		record.event = event;
+		record.node = node;
+		record.sequence = sequence;
+		return record;
+	}
+
+
+	/**
+	 * One line of the journal.
+	 */
+	private static class Record
+	{
+		private String event;
+		/**
+		 * The base directory of the node.
+		 */
+		private String node;
+		private int sequence;
+		/**
+		 * For "done" records, the Config hash of the node that was applied.
+		 */
+		private String configHash;
+		/**
+		 * For "start" records, the backup of each file, keyed by the file.
+		 */
+		private Map<String, String> backups;
+	}
+}
@@ -0,0 +1,291 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * RunManifest remembers the state each node was left in by the last successful run, so an incremental run can skip nodes that have not changed.<br>
+ * For each node it keeps a hash of the node's Config entry, plus the size, modification time, and content hash of each of its files.<br>
+ * A node is unchanged when its Config hash matches and every file still has the recorded size and modification time.<br>
+ * When only the modification time differs, the content hash decides, so touching a file without changing it does not force an update.<br>
+ * Nodes are identified by their base directory.<br>
+ * The manifest also records its own format version and the editor's EDIT_RULES_VERSION.
+ * A manifest written by a different version is ignored, because nodes it calls unchanged may not be what this version would write.
+ */
+class RunManifest
+{
+	private static final Logger manifestLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+	private static final int VERSION = 1;
+	private final Path path;
+	private final Map<String, NodeState> nodeStateMap = new ConcurrentHashMap<>();
+
+
+	private RunManifest( Path path )
+	{
+		this.path = path;
+	}
+
+
+	/**
+	 * load() will read a manifest from disk.
+	 * A missing, unreadable, or malformed manifest, or one written by a different version, gives an empty one, which makes every node look changed.
+	 *
+	 * @param manifestFileName the manifest file.
+	 * @return the manifest.
+	 */
+	static RunManifest load( String manifestFileName )
+	{
+		RunManifest runManifest = new RunManifest( Paths.get( manifestFileName ) );
+		if( !Files.isRegularFile( runManifest.path ) )
+			return runManifest;
+		try( Reader reader = Files.newBufferedReader( runManifest.path, StandardCharsets.UTF_8 ) )
+		{
+			ManifestFile manifestFile = GSON.fromJson( reader, ManifestFile.class );
+			if( manifestFile == null || manifestFile.nodes == null )
+				return runManifest;
+			if( manifestFile.version == VERSION && manifestFile.editRules == JavaReplicationConfigEditor.EDIT_RULES_VERSION )
+			{
+				runManifest.nodeStateMap.putAll( manifestFile.nodes );
+			}
+			else
+			{
+				String logString = "The manifest \"" + manifestFileName + "\" was written by a different version of this program, so every node will be processed.";
+				manifestLogger.log( Level.INFO, logString );
+			}
+		}
+		catch( IOException | JsonParseException exception )
+		{
+			String logString = "Ignoring the unreadable manifest \"" + manifestFileName + "\": " + exception.getLocalizedMessage();
+			manifestLogger.log( Level.WARNING, logString );
+		}
+		return runManifest;
+	} // End of load() method.
+
+
+	/**
+	 * isUnchanged() will check if a node and its files are exactly as the last successful run left them.
+	 * This only reads the manifest.  A file that was touched but has the same content is still unchanged, and record() notes its new modification time.
+	 *
+	 * @param configuredNode the node to check.
+	 * @param fileNameList   the files of the node.
+	 * @return true if the node can be skipped.
+	 */
+	boolean isUnchanged( Config configuredNode, List<String> fileNameList )
+	{
+		NodeState nodeState = nodeStateMap.get( configuredNode.getBaseDirectory() );
+		if( nodeState == null || !nodeState.configHash.equals( configHash( configuredNode ) ) )
+			return false;
+		if( !nodeState.files.keySet().equals( new HashSet<>( fileNameList ) ) )
+			return false;
+		try
+		{
+			for( Map.Entry<String, FileState> fileEntry : nodeState.files.entrySet() )
+			{
+				Path filePath = Paths.get( fileEntry.getKey() );
+				if( !Files.isRegularFile( filePath ) )
+					return false;
+				FileState recorded = fileEntry.getValue();
+				BasicFileAttributes attributes = Files.readAttributes( filePath, BasicFileAttributes.class );
+				if( attributes.size() != recorded.size )
+					return false;
+				if( attributes.lastModifiedTime().toMillis() != recorded.modified )
+				{
+					// The file was touched.  Only its content can say whether it changed.
+					if( !hashFile( filePath ).equals( recorded.sha256 ) )
+						return false;
+				}
+			}
+		}
+		catch( IOException ioException )
+		{
+			return false;
+		}
+		return true;
+	} // End of isUnchanged() method.
+
+
+	/**
+	 * record() will remember the current state of a node after it has been updated successfully, or found unchanged.
+	 * A file with the recorded size and modification time keeps its recorded hash, so only files that were written or touched are hashed.
+	 *
+	 * @param configuredNode the node that was updated.
+	 * @param fileNameList   the files of the node.
+	 */
+	void record( Config configuredNode, List<String> fileNameList )
+	{
+		NodeState previous = nodeStateMap.get( configuredNode.getBaseDirectory() );
+		NodeState nodeState = new NodeState();
+		nodeState.configHash = configHash( configuredNode );
+		try
+		{
+			for( String fileName : fileNameList )
+			{
+				Path filePath = Paths.get( fileName );
+				BasicFileAttributes attributes = Files.readAttributes( filePath, BasicFileAttributes.class );
+				FileState fileState = new FileState();
+				fileState.size = attributes.size();
+				fileState.modified = attributes.lastModifiedTime().toMillis();
+				FileState recorded = previous == null ? null : previous.files.get( fileName );
+				if( recorded != null && recorded.size == fileState.size && recorded.modified == fileState.modified )
+					fileState.sha256 = recorded.sha256;
+				else
+					fileState.sha256 = hashFile( filePath );
+				nodeState.files.put( fileName, fileState );
+			}
+			nodeStateMap.put( configuredNode.getBaseDirectory(), nodeState );
+		}
+		catch( IOException ioException )
+		{
+			// Without a complete record, the node will simply be processed again next time.
+			forget( configuredNode );
+			String logString = "Unable to record the state of " + configuredNode.getBaseDirectory() + " in the manifest: " + ioException.getLocalizedMessage();
+			manifestLogger.log( Level.WARNING, logString );
+		}
+	} // End of record() method.
+
+
+	/**
+	 * forget() will remove a node from the manifest, so the next incremental run processes it.
+	 *
+	 * @param configuredNode the node to forget.
+	 */
+	void forget( Config configuredNode )
+	{
+		nodeStateMap.remove( configuredNode.getBaseDirectory() );
+	} // End of forget() method.
+
+
+	/**
+	 * save() will write the manifest to disk, replacing the previous one atomically.
+	 *
+	 * @throws IOException if the manifest cannot be written.
+	 */
+	void save() throws IOException
+	{
+		ManifestFile manifestFile = new ManifestFile();
+		manifestFile.version = VERSION;
+		manifestFile.editRules = JavaReplicationConfigEditor.EDIT_RULES_VERSION;
+		// Sort the nodes so the manifest only changes when the fleet does.
+		manifestFile.nodes = new TreeMap<>( nodeStateMap );
+		Path temporaryPath = StreamingRewriter.createTemporaryFile( path );
+		try
+		{
+			try( Writer writer = Files.newBufferedWriter( temporaryPath, StandardCharsets.UTF_8 ) )
+			{
+				GSON.toJson( manifestFile, writer );
+			}
+			StreamingRewriter.replace( temporaryPath, path );
+		}
+		finally
+		{
+			Files.deleteIfExists( temporaryPath );
+		}
+	} // End of save() method.
+
+
+	/**
+	 * configHash() will hash every setting of a node.
+	 *
+	 * @param configuredNode the node to hash.
+	 * @return the SHA-256 hash of the node's JSON form, as hexadecimal.
+	 */
+	static String configHash( Config configuredNode )
+	{
+		MessageDigest messageDigest = newDigest();
+		messageDigest.update( GSON.toJson( configuredNode ).getBytes( StandardCharsets.UTF_8 ) );
+		return toHex( messageDigest.digest() );
+	} // End of configHash() method.
+
+
+	/**
+	 * hashFile() will hash the contents of a file.
+	 *
+	 * @param filePath the file to hash.
+	 * @return the SHA-256 hash of the file, as hexadecimal.
+	 * @throws IOException if the file cannot be read.
+	 */
+	static String hashFile( Path filePath ) throws IOException
+	{
+		MessageDigest messageDigest = newDigest();
+		byte[] buffer = new byte[8192];
+		try( InputStream inputStream = Files.newInputStream( filePath ) )
+		{
+			int count;
+			while( ( count = inputStream.read( buffer ) ) > 0 )
+				messageDigest.update( buffer, 0, count );
+		}
+		return toHex( messageDigest.digest() );
+	} // End of hashFile() method.
+
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance( "SHA-256" );
+		}
+		catch( NoSuchAlgorithmException noSuchAlgorithmException )
+		{
+			// Every Java platform is required to support SHA-256.
+			throw new IllegalStateException( noSuchAlgorithmException );
+		}
+	}
+
+
+	private static String toHex( byte[] bytes )
+	{
+		StringBuilder builder = new StringBuilder( bytes.length * 2 );
+		for( byte b : bytes )
+			builder.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+		return builder.toString();
+	}
+
+
+	/**
+	 * The layout of the manifest file.
+	 */
+	private static class ManifestFile
+	{
+		private int version;
+		private int editRules;
+		private Map<String, NodeState> nodes;
+	}
+
+
+	/**
+	 * The recorded state of one node.
+	 */
+	private static class NodeState
+	{
+		private String configHash = "";
+		private Map<String, FileState> files = new TreeMap<>();
+	}
+
+
+	/**
+	 * The recorded state of one file.
+	 */
+	private static class FileState
+	{
+		private long size;
+		private long modified;
+		private String sha256 = "";
+	}
+}
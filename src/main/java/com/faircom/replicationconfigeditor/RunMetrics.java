@@ -0,0 +1,403 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * RunMetrics measures where the time of a run goes, and writes it as a JSON report and, optionally, a Prometheus text-format file.<br>
+ * Timings are kept per phase: parsing each node from the fleet file, processing each node, and for each file, reading, editing, and writing it.
+ * Each phase reports its count, total, min, average, p99, and max.<br>
+ * It also counts the bytes read and written, the lines scanned and changed, and the nodes and files by outcome.  Files of skipped nodes count as skipped.<br>
+ * Per-file figures are gathered by FileMeter on the thread that edits the file, and handed over here once the file is done, so recording costs one lock per file.<br>
+ * Nothing is measured unless a run has been started with start(), so the daemon and the benchmarks pay nothing.
+ */
+final class RunMetrics
+{
+	private static final Logger metricsLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+	private static final String PROMETHEUS_PREFIX = "replication_editor_";
+	/**
+	 * The run being measured, or null.
+	 */
+	private static volatile RunMetrics current = null;
+	private final long startNanos = System.nanoTime();
+	private final Instant startTime = Instant.now();
+	/**
+	 * When stop() was called, or 0 while the run is still being measured.
+	 */
+	private long endNanos = 0;
+	private final Map<Phase, Samples> sampleMap = new EnumMap<>( Phase.class );
+	private final Map<FileStatus, Long> fileCounts = new EnumMap<>( FileStatus.class );
+	private long filesSkipped = 0;
+	private long nodesSucceeded = 0;
+	private long nodesFailed = 0;
+	private long nodesSkipped = 0;
+	private long bytesRead = 0;
+	private long bytesWritten = 0;
+	private long linesScanned = 0;
+	private long linesChanged = 0;
+
+
+	/**
+	 * The phases that are timed.
+	 */
+	enum Phase
+	{
+		/**
+		 * Parsing one node from the fleet file.
+		 */
+		PARSE( "parse" ),
+		/**
+		 * Processing one node, from start to finish.
+		 */
+		NODE( "node" ),
+		/**
+		 * Processing one file, from start to finish.
+		 */
+		FILE( "file" ),
+		/**
+		 * Reading one file, including any wait for a prefetch.
+		 */
+		READ( "read" ),
+		/**
+		 * Matching and editing the lines of one file: the time of the file that was neither reading nor writing.
+		 */
+		EDIT( "edit" ),
+		/**
+		 * Writing, syncing, and moving one file into place.
+		 */
+		WRITE( "write" );
+
+		private final String label;
+
+
+		Phase( String label )
+		{
+			this.label = label;
+		}
+	}
+
+
+	private RunMetrics()
+	{
+		for( Phase phase : Phase.values() )
+			sampleMap.put( phase, new Samples() );
+		for( FileStatus fileStatus : FileStatus.values() )
+			fileCounts.put( fileStatus, 0L );
+	}
+
+
+	/**
+	 * start() will begin measuring a run.  Any run measured before is discarded.
+	 *
+	 * @return the metrics of the new run.
+	 */
+	static RunMetrics start()
+	{
+		current = new RunMetrics();
+		return current;
+	} // End of start() method.
+
+
+	/**
+	 * stop() will stop measuring, so later work is not counted in this run.
+	 */
+	synchronized void stop()
+	{
+		if( current == this )
+			current = null;
+		if( endNanos == 0 )
+			endNanos = System.nanoTime();
+	} // End of stop() method.
+
+
+	/**
+	 * isActive() will report whether a run is being measured, so callers can skip reading the clock when none is.
+	 *
+	 * @return true if a run is being measured.
+	 */
+	static boolean isActive()
+	{
+		return current != null;
+	} // End of isActive() method.
+
+
+	/**
+	 * recordParse() will record the time taken to parse one node.
+	 *
+	 * @param nanos the time taken.
+	 */
+	static void recordParse( long nanos )
+	{
+		RunMetrics runMetrics = current;
+		if( runMetrics != null )
+		{
+			synchronized( runMetrics )
+			{
+				runMetrics.sampleMap.get( Phase.PARSE ).add( nanos );
+			}
+		}
+	} // End of recordParse() method.
+
+
+	/**
+	 * recordNode() will record the outcome and time of one node.
+	 *
+	 * @param nanos        the time taken.
+	 * @param nodeResult   the outcome.
+	 * @param skippedFiles the number of files of the node, counted as skipped when the node was.
+	 */
+	static void recordNode( long nanos, NodeResult nodeResult, int skippedFiles )
+	{
+		RunMetrics runMetrics = current;
+		if( runMetrics == null )
+			return;
+		synchronized( runMetrics )
+		{
+			runMetrics.sampleMap.get( Phase.NODE ).add( nanos );
+			if( nodeResult.isSkipped() )
+			{
+				runMetrics.nodesSkipped++;
+				runMetrics.filesSkipped += skippedFiles;
+			}
+			else if( nodeResult.isSuccess() )
+			{
+				runMetrics.nodesSucceeded++;
+			}
+			else
+			{
+				runMetrics.nodesFailed++;
+			}
+		}
+	} // End of recordNode() method.
+
+
+	/**
+	 * recordFile() will record everything measured while one file was processed.
+	 *
+	 * @param fileMeter  the figures of the file.
+	 * @param fileStatus the outcome.
+	 */
+	static void recordFile( FileMeter fileMeter, FileStatus fileStatus )
+	{
+		RunMetrics runMetrics = current;
+		if( runMetrics == null )
+			return;
+		long fileNanos = fileMeter.getTotalNanos();
+		synchronized( runMetrics )
+		{
+			runMetrics.sampleMap.get( Phase.FILE ).add( fileNanos );
+			runMetrics.sampleMap.get( Phase.READ ).add( fileMeter.getReadNanos() );
+			runMetrics.sampleMap.get( Phase.WRITE ).add( fileMeter.getWriteNanos() );
+			runMetrics.sampleMap.get( Phase.EDIT ).add( Math.max( 0, fileNanos - fileMeter.getReadNanos() - fileMeter.getWriteNanos() ) );
+			runMetrics.fileCounts.put( fileStatus, runMetrics.fileCounts.get( fileStatus ) + 1 );
+			runMetrics.bytesRead += fileMeter.getBytesRead();
+			runMetrics.bytesWritten += fileMeter.getBytesWritten();
+			runMetrics.linesScanned += fileMeter.getLinesScanned();
+			runMetrics.linesChanged += fileMeter.getLinesChanged();
+		}
+	} // End of recordFile() method.
+
+
+	/**
+	 * toJson() will build the report of this run.
+	 *
+	 * @return the report.
+	 */
+	synchronized JsonObject toJson()
+	{
+		JsonObject report = new JsonObject();
+		report.addProperty( "started", startTime.toString() );
+		report.addProperty( "durationSeconds", seconds( ( endNanos == 0 ? System.nanoTime() : endNanos ) - startNanos ) );
+		JsonObject nodes = new JsonObject();
+		nodes.addProperty( "succeeded", nodesSucceeded );
+		nodes.addProperty( "failed", nodesFailed );
+		nodes.addProperty( "skipped", nodesSkipped );
+		report.add( "nodes", nodes );
+		JsonObject files = new JsonObject();
+		for( Map.Entry<FileStatus, Long> entry : fileCounts.entrySet() )
+			files.addProperty( entry.getKey().toString(), entry.getValue() );
+		files.addProperty( "skipped", filesSkipped );
+		report.add( "files", files );
+		report.addProperty( "bytesRead", bytesRead );
+		report.addProperty( "bytesWritten", bytesWritten );
+		report.addProperty( "linesScanned", linesScanned );
+		report.addProperty( "linesChanged", linesChanged );
+		JsonObject phases = new JsonObject();
+		for( Map.Entry<Phase, Samples> entry : sampleMap.entrySet() )
+		{
+			Samples samples = entry.getValue();
+			JsonObject phase = new JsonObject();
+			phase.addProperty( "count", samples.size );
+			phase.addProperty( "totalSeconds", seconds( samples.total ) );
+			phase.addProperty( "minSeconds", seconds( samples.percentile( 0 ) ) );
+			phase.addProperty( "avgSeconds", samples.size == 0 ? 0 : seconds( samples.total ) / samples.size );
+			phase.addProperty( "p99Seconds", seconds( samples.percentile( 99 ) ) );
+			phase.addProperty( "maxSeconds", seconds( samples.percentile( 100 ) ) );
+			phases.add( entry.getKey().label, phase );
+		}
+		report.add( "phases", phases );
+		return report;
+	} // End of toJson() method.
+
+
+	/**
+	 * toPrometheus() will format this run in the Prometheus text exposition format, for the node_exporter textfile collector or a push gateway.
+	 *
+	 * @return the metrics.
+	 */
+	synchronized String toPrometheus()
+	{
+		StringBuilder builder = new StringBuilder();
+		family( builder, "run_start_timestamp_seconds", "gauge", "When the run started, in seconds since the epoch." );
+		sample( builder, "run_start_timestamp_seconds", "", startTime.toEpochMilli() / 1000.0 );
+		family( builder, "run_duration_seconds", "gauge", "How long the run took." );
+		sample( builder, "run_duration_seconds", "", seconds( ( endNanos == 0 ? System.nanoTime() : endNanos ) - startNanos ) );
+		family( builder, "nodes", "gauge", "Nodes processed by the run, by outcome." );
+		sample( builder, "nodes", "{outcome=\"succeeded\"}", nodesSucceeded );
+		sample( builder, "nodes", "{outcome=\"failed\"}", nodesFailed );
+		sample( builder, "nodes", "{outcome=\"skipped\"}", nodesSkipped );
+		family( builder, "files", "gauge", "Files processed by the run, by outcome." );
+		for( Map.Entry<FileStatus, Long> entry : fileCounts.entrySet() )
+			sample( builder, "files", "{outcome=\"" + entry.getKey() + "\"}", entry.getValue() );
+		sample( builder, "files", "{outcome=\"skipped\"}", filesSkipped );
+		family( builder, "bytes_read", "gauge", "Bytes read from configuration files by the run." );
+		sample( builder, "bytes_read", "", bytesRead );
+		family( builder, "bytes_written", "gauge", "Bytes written to configuration files by the run." );
+		sample( builder, "bytes_written", "", bytesWritten );
+		family( builder, "lines_scanned", "gauge", "Lines of configuration files scanned by the run." );
+		sample( builder, "lines_scanned", "", linesScanned );
+		family( builder, "lines_changed", "gauge", "Lines, or JSON values, changed by the run." );
+		sample( builder, "lines_changed", "", linesChanged );
+		family( builder, "phase_seconds", "summary", "Time per node or file spent in each phase of the run." );
+		for( Map.Entry<Phase, Samples> entry : sampleMap.entrySet() )
+		{
+			String label = "phase=\"" + entry.getKey().label + "\"";
+			Samples samples = entry.getValue();
+			sample( builder, "phase_seconds", "{" + label + ",quantile=\"0\"}", seconds( samples.percentile( 0 ) ) );
+			sample( builder, "phase_seconds", "{" + label + ",quantile=\"0.99\"}", seconds( samples.percentile( 99 ) ) );
+			sample( builder, "phase_seconds", "{" + label + ",quantile=\"1\"}", seconds( samples.percentile( 100 ) ) );
+			sample( builder, "phase_seconds_sum", "{" + label + "}", seconds( samples.total ) );
+			sample( builder, "phase_seconds_count", "{" + label + "}", samples.size );
+		}
+		return builder.toString();
+	} // End of toPrometheus() method.
+
+
+	/**
+	 * writeReport() will write the JSON report and the Prometheus file, each if it is named, replacing any previous ones atomically.
+	 * A report that cannot be written only costs the dashboards one data point, so this logs the failure and carries on.
+	 *
+	 * @param reportFileName     the JSON report file, or an empty String for none.
+	 * @param prometheusFileName the Prometheus file, or an empty String for none.
+	 */
+	void writeReport( String reportFileName, String prometheusFileName )
+	{
+		if( !reportFileName.isEmpty() )
+			write( reportFileName, GSON.toJson( toJson() ) + System.lineSeparator() );
+		if( !prometheusFileName.isEmpty() )
+			write( prometheusFileName, toPrometheus() );
+	} // End of writeReport() method.
+
+
+	private static void write( String fileName, String text )
+	{
+		Path path = Paths.get( fileName );
+		try
+		{
+			Path temporaryPath = StreamingRewriter.createTemporaryFile( path );
+			try
+			{
+				try( Writer writer = Files.newBufferedWriter( temporaryPath, StandardCharsets.UTF_8 ) )
+				{
+					writer.write( text );
+				}
+				StreamingRewriter.replace( temporaryPath, path );
+			}
+			finally
+			{
+				Files.deleteIfExists( temporaryPath );
+			}
+		}
+		catch( IOException ioException )
+		{
+			String logString = "Unable to write the metrics file \"" + fileName + "\": " + ioException.getLocalizedMessage();
+			metricsLogger.log( Level.WARNING, logString );
+		}
+	}
+
+
+	private static void family( StringBuilder builder, String name, String type, String help )
+	{
+		builder.append( "# HELP " ).append( PROMETHEUS_PREFIX ).append( name ).append( ' ' ).append( help ).append( '\n' );
+		builder.append( "# TYPE " ).append( PROMETHEUS_PREFIX ).append( name ).append( ' ' ).append( type ).append( '\n' );
+	}
+
+
+	private static void sample( StringBuilder builder, String name, String labels, double value )
+	{
+		builder.append( PROMETHEUS_PREFIX ).append( name ).append( labels ).append( ' ' ).append( value ).append( '\n' );
+	}
+
+
+	private static double seconds( long nanos )
+	{
+		return nanos / 1e9;
+	}
+
+
+	/**
+	 * The timings of one phase, kept in full so percentiles are exact.  A million samples take 8 MB.
+	 */
+	private static final class Samples
+	{
+		private long[] values = new long[64];
+		private int size = 0;
+		private long total = 0;
+		private boolean sorted = true;
+
+
+		private void add( long nanos )
+		{
+			if( size == values.length )
+				values = Arrays.copyOf( values, size * 2 );
+			values[size++] = nanos;
+			total += nanos;
+			sorted = false;
+		}
+
+
+		/**
+		 * percentile() will return the nearest-rank percentile, where 0 is the minimum and 100 the maximum.
+		 *
+		 * @param percent the percentile.
+		 * @return the value, or 0 if there are no samples.
+		 */
+		private long percentile( int percent )
+		{
+			if( size == 0 )
+				return 0;
+			if( !sorted )
+			{
+				Arrays.sort( values, 0, size );
+				sorted = true;
+			}
+			int rank = (int) Math.ceil( percent / 100.0 * size );
+			return values[Math.max( 0, rank - 1 )];
+		}
+	}
+}
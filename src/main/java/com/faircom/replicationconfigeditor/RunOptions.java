@@ -0,0 +1,459 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.logging.Level;
+
+
+/**
+ * This class holds the command line options for a single run of this program.<br>
+ * The first argument that does not begin with "--" is the name of the fleet configuration file.<br>
+ * Options:<br>
+ * --parallel [n] process up to n nodes at the same time.  Omitting n uses one thread per available processor.<br>
+ * --log-level LEVEL log only records at LEVEL or above, such as WARNING or FINE.<br>
+ * --log-json FILE also append every log record to FILE as one line of JSON.<br>
+ * --incremental skip nodes that have not changed since the last successful run.<br>
+ * --manifest FILE keep the incremental run manifest in FILE, instead of the fleet file name with ".manifest" appended.  This implies --incremental.<br>
+ * --dry-run log a unified diff of the changes each file would get, without writing anything.  Nodes are processed in parallel unless --parallel says otherwise.<br>
+ * --check-ports check the whole fleet for port conflicts before any file is written, and stop if there are any.<br>
+ * --allocate-ports [base] give free ports, starting at base, to nodes that leave listeningHttpPort or listeningHttpsPort blank.  This implies --check-ports.<br>
+ * --watch [ms] keep running, and re-apply the nodes that were added or changed each time the fleet file is saved.  The file must be quiet for ms milliseconds, 500 by default, before it is read.<br>
+ * --daemon [port] keep running, and accept apply, dry-run, and validate requests over HTTP on the loopback port, 7318 by default.  No fleet file is needed.<br>
+ * --durability MODE sync written files: none (the default), file to sync each file and its directory, or batched to sync each directory once per node.<br>
+ * --resume keep a journal, so a run that is interrupted can be run again to roll back the node it left half applied, and carry on from there.<br>
+ * --journal FILE keep the journal in FILE, instead of the fleet file name with ".journal" appended.  This implies --resume.<br>
+ * --prefetch [n] read the files of the next n nodes, 8 by default, while the current node is edited and written.  This hides the latency of network filesystems.<br>
+ * --metrics FILE write the run report to FILE, instead of the fleet file name with ".metrics.json" appended.  A report is written at the end of every run, except a dry run, which only writes one to a FILE named here.<br>
+ * --metrics-prometheus FILE also write the run report to FILE in the Prometheus text format, for the node_exporter textfile collector.<br>
+ */
+class RunOptions
+{
+	/**
+	 * The base port used by --allocate-ports when none is given.
+	 */
+	private static final int DEFAULT_ALLOCATION_BASE = 20000;
+	/**
+	 * The debounce period used by --watch when none is given.
+	 */
+	private static final int DEFAULT_WATCH_DEBOUNCE = 500;
+	/**
+	 * The port used by --daemon when none is given.
+	 */
+	private static final int DEFAULT_DAEMON_PORT = 7318;
+	/**
+	 * The number of nodes read ahead by --prefetch when none is given.
+	 */
+	private static final int DEFAULT_PREFETCH_DEPTH = 8;
+	/**
+	 * The fleet configuration file to load.
+	 * Defaults to "config.json".
+	 */
+	private String configFileName = "config.json";
+	/**
+	 * The number of nodes to process at the same time.
+	 * Defaults to 1, which processes nodes serially and stops at the first failure.
+	 */
+	private int parallelism = 1;
+	/**
+	 * The lowest level to log.
+	 * Defaults to INFO.
+	 */
+	private Level logLevel = Level.INFO;
+	/**
+	 * The file to append JSON-lines log records to.
+	 * Defaults to an empty String, which disables JSON-lines logging.
+	 */
+	private String jsonLogFileName = "";
+	/**
+	 * Whether to skip nodes that have not changed since the last successful run.
+	 * Defaults to false.
+	 */
+	private boolean incremental = false;
+	/**
+	 * The incremental run manifest.
+	 * Defaults to an empty String, which means the fleet file name with ".manifest" appended.
+	 */
+	private String manifestFileName = "";
+	/**
+	 * Whether to only log the changes, without writing any file.
+	 * Defaults to false.
+	 */
+	private boolean dryRun = false;
+	/**
+	 * Whether to check the fleet for port conflicts before processing it.
+	 * Defaults to false.
+	 */
+	private boolean checkPorts = false;
+	/**
+	 * The lowest port to allocate to nodes that leave their HTTP or HTTPS port blank.
+	 * Defaults to 0, which disables allocation.
+	 */
+	private int portAllocationBase = 0;
+	/**
+	 * Whether to keep running and re-apply the fleet file each time it changes.
+	 * Defaults to false.
+	 */
+	private boolean watch = false;
+	/**
+	 * How long, in milliseconds, the fleet file must be quiet before a change is applied.
+	 */
+	private int watchDebounce = DEFAULT_WATCH_DEBOUNCE;
+	/**
+	 * The loopback port to serve requests on.
+	 * Defaults to 0, which disables the daemon.
+	 */
+	private int daemonPort = 0;
+	/**
+	 * How written files are synced.
+	 * Defaults to NONE.
+	 */
+	private Durability durability = Durability.NONE;
+	/**
+	 * Whether to keep a journal that lets an interrupted run be resumed.
+	 * Defaults to false.
+	 */
+	private boolean resume = false;
+	/**
+	 * The journal for resumable runs.
+	 * Defaults to an empty String, which means the fleet file name with ".journal" appended.
+	 */
+	private String journalFileName = "";
+	/**
+	 * The number of nodes whose files are read ahead.
+	 * Defaults to 0, which disables prefetching.
+	 */
+	private int prefetchDepth = 0;
+	/**
+	 * The JSON run report.
+	 * Defaults to an empty String, which means the fleet file name with ".metrics.json" appended, or none in a dry run.
+	 */
+	private String metricsFileName = "";
+	/**
+	 * The Prometheus text-format run report.
+	 * Defaults to an empty String, which writes none.
+	 */
+	private String prometheusFileName = "";
+
+
+	/**
+	 * parse() will build a RunOptions object from the command line arguments.
+	 *
+	 * @param args the arguments passed to main().
+	 * @return the parsed options.
+	 * @throws IllegalArgumentException if an option is unknown or has an invalid value.
+	 */
+	static RunOptions parse( String[] args )
+	{
+		RunOptions options = new RunOptions();
+		boolean haveConfigFileName = false;
+		boolean haveParallelism = false;
+		for( int i = 0; i < args.length; i++ )
+		{
+			String arg = args[i];
+			if( arg.equals( "--parallel" ) )
+			{
+				// The thread count is optional.
+				if( i + 1 < args.length && isNumber( args[i + 1] ) )
+					options.parallelism = parsePositive( arg, args[++i] );
+				else
+					options.parallelism = Runtime.getRuntime().availableProcessors();
+				haveParallelism = true;
+			}
+			else if( arg.equals( "--log-level" ) )
+			{
+				options.logLevel = Level.parse( requireValue( args, ++i, arg ) );
+			}
+			else if( arg.equals( "--log-json" ) )
+			{
+				options.jsonLogFileName = requireValue( args, ++i, arg );
+			}
+			else if( arg.equals( "--incremental" ) )
+			{
+				options.incremental = true;
+			}
+			else if( arg.equals( "--manifest" ) )
+			{
+				options.manifestFileName = requireValue( args, ++i, arg );
+				options.incremental = true;
+			}
+			else if( arg.equals( "--dry-run" ) )
+			{
+				options.dryRun = true;
+			}
+			else if( arg.equals( "--check-ports" ) )
+			{
+				options.checkPorts = true;
+			}
+			else if( arg.equals( "--allocate-ports" ) )
+			{
+				// The base port is optional.
+				if( i + 1 < args.length && isNumber( args[i + 1] ) )
+					options.portAllocationBase = parsePort( arg, args[++i] );
+				else
+					options.portAllocationBase = DEFAULT_ALLOCATION_BASE;
+				options.checkPorts = true;
+			}
+			else if( arg.equals( "--watch" ) )
+			{
+				// The debounce period is optional.
+				if( i + 1 < args.length && isNumber( args[i + 1] ) )
+					options.watchDebounce = parsePositive( arg, args[++i] );
+				options.watch = true;
+			}
+			else if( arg.equals( "--daemon" ) )
+			{
+				// The port is optional.
+				if( i + 1 < args.length && isNumber( args[i + 1] ) )
+					options.daemonPort = parsePort( arg, args[++i] );
+				else
+					options.daemonPort = DEFAULT_DAEMON_PORT;
+			}
+			else if( arg.equals( "--durability" ) )
+			{
+				options.durability = Durability.parse( requireValue( args, ++i, arg ) );
+			}
+			else if( arg.equals( "--resume" ) )
+			{
+				options.resume = true;
+			}
+			else if( arg.equals( "--journal" ) )
+			{
+				options.journalFileName = requireValue( args, ++i, arg );
+				options.resume = true;
+			}
+			else if( arg.equals( "--prefetch" ) )
+			{
+				// The depth is optional.
+				if( i + 1 < args.length && isNumber( args[i + 1] ) )
+					options.prefetchDepth = parsePositive( arg, args[++i] );
+				else
+					options.prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+			}
+			else if( arg.equals( "--metrics" ) )
+			{
+				options.metricsFileName = requireValue( args, ++i, arg );
+			}
+			else if( arg.equals( "--metrics-prometheus" ) )
+			{
+				options.prometheusFileName = requireValue( args, ++i, arg );
+			}
+			else if( arg.startsWith( "--" ) )
+			{
+				throw new IllegalArgumentException( "Unknown option \"" + arg + "\"" );
+			}
+			else if( !haveConfigFileName )
+			{
+				options.configFileName = arg;
+				haveConfigFileName = true;
+			}
+			else
+			{
+				throw new IllegalArgumentException( "Unexpected argument \"" + arg + "\"" );
+			}
+		}
+		// A dry run only reads files, so there is nothing to gain from processing nodes one at a time.
+		if( options.dryRun && !haveParallelism )
+			options.parallelism = Runtime.getRuntime().availableProcessors();
+		return options;
+	} // End of parse() method.
+
+
+	/**
+	 * requireValue() will return the value that follows an option.
+	 *
+	 * @param args   the arguments passed to main().
+	 * @param index  the position of the value.
+	 * @param option the option name, used in the error message.
+	 * @return the value.
+	 */
+	private static String requireValue( String[] args, int index, String option )
+	{
+		if( index >= args.length )
+			throw new IllegalArgumentException( option + " requires a value" );
+		return args[index];
+	} // End of requireValue() method.
+
+
+	/**
+	 * isNumber() will check if a String contains only decimal digits.
+	 *
+	 * @param value the String to check.
+	 * @return true if value is a non-empty run of digits.
+	 */
+	private static boolean isNumber( String value )
+	{
+		if( value.isEmpty() )
+			return false;
+		for( int i = 0; i < value.length(); i++ )
+		{
+			if( !Character.isDigit( value.charAt( i ) ) )
+				return false;
+		}
+		return true;
+	} // End of isNumber() method.
+
+
+	/**
+	 * parsePositive() will parse the value of an option that must be greater than zero.
+	 *
+	 * @param option the option name, used in the error message.
+	 * @param value  the value to parse.
+	 * @return the parsed value.
+	 */
+	private static int parsePositive( String option, String value )
+	{
+		int parsed;
+		try
+		{
+			parsed = Integer.parseInt( value );
+		}
+		catch( NumberFormatException numberFormatException )
+		{
+			throw new IllegalArgumentException( option + " requires a number, but was given \"" + value + "\"" );
+		}
+		if( parsed < 1 )
+			throw new IllegalArgumentException( option + " must be at least 1" );
+		return parsed;
+	} // End of parsePositive() method.
+
+
+	/**
+	 * parsePort() will parse the value of an option that must be a TCP port.
+	 *
+	 * @param option the option name, used in the error message.
+	 * @param value  the value to parse.
+	 * @return the parsed value.
+	 */
+	private static int parsePort( String option, String value )
+	{
+		int parsed = parsePositive( option, value );
+		if( parsed > 65535 )
+			throw new IllegalArgumentException( option + " must be at most 65535" );
+		return parsed;
+	} // End of parsePort() method.
+
+
+	public String getConfigFileName()
+	{
+		return configFileName;
+	}
+
+
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+
+	public Level getLogLevel()
+	{
+		return logLevel;
+	}
+
+
+	public String getJsonLogFileName()
+	{
+		return jsonLogFileName;
+	}
+
+
+	public boolean isIncremental()
+	{
+		return incremental;
+	}
+
+
+	public String getManifestFileName()
+	{
+		if( manifestFileName.isEmpty() )
+			return configFileName + ".manifest";
+		return manifestFileName;
+	}
+
+
+	public boolean isDryRun()
+	{
+		return dryRun;
+	}
+
+
+	public boolean isCheckPorts()
+	{
+		return checkPorts;
+	}
+
+
+	public int getPortAllocationBase()
+	{
+		return portAllocationBase;
+	}
+
+
+	public boolean isWatch()
+	{
+		return watch;
+	}
+
+
+	public int getWatchDebounce()
+	{
+		return watchDebounce;
+	}
+
+
+	public boolean isDaemon()
+	{
+		return daemonPort != 0;
+	}
+
+
+	public int getDaemonPort()
+	{
+		return daemonPort;
+	}
+
+
+	public Durability getDurability()
+	{
+		return durability;
+	}
+
+
+	public boolean isResume()
+	{
+		return resume;
+	}
+
+
+	public String getJournalFileName()
+	{
+		if( journalFileName.isEmpty() )
+			return configFileName + ".journal";
+		return journalFileName;
+	}
+
+
+	public int getPrefetchDepth()
+	{
+		return prefetchDepth;
+	}
+
+
+	/**
+	 * getMetricsFileName() will return the file to write the JSON run report to.
+	 * A dry run writes nothing to disk unless asked, so it only has a report when --metrics names the file.
+	 *
+	 * @return the file name, or an empty String for none.
+	 */
+	public String getMetricsFileName()
+	{
+		if( metricsFileName.isEmpty() )
+			return dryRun ? "" : configFileName + ".metrics.json";
+		return metricsFileName;
+	} // End of getMetricsFileName() method.
+
+
+	public String getPrometheusFileName()
+	{
+		return prometheusFileName;
+	}
+}
@@ -0,0 +1,99 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * StreamingRewriter edits a file one line at a time, writing the result to a temporary file in the same directory.<br>
+ * When every line has been written, the temporary file replaces the original with an atomic move.<br>
+ * The temporary file is only created once a line actually changes, so files that need no edits are never written.<br>
+ * Only one line is held in memory at a time, and each line keeps its original terminator, so bytes that are not edited stay byte-identical.<br>
+ * If anything fails, the original file is left untouched.
+ */
+final class StreamingRewriter
+{
+	private StreamingRewriter()
+	{
+	}
+
+
+	/**
+	 * rewrite() will pass every line of a file through lineEditor and replace the file with the result.
+	 * If lineEditor does not change any line, the file is not written at all.
+	 * If FilePrefetcher has already read the file, its bytes are used instead of reading the file again.
+	 *
+	 * @param path       the file to rewrite.
+	 * @param lineEditor a function that returns the edited version of a line.  Lines are passed without their terminators.
+	 * @return MODIFIED if the file was replaced, or UNCHANGED if no line changed.
+	 * @throws IOException if the file cannot be read, or the result cannot be written or moved into place.
+	 */
+	static FileStatus rewrite( Path path, UnaryOperator<String> lineEditor ) throws IOException
+	{
+		byte[] prefetched = FilePrefetcher.take( path.toString() );
+		try( LineSource lineSource = new LineSource( new InputStreamReader( FilePrefetcher.newInputStream( path, prefetched ), StandardCharsets.ISO_8859_1 ) );
+		     RewriteOutput rewriteOutput = new RewriteOutput( path, prefetched ) )
+		{
+			boolean metered = FileMeter.isActive();
+			long lineCount = 0;
+			long changedCount = 0;
+			while( lineSource.next() )
+			{
+				String line = lineSource.getLine();
+				String editedLine = lineEditor.apply( line );
+				if( metered && !line.equals( editedLine ) )
+					changedCount++;
+				rewriteOutput.replace( line, editedLine );
+				rewriteOutput.unchanged( lineSource.getTerminator() );
+				lineCount++;
+			}
+			FileMeter.addLines( lineCount, changedCount );
+			return rewriteOutput.commit();
+		}
+	} // End of rewrite() method.
+
+
+	/**
+	 * createTemporaryFile() will create an empty file next to path, with the same POSIX permissions where the filesystem has them.
+	 * Keeping it in the same directory lets the final move be atomic.
+	 *
+	 * @param path the file that will be replaced.
+	 * @return the new temporary file.
+	 * @throws IOException if the file cannot be created.
+	 */
+	static Path createTemporaryFile( Path path ) throws IOException
+	{
+		Path directory = path.toAbsolutePath().getParent();
+		Path temporaryPath = Files.createTempFile( directory, "." + path.getFileName() + ".", ".tmp" );
+		PosixFileAttributeView sourceView = Files.getFileAttributeView( path, PosixFileAttributeView.class );
+		if( sourceView != null && Files.exists( path ) )
+			Files.setPosixFilePermissions( temporaryPath, sourceView.readAttributes().permissions() );
+		return temporaryPath;
+	} // End of createTemporaryFile() method.
+
+
+	/**
+	 * replace() will move a temporary file over its target, atomically if the filesystem allows it.
+	 *
+	 * @param temporaryPath the finished temporary file.
+	 * @param path          the file to replace.
+	 * @throws IOException if the file cannot be moved.
+	 */
+	static void replace( Path temporaryPath, Path path ) throws IOException
+	{
+		try
+		{
+			Files.move( temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+		}
+		catch( AtomicMoveNotSupportedException atomicMoveNotSupportedException )
+		{
+			// Some network filesystems cannot rename atomically.  A plain replace is the best they offer.
+			Files.move( temporaryPath, path, StandardCopyOption.REPLACE_EXISTING );
+		}
+	} // End of replace() method.
+}
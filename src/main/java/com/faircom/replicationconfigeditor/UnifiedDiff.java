@@ -0,0 +1,204 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * UnifiedDiff builds a unified diff of a file against an edited copy of itself, one line at a time.<br>
+ * The edits this program makes never add or remove lines, so line n of the original is always compared to line n of the edited copy, and no longest common subsequence is needed.<br>
+ * Only the lines of the current hunk, and the few unchanged lines that may become its leading context, are held in memory.
+ */
+final class UnifiedDiff
+{
+	/**
+	 * The number of unchanged lines shown around each change, the same as diff -u.
+	 */
+	private static final int CONTEXT = 3;
+	private static final String NEW_LINE = System.lineSeparator();
+	private final StringBuilder output = new StringBuilder();
+	/**
+	 * The most recent unchanged lines that are not part of a hunk yet.
+	 */
+	private final Deque<String> leadingLines = new ArrayDeque<>( CONTEXT );
+	private final List<String> hunkLines = new ArrayList<>();
+	/**
+	 * The current run of changed lines.  Like diff -u, a run is shown as all of its removed lines followed by all of its added lines.
+	 */
+	private final List<String> removedLines = new ArrayList<>();
+	private final List<String> addedLines = new ArrayList<>();
+	private int lineNumber = 0;
+	private int hunkStart = 0;
+	private int hunkLength = 0;
+	/**
+	 * The number of unchanged lines since the last change in the current hunk.
+	 */
+	private int trailingLines = 0;
+
+
+	/**
+	 * @param fileName the name to show in the diff header.
+	 */
+	private UnifiedDiff( String fileName )
+	{
+		output.append( "--- " ).append( fileName ).append( NEW_LINE );
+		output.append( "+++ " ).append( fileName ).append( NEW_LINE );
+	}
+
+
+	/**
+	 * of() will diff a file against the result of passing every line through lineEditor.
+	 * The file is read the same way StreamingRewriter reads it, and nothing is written.
+	 *
+	 * @param path       the file to diff.
+	 * @param lineEditor a function that returns the edited version of a line.  Lines are passed without their terminators.
+	 * @return the diff, or an empty String if no line changed.
+	 * @throws IOException if the file cannot be read.
+	 */
+	static String of( Path path, UnaryOperator<String> lineEditor ) throws IOException
+	{
+		UnifiedDiff unifiedDiff = new UnifiedDiff( path.toString() );
+		long changedCount = 0;
+		try( LineSource lineSource = new LineSource( new InputStreamReader( FilePrefetcher.newInputStream( path, FilePrefetcher.take( path.toString() ) ), StandardCharsets.ISO_8859_1 ) ) )
+		{
+			while( lineSource.next() )
+			{
+				String line = lineSource.getLine();
+				if( unifiedDiff.line( line, lineEditor.apply( line ) ) )
+					changedCount++;
+			}
+		}
+		FileMeter.addLines( unifiedDiff.lineNumber, changedCount );
+		if( changedCount == 0 )
+			return "";
+		return unifiedDiff.finish();
+	} // End of of() method.
+
+
+	/**
+	 * This version of of() diffs two versions of a file held in memory.
+	 * The edited text must have the same number of lines as the original.
+	 *
+	 * @param fileName the name to show in the diff header.
+	 * @param original the original text.
+	 * @param edited   the edited text.
+	 * @return the diff, or an empty String if no line changed.
+	 * @throws IOException if the two texts do not have the same number of lines.
+	 */
+	static String of( String fileName, String original, String edited ) throws IOException
+	{
+		UnifiedDiff unifiedDiff = new UnifiedDiff( fileName );
+		boolean changed = false;
+		try( LineSource originalSource = new LineSource( new StringReader( original ) );
+		     LineSource editedSource = new LineSource( new StringReader( edited ) ) )
+		{
+			while( originalSource.next() )
+			{
+				if( !editedSource.next() )
+					throw new IOException( "The edited text of " + fileName + " has fewer lines than the original" );
+				changed |= unifiedDiff.line( originalSource.getLine(), editedSource.getLine() );
+			}
+			if( editedSource.next() )
+				throw new IOException( "The edited text of " + fileName + " has more lines than the original" );
+		}
+		if( !changed )
+			return "";
+		return unifiedDiff.finish();
+	} // End of of() method.
+
+
+	/**
+	 * line() will add the next line of the file to the diff.
+	 *
+	 * @param original the line as it is in the file.
+	 * @param edited   the line after editing.
+	 * @return true if the line changed.
+	 */
+	private boolean line( String original, String edited )
+	{
+		lineNumber++;
+		if( original.equals( edited ) )
+		{
+			flushChanges();
+			if( hunkLength > 0 && trailingLines < CONTEXT )
+			{
+				hunkLines.add( " " + original );
+				hunkLength++;
+			}
+			else
+			{
+				if( leadingLines.size() == CONTEXT )
+					leadingLines.removeFirst();
+				leadingLines.addLast( original );
+			}
+			trailingLines++;
+			return false;
+		}
+
+		// A gap of up to twice the context joins two changes into one hunk, so no line is shown twice.
+		if( hunkLength > 0 && trailingLines > 2 * CONTEXT )
+			closeHunk();
+		if( hunkLength == 0 )
+			hunkStart = lineNumber - leadingLines.size();
+		for( String leadingLine : leadingLines )
+			hunkLines.add( " " + leadingLine );
+		hunkLength += leadingLines.size() + 1;
+		leadingLines.clear();
+		removedLines.add( "-" + original );
+		addedLines.add( "+" + edited );
+		trailingLines = 0;
+		return true;
+	} // End of line() method.
+
+
+	/**
+	 * flushChanges() will move the current run of changed lines into the hunk.
+	 */
+	private void flushChanges()
+	{
+		hunkLines.addAll( removedLines );
+		hunkLines.addAll( addedLines );
+		removedLines.clear();
+		addedLines.clear();
+	} // End of flushChanges() method.
+
+
+	/**
+	 * closeHunk() will write the current hunk to the output.
+	 * Every hunk covers the same number of lines in both files, because lines are only ever replaced.
+	 */
+	private void closeHunk()
+	{
+		flushChanges();
+		String range = hunkStart + "," + hunkLength;
+		output.append( "@@ -" ).append( range ).append( " +" ).append( range ).append( " @@" ).append( NEW_LINE );
+		for( String hunkLine : hunkLines )
+			output.append( hunkLine ).append( NEW_LINE );
+		hunkLines.clear();
+		hunkLength = 0;
+	} // End of closeHunk() method.
+
+
+	/**
+	 * finish() will close the last hunk and return the diff.
+	 *
+	 * @return the diff, without a final line break.
+	 */
+	private String finish()
+	{
+		if( hunkLength > 0 )
+			closeHunk();
+		output.setLength( output.length() - NEW_LINE.length() );
+		return output.toString();
+	} // End of finish() method.
+}
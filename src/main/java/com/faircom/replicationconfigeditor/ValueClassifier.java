@@ -0,0 +1,68 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+
+/**
+ * ValueClassifier decides what type of value a String holds, so it can be written into a JSON file correctly.<br>
+ * The patterns are compiled once, and the type of each distinct value is cached.<br>
+ * Fleets repeat the same hosts, ports, and database names on every node, so most lookups never reach a pattern.
+ */
+final class ValueClassifier
+{
+	private static final Pattern IP_ADDRESS_PATTERN = Pattern.compile( "\\b(?:(?:25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\.){3}(?:25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\b" );
+	private static final Pattern DIGIT_PATTERN = Pattern.compile( "\\d+" );
+	private static final Pattern WORD_PATTERN = Pattern.compile( "\\w+" );
+	/**
+	 * The most distinct values to remember.  Values seen after the cache is full are still classified, just not remembered.
+	 */
+	private static final int CACHE_LIMIT = 4096;
+	private static final Map<String, ValueType> TYPE_CACHE = new ConcurrentHashMap<>();
+
+
+	private ValueClassifier()
+	{
+	}
+
+
+	/**
+	 * classify() will return the type of a value.
+	 *
+	 * @param value the value to classify.
+	 * @return the type of the value.
+	 */
+	static ValueType classify( String value )
+	{
+		ValueType valueType = TYPE_CACHE.get( value );
+		if( valueType == null )
+		{
+			valueType = classifyUncached( value );
+			if( TYPE_CACHE.size() < CACHE_LIMIT )
+				TYPE_CACHE.put( value, valueType );
+		}
+		return valueType;
+	} // End of classify() method.
+
+
+	/**
+	 * classifyUncached() will run the checks that quoteIfNeeded() has always used, in the same order.
+	 *
+	 * @param value the value to classify.
+	 * @return the type of the value.
+	 */
+	private static ValueType classifyUncached( String value )
+	{
+		if( value.startsWith( "\"" ) && value.endsWith( "\"" ) )
+			return ValueType.QUOTED;
+		if( IP_ADDRESS_PATTERN.matcher( value ).matches() )
+			return ValueType.IP_ADDRESS;
+		if( DIGIT_PATTERN.matcher( value ).matches() )
+			return ValueType.NUMBER;
+		if( WORD_PATTERN.matcher( value ).matches() )
+			return ValueType.WORD;
+		return ValueType.UNKNOWN;
+	} // End of classifyUncached() method.
+}
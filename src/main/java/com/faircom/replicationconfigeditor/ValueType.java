@@ -0,0 +1,60 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+/**
+ * The kinds of value that can be written into a JSON configuration file.<br>
+ * Each type knows whether it must be wrapped in quotes to be valid JSON.
+ *
+ * @see main.java.com.faircom.replicationconfigeditor.ValueClassifier
+ */
+enum ValueType
+{
+	/**
+	 * A run of decimal digits, such as a port number.  Written as-is.
+	 */
+	NUMBER( false ),
+	/**
+	 * A dotted-quad IPv4 address.  Wrapped in quotes.
+	 */
+	IP_ADDRESS( true ),
+	/**
+	 * A run of word characters, such as a server or database name.  Wrapped in quotes.
+	 */
+	WORD( true ),
+	/**
+	 * A value that already starts and ends with a quote.  Written as-is.
+	 */
+	QUOTED( false ),
+	/**
+	 * Anything else.  Written as-is.
+	 */
+	UNKNOWN( false );
+
+	private final boolean needsQuotes;
+
+
+	ValueType( boolean needsQuotes )
+	{
+		this.needsQuotes = needsQuotes;
+	}
+
+
+	public boolean needsQuotes()
+	{
+		return needsQuotes;
+	}
+
+
+	/**
+	 * render() will return a value of this type as it should appear in a JSON file.
+	 *
+	 * @param value the value to render.
+	 * @return the value, wrapped in quotes if this type needs them.
+	 */
+	String render( String value )
+	{
+		if( needsQuotes )
+			return "\"" + value + "\"";
+		return value;
+	} // End of render() method.
+}
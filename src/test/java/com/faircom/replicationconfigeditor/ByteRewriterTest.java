@@ -0,0 +1,149 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * These tests check that ByteRewriter splits and edits lines exactly as StreamingRewriter does, including where a line or a "\r\n" crosses the end of its 64 KB buffer.
+ */
+public class ByteRewriterTest
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final KeyMatcher MATCHER = ByteRewriter.matcherFor( Collections.singletonList( "KEY" ) );
+	private static final UnaryOperator<String> LINE_EDITOR = line -> line.contains( "KEY" ) ? line.replace( "KEY", "K" ) : line;
+	private Path directory;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory( "bytes" );
+	}
+
+
+	@After
+	public void tearDown() throws IOException
+	{
+		SampleFiles.deleteTree( directory );
+	}
+
+
+	@Test
+	public void matchesStreamingRewriter() throws IOException
+	{
+		String[] pieces = { "KEY", "KE", "Y", "\r", "\n", "\r\n", "x", " ", "é", "ÿ" };
+		Random random = new Random( 24 );
+		for( int round = 0; round < 300; round++ )
+		{
+			StringBuilder text = new StringBuilder();
+			int pieceCount = random.nextInt( 40 );
+			for( int i = 0; i < pieceCount; i++ )
+				text.append( pieces[random.nextInt( pieces.length )] );
+			assertSameAsStreaming( text.toString() );
+		}
+	}
+
+
+	@Test
+	public void carriageReturnAndLineFeedSplitAcrossBufferRefills() throws IOException
+	{
+		// The "\r" is the last byte of the first buffer, and its "\n" is the first byte of the next read.
+		String filler = repeat( 'a', BUFFER_SIZE - 1 );
+		String text = filler + "\r\nKEY 1\r\n";
+		assertEquals( filler + "\r\nK 1\r\n", assertSameAsStreaming( text ) );
+		// A lone "\r" at the end of the buffer, followed by a line that must still be matched from its start.
+		text = filler + "\rKEY 2\n";
+		assertEquals( filler + "\rK 2\n", assertSameAsStreaming( text ) );
+		// A key that crosses the end of the buffer.
+		text = repeat( 'b', BUFFER_SIZE - 5 ) + "\nxKEYx\r\nlast";
+		assertEquals( repeat( 'b', BUFFER_SIZE - 5 ) + "\nxKx\r\nlast", assertSameAsStreaming( text ) );
+	}
+
+
+	@Test
+	public void linesLongerThanTheBufferAreEdited() throws IOException
+	{
+		String longLine = repeat( 'c', 3 * BUFFER_SIZE + 17 );
+		String text = "first\n" + longLine + "KEY\r\n" + longLine + "\nKEY";
+		assertEquals( "first\n" + longLine + "K\r\n" + longLine + "\nK", assertSameAsStreaming( text ) );
+	}
+
+
+	@Test
+	public void finalLinesWithoutTerminatorsAreEdited() throws IOException
+	{
+		assertEquals( "a\nK", assertSameAsStreaming( "a\nKEY" ) );
+		assertEquals( "K", assertSameAsStreaming( "KEY" ) );
+		assertEquals( "a\r\nK\r", assertSameAsStreaming( "a\r\nKEY\r" ) );
+	}
+
+
+	@Test
+	public void unchangedFilesAreNotWritten() throws IOException
+	{
+		Path file = directory.resolve( "ctsrvr.cfg" );
+		SampleFiles.write( file, "SQL_PORT 6597\r\nKEY\r\n" );
+		FileTime written = FileTime.fromMillis( 1000000000000L );
+		Files.setLastModifiedTime( file, written );
+
+		assertEquals( FileStatus.UNCHANGED, ByteRewriter.rewrite( file, null, MATCHER, line -> line ) );
+		assertEquals( FileStatus.UNCHANGED, ByteRewriter.rewrite( file, Files.readAllBytes( file ), MATCHER, line -> line ) );
+		assertEquals( written, Files.getLastModifiedTime( file ) );
+		assertEquals( "SQL_PORT 6597\r\nKEY\r\n", SampleFiles.read( file ) );
+	}
+
+
+	@Test
+	public void searchTextsWithLineBreaksGiveNull()
+	{
+		assertNull( ByteRewriter.matcherFor( Arrays.asList( "SQL_PORT", "KEY\n" ) ) );
+		assertNull( ByteRewriter.matcherFor( Collections.singletonList( "\rKEY" ) ) );
+		assertNotNull( ByteRewriter.matcherFor( Arrays.asList( "SQL_PORT", "\"http_port\":" ) ) );
+	}
+
+
+	/**
+	 * assertSameAsStreaming() will rewrite the text with ByteRewriter, reading the file and from bytes already read, and with StreamingRewriter, and check that all three agree.
+	 *
+	 * @return the rewritten text.
+	 */
+	private String assertSameAsStreaming( String text ) throws IOException
+	{
+		Path streamingFile = directory.resolve( "streaming.cfg" );
+		Path readFile = directory.resolve( "read.cfg" );
+		Path contentsFile = directory.resolve( "contents.cfg" );
+		for( Path file : Arrays.asList( streamingFile, readFile, contentsFile ) )
+			SampleFiles.write( file, text );
+
+		FileStatus expectedStatus = StreamingRewriter.rewrite( streamingFile, LINE_EDITOR );
+		String expected = SampleFiles.read( streamingFile );
+		String message = text.length() > 80 ? text.length() + " characters" : text;
+		assertEquals( message, expectedStatus, ByteRewriter.rewrite( readFile, null, MATCHER, LINE_EDITOR ) );
+		assertEquals( message, expected, SampleFiles.read( readFile ) );
+		assertEquals( message, expectedStatus, ByteRewriter.rewrite( contentsFile, Files.readAllBytes( contentsFile ), MATCHER, LINE_EDITOR ) );
+		assertEquals( message, expected, SampleFiles.read( contentsFile ) );
+		return expected;
+	}
+
+
+	private static String repeat( char character, int count )
+	{
+		char[] characters = new char[count];
+		Arrays.fill( characters, character );
+		return new String( characters );
+	}
+}
@@ -0,0 +1,152 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+
+public class DaemonServerTest
+{
+	private static final Logger mainLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private Level savedLevel;
+	private Path directory;
+	private DaemonServer daemonServer;
+
+
+	@Before
+	public void setUp() throws IOException, URISyntaxException
+	{
+		savedLevel = mainLogger.getLevel();
+		mainLogger.setLevel( Level.OFF );
+		directory = Files.createTempDirectory( "daemon" );
+		SampleFiles.copyTree( SampleFiles.resource( "sample/edge" ), directory );
+		daemonServer = new DaemonServer( 0, Durability.NONE );
+		daemonServer.start();
+	}
+
+
+	@After
+	public void tearDown() throws IOException
+	{
+		daemonServer.stop();
+		mainLogger.setLevel( savedLevel );
+		SampleFiles.deleteTree( directory );
+	}
+
+
+	@Test
+	public void validateChecksTheNodes() throws IOException
+	{
+		JsonObject response = JsonParser.parseString( post( "validate", node( "\"sqlPort\": \"19801\"" ), 200 ) ).getAsJsonObject();
+
+		assertEquals( 0, response.get( "exitCode" ).getAsInt() );
+		assertTrue( response.get( "portsValid" ).getAsBoolean() );
+	}
+
+
+	@Test
+	public void nullPropertiesAreRejected() throws IOException
+	{
+		String[] properties = { "configDirectory", "serverFileName", "serverName", "serverPort", "readOnlyServer", "sqlPort", "httpFileName", "listeningHttpPort",
+		                        "listeningHttpsPort", "agentFileName", "memphisServerName", "memphisSqlPort", "memphisHost", "memphisDatabase", "replicationManagerFileName" };
+		for( String property : properties )
+		{
+			for( String action : new String[]{ "validate", "dry-run", "apply" } )
+			{
+				String response = post( action, "[ " + node( "\"" + property + "\": null" ) + " ]", 400 );
+				assertTrue( response, response.contains( "\\\"" + property + "\\\"" ) );
+			}
+		}
+		assertTrue( post( "validate", "{ \"baseDirectory\": null }", 400 ).contains( "baseDirectory" ) );
+		// The daemon does not allocate ports, so a node without an HTTP port cannot be processed.
+		assertTrue( post( "validate", "{ \"baseDirectory\": \"/fleet\" }", 400 ).contains( "listeningHttpPort" ) );
+	}
+
+
+	@Test
+	public void nullMqttPortsAreAllowed() throws IOException
+	{
+		post( "validate", node( "\"mqttListeningPort\": null, \"mqttWebsocketPort\": null" ), 200 );
+	}
+
+
+	@Test
+	public void malformedBodiesAreRejected() throws IOException
+	{
+		post( "validate", "{ \"sqlPort\": ", 400 );
+		post( "validate", "\"node\"", 400 );
+	}
+
+
+	/**
+	 * node() will write a node of the sample fleet as JSON, with one property added or replaced.
+	 */
+	private String node( String property )
+	{
+		JsonObject node = new JsonObject();
+		node.addProperty( "baseDirectory", directory.toString() );
+		node.addProperty( "listeningHttpPort", 19803 );
+		node.addProperty( "listeningHttpsPort", 19802 );
+		node.addProperty( "memphisSqlPort", 19991 );
+		String json = node.toString();
+		return json.substring( 0, json.length() - 1 ) + ", " + property + " }";
+	}
+
+
+	/**
+	 * post() will send a request body to the daemon, check the status of the response, and return its body.
+	 */
+	private String post( String action, String body, int expectedStatus ) throws IOException
+	{
+		URL url = new URL( "http://127.0.0.1:" + daemonServer.getPort() + "/" + action );
+		HttpURLConnection connection = ( HttpURLConnection )url.openConnection();
+		try
+		{
+			connection.setRequestMethod( "POST" );
+			connection.setDoOutput( true );
+			try( OutputStream outputStream = connection.getOutputStream() )
+			{
+				outputStream.write( body.getBytes( StandardCharsets.UTF_8 ) );
+			}
+			int status = connection.getResponseCode();
+			try( InputStream inputStream = status < 400 ? connection.getInputStream() : connection.getErrorStream() )
+			{
+				String response = readAll( inputStream );
+				assertEquals( action + " " + body + ": " + response, expectedStatus, status );
+				return response;
+			}
+		}
+		finally
+		{
+			connection.disconnect();
+		}
+	}
+
+
+	private static String readAll( InputStream inputStream ) throws IOException
+	{
+		StringBuilder builder = new StringBuilder();
+		byte[] buffer = new byte[4096];
+		int count;
+		while( ( count = inputStream.read( buffer ) ) > 0 )
+			builder.append( new String( buffer, 0, count, StandardCharsets.UTF_8 ) );
+		return builder.toString();
+	}
+}
@@ -0,0 +1,251 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * These tests check that a file matched against a learned FileShape is edited exactly as it would be without the shape.<br>
+ * Shapes are kept for the whole JVM, so each test uses its own shape key or key set.
+ */
+public class FileShapeTest
+{
+	private static final Logger mainLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private Level savedLevel;
+	private Path directory;
+	private String shapeKey;
+	private int learnCount;
+	private final List<String> slotList = new ArrayList<>();
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		savedLevel = mainLogger.getLevel();
+		mainLogger.setLevel( Level.OFF );
+		directory = Files.createTempDirectory( "shape" );
+		shapeKey = "test" + UUID.randomUUID();
+	}
+
+
+	@After
+	public void tearDown() throws IOException
+	{
+		mainLogger.setLevel( savedLevel );
+		SampleFiles.deleteTree( directory );
+	}
+
+
+	@Test
+	public void sameLayoutOnlyEditsTheSlots() throws IOException
+	{
+		assertEquals( FileStatus.MODIFIED, rewrite( "first.cfg", "; header\nPORT 1\nNAME a\r\nPORT 2\n" ) );
+		assertEquals( "; header\nPORT 9\nNAME a\r\nPORT 9\n", SampleFiles.read( directory.resolve( "first.cfg" ) ) );
+		assertEquals( 1, learnCount );
+		assertTrue( slotList.isEmpty() );
+
+		// Different values in the same layout, including a slot that is already up to date.
+		assertEquals( FileStatus.MODIFIED, rewrite( "second.cfg", "; header\nPORT 12345\nNAME a\r\nPORT 9\n" ) );
+		assertEquals( "; header\nPORT 9\nNAME a\r\nPORT 9\n", SampleFiles.read( directory.resolve( "second.cfg" ) ) );
+		assertEquals( 1, learnCount );
+		assertEquals( Arrays.asList( "PORT 12345", "PORT 9" ), slotList );
+
+		slotList.clear();
+		assertEquals( FileStatus.UNCHANGED, rewrite( "third.cfg", "; header\nPORT 9\nNAME a\r\nPORT 9\n" ) );
+		assertEquals( 1, learnCount );
+		assertEquals( 2, slotList.size() );
+	}
+
+
+	@Test
+	public void differentLayoutsAreLearned() throws IOException
+	{
+		rewrite( "first.cfg", "PORT 1\nNAME a\n" );
+		// A changed literal, a missing terminator, an extra line, and an empty slot are each a different layout.
+		String[] layouts = { "PORT 1\nNAME b\n", "PORT 1\nNAME a", "PORT 1\nNAME a\n\n", "\nNAME a\n" };
+		for( int i = 0; i < layouts.length; i++ )
+		{
+			rewrite( "other.cfg", layouts[i] );
+			assertEquals( layouts[i], i + 2, learnCount );
+			assertEquals( layouts[i], learn( layouts[i] ), SampleFiles.read( directory.resolve( "other.cfg" ) ) );
+		}
+		assertTrue( slotList.isEmpty() );
+
+		// The newest layouts are still kept.
+		rewrite( "again.cfg", "PORT 5\nNAME b\n" );
+		assertEquals( 5, learnCount );
+		assertEquals( Arrays.asList( "PORT 5" ), slotList );
+	}
+
+
+	@Test
+	public void lineFilesMatchAFreshEdit() throws IOException
+	{
+		Map<String, Object> configMap = new LinkedHashMap<>();
+		configMap.put( "SHAPE_TEST_PORT", "19801" );
+		configMap.put( "SHAPE_TEST_NAME", "FAIRCOM2" );
+		String[] files = {
+			"; FairCom settings\r\nSHAPE_TEST_NAME FAIRCOM\r\n;SHAPE_TEST_PORT 6597\r\nDAT_MEMORY 100 MB\r\n",
+			"; FairCom settings\r\nSHAPE_TEST_NAME OTHER\r\n;SHAPE_TEST_PORT 7000\r\nDAT_MEMORY 100 MB\r\n",
+			"; FairCom settings\r\n\tSHAPE_TEST_NAME X\r\nSHAPE_TEST_PORT\t19801\r\nDAT_MEMORY 100 MB\r\n",
+			"; FairCom settings\r\nSHAPE_TEST_NAME FAIRCOM\r\n;SHAPE_TEST_PORT 6597\r\nDAT_MEMORY 200 MB\r\n",
+		};
+		for( int i = 0; i < files.length; i++ )
+		{
+			Path shapeFile = directory.resolve( "shape" + i + ".cfg" );
+			Path freshFile = directory.resolve( "fresh" + i + ".cfg" );
+			SampleFiles.write( shapeFile, files[i] );
+			SampleFiles.write( freshFile, files[i] );
+
+			FileStatus fileStatus = JavaReplicationConfigEditor.keyReplaceEditor( shapeFile.toString(), configMap, false ).apply( shapeFile.toString() );
+			FileStatus freshStatus = StreamingRewriter.rewrite( freshFile, line -> JavaReplicationConfigEditor.fixLine( line, configMap, "", false ) );
+			assertEquals( files[i], freshStatus, fileStatus );
+			assertEquals( files[i], SampleFiles.read( freshFile ), SampleFiles.read( shapeFile ) );
+		}
+	}
+
+
+	@Test
+	public void jsonFilesMatchAFreshEdit() throws IOException
+	{
+		Map<String, Object> configMap = new LinkedHashMap<>();
+		configMap.put( "\"shape_test_port\":", "19803" );
+		configMap.put( "\"shape_test_host\":", "db-host.local" );
+		String template = "{\n  \"shape_test_port\": %s,\n  \"web\": { \"shape_test_host\": %s, \"other\": 1 }\n}\n";
+		String[][] values = { { "8080", "\"localhost\"" }, { "7000", "\"127.0.0.1\"" }, { "19803", "\"db-host.local\"" }, { "\"8081\"", "null" } };
+		for( String[] value : values )
+		{
+			Path file = directory.resolve( "cthttpd.json" );
+			SampleFiles.write( file, String.format( template, value[0], value[1] ) );
+			FileStatus fileStatus = JavaReplicationConfigEditor.keyReplaceEditor( file.toString(), configMap, false ).apply( file.toString() );
+			assertEquals( value[0].equals( "19803" ) ? FileStatus.UNCHANGED : FileStatus.MODIFIED, fileStatus );
+			assertEquals( String.format( template, "19803", "\"db-host.local\"" ), SampleFiles.read( file ) );
+		}
+	}
+
+
+	@Test
+	public void namedSlotsAreEditedByName() throws IOException
+	{
+		FileShape.Learner learner = ( text, sink ) ->
+		{
+			learnCount++;
+			int colon = text.indexOf( ':' );
+			sink.unchanged( text.substring( 0, colon + 2 ) );
+			sink.replace( text.substring( colon + 2, text.length() - 2 ), "1" );
+			sink.unchanged( text.substring( text.length() - 2 ) );
+			return Arrays.asList( "port" );
+		};
+		FileShape.SlotEditor slotEditor = ( name, original ) ->
+		{
+			slotList.add( name + "=" + original );
+			return "1";
+		};
+		Path file = directory.resolve( "named.json" );
+		SampleFiles.write( file, "{\"port\": 8080 }" );
+		FileShape.rewrite( file, Files.readAllBytes( file ), shapeKey, slotEditor, learner );
+		SampleFiles.write( file, "{\"port\": \"x\\\"y\" }" );
+		FileShape.rewrite( file, Files.readAllBytes( file ), shapeKey, slotEditor, learner );
+		assertEquals( "{\"port\": 1 }", SampleFiles.read( file ) );
+		// A value that is not valid JSON does not match the shape.
+		SampleFiles.write( file, "{\"port\": localhost }" );
+		FileShape.rewrite( file, Files.readAllBytes( file ), shapeKey, slotEditor, learner );
+
+		assertEquals( 2, learnCount );
+		assertEquals( Arrays.asList( "port=\"x\\\"y\"" ), slotList );
+	}
+
+
+	/**
+	 * rewrite() will write a file and rewrite it through FileShape, setting every line that starts with "PORT" to "PORT 9".
+	 */
+	private FileStatus rewrite( String name, String text ) throws IOException
+	{
+		Path file = directory.resolve( name );
+		SampleFiles.write( file, text );
+		FileShape.SlotEditor slotEditor = ( slotName, original ) ->
+		{
+			assertNull( slotName );
+			slotList.add( original );
+			return editLine( original );
+		};
+		return FileShape.rewrite( file, Files.readAllBytes( file ), shapeKey, slotEditor, this::learnLines );
+	}
+
+
+	/**
+	 * learnLines() will edit a whole file, passing each line that starts with "PORT" as a slot.
+	 */
+	private List<String> learnLines( String text, EditSink sink ) throws IOException
+	{
+		learnCount++;
+		int start = 0;
+		while( start < text.length() )
+		{
+			int end = start;
+			while( end < text.length() && text.charAt( end ) != '\n' && text.charAt( end ) != '\r' )
+				end++;
+			String line = text.substring( start, end );
+			if( line.startsWith( "PORT" ) )
+				sink.replace( line, editLine( line ) );
+			else
+				sink.unchanged( line );
+			start = end;
+			if( text.startsWith( "\r\n", start ) )
+				start += 2;
+			else if( start < text.length() )
+				start++;
+			sink.unchanged( text.substring( end, start ) );
+		}
+		return null;
+	}
+
+
+	/**
+	 * learn() will return what learnLines() makes of a file.
+	 */
+	private String learn( String text ) throws IOException
+	{
+		StringBuilder result = new StringBuilder();
+		int savedCount = learnCount;
+		learnLines( text, new EditSink()
+		{
+			@Override
+			public void unchanged( String unchangedText )
+			{
+				result.append( unchangedText );
+			}
+
+
+			@Override
+			public void replace( String original, String replacement )
+			{
+				result.append( replacement );
+			}
+		} );
+		learnCount = savedCount;
+		return result.toString();
+	}
+
+
+	private static String editLine( String line )
+	{
+		return line.startsWith( "PORT" ) ? "PORT 9" : line;
+	}
+}
@@ -0,0 +1,94 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+
+public class FleetExecutorTest
+{
+	private static final Logger mainLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private final List<String> messageList = new ArrayList<>();
+	private final Handler handler = new Handler()
+	{
+		@Override
+		public void publish( LogRecord logRecord )
+		{
+			messageList.add( logRecord.getMessage() );
+		}
+
+
+		@Override
+		public void flush()
+		{
+		}
+
+
+		@Override
+		public void close()
+		{
+		}
+	};
+	private Level savedLevel;
+	private boolean savedUseParentHandlers;
+
+
+	@Before
+	public void setUp()
+	{
+		savedLevel = mainLogger.getLevel();
+		savedUseParentHandlers = mainLogger.getUseParentHandlers();
+		mainLogger.setLevel( Level.INFO );
+		mainLogger.setUseParentHandlers( false );
+		mainLogger.addHandler( handler );
+	}
+
+
+	@After
+	public void tearDown()
+	{
+		mainLogger.removeHandler( handler );
+		mainLogger.setUseParentHandlers( savedUseParentHandlers );
+		mainLogger.setLevel( savedLevel );
+	}
+
+
+	@Test
+	public void summaryCountsUnchangedAndResumedNodesApart()
+	{
+		NodeResult succeeded = new NodeResult( 0, "/fleet/FAIRCOM2" );
+		NodeResult failed = new NodeResult( 1, "/fleet/FAIRCOM3" );
+		failed.fail( "Unable to locate", -3 );
+		NodeResult unchanged = new NodeResult( 2, "/fleet/FAIRCOM4" );
+		unchanged.skip();
+		NodeResult resumed = new NodeResult( 3, "/fleet/FAIRCOM5" );
+		resumed.skipFinished();
+		NodeResult alsoResumed = new NodeResult( 4, "/fleet/FAIRCOM6" );
+		alsoResumed.skipFinished();
+
+		assertEquals( -3, FleetExecutor.summarize( Arrays.asList( succeeded, failed, unchanged, resumed, alsoResumed ) ) );
+		assertTrue( messageList.toString(), messageList.contains( "Processed 5 nodes: 1 succeeded, 1 failed, 1 skipped as unchanged, 2 skipped as already finished by the interrupted run." ) );
+	}
+
+
+	@Test
+	public void summaryWithoutAJournalIsUnchanged()
+	{
+		NodeResult unchanged = new NodeResult( 0, "/fleet/FAIRCOM2" );
+		unchanged.skip();
+
+		assertEquals( 0, FleetExecutor.summarize( Arrays.asList( new NodeResult( 1, "/fleet/FAIRCOM3" ), unchanged ) ) );
+		assertTrue( messageList.toString(), messageList.contains( "Processed 2 nodes: 1 succeeded, 0 failed, 1 skipped as unchanged." ) );
+	}
+}
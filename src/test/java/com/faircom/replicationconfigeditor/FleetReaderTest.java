@@ -0,0 +1,105 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class FleetReaderTest
+{
+	static final Gson GSON = new Gson();
+	static final String ARRAY = "[\n"
+	                                    + "  { \"baseDirectory\": \"/fleet/MEMPHIS\", \"serverName\": \"MEMPHIS\", \"sqlPort\": \"19991\", \"listeningHttpPort\": 19993,"
+	                                    + " \"memphisSqlPort\": 19991, \"replicationManagerFileName\": \"ctReplicationManager.cfg\" },\n"
+	                                    + "  { \"baseDirectory\": \"/fleet/FAIRCOM2\", \"serverName\": \"FAIRCOM2\", \"sqlPort\": \"19801\", \"listeningHttpPort\": 19803,"
+	                                    + " \"memphisSqlPort\": 19991 },\n"
+	                                    + "  { \"baseDirectory\": \"/fleet/FAIRCOM3\", \"serverName\": \"FAIRCOM3\", \"sqlPort\": \"19811\", \"listeningHttpPort\": 19813,"
+	                                    + " \"memphisSqlPort\": 19991 }\n"
+	                                    + "]";
+
+
+	@Test
+	public void arraysGiveTheSameNodesAsLoadConfig() throws IOException
+	{
+		assertSameNodes( GSON.fromJson( ARRAY, Config[].class ), read( ARRAY ) );
+	}
+
+
+	@Test
+	public void emptyArraysHaveNoNodes() throws IOException
+	{
+		assertEquals( 0, read( "[]" ).size() );
+	}
+
+
+	@Test
+	public void nodesAreReadAsTheyAreTaken() throws IOException
+	{
+		// The second node is malformed, but the first can still be taken.
+		try( FleetReader fleetReader = new FleetReader( new StringReader( "[ { \"serverName\": \"FAIRCOM2\" }, { \"serverName\": } ]" ) ) )
+		{
+			assertEquals( "FAIRCOM2", fleetReader.next().getServerName() );
+			try
+			{
+				fleetReader.next();
+				fail( "The second node is malformed" );
+			}
+			catch( JsonSyntaxException jsonSyntaxException )
+			{
+				// Expected.
+			}
+		}
+	}
+
+
+	@Test
+	public void malformedFleetsAreRejected()
+	{
+		String[] malformed = {
+			"\"fleet\"",
+			"[ { \"serverName\": \"FAIRCOM2\" } ] [",
+			"[ null ]",
+			"[ { \"serverName\": \"FAIRCOM2\" }",
+		};
+		for( String text : malformed )
+		{
+			try
+			{
+				read( text );
+				fail( "Expected an error for " + text );
+			}
+			catch( JsonSyntaxException | IOException exception )
+			{
+				// Expected.
+			}
+		}
+	}
+
+
+	static List<Config> read( String text ) throws IOException
+	{
+		List<Config> configList = new ArrayList<>();
+		try( FleetReader fleetReader = new FleetReader( new StringReader( text ) ) )
+		{
+			while( fleetReader.hasNext() )
+				configList.add( fleetReader.next() );
+		}
+		return configList;
+	}
+
+
+	static void assertSameNodes( Config[] expected, List<Config> actual )
+	{
+		assertEquals( expected.length, actual.size() );
+		for( int i = 0; i < expected.length; i++ )
+			assertEquals( RunManifest.configHash( expected[i] ), RunManifest.configHash( actual.get( i ) ) );
+	}
+}
@@ -0,0 +1,165 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static main.java.com.faircom.replicationconfigeditor.PortRegistryTest.node;
+import static org.junit.Assert.*;
+
+
+public class FleetStoreTest
+{
+	private static final Logger mainLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private Level savedLevel;
+
+
+	@Before
+	public void setUp()
+	{
+		savedLevel = mainLogger.getLevel();
+		mainLogger.setLevel( Level.OFF );
+	}
+
+
+	@After
+	public void tearDown()
+	{
+		mainLogger.setLevel( savedLevel );
+	}
+
+
+	@Test
+	public void nodesAreRebuiltExactly()
+	{
+		List<Config> configList = new ArrayList<>();
+		configList.add( node( "/fleet/FAIRCOM2", "19801", "", 19803, 19802, 1884, 8082 ) );
+		// Port texts that are not plain port numbers are kept as they were given.
+		for( String portText : new String[]{ "019801", " 19801 ", "port", "0", "65536", "123456", "-1", "65535" } )
+			configList.add( node( "/fleet/" + portText, portText, portText, null, null, null, null ) );
+		configList.add( new Config( "/fleet/MEMPHIS", null, "ctsrvr.cfg", null, null, "YES", null, "cthttpd.json", 0, 65535, null, null,
+		                            null, null, null, null, null, null ) );
+		FleetStore fleetStore = FleetStore.load( configList.iterator() );
+
+		assertEquals( configList.size(), fleetStore.size() );
+		Iterator<Config> storedIterator = fleetStore.iterator();
+		for( int i = 0; i < configList.size(); i++ )
+		{
+			assertSameConfig( configList.get( i ), fleetStore.get( i ) );
+			assertSameConfig( configList.get( i ), storedIterator.next() );
+			assertEquals( configList.get( i ).getBaseDirectory(), fleetStore.getBaseDirectory( i ) );
+			assertEquals( configList.get( i ).getSqlPort(), fleetStore.getPortText( FleetStore.SQL_PORT, i ) );
+		}
+		assertFalse( storedIterator.hasNext() );
+		assertNotSame( fleetStore.get( 0 ), fleetStore.get( 0 ) );
+		assertTrue( fleetStore.hasPort( FleetStore.SQL_PORT, 0 ) );
+		assertEquals( 19801, fleetStore.getPort( FleetStore.SQL_PORT, 0 ) );
+		assertFalse( fleetStore.hasPort( FleetStore.SERVER_PORT, 0 ) );
+		assertFalse( fleetStore.hasPort( FleetStore.SQL_PORT, 1 ) );
+		assertTrue( fleetStore.hasPort( FleetStore.SQL_PORT, 8 ) );
+	}
+
+
+	@Test
+	public void repeatedSettingsAreStoredOnce()
+	{
+		FleetStore fleetStore = new FleetStore();
+		for( int i = 0; i < 1000; i++ )
+			fleetStore.add( node( "/fleet/FAIRCOM" + i, Integer.toString( 20000 + i ), "", 30000 + i, null, null, null ) );
+
+		assertEquals( 1000, fleetStore.size() );
+		// The base directories, plus "config", "ctsrvr.cfg", "FAIRCOM", "", "NO", "cthttpd.json", "ctagent.json", "MEMPHIS", and "127.0.0.1".
+		assertEquals( 1000 + 9, fleetStore.getDictionarySize() );
+		assertSameConfig( node( "/fleet/FAIRCOM999", "20999", "", 30999, null, null, null ), fleetStore.get( 999 ) );
+	}
+
+
+	@Test
+	public void nodesOutsideTheStoreAreRejected()
+	{
+		FleetStore fleetStore = new FleetStore();
+		fleetStore.add( node( "/fleet/FAIRCOM2", "19801", "", 19803, 19802, null, null ) );
+		for( int node : new int[]{ -1, 1 } )
+		{
+			try
+			{
+				fleetStore.get( node );
+				fail( "Expected node " + node + " to be rejected" );
+			}
+			catch( IndexOutOfBoundsException indexOutOfBoundsException )
+			{
+				assertEquals( "Node " + node + " of 1", indexOutOfBoundsException.getMessage() );
+			}
+		}
+	}
+
+
+	@Test
+	public void portRegistryReadsTheStoreLikeEachConfig()
+	{
+		List<List<Config>> fleets = Arrays.asList(
+			Arrays.asList( node( "/fleet/FAIRCOM2", "19801", "", 19803, 19802, 1884, 8082 ),
+			               node( "/fleet/FAIRCOM3", "19811", "19810", 19813, 19812, 1885, 8083 ) ),
+			Arrays.asList( node( "/fleet/FAIRCOM2", "19801", "", 19803, 19802, 1884, 8082 ),
+			               node( "/fleet/FAIRCOM3", "19801", "", 19813, 19803, 1884, 8083 ),
+			               node( "/fleet/FAIRCOM4", "19801", "", 19823, 19822, null, null ) ),
+			Arrays.asList( node( "/fleet/FAIRCOM2", "19801", "19801", 19803, 19803, null, null ) ),
+			Arrays.asList( node( "/fleet/FAIRCOM2", " 19801 ", "  ", 19803, 19802, null, null ),
+			               node( "/fleet/FAIRCOM3", "019811", "port", 70000, 19802, null, null ) ),
+			Arrays.asList( node( "/fleet/FAIRCOM2", "20000", "", null, null, null, null ),
+			               node( "/fleet/FAIRCOM3", "20003", "", 20001, null, null, null ) ) );
+		for( List<Config> configList : fleets )
+		{
+			PortRegistry configRegistry = new PortRegistry();
+			for( Config configuredNode : configList )
+				configRegistry.register( configuredNode );
+			configRegistry.allocate( 20000 );
+			PortRegistry storeRegistry = new PortRegistry();
+			storeRegistry.register( FleetStore.load( configList.iterator() ) );
+			storeRegistry.allocate( 20000 );
+
+			String message = configList.get( configList.size() - 1 ).getSqlPort();
+			assertEquals( message, configRegistry.report(), storeRegistry.report() );
+			assertEquals( message, configRegistry.getConflictCount(), storeRegistry.getConflictCount() );
+			for( int port = 1; port <= 70000; port++ )
+				assertEquals( message + " " + port, configRegistry.isUsed( port ), storeRegistry.isUsed( port ) );
+			Iterator<Config> configAssigned = configRegistry.assignPorts( configList.iterator() );
+			Iterator<Config> storeAssigned = storeRegistry.assignPorts( configList.iterator() );
+			while( configAssigned.hasNext() )
+				assertSameConfig( configAssigned.next(), storeAssigned.next() );
+		}
+	}
+
+
+	private static void assertSameConfig( Config expected, Config actual )
+	{
+		String message = expected.getBaseDirectory();
+		assertEquals( message, expected.getBaseDirectory(), actual.getBaseDirectory() );
+		assertEquals( message, expected.getConfigDirectory(), actual.getConfigDirectory() );
+		assertEquals( message, expected.getServerFileName(), actual.getServerFileName() );
+		assertEquals( message, expected.getServerName(), actual.getServerName() );
+		assertEquals( message, expected.getServerPort(), actual.getServerPort() );
+		assertEquals( message, expected.getReadOnlyServer(), actual.getReadOnlyServer() );
+		assertEquals( message, expected.getSqlPort(), actual.getSqlPort() );
+		assertEquals( message, expected.getHttpFileName(), actual.getHttpFileName() );
+		assertEquals( message, expected.getListeningHttpPort(), actual.getListeningHttpPort() );
+		assertEquals( message, expected.getListeningHttpsPort(), actual.getListeningHttpsPort() );
+		assertEquals( message, expected.getMqttListeningPort(), actual.getMqttListeningPort() );
+		assertEquals( message, expected.getMqttWebsocketPort(), actual.getMqttWebsocketPort() );
+		assertEquals( message, expected.getAgentFileName(), actual.getAgentFileName() );
+		assertEquals( message, expected.getMemphisServerName(), actual.getMemphisServerName() );
+		assertEquals( message, expected.getMemphisSqlPort(), actual.getMemphisSqlPort() );
+		assertEquals( message, expected.getMemphisHost(), actual.getMemphisHost() );
+		assertEquals( message, expected.getMemphisDatabase(), actual.getMemphisDatabase() );
+		assertEquals( message, expected.getReplicationManagerFileName(), actual.getReplicationManagerFileName() );
+		assertEquals( message, RunManifest.configHash( expected ), RunManifest.configHash( actual ) );
+	}
+}
@@ -0,0 +1,182 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class FleetTemplateTest
+{
+	private static final String DEFAULTS = "{ \"configDirectory\": \"config\", \"memphisServerName\": \"MEMPHIS\", \"memphisSqlPort\": 19991, \"sqlPort\": \"19801\", \"listeningHttpPort\": 19803 }";
+
+
+	@Test
+	public void nodesOverrideTheDefaults()
+	{
+		FleetTemplate template = new FleetTemplate( object( DEFAULTS ) );
+		JsonObject node = template.node( object( "{ \"baseDirectory\": \"/fleet/MEMPHIS\", \"sqlPort\": \"19991\" }" ) );
+
+		assertEquals( "/fleet/MEMPHIS", node.get( "baseDirectory" ).getAsString() );
+		assertEquals( "19991", node.get( "sqlPort" ).getAsString() );
+		assertEquals( "config", node.get( "configDirectory" ).getAsString() );
+		assertEquals( 19803, node.get( "listeningHttpPort" ).getAsInt() );
+	}
+
+
+	@Test
+	public void groupsNumberTheirMembersAndApplyStrides()
+	{
+		FleetTemplate template = new FleetTemplate( object( DEFAULTS ) );
+		FleetTemplate.Group group = template.group( object( "{ \"count\": 3, \"first\": 2, \"baseDirectory\": \"/fleet/FAIRCOM{n}\", \"serverName\": \"FAIRCOM{n}\","
+		                                                    + " \"strides\": { \"sqlPort\": 10, \"listeningHttpPort\": 10 } }" ), "$.groups[0]" );
+
+		List<JsonObject> memberList = new ArrayList<>();
+		while( group.hasNext() )
+			memberList.add( group.next() );
+		assertEquals( 3, memberList.size() );
+		for( int i = 0; i < 3; i++ )
+		{
+			JsonObject member = memberList.get( i );
+			assertEquals( "/fleet/FAIRCOM" + ( i + 2 ), member.get( "baseDirectory" ).getAsString() );
+			assertEquals( "FAIRCOM" + ( i + 2 ), member.get( "serverName" ).getAsString() );
+			// A quoted start stays quoted, and a number stays a number.
+			assertTrue( member.getAsJsonPrimitive( "sqlPort" ).isString() );
+			assertEquals( Integer.toString( 19801 + i * 10 ), member.get( "sqlPort" ).getAsString() );
+			assertTrue( member.getAsJsonPrimitive( "listeningHttpPort" ).isNumber() );
+			assertEquals( 19803 + i * 10, member.get( "listeningHttpPort" ).getAsInt() );
+			assertEquals( 19991, member.get( "memphisSqlPort" ).getAsInt() );
+		}
+	}
+
+
+	@Test
+	public void emptyGroupsHaveNoMembers()
+	{
+		FleetTemplate.Group group = new FleetTemplate( object( DEFAULTS ) ).group( object( "{ \"count\": 0, \"strides\": { \"sqlPort\": 70000 } }" ), "$.groups[0]" );
+		assertFalse( group.hasNext() );
+	}
+
+
+	@Test
+	public void stridesMustStayInThePortRange()
+	{
+		assertGroupError( "{ \"count\": 5000, \"strides\": { \"listeningHttpPort\": 10 } }", "$.groups[0]", "\"listeningHttpPort\"", "69793" );
+		assertGroupError( "{ \"count\": 3, \"sqlPort\": \"100\", \"strides\": { \"sqlPort\": -50 } }", "$.groups[0]", "\"sqlPort\"", "0" );
+		assertGroupError( "{ \"count\": 1, \"sqlPort\": 70000, \"strides\": { \"sqlPort\": 1 } }", "$.groups[0]", "\"sqlPort\"", "70000" );
+		// The largest count that fits.
+		FleetTemplate.Group group = new FleetTemplate( object( DEFAULTS ) ).group( object( "{ \"count\": 4574, \"strides\": { \"listeningHttpPort\": 10 } }" ), "$.groups[0]" );
+		assertTrue( group.hasNext() );
+	}
+
+
+	@Test
+	public void invalidGroupsAreRejected()
+	{
+		assertGroupError( "{ \"strides\": { \"sqlPort\": 1 } }", "$.groups[0]", "\"count\"", "null" );
+		assertGroupError( "{ \"count\": -1 }", "$.groups[0]", "negative", "" );
+		assertGroupError( "{ \"count\": \"many\" }", "$.groups[0]", "\"count\"", "many" );
+		assertGroupError( "{ \"count\": 2, \"strides\": [ 1 ] }", "$.groups[0]", "strides", "" );
+		assertGroupError( "{ \"count\": 2, \"strides\": { \"serverPort\": 1 } }", "$.groups[0]", "\"serverPort\"", "no starting value" );
+		assertGroupError( "{ \"count\": 2, \"strides\": { \"sqlPort\": \"x\" } }", "$.groups[0]", "\"strides.sqlPort\"", "x" );
+	}
+
+
+	@Test
+	public void descriptorsGiveTheSameNodesAsTheArray() throws IOException
+	{
+		String descriptor = "{\n"
+		                    + "  // Every node shares these.\n"
+		                    + "  \"defaults\": { \"memphisSqlPort\": 19991 },\n"
+		                    + "  \"nodes\": [ { \"baseDirectory\": \"/fleet/MEMPHIS\", \"serverName\": \"MEMPHIS\", \"sqlPort\": \"19991\", \"listeningHttpPort\": 19993,"
+		                    + " \"replicationManagerFileName\": \"ctReplicationManager.cfg\" } ],\n"
+		                    + "  \"comment\": \"ignored\",\n"
+		                    + "  \"groups\": [ { \"count\": 2, \"first\": 2, \"baseDirectory\": \"/fleet/FAIRCOM{n}\", \"serverName\": \"FAIRCOM{n}\","
+		                    + " \"sqlPort\": \"19801\", \"listeningHttpPort\": 19803, \"strides\": { \"sqlPort\": 10, \"listeningHttpPort\": 10 } } ]\n"
+		                    + "}";
+		FleetReaderTest.assertSameNodes( FleetReaderTest.GSON.fromJson( FleetReaderTest.ARRAY, Config[].class ), FleetReaderTest.read( descriptor ) );
+	}
+
+
+	@Test
+	public void emptyDescriptorsHaveNoNodes() throws IOException
+	{
+		assertEquals( 0, FleetReaderTest.read( "{}" ).size() );
+		assertEquals( 0, FleetReaderTest.read( "{ \"defaults\": {}, \"nodes\": [], \"groups\": [ { \"count\": 0 } ] }" ).size() );
+	}
+
+
+	@Test
+	public void malformedDescriptorsAreRejected()
+	{
+		String[] malformed = {
+			"{ \"nodes\": [ 5 ] }",
+			// The defaults must come before the nodes and groups.
+			"{ \"groups\": [ { \"count\": 1 } ], \"defaults\": {} }",
+			"{ \"nodes\": [] } }",
+		};
+		for( String text : malformed )
+		{
+			try
+			{
+				FleetReaderTest.read( text );
+				fail( "Expected an error for " + text );
+			}
+			catch( JsonSyntaxException | IOException exception )
+			{
+				// Expected.
+			}
+		}
+	}
+
+
+	@Test
+	public void readerNamesTheGroupThatIsOutOfRange() throws IOException
+	{
+		String descriptor = "{ \"defaults\": " + DEFAULTS + ",\n"
+		                    + "  \"groups\": [ { \"count\": 2 }, { \"count\": 7000, \"strides\": { \"sqlPort\": 10 } } ] }";
+		try( FleetReader fleetReader = new FleetReader( new StringReader( descriptor ) ) )
+		{
+			fleetReader.next();
+			fleetReader.next();
+			fleetReader.hasNext();
+			fail( "The second group should have been rejected" );
+		}
+		catch( JsonSyntaxException jsonSyntaxException )
+		{
+			assertTrue( jsonSyntaxException.getMessage(), jsonSyntaxException.getMessage().contains( "$.groups[1]" ) );
+			assertTrue( jsonSyntaxException.getMessage(), jsonSyntaxException.getMessage().contains( "\"sqlPort\"" ) );
+		}
+	}
+
+
+	private static void assertGroupError( String entry, String path, String expected, String alsoExpected )
+	{
+		try
+		{
+			new FleetTemplate( object( DEFAULTS ) ).group( object( entry ), path );
+			fail( "Expected an error for " + entry );
+		}
+		catch( JsonSyntaxException jsonSyntaxException )
+		{
+			String message = jsonSyntaxException.getMessage();
+			assertTrue( message, message.contains( path ) );
+			assertTrue( message, message.contains( expected ) );
+			assertTrue( message, message.contains( alsoExpected ) );
+		}
+	}
+
+
+	private static JsonObject object( String json )
+	{
+		return JsonParser.parseString( json ).getAsJsonObject();
+	}
+}
@@ -0,0 +1,236 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * These tests check that updateFiles() and fixLine() give the same results as the original line-by-line editor.<br>
+ * The files under "expected" were written by the original editor from the files under "sample".
+ * That editor always wrote "\n" line breaks and wrote JSON members as "key":&lt;tab&gt;value,
+ * so line-based files are compared line by line, and JSON files are compared by their parsed contents.
+ */
+public class JavaReplicationConfigEditorTest
+{
+	private static final Logger mainLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private Level savedLevel;
+	private Path fleetDirectory;
+
+
+	@Before
+	public void setUp() throws IOException, URISyntaxException
+	{
+		savedLevel = mainLogger.getLevel();
+		mainLogger.setLevel( Level.WARNING );
+		fleetDirectory = Files.createTempDirectory( "fleet" );
+		SampleFiles.copyTree( SampleFiles.resource( "sample" ), fleetDirectory );
+	}
+
+
+	@After
+	public void tearDown() throws IOException
+	{
+		mainLogger.setLevel( savedLevel );
+		SampleFiles.deleteTree( fleetDirectory );
+	}
+
+
+	@Test
+	public void updateFilesMatchesTheOriginalEditor() throws IOException, URISyntaxException
+	{
+		for( Config configuredNode : sampleFleet() )
+		{
+			Map<String, FileStatus> fileStatusMap = JavaReplicationConfigEditor.updateFiles( configuredNode );
+			for( FileStatus fileStatus : fileStatusMap.values() )
+				assertEquals( FileStatus.MODIFIED, fileStatus );
+		}
+
+		Path expectedDirectory = SampleFiles.resource( "expected" );
+		List<Path> expectedFiles = SampleFiles.listFiles( expectedDirectory );
+		assertEquals( 10, expectedFiles.size() );
+		for( Path expectedFile : expectedFiles )
+		{
+			Path actualFile = fleetDirectory.resolve( expectedDirectory.relativize( expectedFile ).toString() );
+			String message = expectedDirectory.relativize( expectedFile ).toString();
+			if( expectedFile.toString().endsWith( "json" ) )
+				assertEquals( message, JsonParser.parseString( SampleFiles.read( expectedFile ) ), JsonParser.parseString( SampleFiles.read( actualFile ) ) );
+			else
+				assertEquals( message, lines( SampleFiles.read( expectedFile ) ), lines( SampleFiles.read( actualFile ) ) );
+		}
+	}
+
+
+	@Test
+	public void updateFilesKeepsLineBreaks() throws IOException
+	{
+		JavaReplicationConfigEditor.updateFiles( sampleFleet().get( 1 ) );
+
+		String serverConfig = SampleFiles.read( fleetDirectory.resolve( "legacy/config/ctsrvr.cfg" ) );
+		assertTrue( serverConfig.endsWith( "PLUGIN ctagent;./agent/ctagent.dll\r\n" ) );
+		assertFalse( Pattern.compile( "[^\r]\n" ).matcher( serverConfig ).find() );
+		String httpConfig = SampleFiles.read( fleetDirectory.resolve( "legacy/config/cthttpd.json" ) );
+		assertEquals( "{\r\n\t\"http_port\": 19813,\r\n\t\"https_port\": 19812,\r\n\t\"mqtt_port\": 1883,\r\n\t\"websocket_port\": 9001,\r\n"
+		              + "\t\"document_root\": \"./web/apps\",\r\n\t\"enabled\": true\r\n}\r\n", httpConfig );
+	}
+
+
+	@Test
+	public void updateFilesLeavesUpdatedFilesUnchanged() throws IOException
+	{
+		// The manager's ctsrvr.cfg has a line commented out twice, which clearComment() uncomments one step per run, so use a node without one.
+		Config configuredNode = sampleFleet().get( 1 );
+		JavaReplicationConfigEditor.updateFiles( configuredNode );
+		Map<String, String> firstPass = SampleFiles.readTree( fleetDirectory );
+
+		Map<String, FileStatus> fileStatusMap = JavaReplicationConfigEditor.updateFiles( configuredNode );
+		for( FileStatus fileStatus : fileStatusMap.values() )
+			assertEquals( fileStatusMap.toString(), FileStatus.UNCHANGED, fileStatus );
+		assertEquals( firstPass, SampleFiles.readTree( fleetDirectory ) );
+	}
+
+
+	@Test
+	public void dryRunDoesNotWrite() throws IOException
+	{
+		Map<String, String> before = SampleFiles.readTree( fleetDirectory );
+		Map<String, FileStatus> fileStatusMap = new LinkedHashMap<>();
+		JavaReplicationConfigEditor.updateFiles( sampleFleet().get( 0 ), fileStatusMap, true );
+
+		assertEquals( 3, fileStatusMap.size() );
+		for( FileStatus fileStatus : fileStatusMap.values() )
+			assertEquals( FileStatus.MODIFIED, fileStatus );
+		assertEquals( before, SampleFiles.readTree( fleetDirectory ) );
+	}
+
+
+	@Test( expected = NodeUpdateException.class )
+	public void missingFileFailsTheNode()
+	{
+		Config configuredNode = sampleFleet().get( 0 );
+		Config missingNode = new Config( configuredNode.getBaseDirectory(), "missing", configuredNode.getServerFileName(), configuredNode.getServerName(),
+		                                 configuredNode.getServerPort(), configuredNode.getReadOnlyServer(), configuredNode.getSqlPort(), configuredNode.getHttpFileName(),
+		                                 configuredNode.getListeningHttpPort(), configuredNode.getListeningHttpsPort(), configuredNode.getMqttListeningPort(),
+		                                 configuredNode.getMqttWebsocketPort(), configuredNode.getAgentFileName(), configuredNode.getMemphisServerName(),
+		                                 configuredNode.getMemphisSqlPort(), configuredNode.getMemphisHost(), configuredNode.getMemphisDatabase(),
+		                                 configuredNode.getReplicationManagerFileName() );
+		JavaReplicationConfigEditor.updateFiles( missingNode );
+	}
+
+
+	@Test
+	public void fixLineMatchesTheOriginalAlgorithm()
+	{
+		Map<String, Object> serverConfigMap = new LinkedHashMap<>();
+		serverConfigMap.put( "SERVER_NAME", "FAIRCOM2" );
+		serverConfigMap.put( "SERVER_PORT", "19800" );
+		serverConfigMap.put( "SQL_PORT", "19801" );
+		serverConfigMap.put( "READONLY_SERVER", "NO" );
+		Map<String, Object> httpConfigMap = new LinkedHashMap<>();
+		httpConfigMap.put( "\"http_port\":", "19803" );
+		httpConfigMap.put( "\"listening_http_port\":", "19803" );
+		httpConfigMap.put( "\"memphis_host\":", "127.0.0.1" );
+		httpConfigMap.put( "\"memphis_database\":", "MEMPHIS" );
+		httpConfigMap.put( "\"memphis_server_name\":", "\"QUOTED\"" );
+		httpConfigMap.put( "\"path\":", "db-host.local" );
+		String[] pieces = { "SERVER_NAME", "SQL_PORT", "SERVER_PORT", "READONLY_SERVER", "\"http_port\":", "\"listening_http_port\":", "\"memphis_host\":",
+		                    "\"memphis_database\":", "\"memphis_server_name\":", "\"path\":", ";", ";;", " ", "\t", "x", "_", "\"", ":", "6597", "," };
+
+		Random random = new Random( 20221 );
+		for( int i = 0; i < 20000; i++ )
+		{
+			StringBuilder line = new StringBuilder();
+			int pieceCount = random.nextInt( 6 );
+			for( int j = 0; j < pieceCount; j++ )
+				line.append( pieces[random.nextInt( pieces.length )] );
+			String text = line.toString();
+			for( boolean startsWith : new boolean[]{ false, true } )
+			{
+				assertEquals( text, originalFixLine( text, serverConfigMap, "", startsWith ), JavaReplicationConfigEditor.fixLine( text, serverConfigMap, "", startsWith ) );
+				assertEquals( text, originalFixLine( text, httpConfigMap, ",", startsWith ), JavaReplicationConfigEditor.fixLine( text, httpConfigMap, ",", startsWith ) );
+			}
+		}
+	}
+
+
+	/**
+	 * originalFixLine() is fixLine() as it was before KeyMatcher, searching for each key in turn.
+	 */
+	private static String originalFixLine( String line, Map<String, Object> keyValueMap, String suffix, boolean startsWith )
+	{
+		for( Map.Entry<String, Object> keyValuePair : keyValueMap.entrySet() )
+		{
+			String key = keyValuePair.getKey();
+			Object value = keyValuePair.getValue();
+			if( line.contains( key ) )
+			{
+				if( suffix.equals( "," ) )
+					value = originalQuoteIfNeeded( value );
+				if( !startsWith )
+				{
+					String indentation = line.substring( 0, line.indexOf( key ) );
+					if( indentation.contains( ";" ) )
+						indentation = indentation.replaceFirst( ";", "" );
+					line = indentation + key + '\t' + value + suffix;
+				}
+				else if( line.startsWith( key ) )
+				{
+					String indentation = line.substring( 0, line.indexOf( key ) );
+					line = indentation + key + '\t' + value + suffix;
+				}
+			}
+		}
+		return line;
+	}
+
+
+	private static Object originalQuoteIfNeeded( Object value )
+	{
+		if( value.toString().startsWith( "\"" ) && value.toString().endsWith( "\"" ) )
+			return value;
+		if( value.toString().matches( "\\b(?:(?:25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\.){3}(?:25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\b" ) )
+			return "\"" + value + "\"";
+		if( value.toString().matches( "\\d+" ) )
+			return value;
+		if( value.toString().matches( "\\w+" ) )
+			return "\"" + value + "\"";
+		return value;
+	}
+
+
+	/**
+	 * sampleFleet() will return the nodes that the files under "expected" were written for.
+	 */
+	private List<Config> sampleFleet()
+	{
+		String base = fleetDirectory.toString();
+		return Arrays.asList(
+			new Config( base + "/edge", "config", "ctsrvr.cfg", "FAIRCOM2", "", "NO", "19801", "cthttpd.json", 19803, 19802, 1884, 8082,
+			            "ctagent.json", "MEMPHIS", 19991, "127.0.0.1", "MEMPHIS", "" ),
+			new Config( base + "/legacy", "config", "ctsrvr.cfg", "FAIRCOM3", "19810", "NO", "19811", "cthttpd.json", 19813, 19812, null, null,
+			            "ctagent.json", "MEMPHIS", 19991, "MEMPHISHOST", "MEMPHIS", "" ),
+			new Config( base + "/manager", "config", "ctsrvr.cfg", "MEMPHIS", "", "NO", "19991", "cthttpd.json", 19993, 19992, 1889, 8089,
+			            "ctagent.json", "MEMPHIS", 19991, "127.0.0.1", "MEMPHIS", "ctReplicationManager.cfg" ) );
+	}
+
+
+	private static List<String> lines( String text )
+	{
+		List<String> lineList = new ArrayList<>( Arrays.asList( text.split( "\r\n|\r|\n", -1 ) ) );
+		if( lineList.get( lineList.size() - 1 ).isEmpty() )
+			lineList.remove( lineList.size() - 1 );
+		return lineList;
+	}
+}
@@ -0,0 +1,255 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+
+public class JsonEditorTest
+{
+	private static final Logger mainLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private Level savedLevel;
+	private Path directory;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		savedLevel = mainLogger.getLevel();
+		mainLogger.setLevel( Level.OFF );
+		directory = Files.createTempDirectory( "json" );
+	}
+
+
+	@After
+	public void tearDown() throws IOException
+	{
+		mainLogger.setLevel( savedLevel );
+		SampleFiles.deleteTree( directory );
+	}
+
+
+	@Test
+	public void renderWritesNumbersAsTheyAre()
+	{
+		assertEquals( "19803", JsonEditor.render( "19803" ) );
+		assertEquals( "19991", JsonEditor.render( 19991 ) );
+		assertEquals( "-1.5e3", JsonEditor.render( "-1.5e3" ) );
+		assertEquals( "0", JsonEditor.render( "0" ) );
+	}
+
+
+	@Test
+	public void renderQuotesAndEscapesEverythingElse()
+	{
+		assertEquals( "\"MEMPHIS\"", JsonEditor.render( "MEMPHIS" ) );
+		assertEquals( "\"127.0.0.1\"", JsonEditor.render( "127.0.0.1" ) );
+		assertEquals( "\"db-host.local\"", JsonEditor.render( "db-host.local" ) );
+		assertEquals( "\"C:/FairCom/server\"", JsonEditor.render( "C:/FairCom/server" ) );
+		assertEquals( "\"C:\\\\FairCom\\\\server\"", JsonEditor.render( "C:\\FairCom\\server" ) );
+		assertEquals( "\"say \\\"hi\\\"\"", JsonEditor.render( "say \"hi\"" ) );
+		assertEquals( "\"tab\\there\"", JsonEditor.render( "tab\there" ) );
+		// A leading zero is not a JSON number.
+		assertEquals( "\"007\"", JsonEditor.render( "007" ) );
+		assertEquals( "\"\"", JsonEditor.render( "" ) );
+		assertEquals( "\"true\"", JsonEditor.render( "true" ) );
+	}
+
+
+	@Test
+	public void renderKeepsCompleteStrings()
+	{
+		assertEquals( "\"MEMPHIS\"", JsonEditor.render( "\"MEMPHIS\"" ) );
+		assertEquals( "\"a\\\"b\"", JsonEditor.render( "\"a\\\"b\"" ) );
+		// Quotes at both ends that do not make one valid string are escaped.
+		assertEquals( "\"\\\"a\\\"b\\\"\"", JsonEditor.render( "\"a\"b\"" ) );
+		assertEquals( "\"\\\"\"", JsonEditor.render( "\"" ) );
+	}
+
+
+	@Test
+	public void hostNamesAreWrittenAsValidJson() throws IOException
+	{
+		Path file = write( "ctagent.json", "{\n  \"memphis_host\": \"localhost\",\n  \"memphis_sql_port\": 7000\n}\n" );
+		Map<String, Object> configMap = new LinkedHashMap<>();
+		configMap.put( "\"memphis_host\":", "db-host.local" );
+		configMap.put( "\"memphis_sql_port\":", "19991" );
+
+		assertEquals( FileStatus.MODIFIED, edit( file, configMap ) );
+		String edited = SampleFiles.read( file );
+		assertEquals( "{\n  \"memphis_host\": \"db-host.local\",\n  \"memphis_sql_port\": 19991\n}\n", edited );
+		assertTrue( parseStrictly( edited ).isJsonObject() );
+	}
+
+
+	@Test
+	public void membersAreMatchedAtAnyDepth() throws IOException
+	{
+		Path file = write( "cthttpd.json", "{\n"
+		                                   + "  \"http_port\": 8080,\n"
+		                                   + "  \"web\": { \"http_port\": 8081, \"other\": 1 },\n"
+		                                   + "  \"listeners\": [ { \"http_port\": 8082 }, [ { \"http_port\": \"8083\" } ], 8080 ],\n"
+		                                   + "  \"mqtt\": { \"http_port\": { \"http_port\": 8084 } }\n"
+		                                   + "}" );
+
+		assertEquals( FileStatus.MODIFIED, edit( file, singleKey( "\"http_port\":", "19803" ) ) );
+		assertEquals( "{\n"
+		              + "  \"http_port\": 19803,\n"
+		              + "  \"web\": { \"http_port\": 19803, \"other\": 1 },\n"
+		              + "  \"listeners\": [ { \"http_port\": 19803 }, [ { \"http_port\": 19803 } ], 8080 ],\n"
+		              + "  \"mqtt\": { \"http_port\": { \"http_port\": 19803 } }\n"
+		              + "}", SampleFiles.read( file ) );
+	}
+
+
+	@Test
+	public void stringsAndEscapesAreCopiedExactly() throws IOException
+	{
+		String text = "{\n"
+		              + "  \"note\": \"say \\\"http_port\\\": 1, \\\\ \\/ \\b\\f\\n\\r\\t \\u00e9\\uD83D\\uDE00\",\n"
+		              + "  \"http\\u005fport\": 8080,\n"
+		              + "  \"path\": \"C:\\\\FairCom\\\\\",\n"
+		              + "  \"latin\": \"caf\u00e9\"\n"
+		              + "}\n";
+		Path file = write( "cthttpd.json", text );
+
+		assertEquals( FileStatus.MODIFIED, edit( file, singleKey( "\"http_port\":", "19803" ) ) );
+		assertEquals( text.replace( "8080", "19803" ), SampleFiles.read( file ) );
+	}
+
+
+	@Test
+	public void commentsAreKept() throws IOException
+	{
+		String text = "// FairCom web server settings\n"
+		              + "{\n"
+		              + "  /* the port for plain HTTP */ \"http_port\": /* was 80 */ 8080, // changed by hand\n"
+		              + "  \"https_port\": 8443//\n"
+		              + "}\n";
+		Path file = write( "cthttpd.json", text );
+
+		assertEquals( FileStatus.MODIFIED, edit( file, singleKey( "\"http_port\":", "19803" ) ) );
+		assertEquals( text.replace( "8080", "19803" ), SampleFiles.read( file ) );
+	}
+
+
+	@Test
+	public void unchangedFilesAreNotWritten() throws IOException
+	{
+		Path file = write( "cthttpd.json", "{ \"http_port\": 19803 }" );
+
+		assertEquals( FileStatus.UNCHANGED, edit( file, singleKey( "\"http_port\":", "19803" ) ) );
+	}
+
+
+	@Test
+	public void malformedFilesAreEditedLineByLine() throws IOException
+	{
+		String[] malformed = {
+			// A trailing comma.
+			"{\n\t\"http_port\": 8080,\n\t\"other\": 1,\n}\n",
+			// An unquoted name.
+			"{\n\tother: 1,\n\t\"http_port\": 8080,\n}\n",
+			// Single quotes.
+			"{\n\t'other': 'x',\n\t\"http_port\": 8080,\n}\n",
+			// A bare value.
+			"{\n\t\"other\": localhost,\n\t\"http_port\": 8080,\n}\n",
+			// An invalid escape.
+			"{\n\t\"other\": \"\\x\",\n\t\"http_port\": 8080,\n}\n",
+			// An invalid \\u escape.
+			"{\n\t\"other\": \"\\u00g1\",\n\t\"http_port\": 8080,\n}\n",
+			// An unterminated string.
+			"{\n\t\"other\": \"x,\n\t\"http_port\": 8080,\n}\n",
+			// An unterminated comment.
+			"{\n\t\"http_port\": 8080,\n}\n/* the end",
+			// Content after the document.
+			"{\n\t\"http_port\": 8080,\n}\n}\n",
+		};
+		for( String text : malformed )
+		{
+			Path file = write( "cthttpd.json", text );
+			assertEquals( text, FileStatus.MODIFIED, edit( file, singleKey( "\"http_port\":", "19803" ) ) );
+			assertEquals( text, text.replace( "\"http_port\": 8080,", "\"http_port\":\t19803," ), SampleFiles.read( file ) );
+		}
+	}
+
+
+	@Test
+	public void matchingShapeWithAnInvalidValueIsEditedLineByLine() throws IOException
+	{
+		Map<String, Object> configMap = singleKey( "\"memphis_host\":", "127.0.0.1" );
+		Path first = write( "first.json", "{\n  \"memphis_host\": \"localhost\",\n  \"other\": 1\n}\n" );
+		assertEquals( FileStatus.MODIFIED, edit( first, configMap ) );
+
+		// The same layout, but the value is a bare word, which is not valid JSON.
+		Path second = write( "second.json", "{\n  \"memphis_host\": localhost,\n  \"other\": 1\n}\n" );
+		assertEquals( FileStatus.MODIFIED, edit( second, configMap ) );
+		assertEquals( "{\n  \"memphis_host\":\t\"127.0.0.1\",\n  \"other\": 1\n}\n", SampleFiles.read( second ) );
+	}
+
+
+	@Test
+	public void previewDoesNotWrite() throws IOException
+	{
+		String text = "{\n  \"http_port\": 8080,\n  \"https_port\": 8443\n}\n";
+		Path file = write( "cthttpd.json", text );
+		StringBuilder diff = new StringBuilder();
+
+		FileEditor fileEditor = JavaReplicationConfigEditor.keyReplaceEditor( file.toString(), singleKey( "\"http_port\":", "19803" ), false );
+		assertEquals( FileStatus.MODIFIED, fileEditor.preview( file.toString(), diff ) );
+		assertTrue( diff.toString(), diff.toString().contains( "-  \"http_port\": 8080," ) );
+		assertTrue( diff.toString(), diff.toString().contains( "+  \"http_port\": 19803," ) );
+		assertEquals( text, SampleFiles.read( file ) );
+	}
+
+
+	@Test
+	public void missingFilesAreReported()
+	{
+		assertEquals( FileStatus.MISSING, edit( directory.resolve( "missing.json" ), singleKey( "\"http_port\":", "19803" ) ) );
+	}
+
+
+	private Path write( String name, String contents ) throws IOException
+	{
+		Path file = directory.resolve( name );
+		SampleFiles.write( file, contents );
+		return file;
+	}
+
+
+	private static FileStatus edit( Path file, Map<String, Object> configMap )
+	{
+		return JavaReplicationConfigEditor.keyReplaceEditor( file.toString(), configMap, false ).apply( file.toString() );
+	}
+
+
+	private static Map<String, Object> singleKey( String key, Object value )
+	{
+		Map<String, Object> configMap = new LinkedHashMap<>();
+		configMap.put( key, value );
+		return configMap;
+	}
+
+
+	/**
+	 * parseStrictly() will parse JSON without Gson's lenient extensions, so unquoted values fail.
+	 */
+	private static JsonElement parseStrictly( String text ) throws IOException
+	{
+		return new Gson().getAdapter( JsonElement.class ).fromJson( text );
+	}
+}
@@ -0,0 +1,138 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class KeyMatcherTest
+{
+	/**
+	 * The matcher cache is shared by the whole JVM, so each test starts with it empty, whatever order the tests run in.
+	 */
+	@Before
+	public void setUp()
+	{
+		KeyMatcher.clearCache();
+	}
+
+
+	@Test
+	public void matchesTheSameKeysAsContains()
+	{
+		Random random = new Random( 3 );
+		for( int round = 0; round < 500; round++ )
+		{
+			// A small alphabet makes keys overlap, share prefixes, and contain each other.
+			List<String> keyList = new ArrayList<>();
+			int keyCount = 1 + random.nextInt( 12 );
+			for( int k = 0; k < keyCount; k++ )
+				keyList.add( randomText( random, "ab;\"", 1 + random.nextInt( 4 ) ) );
+			KeyMatcher matcher = KeyMatcher.forKeys( keyList );
+			assertNotNull( matcher );
+			assertEquals( keyList.size(), matcher.size() );
+			for( int line = 0; line < 50; line++ )
+			{
+				String text = randomText( random, "ab;\" é€", random.nextInt( 20 ) );
+				assertEquals( keyList + " in " + text, containsMask( keyList, text ), matcher.match( text ) );
+				assertEquals( keyList + " in " + text, containsMask( keyList, text ), stepMask( matcher, text ) );
+			}
+		}
+	}
+
+
+	@Test
+	public void matchesConfigurationKeys()
+	{
+		List<String> keyList = Arrays.asList( "SQL_PORT", "SERVER_PORT", "SERVER_NAME", "\"http_port\":", "\"listening_http_port\":" );
+		KeyMatcher matcher = KeyMatcher.forKeys( keyList );
+
+		assertEquals( 0L, matcher.match( "DAT_MEMORY\t100 MB" ) );
+		assertEquals( 1L, matcher.match( ";SQL_PORT 6597" ) );
+		assertEquals( 2L | 4L, matcher.match( "SERVER_PORT SERVER_NAME" ) );
+		assertEquals( 16L, matcher.match( "  \"listening_http_port\": 8080," ) );
+		assertEquals( 8L, matcher.match( "\"http_port\": 8080" ) );
+	}
+
+
+	@Test
+	public void unsupportedKeySetsGiveNull()
+	{
+		List<String> keyList = new ArrayList<>();
+		for( int k = 0; k <= KeyMatcher.MAX_KEYS; k++ )
+			keyList.add( "KEY" + k );
+		assertNull( KeyMatcher.forKeys( keyList ) );
+		assertNotNull( KeyMatcher.forKeys( keyList.subList( 0, KeyMatcher.MAX_KEYS ) ) );
+		assertNull( KeyMatcher.forKeys( Collections.singletonList( "€PORT" ) ) );
+	}
+
+
+	@Test
+	public void compiledMatchersAreShared()
+	{
+		KeyMatcher matcher = KeyMatcher.forKeys( Arrays.asList( "MEMPHIS_HOST", "MEMPHIS_DATABASE" ) );
+		assertSame( matcher, KeyMatcher.forKeys( new ArrayList<>( Arrays.asList( "MEMPHIS_HOST", "MEMPHIS_DATABASE" ) ) ) );
+	}
+
+
+	@Test
+	public void aFullCacheKeepsCachingNewKeySets()
+	{
+		for( int i = 0; i < 1000; i++ )
+			KeyMatcher.forKeys( Collections.singletonList( "KEY" + i ) );
+		KeyMatcher matcher = KeyMatcher.forKeys( Arrays.asList( "SQL_PORT", "SERVER_PORT" ) );
+		assertSame( matcher, KeyMatcher.forKeys( Arrays.asList( "SQL_PORT", "SERVER_PORT" ) ) );
+	}
+
+
+	private static long containsMask( List<String> keyList, String text )
+	{
+		long mask = 0;
+		for( int k = 0; k < keyList.size(); k++ )
+		{
+			if( text.contains( keyList.get( k ) ) )
+				mask |= 1L << k;
+		}
+		return mask;
+	}
+
+
+	/**
+	 * stepMask() will scan text with next() and found(), the way ByteRewriter does, treating each character as a byte.
+	 */
+	private static long stepMask( KeyMatcher matcher, String text )
+	{
+		int state = 0;
+		long found = matcher.found( 0 );
+		for( int i = 0; i < text.length(); i++ )
+		{
+			char c = text.charAt( i );
+			if( c > 0xFF )
+			{
+				// ByteRewriter never sees such a character, so restart as match() does.
+				state = 0;
+				continue;
+			}
+			state = matcher.next( state, c );
+			found |= matcher.found( state );
+		}
+		return found;
+	}
+
+
+	private static String randomText( Random random, String alphabet, int length )
+	{
+		StringBuilder builder = new StringBuilder();
+		for( int i = 0; i < length; i++ )
+			builder.append( alphabet.charAt( random.nextInt( alphabet.length() ) ) );
+		return builder.toString();
+	}
+}
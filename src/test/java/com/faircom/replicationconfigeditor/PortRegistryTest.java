@@ -0,0 +1,146 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+
+public class PortRegistryTest
+{
+	private static final Logger mainLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private Level savedLevel;
+
+
+	@Before
+	public void setUp()
+	{
+		savedLevel = mainLogger.getLevel();
+		mainLogger.setLevel( Level.OFF );
+	}
+
+
+	@After
+	public void tearDown()
+	{
+		mainLogger.setLevel( savedLevel );
+	}
+
+
+	@Test
+	public void aFleetWithoutConflictsPasses()
+	{
+		PortRegistry portRegistry = register( node( "/fleet/FAIRCOM2", "19801", "", 19803, 19802, 1884, 8082 ),
+		                                      node( "/fleet/FAIRCOM3", "19811", "19810", 19813, 19812, 1885, 8083 ) );
+
+		assertTrue( portRegistry.report() );
+		assertEquals( 0, portRegistry.getConflictCount() );
+		for( int port : new int[]{ 19801, 19803, 19802, 1884, 8082, 19811, 19810, 19813, 19812, 1885, 8083 } )
+			assertTrue( Integer.toString( port ), portRegistry.isUsed( port ) );
+		// memphisSqlPort names another server's port, so it is not claimed.
+		assertFalse( portRegistry.isUsed( 19991 ) );
+		assertFalse( portRegistry.isUsed( 0 ) );
+		assertFalse( portRegistry.isUsed( 65536 ) );
+	}
+
+
+	@Test
+	public void sharedPortsAreConflicts()
+	{
+		PortRegistry portRegistry = register( node( "/fleet/FAIRCOM2", "19801", "", 19803, 19802, 1884, 8082 ),
+		                                      node( "/fleet/FAIRCOM3", "19801", "", 19813, 19803, 1884, 8083 ),
+		                                      node( "/fleet/FAIRCOM4", "19801", "", 19823, 19822, null, null ) );
+
+		assertFalse( portRegistry.report() );
+		// sqlPort twice more, listeningHttpsPort against listeningHttpPort, and mqttListeningPort.
+		assertEquals( 4, portRegistry.getConflictCount() );
+	}
+
+
+	@Test
+	public void portsOnOneNodeCanConflict()
+	{
+		PortRegistry portRegistry = register( node( "/fleet/FAIRCOM2", "19801", "19801", 19803, 19803, null, null ) );
+
+		assertFalse( portRegistry.report() );
+		assertEquals( 2, portRegistry.getConflictCount() );
+	}
+
+
+	@Test
+	public void invalidPortsAreProblems()
+	{
+		for( String sqlPort : new String[]{ "0", "65536", "-1", "port", "19 801", "123456" } )
+		{
+			PortRegistry portRegistry = register( node( "/fleet/FAIRCOM2", sqlPort, "", 19803, 19802, null, null ) );
+			assertFalse( sqlPort, portRegistry.report() );
+			assertEquals( sqlPort, 0, portRegistry.getConflictCount() );
+		}
+		assertFalse( register( node( "/fleet/FAIRCOM2", "19801", "", 70000, 19802, null, null ) ).report() );
+		// Surrounding spaces are allowed, and an empty serverPort is not set.
+		assertTrue( register( node( "/fleet/FAIRCOM2", " 19801 ", "  ", 19803, 19802, null, null ) ).report() );
+		// A null port, as a JSON null gives, is not set either.
+		assertTrue( register( node( "/fleet/FAIRCOM2", null, null, 19803, 19802, null, null ) ).report() );
+		PortRegistry storeRegistry = new PortRegistry();
+		storeRegistry.register( FleetStore.load( Collections.singletonList( node( "/fleet/FAIRCOM2", null, null, 19803, 19802, null, null ) ).iterator() ) );
+		assertTrue( storeRegistry.report() );
+	}
+
+
+	@Test
+	public void blankPortsAreGivenTheLowestFreePorts()
+	{
+		Config first = node( "/fleet/FAIRCOM2", "20000", "", null, null, null, null );
+		Config second = node( "/fleet/FAIRCOM3", "20003", "", 20001, null, null, null );
+		PortRegistry portRegistry = register( first, second );
+		portRegistry.allocate( 20000 );
+
+		assertTrue( portRegistry.report() );
+		List<Config> assignedList = new ArrayList<>();
+		Iterator<Config> assigned = portRegistry.assignPorts( Arrays.asList( first, second ).iterator() );
+		while( assigned.hasNext() )
+			assignedList.add( assigned.next() );
+		assertEquals( Integer.valueOf( 20002 ), assignedList.get( 0 ).getListeningHttpPort() );
+		assertEquals( Integer.valueOf( 20004 ), assignedList.get( 0 ).getListeningHttpsPort() );
+		assertEquals( Integer.valueOf( 20001 ), assignedList.get( 1 ).getListeningHttpPort() );
+		assertEquals( Integer.valueOf( 20005 ), assignedList.get( 1 ).getListeningHttpsPort() );
+		assertTrue( portRegistry.isUsed( 20005 ) );
+	}
+
+
+	@Test
+	public void runningOutOfPortsIsAProblem()
+	{
+		PortRegistry portRegistry = register( node( "/fleet/FAIRCOM2", "65534", "", 65535, null, null, null ) );
+		portRegistry.allocate( 65534 );
+
+		assertFalse( portRegistry.report() );
+		assertEquals( 0, portRegistry.getConflictCount() );
+	}
+
+
+	private static PortRegistry register( Config... configs )
+	{
+		PortRegistry portRegistry = new PortRegistry();
+		for( Config configuredNode : configs )
+			portRegistry.register( configuredNode );
+		return portRegistry;
+	}
+
+
+	static Config node( String baseDirectory, String sqlPort, String serverPort, Integer httpPort, Integer httpsPort, Integer mqttPort, Integer websocketPort )
+	{
+		return new Config( baseDirectory, "config", "ctsrvr.cfg", "FAIRCOM", serverPort, "NO", sqlPort, "cthttpd.json", httpPort, httpsPort, mqttPort, websocketPort,
+		                   "ctagent.json", "MEMPHIS", 19991, "127.0.0.1", "MEMPHIS", "" );
+	}
+}
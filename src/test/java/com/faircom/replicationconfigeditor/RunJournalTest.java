@@ -0,0 +1,160 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+
+public class RunJournalTest
+{
+	private static final Logger mainLogger = Logger.getLogger( JavaReplicationConfigEditor.class.getName() );
+	private Level savedLevel;
+	private Path directory;
+	private String journalFileName;
+	private Path serverConfig;
+	private Path httpConfig;
+	private List<String> fileNameList;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		savedLevel = mainLogger.getLevel();
+		mainLogger.setLevel( Level.OFF );
+		directory = Files.createTempDirectory( "journal" );
+		journalFileName = directory.resolve( "fleet.json.journal" ).toString();
+		serverConfig = directory.resolve( "node/config/ctsrvr.cfg" );
+		httpConfig = directory.resolve( "node/config/cthttpd.json" );
+		SampleFiles.write( serverConfig, "SQL_PORT\t6597\r\n" );
+		SampleFiles.write( httpConfig, "{ \"http_port\": 8080 }\n" );
+		// The agent file does not exist, so it has no backup.
+		fileNameList = Arrays.asList( serverConfig.toString(), httpConfig.toString(), directory.resolve( "node/config/ctagent.json" ).toString() );
+	}
+
+
+	@After
+	public void tearDown() throws IOException
+	{
+		mainLogger.setLevel( savedLevel );
+		SampleFiles.deleteTree( directory );
+	}
+
+
+	@Test
+	public void halfAppliedNodesAreRolledBack() throws IOException
+	{
+		Config configuredNode = node( "19801" );
+		RunJournal runJournal = RunJournal.open( journalFileName, Durability.NONE );
+		runJournal.begin( configuredNode, fileNameList );
+		SampleFiles.write( serverConfig, "SQL_PORT\t19801\r\n" );
+		Files.delete( httpConfig );
+		runJournal.close();
+
+		runJournal = RunJournal.open( journalFileName, Durability.NONE );
+		assertEquals( "SQL_PORT\t6597\r\n", SampleFiles.read( serverConfig ) );
+		assertEquals( "{ \"http_port\": 8080 }\n", SampleFiles.read( httpConfig ) );
+		assertFalse( Files.exists( directory.resolve( "node/config/ctagent.json" ) ) );
+		assertFalse( runJournal.isDone( configuredNode ) );
+		runJournal.close();
+
+		// The rollback is recorded, so a later change is not undone by the next run.
+		SampleFiles.write( serverConfig, "SQL_PORT\t19811\r\n" );
+		RunJournal.open( journalFileName, Durability.NONE ).close();
+		assertEquals( "SQL_PORT\t19811\r\n", SampleFiles.read( serverConfig ) );
+	}
+
+
+	@Test
+	public void finishedNodesAreSkippedUntilTheirConfigChanges() throws IOException
+	{
+		Config configuredNode = node( "19801" );
+		RunJournal runJournal = RunJournal.open( journalFileName, Durability.NONE );
+		assertFalse( runJournal.isDone( configuredNode ) );
+		runJournal.begin( configuredNode, fileNameList );
+		SampleFiles.write( serverConfig, "SQL_PORT\t19801\r\n" );
+		runJournal.complete( configuredNode );
+		runJournal.close();
+
+		runJournal = RunJournal.open( journalFileName, Durability.NONE );
+		assertTrue( runJournal.isDone( configuredNode ) );
+		assertFalse( runJournal.isDone( node( "19811" ) ) );
+		// A finished node is not rolled back.
+		assertEquals( "SQL_PORT\t19801\r\n", SampleFiles.read( serverConfig ) );
+		runJournal.close();
+	}
+
+
+	@Test
+	public void startingANodeAgainForgetsThatItFinished() throws IOException
+	{
+		Config configuredNode = node( "19801" );
+		RunJournal runJournal = RunJournal.open( journalFileName, Durability.NONE );
+		runJournal.begin( configuredNode, fileNameList );
+		runJournal.complete( configuredNode );
+		runJournal.begin( configuredNode, fileNameList );
+		SampleFiles.write( serverConfig, "SQL_PORT\t19801\r\n" );
+		runJournal.close();
+
+		runJournal = RunJournal.open( journalFileName, Durability.NONE );
+		assertFalse( runJournal.isDone( configuredNode ) );
+		assertEquals( "SQL_PORT\t6597\r\n", SampleFiles.read( serverConfig ) );
+		runJournal.close();
+	}
+
+
+	@Test
+	public void tornLastLineIsIgnored() throws IOException
+	{
+		Config configuredNode = node( "19801" );
+		RunJournal runJournal = RunJournal.open( journalFileName, Durability.NONE );
+		runJournal.begin( configuredNode, fileNameList );
+		runJournal.complete( configuredNode );
+		runJournal.close();
+		Files.write( directory.resolve( "fleet.json.journal" ), "{\"event\":\"start\",\"node\":\"/fle".getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+
+		runJournal = RunJournal.open( journalFileName, Durability.NONE );
+		assertTrue( runJournal.isDone( configuredNode ) );
+		runJournal.close();
+	}
+
+
+	@Test
+	public void discardDeletesTheJournalAndBackups() throws IOException
+	{
+		Config configuredNode = node( "19801" );
+		RunJournal runJournal = RunJournal.open( journalFileName, Durability.FILE );
+		runJournal.begin( configuredNode, fileNameList );
+		runJournal.complete( configuredNode );
+		Path backupDirectory = directory.resolve( "fleet.json.journal.backups" );
+		assertEquals( 2, SampleFiles.listFiles( backupDirectory ).size() );
+
+		runJournal.discard();
+		assertFalse( Files.exists( directory.resolve( "fleet.json.journal" ) ) );
+		assertFalse( Files.exists( backupDirectory ) );
+		assertEquals( "SQL_PORT\t6597\r\n", SampleFiles.read( serverConfig ) );
+		try( RunJournal nextJournal = RunJournal.open( journalFileName, Durability.NONE ) )
+		{
+			assertFalse( nextJournal.isDone( configuredNode ) );
+		}
+	}
+
+
+	private Config node( String sqlPort )
+	{
+		return new Config( directory.resolve( "node" ).toString(), "config", "ctsrvr.cfg", "FAIRCOM2", "", "NO", sqlPort, "cthttpd.json", 19803, 19802, null, null,
+		                   "ctagent.json", "MEMPHIS", 19991, "127.0.0.1", "MEMPHIS", "" );
+	}
+}
@@ -0,0 +1,148 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class RunManifestTest
+{
+	private Path directory;
+	private Path manifestFile;
+	private Config configuredNode;
+	private List<String> fileNameList;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory( "manifest" );
+		manifestFile = directory.resolve( "fleet.json.manifest" );
+		configuredNode = node( "19801" );
+		SampleFiles.write( directory.resolve( "config/ctsrvr.cfg" ), "SQL_PORT\t19801\n" );
+		SampleFiles.write( directory.resolve( "config/cthttpd.json" ), "{ \"http_port\": 19803 }\n" );
+		fileNameList = Arrays.asList( directory.resolve( "config/ctsrvr.cfg" ).toString(), directory.resolve( "config/cthttpd.json" ).toString() );
+	}
+
+
+	@After
+	public void tearDown() throws IOException
+	{
+		SampleFiles.deleteTree( directory );
+	}
+
+
+	@Test
+	public void recordedNodesAreUnchanged() throws IOException
+	{
+		RunManifest manifest = RunManifest.load( manifestFile.toString() );
+		assertFalse( manifest.isUnchanged( configuredNode, fileNameList ) );
+		manifest.record( configuredNode, fileNameList );
+		assertTrue( manifest.isUnchanged( configuredNode, fileNameList ) );
+		manifest.save();
+
+		assertTrue( RunManifest.load( manifestFile.toString() ).isUnchanged( configuredNode, fileNameList ) );
+	}
+
+
+	@Test
+	public void changesAreNoticed() throws IOException
+	{
+		RunManifest manifest = RunManifest.load( manifestFile.toString() );
+		manifest.record( configuredNode, fileNameList );
+
+		assertFalse( manifest.isUnchanged( node( "19811" ), fileNameList ) );
+		assertFalse( manifest.isUnchanged( configuredNode, fileNameList.subList( 0, 1 ) ) );
+		// The same size, so only the content hash can tell.
+		Path serverConfig = directory.resolve( "config/ctsrvr.cfg" );
+		SampleFiles.write( serverConfig, "SQL_PORT\t19811\n" );
+		Files.setLastModifiedTime( serverConfig, FileTime.fromMillis( Files.getLastModifiedTime( serverConfig ).toMillis() + 5000 ) );
+		assertFalse( manifest.isUnchanged( configuredNode, fileNameList ) );
+		Files.delete( serverConfig );
+		assertFalse( manifest.isUnchanged( configuredNode, fileNameList ) );
+	}
+
+
+	@Test
+	public void touchedFilesAreRefreshedByRecordOnly() throws IOException
+	{
+		RunManifest manifest = RunManifest.load( manifestFile.toString() );
+		manifest.record( configuredNode, fileNameList );
+		manifest.save();
+		long recordedTime = recordedModified();
+
+		Path serverConfig = directory.resolve( "config/ctsrvr.cfg" );
+		long touchedTime = recordedTime + 60000;
+		Files.setLastModifiedTime( serverConfig, FileTime.fromMillis( touchedTime ) );
+		assertTrue( manifest.isUnchanged( configuredNode, fileNameList ) );
+		manifest.save();
+		assertEquals( recordedTime, recordedModified() );
+
+		manifest.record( configuredNode, fileNameList );
+		manifest.save();
+		assertEquals( touchedTime, recordedModified() );
+		assertTrue( manifest.isUnchanged( configuredNode, fileNameList ) );
+	}
+
+
+	@Test
+	public void manifestsFromOtherVersionsAreIgnored() throws IOException
+	{
+		RunManifest manifest = RunManifest.load( manifestFile.toString() );
+		manifest.record( configuredNode, fileNameList );
+		manifest.save();
+		JsonObject saved = JsonParser.parseString( SampleFiles.read( manifestFile ) ).getAsJsonObject();
+		assertEquals( JavaReplicationConfigEditor.EDIT_RULES_VERSION, saved.get( "editRules" ).getAsInt() );
+
+		saved.addProperty( "editRules", JavaReplicationConfigEditor.EDIT_RULES_VERSION - 1 );
+		SampleFiles.write( manifestFile, saved.toString() );
+		assertFalse( RunManifest.load( manifestFile.toString() ).isUnchanged( configuredNode, fileNameList ) );
+
+		saved.remove( "editRules" );
+		SampleFiles.write( manifestFile, saved.toString() );
+		assertFalse( RunManifest.load( manifestFile.toString() ).isUnchanged( configuredNode, fileNameList ) );
+
+		saved.addProperty( "editRules", JavaReplicationConfigEditor.EDIT_RULES_VERSION );
+		saved.addProperty( "version", 99 );
+		SampleFiles.write( manifestFile, saved.toString() );
+		assertFalse( RunManifest.load( manifestFile.toString() ).isUnchanged( configuredNode, fileNameList ) );
+	}
+
+
+	@Test
+	public void malformedManifestsAreEmpty() throws IOException
+	{
+		SampleFiles.write( manifestFile, "{ not json" );
+		assertFalse( RunManifest.load( manifestFile.toString() ).isUnchanged( configuredNode, fileNameList ) );
+	}
+
+
+	/**
+	 * recordedModified() will return the modification time that the saved manifest holds for ctsrvr.cfg.
+	 */
+	private long recordedModified() throws IOException
+	{
+		JsonObject saved = JsonParser.parseString( SampleFiles.read( manifestFile ) ).getAsJsonObject();
+		JsonObject files = saved.getAsJsonObject( "nodes" ).getAsJsonObject( directory.toString() ).getAsJsonObject( "files" );
+		return files.getAsJsonObject( fileNameList.get( 0 ) ).get( "modified" ).getAsLong();
+	}
+
+
+	private Config node( String sqlPort )
+	{
+		return new Config( directory.toString(), "config", "ctsrvr.cfg", "FAIRCOM2", "", "NO", sqlPort, "cthttpd.json", 19803, 19802, null, null,
+		                   "ctagent.json", "MEMPHIS", 19991, "127.0.0.1", "MEMPHIS", "" );
+	}
+}
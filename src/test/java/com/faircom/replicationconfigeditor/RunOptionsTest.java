@@ -0,0 +1,45 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class RunOptionsTest
+{
+	@Test
+	public void runsWriteTheDefaultMetricsReport()
+	{
+		RunOptions options = RunOptions.parse( new String[]{ "fleet.json" } );
+		assertFalse( options.isDryRun() );
+		assertEquals( "fleet.json.metrics.json", options.getMetricsFileName() );
+		assertEquals( "", options.getPrometheusFileName() );
+	}
+
+
+	@Test
+	public void dryRunsWriteNoMetricsReportUnlessAsked()
+	{
+		assertEquals( "", RunOptions.parse( new String[]{ "fleet.json", "--dry-run" } ).getMetricsFileName() );
+		assertEquals( "dry.json", RunOptions.parse( new String[]{ "--metrics", "dry.json", "fleet.json", "--dry-run" } ).getMetricsFileName() );
+		RunOptions options = RunOptions.parse( new String[]{ "fleet.json", "--dry-run", "--metrics-prometheus", "dry.prom" } );
+		assertEquals( "", options.getMetricsFileName() );
+		assertEquals( "dry.prom", options.getPrometheusFileName() );
+	}
+
+
+	@Test
+	public void dryRunsUseEveryProcessor()
+	{
+		assertEquals( Runtime.getRuntime().availableProcessors(), RunOptions.parse( new String[]{ "fleet.json", "--dry-run" } ).getParallelism() );
+		assertEquals( 2, RunOptions.parse( new String[]{ "fleet.json", "--dry-run", "--parallel", "2" } ).getParallelism() );
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void optionValuesAreRequired()
+	{
+		RunOptions.parse( new String[]{ "fleet.json", "--metrics" } );
+	}
+}
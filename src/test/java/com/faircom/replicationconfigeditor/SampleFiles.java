@@ -0,0 +1,100 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * SampleFiles holds the file helpers the tests share, such as copying the sample configuration files into a temporary directory.
+ */
+final class SampleFiles
+{
+	private SampleFiles()
+	{
+	}
+
+
+	/**
+	 * resource() will return the path of a test resource directory or file.
+	 *
+	 * @param name the name of the resource, relative to the root of the test resources.
+	 * @return the path of the resource.
+	 */
+	static Path resource( String name ) throws URISyntaxException
+	{
+		URL url = SampleFiles.class.getResource( "/" + name );
+		if( url == null )
+			throw new IllegalStateException( "Missing test resource: " + name );
+		return Paths.get( url.toURI() );
+	}
+
+
+	/**
+	 * listFiles() will return every regular file under a directory, in sorted order.
+	 */
+	static List<Path> listFiles( Path directory ) throws IOException
+	{
+		try( Stream<Path> pathStream = Files.walk( directory ) )
+		{
+			return pathStream.filter( Files::isRegularFile ).sorted().collect( Collectors.toList() );
+		}
+	}
+
+
+	static void copyTree( Path source, Path target ) throws IOException
+	{
+		for( Path file : listFiles( source ) )
+		{
+			Path targetFile = target.resolve( source.relativize( file ).toString() );
+			Files.createDirectories( targetFile.getParent() );
+			Files.copy( file, targetFile, StandardCopyOption.REPLACE_EXISTING );
+		}
+	}
+
+
+	static void deleteTree( Path directory ) throws IOException
+	{
+		if( directory == null || !Files.exists( directory ) )
+			return;
+		try( Stream<Path> pathStream = Files.walk( directory ) )
+		{
+			for( Path path : pathStream.sorted( Comparator.reverseOrder() ).collect( Collectors.toList() ) )
+				Files.delete( path );
+		}
+	}
+
+
+	/**
+	 * read() will return the contents of a file, with each byte as one character, the same way the editor reads them.
+	 */
+	static String read( Path file ) throws IOException
+	{
+		return new String( Files.readAllBytes( file ), StandardCharsets.ISO_8859_1 );
+	}
+
+
+	static void write( Path file, String contents ) throws IOException
+	{
+		Files.createDirectories( file.toAbsolutePath().getParent() );
+		Files.write( file, contents.getBytes( StandardCharsets.ISO_8859_1 ) );
+	}
+
+
+	/**
+	 * readTree() will return the contents of every file under a directory, by relative path.
+	 */
+	static Map<String, String> readTree( Path directory ) throws IOException
+	{
+		Map<String, String> contentMap = new TreeMap<>();
+		for( Path file : listFiles( directory ) )
+			contentMap.put( directory.relativize( file ).toString(), read( file ) );
+		return contentMap;
+	}
+}
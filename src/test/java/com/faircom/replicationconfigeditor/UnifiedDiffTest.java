@@ -0,0 +1,157 @@
+package main.java.com.faircom.replicationconfigeditor;
+
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class UnifiedDiffTest
+{
+	private static final String NEW_LINE = System.lineSeparator();
+
+
+	@Test
+	public void unchangedTextHasNoDiff() throws IOException
+	{
+		assertEquals( "", UnifiedDiff.of( "ctsrvr.cfg", "a\nb\n", "a\nb\n" ) );
+		assertEquals( "", UnifiedDiff.of( "ctsrvr.cfg", "", "" ) );
+	}
+
+
+	@Test
+	public void changesAreShownWithThreeLinesOfContext() throws IOException
+	{
+		String original = "1\n2\n3\n4\nSQL_PORT\t6597\n6\n7\n8\n9\n";
+		String edited = "1\n2\n3\n4\nSQL_PORT\t19801\n6\n7\n8\n9\n";
+		assertEquals( join( "--- ctsrvr.cfg", "+++ ctsrvr.cfg", "@@ -2,7 +2,7 @@", " 2", " 3", " 4", "-SQL_PORT\t6597", "+SQL_PORT\t19801", " 6", " 7", " 8" ),
+		              UnifiedDiff.of( "ctsrvr.cfg", original, edited ) );
+	}
+
+
+	@Test
+	public void runsOfChangesShowRemovedLinesFirst() throws IOException
+	{
+		assertEquals( join( "--- f", "+++ f", "@@ -1,3 +1,3 @@", "-a", "-b", "+A", "+B", " c" ), UnifiedDiff.of( "f", "a\nb\nc", "A\nB\nc" ) );
+	}
+
+
+	@Test
+	public void nearbyChangesShareAHunk() throws IOException
+	{
+		// Six unchanged lines apart: one hunk.
+		assertEquals( join( "--- f", "+++ f", "@@ -1,8 +1,8 @@", "-a", "+A", " 1", " 2", " 3", " 4", " 5", " 6", "-b", "+B" ),
+		              UnifiedDiff.of( "f", "a\n1\n2\n3\n4\n5\n6\nb", "A\n1\n2\n3\n4\n5\n6\nB" ) );
+		// Seven apart: two hunks.
+		assertEquals( join( "--- f", "+++ f", "@@ -1,4 +1,4 @@", "-a", "+A", " 1", " 2", " 3", "@@ -6,4 +6,4 @@", " 5", " 6", " 7", "-b", "+B" ),
+		              UnifiedDiff.of( "f", "a\n1\n2\n3\n4\n5\n6\n7\nb", "A\n1\n2\n3\n4\n5\n6\n7\nB" ) );
+	}
+
+
+	@Test
+	public void hunksMatchAReferenceDiff() throws IOException
+	{
+		Random random = new Random( 11 );
+		for( int round = 0; round < 2000; round++ )
+		{
+			int lineCount = random.nextInt( 40 );
+			List<String> originalList = new ArrayList<>();
+			List<String> editedList = new ArrayList<>();
+			for( int i = 0; i < lineCount; i++ )
+			{
+				originalList.add( "line " + i );
+				editedList.add( random.nextInt( 8 ) == 0 ? "edited " + i : "line " + i );
+			}
+			String original = String.join( "\r\n", originalList );
+			String edited = String.join( "\n", editedList );
+			assertEquals( original, referenceDiff( originalList, editedList ), UnifiedDiff.of( "f", original, edited ) );
+		}
+	}
+
+
+	@Test
+	public void filesAreDiffedAgainstALineEditor() throws IOException
+	{
+		Path file = Files.createTempFile( "ctsrvr", ".cfg" );
+		try
+		{
+			SampleFiles.write( file, "SERVER_NAME\tFAIRCOM\r\nSQL_PORT\t6597\r\n" );
+			String diff = UnifiedDiff.of( file, line -> line.replace( "6597", "19801" ) );
+			assertEquals( join( "--- " + file, "+++ " + file, "@@ -1,2 +1,2 @@", " SERVER_NAME\tFAIRCOM", "-SQL_PORT\t6597", "+SQL_PORT\t19801" ), diff );
+			assertEquals( "", UnifiedDiff.of( file, line -> line ) );
+		}
+		finally
+		{
+			Files.delete( file );
+		}
+	}
+
+
+	@Test( expected = IOException.class )
+	public void textsMustHaveTheSameLines() throws IOException
+	{
+		UnifiedDiff.of( "f", "a\nb", "a" );
+	}
+
+
+	/**
+	 * referenceDiff() will build the diff -u output for two lists of the same length, by finding the changed lines and grouping them with their context.
+	 */
+	private static String referenceDiff( List<String> originalList, List<String> editedList )
+	{
+		List<Integer> changedList = new ArrayList<>();
+		for( int i = 0; i < originalList.size(); i++ )
+		{
+			if( !originalList.get( i ).equals( editedList.get( i ) ) )
+				changedList.add( i );
+		}
+		if( changedList.isEmpty() )
+			return "";
+		List<String> outputList = new ArrayList<>();
+		outputList.add( "--- f" );
+		outputList.add( "+++ f" );
+		int first = 0;
+		while( first < changedList.size() )
+		{
+			int last = first;
+			while( last + 1 < changedList.size() && changedList.get( last + 1 ) - changedList.get( last ) - 1 <= 6 )
+				last++;
+			int start = Math.max( 0, changedList.get( first ) - 3 );
+			int end = Math.min( originalList.size() - 1, changedList.get( last ) + 3 );
+			outputList.add( "@@ -" + ( start + 1 ) + "," + ( end - start + 1 ) + " +" + ( start + 1 ) + "," + ( end - start + 1 ) + " @@" );
+			int i = start;
+			while( i <= end )
+			{
+				if( originalList.get( i ).equals( editedList.get( i ) ) )
+				{
+					outputList.add( " " + originalList.get( i ) );
+					i++;
+					continue;
+				}
+				int runEnd = i;
+				while( runEnd <= end && !originalList.get( runEnd ).equals( editedList.get( runEnd ) ) )
+					runEnd++;
+				for( int j = i; j < runEnd; j++ )
+					outputList.add( "-" + originalList.get( j ) );
+				for( int j = i; j < runEnd; j++ )
+					outputList.add( "+" + editedList.get( j ) );
+				i = runEnd;
+			}
+			first = last + 1;
+		}
+		return String.join( NEW_LINE, outputList );
+	}
+
+
+	private static String join( String... lines )
+	{
+		return String.join( NEW_LINE, lines );
+	}
+}